@@ -0,0 +1,169 @@
+/*
+ *
+ * Copyright (c) 2023 Marco Marini, marco.marini@mmarini.org
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ *
+ *    END OF TERMS AND CONDITIONS
+ */
+
+package org.mmarini;
+
+import java.util.Random;
+import java.util.SplittableRandom;
+
+/**
+ * The alias table of a discrete distribution (Walker/Vose).
+ * <p>
+ * It samples an integer with the probability proportional to given weights
+ * in constant time with a single uniform random value.
+ * </p>
+ */
+public class AliasTable {
+
+    /**
+     * Returns the alias table of a cumulative distribution function
+     *
+     * @param cdf the cumulative distribution function values must be monotonic increasing
+     */
+    public static AliasTable fromCdf(double... cdf) {
+        int n = cdf.length;
+        double[] weights = new double[n];
+        if (n > 0) {
+            weights[0] = cdf[0];
+            for (int i = 1; i < n; i++) {
+                weights[i] = cdf[i] - cdf[i - 1];
+            }
+        }
+        return fromWeights(weights);
+    }
+
+    /**
+     * Returns the alias table of weights
+     *
+     * @param weights the weights
+     */
+    public static AliasTable fromWeights(double... weights) {
+        int n = weights.length;
+        assert n > 0;
+        double total = 0;
+        for (double weight : weights) {
+            total += weight;
+        }
+        double[] probabilities = new double[n];
+        int[] aliases = new int[n];
+        if (!(total > 0)) {
+            // Degenerated distribution: falls on the last value as the cumulative scan
+            for (int i = 0; i < n; i++) {
+                aliases[i] = n - 1;
+            }
+            return new AliasTable(probabilities, aliases);
+        }
+        // Splits the scaled weights in the small and large stacks
+        double[] scaled = new double[n];
+        int[] small = new int[n];
+        int[] large = new int[n];
+        int smallCount = 0;
+        int largeCount = 0;
+        for (int i = 0; i < n; i++) {
+            scaled[i] = weights[i] * n / total;
+            aliases[i] = i;
+            if (scaled[i] < 1) {
+                small[smallCount++] = i;
+            } else {
+                large[largeCount++] = i;
+            }
+        }
+        // Fills the small columns with the large ones
+        while (smallCount > 0 && largeCount > 0) {
+            int s = small[--smallCount];
+            int l = large[--largeCount];
+            probabilities[s] = scaled[s];
+            aliases[s] = l;
+            scaled[l] = scaled[l] + scaled[s] - 1;
+            if (scaled[l] < 1) {
+                small[smallCount++] = l;
+            } else {
+                large[largeCount++] = l;
+            }
+        }
+        // The remaining columns are full (rounding errors)
+        while (largeCount > 0) {
+            probabilities[large[--largeCount]] = 1;
+        }
+        while (smallCount > 0) {
+            probabilities[small[--smallCount]] = 1;
+        }
+        return new AliasTable(probabilities, aliases);
+    }
+
+    private final double[] probabilities;
+    private final int[] aliases;
+
+    /**
+     * Creates the alias table
+     *
+     * @param probabilities the probabilities of the columns
+     * @param aliases       the aliases of the columns
+     */
+    protected AliasTable(double[] probabilities, int[] aliases) {
+        this.probabilities = probabilities;
+        this.aliases = aliases;
+    }
+
+    /**
+     * Returns the sampled value for a uniform random value in [0, 1)
+     *
+     * @param u the uniform random value
+     */
+    public int next(double u) {
+        int n = probabilities.length;
+        double x = u * n;
+        int i = Math.min((int) x, n - 1);
+        return x - i < probabilities[i] ? i : aliases[i];
+    }
+
+    /**
+     * Returns a sampled value
+     *
+     * @param random the random generator
+     */
+    public int next(Random random) {
+        return next(random.nextDouble());
+    }
+
+    /**
+     * Returns a sampled value
+     *
+     * @param random the random generator
+     */
+    public int next(SplittableRandom random) {
+        return next(random.nextDouble());
+    }
+
+    /**
+     * Returns the number of values
+     */
+    public int size() {
+        return probabilities.length;
+    }
+}
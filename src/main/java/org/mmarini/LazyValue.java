@@ -29,16 +29,22 @@
 
 package org.mmarini;
 
+import java.util.Optional;
 import java.util.function.Supplier;
 
 /**
  * A Lazy initialization value
+ * <p>
+ * The value is safely published to concurrent readers and initialized once
+ * (double-checked locking on a volatile field), so the values shared by parallel simulations
+ * like the compiled topology are never computed twice.
+ * </p>
  *
  * @param <T> the type of value
  */
 public class LazyValue<T> implements Supplier<T> {
     private final Supplier<T> initializer;
-    private T value;
+    private volatile T value;
 
     /**
      * Create a lazy initialized value
@@ -59,9 +65,23 @@ public class LazyValue<T> implements Supplier<T> {
 
     @Override
     public T get() {
-        if (value == null) {
-            value = initializer.get();
+        T result = value;
+        if (result == null) {
+            synchronized (this) {
+                result = value;
+                if (result == null) {
+                    result = initializer.get();
+                    value = result;
+                }
+            }
         }
-        return value;
+        return result;
+    }
+
+    /**
+     * Returns the value if already initialized without initializing it
+     */
+    public Optional<T> peek() {
+        return Optional.ofNullable(value);
     }
 }
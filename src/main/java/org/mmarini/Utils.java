@@ -30,6 +30,7 @@ package org.mmarini;
 
 import java.util.*;
 import java.util.Map.Entry;
+import java.util.function.DoubleSupplier;
 import java.util.function.Function;
 import java.util.function.Predicate;
 import java.util.stream.Collector;
@@ -40,6 +41,25 @@ import java.util.stream.Stream;
 import static java.util.Map.entry;
 
 public interface Utils {
+    /**
+     * The minimum mean value for the transformed rejection Poisson sampler
+     */
+    double PTRS_MIN_LAMBDA = 10;
+    /**
+     * The logarithms of factorials of small values
+     */
+    double[] LOG_FACTORIALS = {
+            0.0,
+            0.0,
+            0.693147180559945,
+            1.7917594692280554,
+            3.178053830347945,
+            4.787491742782047,
+            6.579251212010102,
+            8.525161361065415,
+            10.604602902745249,
+            12.801827480081467
+    };
 
     /**
      * Returns the cumulative values
@@ -112,21 +132,73 @@ public interface Utils {
     }
 
     /**
-     * Returns an integer with probability given by cdf values
+     * Returns a number with a Poisson distribution probability
      *
      * @param random the random generator
-     * @param cdf    the cumulative distribution function values must be monotonic increasing
+     * @param lambda the mean value
+     */
+    static int nextPoison(Random random, final double lambda) {
+        return nextPoison((DoubleSupplier) random::nextDouble, lambda);
+    }
+
+    /**
+     * Returns a number with a Poisson distribution probability.
+     * It multiplies the uniform values for small mean values
+     * and it uses the transformed rejection with squeeze (PTRS, Hormann 1993) for large mean values
+     * with a constant expected number of uniform values.
+     *
+     * @param uniform the uniform random value generator
+     * @param lambda  the mean value
      */
-    static int nextCdf(Random random, double... cdf) {
-        assert cdf.length > 0;
-        double p = random.nextDouble() * cdf[cdf.length - 1];
-        int n = cdf.length - 1;
-        for (int i = 0; i < n; i++) {
-            if (p < cdf[i]) {
-                return i;
+    static int nextPoison(DoubleSupplier uniform, final double lambda) {
+        if (lambda < PTRS_MIN_LAMBDA) {
+            int k = -1;
+            double p = 1;
+            final double l = Math.exp(-lambda);
+            do {
+                ++k;
+                p *= uniform.getAsDouble();
+            } while (p > l);
+            return k;
+        }
+        final double sqrtLambda = Math.sqrt(lambda);
+        final double logLambda = Math.log(lambda);
+        final double b = 0.931 + 2.53 * sqrtLambda;
+        final double a = -0.059 + 0.02483 * b;
+        final double invAlpha = 1.1239 + 1.1328 / (b - 3.4);
+        final double vr = 0.9277 - 3.6224 / (b - 2);
+        for (; ; ) {
+            final double u = uniform.getAsDouble() - 0.5;
+            final double v = uniform.getAsDouble();
+            final double us = 0.5 - Math.abs(u);
+            final double k = Math.floor((2 * a / us + b) * u + lambda + 0.43);
+            if (us >= 0.07 && v <= vr) {
+                return (int) k;
+            }
+            if (k < 0 || (us < 0.013 && v > us)) {
+                continue;
+            }
+            if (Math.log(v) + Math.log(invAlpha) - Math.log(a / (us * us) + b)
+                    <= -lambda + k * logLambda - logFactorial((int) k)) {
+                return (int) k;
             }
         }
-        return n;
+    }
+
+    /**
+     * Returns the natural logarithm of the factorial
+     *
+     * @param k the value
+     */
+    static double logFactorial(int k) {
+        if (k < LOG_FACTORIALS.length) {
+            return LOG_FACTORIALS[k];
+        }
+        // Stirling series
+        final double x = k;
+        final double x2 = x * x;
+        return (x + 0.5) * Math.log(x) - x + 0.5 * Math.log(2 * Math.PI)
+                + (1.0 / 12 - (1.0 / 360 - 1.0 / (1260 * x2)) / x2) / x;
     }
 
     /**
@@ -135,15 +207,8 @@ public interface Utils {
      * @param random the random generator
      * @param lambda the mean value
      */
-    static int nextPoison(Random random, final double lambda) {
-        int k = -1;
-        double p = 1;
-        final double l = Math.exp(-lambda);
-        do {
-            ++k;
-            p *= random.nextDouble();
-        } while (p > l);
-        return k;
+    static int nextPoison(SplittableRandom random, final double lambda) {
+        return nextPoison((DoubleSupplier) random::nextDouble, lambda);
     }
 
     /**
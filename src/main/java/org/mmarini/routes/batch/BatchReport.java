@@ -0,0 +1,181 @@
+/*
+ *
+ * Copyright (c) 2023 Marco Marini, marco.marini@mmarini.org
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ *
+ *    END OF TERMS AND CONDITIONS
+ */
+
+package org.mmarini.routes.batch;
+
+import org.mmarini.routes.model2.*;
+
+import java.io.PrintWriter;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * The summary of a batch simulation
+ */
+public class BatchReport {
+
+    /**
+     * Returns the report of a simulated status
+     *
+     * @param status      the final status
+     * @param simulated   the simulated time interval (s)
+     * @param elapsed     the elapsed wall time (s)
+     * @param transitTime the edge transit times
+     */
+    public static BatchReport createReport(Status status, double simulated, double elapsed, TransitTimes transitTime) {
+        List<MapEdge> edges = status.getEdges();
+        double[] transitTimes = edges.stream()
+                .mapToDouble(transitTime::getValue)
+                .toArray();
+        return new BatchReport(status.getNodes(), edges, transitTimes, status.getTrafficInfo(),
+                status.getVehicles().size(), simulated, elapsed);
+    }
+
+    private final List<MapNode> nodes;
+    private final List<MapEdge> edges;
+    private final double[] transitTimes;
+    private final List<TrafficInfo> trafficInfo;
+    private final int vehicleCount;
+    private final double simulated;
+    private final double elapsed;
+
+    /**
+     * Creates the report
+     *
+     * @param nodes        the nodes
+     * @param edges        the edges
+     * @param transitTimes the edge transit times (s)
+     * @param trafficInfo  the traffic information by site
+     * @param vehicleCount the number of vehicles
+     * @param simulated    the simulated time interval (s)
+     * @param elapsed      the elapsed wall time (s)
+     */
+    protected BatchReport(List<MapNode> nodes, List<MapEdge> edges, double[] transitTimes,
+                          List<TrafficInfo> trafficInfo, int vehicleCount, double simulated, double elapsed) {
+        this.nodes = requireNonNull(nodes);
+        this.edges = requireNonNull(edges);
+        this.transitTimes = requireNonNull(transitTimes);
+        this.trafficInfo = requireNonNull(trafficInfo);
+        this.vehicleCount = vehicleCount;
+        this.simulated = simulated;
+        this.elapsed = elapsed;
+    }
+
+    /**
+     * Returns the edges
+     */
+    public List<MapEdge> getEdges() {
+        return edges;
+    }
+
+    /**
+     * Returns the elapsed wall time (s)
+     */
+    public double getElapsed() {
+        return elapsed;
+    }
+
+    /**
+     * Returns the simulated time interval (s)
+     */
+    public double getSimulated() {
+        return simulated;
+    }
+
+    /**
+     * Returns the simulation throughput (simulated seconds per wall second)
+     */
+    public double getThroughput() {
+        return elapsed > 0 ? simulated / elapsed : Double.POSITIVE_INFINITY;
+    }
+
+    /**
+     * Returns the traffic information by site
+     */
+    public List<TrafficInfo> getTrafficInfo() {
+        return trafficInfo;
+    }
+
+    /**
+     * Returns the transit time of an edge (s)
+     *
+     * @param index the edge index
+     */
+    public double getTransitTime(int index) {
+        return transitTimes[index];
+    }
+
+    /**
+     * Returns the number of vehicles at the end of simulation
+     */
+    public int getVehicleCount() {
+        return vehicleCount;
+    }
+
+    /**
+     * Writes the report
+     *
+     * @param writer the writer
+     */
+    public void write(PrintWriter writer) {
+        // The node names as in the route documents
+        Map<MapNode, String> nameByNode = IntStream.range(0, nodes.size())
+                .boxed()
+                .collect(Collectors.toMap(nodes::get, i -> "Node_" + i));
+        writer.printf("Simulated time: %.1f s%n", simulated);
+        writer.printf("Elapsed time:   %.3f s%n", elapsed);
+        writer.printf("Throughput:     %.1f sim s/s%n", getThroughput());
+        writer.printf("Vehicles:       %d%n", vehicleCount);
+        writer.println();
+        writer.println("Site, Vehicles, Waiting, Delayed, Average delay (s)");
+        for (TrafficInfo info : trafficInfo) {
+            writer.printf("%s, %d, %d, %d, %.1f%n",
+                    nameByNode.get(info.getSite()),
+                    info.getVehicleCount(),
+                    info.getWaitingAtSite(),
+                    info.getDelayCount(),
+                    info.getAverageDelayTime());
+        }
+        writer.println();
+        writer.println("Begin, End, Length (m), Free transit time (s), Transit time (s)");
+        for (int i = 0; i < edges.size(); i++) {
+            MapEdge edge = edges.get(i);
+            writer.printf("%s, %s, %.1f, %.1f, %.1f%n",
+                    nameByNode.get(edge.getBegin()),
+                    nameByNode.get(edge.getEnd()),
+                    edge.getLength(),
+                    edge.getTransitTime(),
+                    transitTimes[i]);
+        }
+        writer.flush();
+    }
+}
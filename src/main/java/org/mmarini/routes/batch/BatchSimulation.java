@@ -0,0 +1,171 @@
+/*
+ *
+ * Copyright (c) 2023 Marco Marini, marco.marini@mmarini.org
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ *
+ *    END OF TERMS AND CONDITIONS
+ */
+
+package org.mmarini.routes.batch;
+
+import org.mmarini.Tuple2;
+import org.mmarini.routes.model2.*;
+
+import static java.util.Objects.requireNonNull;
+import static org.mmarini.routes.batch.BatchReport.createReport;
+
+/**
+ * The headless simulation of a traffic engine for a simulated time interval as fast as possible.
+ * <p>
+ * It advances the engine without building the intermediate status
+ * and reports the throughput, the traffic information and the edge transit times at the end.
+ * The routes are refreshed by the congested edge travel times on the simulation thread
+ * at a fixed simulated time period, so the runs with the same seed are reproducible.
+ * </p>
+ */
+public class BatchSimulation {
+    public static final double DEFAULT_STEP_INTERVAL = 0.25;
+    public static final double DEFAULT_ROUTE_INTERVAL = 10;
+
+    /**
+     * Returns the simulation
+     *
+     * @param engine       the initial traffic engine
+     * @param duration     the simulated time interval (s)
+     * @param stepInterval the maximum time interval of each engine step (s)
+     * @param streams      the random streams
+     */
+    public static BatchSimulation createSimulation(TrafficEngineImpl engine, double duration, double stepInterval,
+                                                   RandomStreams streams) {
+        return createSimulation(engine, duration, stepInterval, DEFAULT_ROUTE_INTERVAL, streams);
+    }
+
+    /**
+     * Returns the simulation
+     *
+     * @param engine        the initial traffic engine
+     * @param duration      the simulated time interval (s)
+     * @param stepInterval  the maximum time interval of each engine step (s)
+     * @param routeInterval the simulated time interval between route refreshes (s) or infinity if never refreshed
+     * @param streams       the random streams
+     */
+    public static BatchSimulation createSimulation(TrafficEngineImpl engine, double duration, double stepInterval,
+                                                   double routeInterval, RandomStreams streams) {
+        return new BatchSimulation(engine, duration, stepInterval, routeInterval, streams);
+    }
+
+    private final TrafficEngineImpl engine;
+    private final double duration;
+    private final double stepInterval;
+    private final double routeInterval;
+    private final RandomStreams streams;
+
+    /**
+     * Creates the simulation
+     *
+     * @param engine        the initial traffic engine
+     * @param duration      the simulated time interval (s)
+     * @param stepInterval  the maximum time interval of each engine step (s)
+     * @param routeInterval the simulated time interval between route refreshes (s) or infinity if never refreshed
+     * @param streams       the random streams
+     */
+    protected BatchSimulation(TrafficEngineImpl engine, double duration, double stepInterval, double routeInterval,
+                              RandomStreams streams) {
+        this.engine = requireNonNull(engine);
+        this.streams = requireNonNull(streams);
+        assert duration >= 0;
+        assert stepInterval > 0;
+        assert routeInterval > 0;
+        this.duration = duration;
+        this.stepInterval = stepInterval;
+        this.routeInterval = routeInterval;
+    }
+
+    /**
+     * Returns the simulated time interval (s)
+     */
+    public double getDuration() {
+        return duration;
+    }
+
+    /**
+     * Returns the initial traffic engine
+     */
+    public TrafficEngineImpl getEngine() {
+        return engine;
+    }
+
+    /**
+     * Returns the simulated time interval between route refreshes (s)
+     */
+    public double getRouteInterval() {
+        return routeInterval;
+    }
+
+    /**
+     * Returns the maximum time interval of each engine step (s)
+     */
+    public double getStepInterval() {
+        return stepInterval;
+    }
+
+    /**
+     * Returns the random streams
+     */
+    public RandomStreams getStreams() {
+        return streams;
+    }
+
+    /**
+     * Returns the report of the simulation run
+     */
+    public BatchReport run() {
+        long start = System.nanoTime();
+        TrafficEngine current = engine;
+        DynamicRoutes routes = null;
+        RouteTable routeTable = null;
+        double simulated = 0;
+        double nextRoutes = routeInterval;
+        while (simulated < duration) {
+            double dt = Math.min(stepInterval, duration - simulated);
+            Tuple2<TrafficEngine, Double> next = current.next(streams, dt);
+            current = next._1;
+            simulated += next._2;
+            if (simulated >= nextRoutes && simulated < duration) {
+                // Repairs the routes for the changed edge travel times
+                CompiledTopology compiled = current.getTopology().getCompiled();
+                double[] edgeTravelTimes = current.getEdgeTravelTimes();
+                if (routes == null || routes.getTopology() != compiled) {
+                    routes = DynamicRoutes.createRoutes(compiled, edgeTravelTimes);
+                    routeTable = routes.getRouteTable();
+                } else {
+                    routeTable = routeTable.setChanges(routes.update(edgeTravelTimes));
+                }
+                current = current.updateRoutes(routeTable);
+                nextRoutes += routeInterval;
+            }
+        }
+        double elapsed = (System.nanoTime() - start) * 1e-9;
+        return createReport(current.buildStatus(), simulated, elapsed, current.getTransitTimeByEdge());
+    }
+}
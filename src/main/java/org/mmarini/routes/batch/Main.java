@@ -0,0 +1,188 @@
+/*
+ *
+ * Copyright (c) 2023 Marco Marini, marco.marini@mmarini.org
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ *
+ *    END OF TERMS AND CONDITIONS
+ */
+
+package org.mmarini.routes.batch;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import org.mmarini.routes.model2.RandomStreams;
+import org.mmarini.routes.model2.SchedulingMode;
+import org.mmarini.routes.model2.StatusImpl;
+import org.mmarini.routes.model2.TrafficEngineImpl;
+import org.mmarini.routes.model2.yaml.Parsers;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.mmarini.routes.batch.BatchSimulation.DEFAULT_ROUTE_INTERVAL;
+import static org.mmarini.routes.batch.BatchSimulation.DEFAULT_STEP_INTERVAL;
+import static org.mmarini.routes.batch.BatchSimulation.createSimulation;
+import static org.mmarini.routes.model2.RandomStreams.createStreams;
+import static org.mmarini.routes.model2.TrafficEngineImpl.createEngine;
+import static org.mmarini.yaml.Utils.fromFile;
+
+/**
+ * The headless batch simulation entry point.
+ * <p>
+ * Usage: <code>Main [-d duration] [-t step] [-r routes] [-s seed] [-e] [-p threads] file.yml</code>
+ * <ul>
+ *     <li><code>-d</code> the simulated time interval in seconds (default 3600)</li>
+ *     <li><code>-t</code> the maximum time interval of engine steps in seconds (default 0.25)</li>
+ *     <li><code>-r</code> the simulated time interval between route refreshes in seconds (default 10)</li>
+ *     <li><code>-s</code> the root seed of random streams (default 1234)</li>
+ *     <li><code>-e</code> the event driven scheduling of edge exits</li>
+ *     <li><code>-p</code> the number of threads of parallel vehicle movement</li>
+ * </ul>
+ * </p>
+ */
+public class Main {
+    public static final double DEFAULT_DURATION = 3600;
+    public static final long DEFAULT_SEED = 1234L;
+    private static final Logger logger = LoggerFactory.getLogger(Main.class);
+    private static final String USAGE = "Usage: Main [-d duration] [-t step] [-r routes] [-s seed] [-e] [-p threads] file.yml";
+
+    /**
+     * Returns the simulation defined by the command line arguments
+     *
+     * @param args the arguments
+     * @throws IOException in case of error
+     */
+    static BatchSimulation createBatch(String... args) throws IOException {
+        double duration = DEFAULT_DURATION;
+        double step = DEFAULT_STEP_INTERVAL;
+        double routeInterval = DEFAULT_ROUTE_INTERVAL;
+        long seed = DEFAULT_SEED;
+        SchedulingMode mode = SchedulingMode.FIXED_STEP;
+        int threads = 0;
+        String file = null;
+        for (int i = 0; i < args.length; i++) {
+            String arg = args[i];
+            switch (arg) {
+                case "-d":
+                    duration = Double.parseDouble(argValue(args, ++i));
+                    break;
+                case "-t":
+                    step = Double.parseDouble(argValue(args, ++i));
+                    break;
+                case "-r":
+                    routeInterval = Double.parseDouble(argValue(args, ++i));
+                    break;
+                case "-s":
+                    seed = Long.parseLong(argValue(args, ++i));
+                    break;
+                case "-e":
+                    mode = SchedulingMode.EVENT_DRIVEN;
+                    break;
+                case "-p":
+                    threads = Integer.parseInt(argValue(args, ++i));
+                    break;
+                default:
+                    if (arg.startsWith("-") || file != null) {
+                        throw new IllegalArgumentException("Unexpected argument " + arg);
+                    }
+                    file = arg;
+            }
+        }
+        if (file == null) {
+            throw new IllegalArgumentException("Missing route file");
+        }
+        if (!(duration >= 0)) {
+            throw new IllegalArgumentException("Duration must be non negative");
+        }
+        if (!(step > 0)) {
+            throw new IllegalArgumentException("Step interval must be positive");
+        }
+        if (!(routeInterval > 0)) {
+            throw new IllegalArgumentException("Route interval must be positive");
+        }
+        TrafficEngineImpl engine = loadEngine(fromFile(file))
+                .setSchedulingMode(mode)
+                .setMovementPool(threads > 0 ? new ForkJoinPool(threads) : null);
+        return createSimulation(engine, duration, step, routeInterval, createStreams(seed));
+    }
+
+    /**
+     * Returns the value of an option argument
+     *
+     * @param args  the arguments
+     * @param index the index of value
+     */
+    static String argValue(String[] args, int index) {
+        if (index >= args.length) {
+            throw new IllegalArgumentException("Missing value for " + args[index - 1]);
+        }
+        return args[index];
+    }
+
+    /**
+     * Returns the traffic engine of a route document
+     *
+     * @param doc the route document
+     */
+    static TrafficEngineImpl loadEngine(JsonNode doc) {
+        StatusImpl status = Parsers.parseStatus(doc);
+        return createEngine(status.getMaxVehicle(),
+                status.getTopology(),
+                status.getTime(),
+                List.of(),
+                status.getSpeedLimit(),
+                status.getFrequency(),
+                status.getWeightMatrix().getValues());
+    }
+
+    /**
+     * Application entry point
+     *
+     * @param args the arguments
+     */
+    public static void main(final String[] args) {
+        BatchSimulation simulation;
+        try {
+            simulation = createBatch(args);
+        } catch (IllegalArgumentException ex) {
+            System.err.println(ex.getMessage());
+            System.err.println(USAGE);
+            System.exit(1);
+            return;
+        } catch (Exception ex) {
+            logger.error(ex.getMessage(), ex);
+            System.exit(1);
+            return;
+        }
+        logger.info("Simulating {} s ...", simulation.getDuration());
+        BatchReport report = simulation.run();
+        report.write(new PrintWriter(System.out));
+        ForkJoinPool pool = simulation.getEngine().getMovementPool();
+        if (pool != null) {
+            pool.shutdown();
+        }
+    }
+}
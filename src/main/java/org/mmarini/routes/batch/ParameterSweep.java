@@ -0,0 +1,265 @@
+/*
+ *
+ * Copyright (c) 2023 Marco Marini, marco.marini@mmarini.org
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ *
+ *    END OF TERMS AND CONDITIONS
+ */
+
+package org.mmarini.routes.batch;
+
+import org.mmarini.routes.model2.RandomStreams;
+import org.mmarini.routes.model2.Topology;
+import org.mmarini.routes.model2.TrafficEngineImpl;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+import static java.util.Objects.requireNonNull;
+import static org.mmarini.routes.batch.BatchSimulation.createSimulation;
+import static org.mmarini.routes.model2.TrafficEngineImpl.createEngine;
+
+/**
+ * The sweep of simulations over a grid of frequencies, speed limits and weight matrices.
+ * <p>
+ * Each point of the grid runs a number of replicas as independent traffic engines on a thread pool.
+ * The replicas share the immutable topology of the base engine
+ * and the replica with the same index uses the same random streams in every point of the grid.
+ * Each replica runs in its own single thread fork join pool, so the parallel streams of the replica
+ * (vehicle generation and route computation) run sequentially in the replica task
+ * instead of contending the common pool with the other replicas.
+ * </p>
+ */
+public class ParameterSweep {
+
+    /**
+     * Returns the sweep of a single point with the base engine parameters
+     *
+     * @param base         the base engine
+     * @param duration     the simulated time interval of each run (s)
+     * @param stepInterval the maximum time interval of each engine step (s)
+     * @param streams      the root random streams
+     */
+    public static ParameterSweep createSweep(TrafficEngineImpl base, double duration, double stepInterval,
+                                             RandomStreams streams) {
+        return new ParameterSweep(base, duration, stepInterval, streams,
+                new double[]{base.getFrequency()},
+                new double[]{base.getSpeedLimit()},
+                Collections.singletonList(base.getWeightMatrix().getValues()),
+                1, false);
+    }
+
+    private final TrafficEngineImpl base;
+    private final double duration;
+    private final double stepInterval;
+    private final RandomStreams streams;
+    private final double[] frequencies;
+    private final double[] speedLimits;
+    private final List<double[][]> weights;
+    private final int replicas;
+    private final boolean optimizeSpeed;
+
+    /**
+     * Creates the sweep
+     *
+     * @param base          the base engine
+     * @param duration      the simulated time interval of each run (s)
+     * @param stepInterval  the maximum time interval of each engine step (s)
+     * @param streams       the root random streams
+     * @param frequencies   the frequencies
+     * @param speedLimits   the speed limits (m/s)
+     * @param weights       the weight matrices
+     * @param replicas      the number of replicas
+     * @param optimizeSpeed true if the edge speed limits are optimized for the speed limit
+     */
+    protected ParameterSweep(TrafficEngineImpl base, double duration, double stepInterval, RandomStreams streams,
+                             double[] frequencies, double[] speedLimits, List<double[][]> weights,
+                             int replicas, boolean optimizeSpeed) {
+        this.base = requireNonNull(base);
+        this.streams = requireNonNull(streams);
+        this.frequencies = requireNonNull(frequencies);
+        this.speedLimits = requireNonNull(speedLimits);
+        this.weights = requireNonNull(weights);
+        assert replicas > 0;
+        this.duration = duration;
+        this.stepInterval = stepInterval;
+        this.replicas = replicas;
+        this.optimizeSpeed = optimizeSpeed;
+    }
+
+    /**
+     * Returns the base engine of a speed limit
+     * with the edge speed limits optimized if required
+     *
+     * @param speedLimit the speed limit
+     */
+    private TrafficEngineImpl createBase(double speedLimit) {
+        return optimizeSpeed
+                ? base.optimizeSpeed(speedLimit)
+                : base;
+    }
+
+    /**
+     * Returns the independent replica engine of a point of the grid.
+     * The replica has its own vehicles and transit times and shares the base topology
+     *
+     * @param speedBase  the base engine of speed limit
+     * @param frequency  the frequency
+     * @param speedLimit the speed limit
+     * @param weights    the weight matrix
+     */
+    private TrafficEngineImpl createReplica(TrafficEngineImpl speedBase, double frequency, double speedLimit,
+                                            double[][] weights) {
+        Topology topology = speedBase.getTopology();
+        return createEngine(speedBase.getMaxVehicles(), topology, 0, List.of(),
+                speedBase.getSpeedLimit(), speedBase.getFrequency(), speedBase.getWeightMatrix().getValues())
+                .setSchedulingMode(speedBase.getSchedulingMode())
+                .setFrequency(frequency)
+                .setSpeedLimit(speedLimit)
+                .setWeights(weights);
+    }
+
+    /**
+     * Returns the number of runs
+     */
+    public int getRunCount() {
+        return frequencies.length * speedLimits.length * weights.size() * replicas;
+    }
+
+    /**
+     * Returns the results of all the runs in grid order
+     * (frequency, speed limit, weights, replica) running them on an executor
+     *
+     * @param executor the executor
+     * @throws InterruptedException if interrupted
+     * @throws ExecutionException   if a run fails
+     */
+    public List<SweepResult> run(ExecutorService executor) throws InterruptedException, ExecutionException {
+        // The optimized topologies are computed once for each speed limit
+        Map<Double, TrafficEngineImpl> baseBySpeed = new HashMap<>();
+        for (double speedLimit : speedLimits) {
+            baseBySpeed.computeIfAbsent(speedLimit, this::createBase);
+        }
+        List<Callable<SweepResult>> tasks = new ArrayList<>(getRunCount());
+        for (double frequency : frequencies) {
+            for (double speedLimit : speedLimits) {
+                TrafficEngineImpl speedBase = baseBySpeed.get(speedLimit);
+                for (int w = 0; w < weights.size(); w++) {
+                    double[][] weightMatrix = weights.get(w);
+                    int weightIndex = w;
+                    for (int r = 0; r < replicas; r++) {
+                        int replica = r;
+                        tasks.add(() -> {
+                            BatchReport report = runReplica(() -> {
+                                TrafficEngineImpl engine = createReplica(speedBase, frequency, speedLimit,
+                                        weightMatrix);
+                                return createSimulation(engine, duration, stepInterval,
+                                        streams.replica(replica)).run();
+                            });
+                            return new SweepResult(frequency, speedLimit, weightIndex, replica, report);
+                        });
+                    }
+                }
+            }
+        }
+        List<SweepResult> results = new ArrayList<>(tasks.size());
+        for (Future<SweepResult> future : executor.invokeAll(tasks)) {
+            results.add(future.get());
+        }
+        return results;
+    }
+
+    /**
+     * Returns the report of a replica run in its own single thread fork join pool
+     *
+     * @param replica the replica run
+     * @throws InterruptedException if interrupted
+     * @throws ExecutionException   if the run fails
+     */
+    private static BatchReport runReplica(Callable<BatchReport> replica) throws InterruptedException, ExecutionException {
+        ForkJoinPool pool = new ForkJoinPool(1);
+        try {
+            return pool.submit(replica).get();
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * Returns the sweep with the frequencies
+     *
+     * @param frequencies the frequencies
+     */
+    public ParameterSweep setFrequencies(double... frequencies) {
+        return new ParameterSweep(base, duration, stepInterval, streams, frequencies, speedLimits, weights,
+                replicas, optimizeSpeed);
+    }
+
+    /**
+     * Returns the sweep with edge speed limits optimized for each speed limit
+     *
+     * @param optimizeSpeed true if the edge speed limits are optimized
+     */
+    public ParameterSweep setOptimizeSpeed(boolean optimizeSpeed) {
+        return new ParameterSweep(base, duration, stepInterval, streams, frequencies, speedLimits, weights,
+                replicas, optimizeSpeed);
+    }
+
+    /**
+     * Returns the sweep with the number of replicas
+     *
+     * @param replicas the number of replicas
+     */
+    public ParameterSweep setReplicas(int replicas) {
+        return new ParameterSweep(base, duration, stepInterval, streams, frequencies, speedLimits, weights,
+                replicas, optimizeSpeed);
+    }
+
+    /**
+     * Returns the sweep with the speed limits
+     *
+     * @param speedLimits the speed limits (m/s)
+     */
+    public ParameterSweep setSpeedLimits(double... speedLimits) {
+        return new ParameterSweep(base, duration, stepInterval, streams, frequencies, speedLimits, weights,
+                replicas, optimizeSpeed);
+    }
+
+    /**
+     * Returns the sweep with the weight matrices
+     *
+     * @param weights the weight matrices
+     */
+    public ParameterSweep setWeights(List<double[][]> weights) {
+        return new ParameterSweep(base, duration, stepInterval, streams, frequencies, speedLimits, weights,
+                replicas, optimizeSpeed);
+    }
+}
@@ -0,0 +1,206 @@
+/*
+ *
+ * Copyright (c) 2023 Marco Marini, marco.marini@mmarini.org
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ *
+ *    END OF TERMS AND CONDITIONS
+ */
+
+package org.mmarini.routes.batch;
+
+import org.mmarini.routes.model2.TrafficEngineImpl;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.mmarini.routes.batch.Main.argValue;
+import static org.mmarini.routes.batch.Main.createBatch;
+import static org.mmarini.routes.batch.ParameterSweep.createSweep;
+
+/**
+ * The parameter sweep entry point.
+ * <p>
+ * Usage: <code>SweepMain [-d duration] [-t step] [-s seed] [-e] [-f f1,f2,...] [-v v1,v2,...] [-o]
+ * [-w minWeight,count] [-n replicas] [-j threads] file.yml</code>
+ * <ul>
+ *     <li><code>-d</code> the simulated time interval of each run in seconds (default 3600)</li>
+ *     <li><code>-t</code> the maximum time interval of engine steps in seconds (default 0.25)</li>
+ *     <li><code>-s</code> the root seed of random streams (default 1234)</li>
+ *     <li><code>-e</code> the event driven scheduling of edge exits</li>
+ *     <li><code>-f</code> the frequencies (default the map frequency)</li>
+ *     <li><code>-v</code> the speed limits in m/s (default the map speed limit)</li>
+ *     <li><code>-o</code> optimizes the edge speed limits for each speed limit</li>
+ *     <li><code>-w</code> adds count random weight matrices with minimum weight to the map weights</li>
+ *     <li><code>-n</code> the number of replicas (default 1)</li>
+ *     <li><code>-j</code> the number of threads (default the available processors)</li>
+ * </ul>
+ * </p>
+ */
+public class SweepMain {
+    private static final Logger logger = LoggerFactory.getLogger(SweepMain.class);
+    private static final String USAGE = "Usage: SweepMain [-d duration] [-t step] [-s seed] [-e] [-f f1,f2,...] "
+            + "[-v v1,v2,...] [-o] [-w minWeight,count] [-n replicas] [-j threads] file.yml";
+
+    /**
+     * Returns the sweep defined by the command line arguments
+     *
+     * @param args the arguments
+     * @throws IOException in case of error
+     */
+    static ParameterSweep createParameterSweep(String... args) throws IOException {
+        List<String> batchArgs = new ArrayList<>();
+        double[] frequencies = null;
+        double[] speedLimits = null;
+        double minWeight = 0;
+        int weightCount = 0;
+        int replicas = 1;
+        boolean optimize = false;
+        for (int i = 0; i < args.length; i++) {
+            String arg = args[i];
+            switch (arg) {
+                case "-f":
+                    frequencies = parseValues(argValue(args, ++i));
+                    break;
+                case "-v":
+                    speedLimits = parseValues(argValue(args, ++i));
+                    break;
+                case "-o":
+                    optimize = true;
+                    break;
+                case "-w":
+                    double[] values = parseValues(argValue(args, ++i));
+                    if (values.length != 2) {
+                        throw new IllegalArgumentException("Weights must be minWeight,count");
+                    }
+                    minWeight = values[0];
+                    weightCount = (int) values[1];
+                    break;
+                case "-n":
+                    replicas = Integer.parseInt(argValue(args, ++i));
+                    if (replicas <= 0) {
+                        throw new IllegalArgumentException("Replicas must be positive");
+                    }
+                    break;
+                case "-j":
+                    // Parsed by main
+                    argValue(args, ++i);
+                    break;
+                default:
+                    batchArgs.add(arg);
+            }
+        }
+        BatchSimulation batch = createBatch(batchArgs.toArray(String[]::new));
+        TrafficEngineImpl base = batch.getEngine();
+        ParameterSweep sweep = createSweep(base, batch.getDuration(), batch.getStepInterval(), batch.getStreams())
+                .setReplicas(replicas)
+                .setOptimizeSpeed(optimize);
+        if (frequencies != null) {
+            sweep = sweep.setFrequencies(frequencies);
+        }
+        if (speedLimits != null) {
+            sweep = sweep.setSpeedLimits(speedLimits);
+        }
+        if (weightCount > 0) {
+            List<double[][]> weights = new ArrayList<>();
+            weights.add(base.getWeightMatrix().getValues());
+            Random random = new Random(batch.getStreams().getSeed());
+            for (int i = 0; i < weightCount; i++) {
+                weights.add(base.randomizeWeights(random, minWeight).getWeightMatrix().getValues());
+            }
+            sweep = sweep.setWeights(weights);
+        }
+        return sweep;
+    }
+
+    /**
+     * Returns the number of threads of the arguments
+     *
+     * @param args the arguments
+     */
+    static int parseThreads(String... args) {
+        for (int i = 0; i < args.length - 1; i++) {
+            if ("-j".equals(args[i])) {
+                int threads = Integer.parseInt(args[i + 1]);
+                if (threads <= 0) {
+                    throw new IllegalArgumentException("Threads must be positive");
+                }
+                return threads;
+            }
+        }
+        return Runtime.getRuntime().availableProcessors();
+    }
+
+    /**
+     * Returns the values of a comma separated list
+     *
+     * @param text the text
+     */
+    static double[] parseValues(String text) {
+        return Arrays.stream(text.split(","))
+                .map(String::trim)
+                .mapToDouble(Double::parseDouble)
+                .toArray();
+    }
+
+    /**
+     * Application entry point
+     *
+     * @param args the arguments
+     */
+    public static void main(final String[] args) {
+        ParameterSweep sweep;
+        int threads;
+        try {
+            sweep = createParameterSweep(args);
+            threads = parseThreads(args);
+        } catch (IllegalArgumentException ex) {
+            System.err.println(ex.getMessage());
+            System.err.println(USAGE);
+            System.exit(1);
+            return;
+        } catch (Exception ex) {
+            logger.error(ex.getMessage(), ex);
+            System.exit(1);
+            return;
+        }
+        logger.info("Running {} simulations on {} threads ...", sweep.getRunCount(), threads);
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<SweepResult> results = sweep.run(executor);
+            SweepResult.writeTable(new PrintWriter(System.out), results);
+        } catch (Exception ex) {
+            logger.error(ex.getMessage(), ex);
+            System.exit(1);
+        } finally {
+            executor.shutdown();
+        }
+    }
+}
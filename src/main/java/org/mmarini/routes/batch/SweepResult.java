@@ -0,0 +1,165 @@
+/*
+ *
+ * Copyright (c) 2023 Marco Marini, marco.marini@mmarini.org
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ *
+ *    END OF TERMS AND CONDITIONS
+ */
+
+package org.mmarini.routes.batch;
+
+import org.mmarini.routes.model2.TrafficInfo;
+
+import java.io.PrintWriter;
+import java.util.List;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * The metrics of a run of a parameter sweep
+ */
+public class SweepResult {
+    public static final String HEADER = "Frequency, Speed limit (m/s), Weights, Replica, Simulated (s), Elapsed (s), "
+            + "Vehicles, Waiting, Delayed, Average delay (s), Average transit time (s)";
+
+    /**
+     * Writes the table of results
+     *
+     * @param writer  the writer
+     * @param results the results
+     */
+    public static void writeTable(PrintWriter writer, List<SweepResult> results) {
+        writer.println(HEADER);
+        for (SweepResult result : results) {
+            result.write(writer);
+        }
+        writer.flush();
+    }
+
+    private final double frequency;
+    private final double speedLimit;
+    private final int weights;
+    private final int replica;
+    private final BatchReport report;
+
+    /**
+     * Creates the result
+     *
+     * @param frequency  the frequency
+     * @param speedLimit the speed limit (m/s)
+     * @param weights    the index of weight matrix
+     * @param replica    the replica index
+     * @param report     the report of run
+     */
+    public SweepResult(double frequency, double speedLimit, int weights, int replica, BatchReport report) {
+        this.frequency = frequency;
+        this.speedLimit = speedLimit;
+        this.weights = weights;
+        this.replica = replica;
+        this.report = requireNonNull(report);
+    }
+
+    /**
+     * Returns the average delay time of the delayed vehicles (s)
+     */
+    public double getAverageDelay() {
+        int count = getDelayCount();
+        return count > 0
+                ? report.getTrafficInfo().stream().mapToDouble(TrafficInfo::getTotalDelayTime).sum() / count
+                : 0;
+    }
+
+    /**
+     * Returns the average edge transit time (s)
+     */
+    public double getAverageTransitTime() {
+        int n = report.getEdges().size();
+        double total = 0;
+        for (int i = 0; i < n; i++) {
+            total += report.getTransitTime(i);
+        }
+        return n > 0 ? total / n : 0;
+    }
+
+    /**
+     * Returns the number of delayed vehicles
+     */
+    public int getDelayCount() {
+        return report.getTrafficInfo().stream().mapToInt(TrafficInfo::getDelayCount).sum();
+    }
+
+    /**
+     * Returns the frequency
+     */
+    public double getFrequency() {
+        return frequency;
+    }
+
+    /**
+     * Returns the replica index
+     */
+    public int getReplica() {
+        return replica;
+    }
+
+    /**
+     * Returns the report of run
+     */
+    public BatchReport getReport() {
+        return report;
+    }
+
+    /**
+     * Returns the speed limit (m/s)
+     */
+    public double getSpeedLimit() {
+        return speedLimit;
+    }
+
+    /**
+     * Returns the number of vehicles waiting at sites
+     */
+    public int getWaitingCount() {
+        return report.getTrafficInfo().stream().mapToInt(TrafficInfo::getWaitingAtSite).sum();
+    }
+
+    /**
+     * Returns the index of weight matrix
+     */
+    public int getWeights() {
+        return weights;
+    }
+
+    /**
+     * Writes the result row
+     *
+     * @param writer the writer
+     */
+    public void write(PrintWriter writer) {
+        writer.printf("%.3f, %.1f, %d, %d, %.1f, %.3f, %d, %d, %d, %.1f, %.1f%n",
+                frequency, speedLimit, weights, replica,
+                report.getSimulated(), report.getElapsed(),
+                report.getVehicleCount(), getWaitingCount(), getDelayCount(),
+                getAverageDelay(), getAverageTransitTime());
+    }
+}
@@ -0,0 +1,684 @@
+/*
+ *
+ * Copyright (c) 2023 Marco Marini, marco.marini@mmarini.org
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ *
+ *    END OF TERMS AND CONDITIONS
+ */
+
+package org.mmarini.routes.model2;
+
+import org.mmarini.LazyValue;
+
+import java.awt.geom.Point2D;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * The immutable compiled form of a topology.
+ * <p>
+ * Nodes and edges are identified by dense integer ids, the sites have the first node ids.
+ * The edge properties (ending nodes, length, direction, speed limit, priority, safety distance
+ * and free transit time) are stored in primitive arrays indexed by edge id
+ * and the outgoing and incoming edge ids are stored in an array by node.
+ * The incoming edges of each node are sorted by descending priority.
+ * The site to site free transit times by the shortest paths of free edge transit times
+ * are computed once at first use.
+ * </p>
+ * <p>
+ * The topologies derived by {@link #addEdge(MapEdge)} and {@link #removeEdge(MapEdge)} share the arrays
+ * of this topology and keep the ids of the edges: the added edge gets the next edge id
+ * and the removed edge keeps its id marked as removed (see {@link #isEdgeAlive(int)}),
+ * so a derivation changes only the edge arrays of the two ending nodes.
+ * Each derived topology is a version of the shared arrays, the changed edge arrays of nodes are linked
+ * to the ones of the previous versions so the topologies of the previous versions stay unchanged.
+ * The derivations of a previous version, the derivations adding an edge removed before
+ * and the derivations removing more than half of the edges compile a new topology.
+ * </p>
+ */
+public class CompiledTopology {
+    private static final int ALIVE = Integer.MAX_VALUE;
+    private static final int[] NO_EDGES = new int[0];
+    private static final int DEFAULT_CAPACITY = 16;
+
+    /**
+     * Returns the compiled topology
+     *
+     * @param nodes     the nodes, sites first
+     * @param edges     the edges
+     * @param siteCount the number of sites
+     */
+    public static CompiledTopology compile(List<MapNode> nodes, List<MapEdge> edges, int siteCount) {
+        requireNonNull(nodes);
+        requireNonNull(edges);
+        Storage storage = new Storage(Math.max(DEFAULT_CAPACITY, nodes.size()),
+                Math.max(DEFAULT_CAPACITY, edges.size()));
+        for (MapNode node : nodes) {
+            storage.addNode(node);
+        }
+        for (MapEdge edge : edges) {
+            storage.addEdge(edge);
+        }
+        int n = storage.nodeCount;
+        int m = storage.edgeCount;
+        int[] outCounts = new int[n];
+        int[] inCounts = new int[n];
+        for (int i = 0; i < m; i++) {
+            outCounts[storage.edgeBegin[i]]++;
+            inCounts[storage.edgeEnd[i]]++;
+        }
+        int[][] outEdges = new int[n][];
+        int[][] inEdges = new int[n][];
+        for (int node = 0; node < n; node++) {
+            outEdges[node] = outCounts[node] > 0 ? new int[outCounts[node]] : NO_EDGES;
+            inEdges[node] = inCounts[node] > 0 ? new int[inCounts[node]] : NO_EDGES;
+        }
+        Arrays.fill(outCounts, 0);
+        Arrays.fill(inCounts, 0);
+        for (int i = 0; i < m; i++) {
+            int begin = storage.edgeBegin[i];
+            int end = storage.edgeEnd[i];
+            outEdges[begin][outCounts[begin]++] = i;
+            inEdges[end][inCounts[end]++] = i;
+        }
+        int[] priority = storage.edgePriority;
+        for (int node = 0; node < n; node++) {
+            // Sorts the incoming edges by descending priority preserving the edge order
+            int[] in = inEdges[node];
+            for (int i = 1; i < in.length; i++) {
+                int edge = in[i];
+                int j = i - 1;
+                while (j >= 0 && priority[in[j]] < priority[edge]) {
+                    in[j + 1] = in[j];
+                    j--;
+                }
+                in[j + 1] = edge;
+            }
+            storage.outEdges[node] = new NodeEdges(0, outEdges[node], null);
+            storage.inEdges[node] = new NodeEdges(0, inEdges[node], null);
+        }
+        return new CompiledTopology(storage, siteCount, 0);
+    }
+
+    /**
+     * Returns the edges of a node at a version or no edges if the node has no edges at the version
+     *
+     * @param heads   the last edges by node
+     * @param node    the node id
+     * @param version the version
+     */
+    private static int[] edgesOf(NodeEdges[] heads, int node, int version) {
+        NodeEdges edges = node < heads.length ? heads[node] : null;
+        while (edges != null && edges.version > version) {
+            edges = edges.previous;
+        }
+        return edges != null ? edges.edges : NO_EDGES;
+    }
+
+    private final Storage storage;
+    private final int version;
+    private final int nodeCount;
+    private final int edgeCount;
+    private final int siteCount;
+    private final int removedCount;
+    private final List<MapNode> nodes;
+    private final List<MapEdge> edges;
+    private final int[] edgeBegin;
+    private final int[] edgeEnd;
+    private final int[] edgePriority;
+    private final int[] edgeRemoval;
+    private final double[] edgeLength;
+    private final double[] edgeDirectionX;
+    private final double[] edgeDirectionY;
+    private final double[] edgeSpeedLimit;
+    private final double[] edgeSafetyDistance;
+    private final double[] edgeTransitTime;
+    private final NodeEdges[] outEdges;
+    private final NodeEdges[] inEdges;
+    private final int[] removedEdges;
+    private final LazyValue<double[][]> freeTransitTimes;
+
+    /**
+     * Creates the compiled topology of the last version of storage
+     *
+     * @param storage      the storage
+     * @param siteCount    the number of sites
+     * @param removedCount the number of removed edges
+     */
+    private CompiledTopology(Storage storage, int siteCount, int removedCount) {
+        this.storage = storage;
+        this.version = storage.version;
+        this.nodeCount = storage.nodeCount;
+        this.edgeCount = storage.edgeCount;
+        this.siteCount = siteCount;
+        this.removedCount = removedCount;
+        this.nodes = Collections.unmodifiableList(Arrays.asList(storage.nodes).subList(0, nodeCount));
+        this.edges = Collections.unmodifiableList(Arrays.asList(storage.edges).subList(0, edgeCount));
+        this.edgeBegin = storage.edgeBegin;
+        this.edgeEnd = storage.edgeEnd;
+        this.edgePriority = storage.edgePriority;
+        this.edgeRemoval = storage.edgeRemoval;
+        this.edgeLength = storage.edgeLength;
+        this.edgeDirectionX = storage.edgeDirectionX;
+        this.edgeDirectionY = storage.edgeDirectionY;
+        this.edgeSpeedLimit = storage.edgeSpeedLimit;
+        this.edgeSafetyDistance = storage.edgeSafetyDistance;
+        this.edgeTransitTime = storage.edgeTransitTime;
+        this.outEdges = storage.outEdges;
+        this.inEdges = storage.inEdges;
+        this.removedEdges = storage.removedEdges;
+        this.freeTransitTimes = new LazyValue<>(() ->
+                RouteTable.createTable(this, Arrays.copyOf(edgeTransitTime, edgeCount)).getDistanceMatrix());
+    }
+
+    /**
+     * Returns the compiled topology with a new edge.
+     * The ending nodes missing in this topology are added as cross nodes.
+     * The new edge gets the next edge id and the incoming edges of the end node keep the descending priority
+     * with the new edge after the edges with the same priority
+     *
+     * @param edge the edge
+     */
+    public CompiledTopology addEdge(MapEdge edge) {
+        requireNonNull(edge);
+        if (edgeId(edge) >= 0) {
+            return this;
+        }
+        synchronized (storage) {
+            if (storage.version == version && !storage.indexByEdge.containsKey(edge)) {
+                int newVersion = version + 1;
+                int begin = storage.addNode(edge.getBegin());
+                int end = storage.addNode(edge.getEnd());
+                int id = storage.addEdge(edge);
+                int[] out = edgesOf(storage.outEdges, begin, version);
+                int[] newOut = Arrays.copyOf(out, out.length + 1);
+                newOut[out.length] = id;
+                int[] in = edgesOf(storage.inEdges, end, version);
+                int[] newIn = new int[in.length + 1];
+                int i = 0;
+                while (i < in.length && edgePriority(in[i]) >= edge.getPriority()) {
+                    newIn[i] = in[i];
+                    i++;
+                }
+                newIn[i] = id;
+                System.arraycopy(in, i, newIn, i + 1, in.length - i);
+                storage.commit(newVersion, begin, newOut, end, newIn, -1);
+                return new CompiledTopology(storage, siteCount, removedCount);
+            }
+        }
+        return recompile(null).addEdge(edge);
+    }
+
+    /**
+     * Returns the id of an edge or -1 if not in topology
+     *
+     * @param edge the edge
+     */
+    public int edgeId(MapEdge edge) {
+        Integer id = edge != null ? storage.indexByEdge.get(edge) : null;
+        return id != null && id < edgeCount && edgeRemoval[id] > version ? id : -1;
+    }
+
+    /**
+     * Returns the priority of an edge of the last version of storage
+     *
+     * @param edge the edge id
+     */
+    private int edgePriority(int edge) {
+        return storage.edgePriority[edge];
+    }
+
+    /**
+     * Returns the number of edge ids including the removed edges
+     */
+    public int getEdgeCount() {
+        return edgeCount;
+    }
+
+    /**
+     * Returns the beginning node id of an edge
+     *
+     * @param edge the edge id
+     */
+    public int getEdgeBegin(int edge) {
+        return edgeBegin[edge];
+    }
+
+    /**
+     * Returns the x component of unit direction of an edge
+     *
+     * @param edge the edge id
+     */
+    public double getEdgeDirectionX(int edge) {
+        return edgeDirectionX[edge];
+    }
+
+    /**
+     * Returns the y component of unit direction of an edge
+     *
+     * @param edge the edge id
+     */
+    public double getEdgeDirectionY(int edge) {
+        return edgeDirectionY[edge];
+    }
+
+    /**
+     * Returns the end node id of an edge
+     *
+     * @param edge the edge id
+     */
+    public int getEdgeEnd(int edge) {
+        return edgeEnd[edge];
+    }
+
+    /**
+     * Returns the length of an edge
+     *
+     * @param edge the edge id
+     */
+    public double getEdgeLength(int edge) {
+        return edgeLength[edge];
+    }
+
+    /**
+     * Returns the priority of an edge
+     *
+     * @param edge the edge id
+     */
+    public int getEdgePriority(int edge) {
+        return edgePriority[edge];
+    }
+
+    /**
+     * Returns the safety distance of an edge
+     *
+     * @param edge the edge id
+     */
+    public double getEdgeSafetyDistance(int edge) {
+        return edgeSafetyDistance[edge];
+    }
+
+    /**
+     * Returns the speed limit of an edge
+     *
+     * @param edge the edge id
+     */
+    public double getEdgeSpeedLimit(int edge) {
+        return edgeSpeedLimit[edge];
+    }
+
+    /**
+     * Returns the free transit time of an edge
+     *
+     * @param edge the edge id
+     */
+    public double getEdgeTransitTime(int edge) {
+        return edgeTransitTime[edge];
+    }
+
+    /**
+     * Returns the round trip free transit time from a site to another site (infinity if no path exists).
+     * The round trip from a site to the same site and from a site to an unreachable site is infinity,
+     * the missing return path does not count.
+     *
+     * @param from the departure site index
+     * @param to   the destination site index
+     */
+    public double getFreeRoundTripTime(int from, int to) {
+        if (from == to) {
+            return Double.POSITIVE_INFINITY;
+        }
+        double[][] times = freeTransitTimes.get();
+        double back = times[to][from];
+        return times[from][to] + (Double.isFinite(back) ? back : 0);
+    }
+
+    /**
+     * Returns the free transit time from a site to another site by the shortest path (infinity if no path exists)
+     *
+     * @param from the departure site index
+     * @param to   the destination site index
+     */
+    public double getFreeTransitTime(int from, int to) {
+        return freeTransitTimes.get()[from][to];
+    }
+
+    /**
+     * Returns the edge list (edge by id) including the removed edges
+     */
+    public List<MapEdge> getEdges() {
+        return edges;
+    }
+
+    /**
+     * Returns the incoming edge ids of a node sorted by descending priority.
+     * The array must not be modified
+     *
+     * @param node the node id
+     */
+    public int[] getInEdges(int node) {
+        return edgesOf(inEdges, node, version);
+    }
+
+    /**
+     * Returns the number of nodes
+     */
+    public int getNodeCount() {
+        return nodeCount;
+    }
+
+    /**
+     * Returns the node list (node by id)
+     */
+    public List<MapNode> getNodes() {
+        return nodes;
+    }
+
+    /**
+     * Returns the outgoing edge ids of a node.
+     * The array must not be modified
+     *
+     * @param node the node id
+     */
+    public int[] getOutEdges(int node) {
+        return edgesOf(outEdges, node, version);
+    }
+
+    /**
+     * Returns the ids of the edges of another topology removed by this topology
+     * or null if this topology is not derived from the other one.
+     * The ids are in removal order and are valid in both topologies
+     *
+     * @param other the other topology
+     */
+    int[] getRemovedEdges(CompiledTopology other) {
+        requireNonNull(other);
+        if (other.storage != storage || other.version > version) {
+            return null;
+        }
+        int[] result = new int[version - other.version];
+        int n = 0;
+        for (int v = other.version + 1; v <= version; v++) {
+            int edge = removedEdges[v];
+            if (edge >= 0 && edge < other.edgeCount) {
+                result[n++] = edge;
+            }
+        }
+        return Arrays.copyOf(result, n);
+    }
+
+    /**
+     * Returns the number of sites.
+     * The sites have the node ids in the range [0, getSiteCount())
+     */
+    public int getSiteCount() {
+        return siteCount;
+    }
+
+    /**
+     * Returns true if an edge id is an edge of the topology, false if the edge has been removed
+     *
+     * @param edge the edge id
+     */
+    public boolean isEdgeAlive(int edge) {
+        return edgeRemoval[edge] > version;
+    }
+
+    /**
+     * Returns the id of a node or -1 if not in topology
+     *
+     * @param node the node
+     */
+    public int nodeId(MapNode node) {
+        Integer id = node != null ? storage.indexByNode.get(node) : null;
+        return id != null && id < nodeCount ? id : -1;
+    }
+
+    /**
+     * Returns a new compiled topology of the edges of this topology
+     *
+     * @param removed the edge to remove or null if none
+     */
+    private CompiledTopology recompile(MapEdge removed) {
+        List<MapEdge> aliveEdges = new ArrayList<>(edgeCount - removedCount);
+        for (int i = 0; i < edgeCount; i++) {
+            MapEdge edge = edges.get(i);
+            if (isEdgeAlive(i) && edge != removed) {
+                aliveEdges.add(edge);
+            }
+        }
+        return compile(nodes, aliveEdges, siteCount);
+    }
+
+    /**
+     * Returns the compiled topology without an edge.
+     * The edge id is marked as removed and the nodes are kept
+     *
+     * @param edge the edge
+     */
+    public CompiledTopology removeEdge(MapEdge edge) {
+        int id = edgeId(edge);
+        if (id < 0) {
+            return this;
+        }
+        synchronized (storage) {
+            if (storage.version == version && (removedCount + 1) * 2 <= edgeCount) {
+                int newVersion = version + 1;
+                int begin = edgeBegin[id];
+                int end = edgeEnd[id];
+                storage.commit(newVersion,
+                        begin, without(edgesOf(storage.outEdges, begin, version), id),
+                        end, without(edgesOf(storage.inEdges, end, version), id),
+                        id);
+                return new CompiledTopology(storage, siteCount, removedCount + 1);
+            }
+        }
+        return recompile(edge);
+    }
+
+    /**
+     * Returns the edge ids without an edge
+     *
+     * @param edges the edge ids
+     * @param edge  the removed edge id
+     */
+    private static int[] without(int[] edges, int edge) {
+        int[] result = new int[edges.length - 1];
+        int n = 0;
+        for (int id : edges) {
+            if (id != edge) {
+                result[n++] = id;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * The edges of a node since a version linked to the edges of the previous version
+     */
+    private static final class NodeEdges {
+        private final int version;
+        private final int[] edges;
+        private final NodeEdges previous;
+
+        /**
+         * Creates the edges of a node
+         *
+         * @param version  the version
+         * @param edges    the edge ids
+         * @param previous the edges of the previous version or null if none
+         */
+        private NodeEdges(int version, int[] edges, NodeEdges previous) {
+            this.version = version;
+            this.edges = edges;
+            this.previous = previous;
+        }
+    }
+
+    /**
+     * The growable arrays shared by the versions of a compiled topology.
+     * <p>
+     * The storage is changed only by the derivations of the last version holding the storage lock:
+     * the elements with ids beyond the counts of the previous versions are appended,
+     * the removal versions of edges and the edges of nodes are set only for the new version.
+     * The grown arrays are copies, so the previous versions keep reading the arrays they have been created with.
+     * </p>
+     */
+    private static final class Storage {
+        private final Map<MapNode, Integer> indexByNode;
+        private final Map<MapEdge, Integer> indexByEdge;
+        private int version;
+        private int nodeCount;
+        private int edgeCount;
+        private MapNode[] nodes;
+        private MapEdge[] edges;
+        private int[] edgeBegin;
+        private int[] edgeEnd;
+        private int[] edgePriority;
+        private int[] edgeRemoval;
+        private double[] edgeLength;
+        private double[] edgeDirectionX;
+        private double[] edgeDirectionY;
+        private double[] edgeSpeedLimit;
+        private double[] edgeSafetyDistance;
+        private double[] edgeTransitTime;
+        private NodeEdges[] outEdges;
+        private NodeEdges[] inEdges;
+        private int[] removedEdges;
+
+        /**
+         * Creates the storage
+         *
+         * @param nodeCapacity the node capacity
+         * @param edgeCapacity the edge capacity
+         */
+        private Storage(int nodeCapacity, int edgeCapacity) {
+            this.indexByNode = new ConcurrentHashMap<>();
+            this.indexByEdge = new ConcurrentHashMap<>();
+            this.nodes = new MapNode[nodeCapacity];
+            this.outEdges = new NodeEdges[nodeCapacity];
+            this.inEdges = new NodeEdges[nodeCapacity];
+            this.edges = new MapEdge[edgeCapacity];
+            this.edgeBegin = new int[edgeCapacity];
+            this.edgeEnd = new int[edgeCapacity];
+            this.edgePriority = new int[edgeCapacity];
+            this.edgeRemoval = new int[edgeCapacity];
+            this.edgeLength = new double[edgeCapacity];
+            this.edgeDirectionX = new double[edgeCapacity];
+            this.edgeDirectionY = new double[edgeCapacity];
+            this.edgeSpeedLimit = new double[edgeCapacity];
+            this.edgeSafetyDistance = new double[edgeCapacity];
+            this.edgeTransitTime = new double[edgeCapacity];
+            this.removedEdges = new int[DEFAULT_CAPACITY];
+            removedEdges[0] = -1;
+        }
+
+        /**
+         * Returns the id of an edge appended to the storage registering the missing ending nodes
+         *
+         * @param edge the edge
+         */
+        private int addEdge(MapEdge edge) {
+            int begin = addNode(edge.getBegin());
+            int end = addNode(edge.getEnd());
+            int i = edgeCount;
+            if (i >= edges.length) {
+                int capacity = i * 2;
+                edges = Arrays.copyOf(edges, capacity);
+                edgeBegin = Arrays.copyOf(edgeBegin, capacity);
+                edgeEnd = Arrays.copyOf(edgeEnd, capacity);
+                edgePriority = Arrays.copyOf(edgePriority, capacity);
+                edgeRemoval = Arrays.copyOf(edgeRemoval, capacity);
+                edgeLength = Arrays.copyOf(edgeLength, capacity);
+                edgeDirectionX = Arrays.copyOf(edgeDirectionX, capacity);
+                edgeDirectionY = Arrays.copyOf(edgeDirectionY, capacity);
+                edgeSpeedLimit = Arrays.copyOf(edgeSpeedLimit, capacity);
+                edgeSafetyDistance = Arrays.copyOf(edgeSafetyDistance, capacity);
+                edgeTransitTime = Arrays.copyOf(edgeTransitTime, capacity);
+            }
+            edges[i] = edge;
+            edgeBegin[i] = begin;
+            edgeEnd[i] = end;
+            edgePriority[i] = edge.getPriority();
+            edgeRemoval[i] = ALIVE;
+            edgeLength[i] = edge.getLength();
+            Point2D direction = edge.getDirection();
+            edgeDirectionX[i] = edgeLength[i] > 0 ? direction.getX() / edgeLength[i] : 0;
+            edgeDirectionY[i] = edgeLength[i] > 0 ? direction.getY() / edgeLength[i] : 0;
+            edgeSpeedLimit[i] = edge.getSpeedLimit();
+            edgeSafetyDistance[i] = edge.getSafetyDistance();
+            edgeTransitTime[i] = edge.getTransitTime();
+            indexByEdge.put(edge, i);
+            edgeCount++;
+            return i;
+        }
+
+        /**
+         * Returns the id of a node registering it if missing
+         *
+         * @param node the node
+         */
+        private int addNode(MapNode node) {
+            Integer id = indexByNode.get(node);
+            if (id != null) {
+                return id;
+            }
+            int i = nodeCount;
+            if (i >= nodes.length) {
+                int capacity = i * 2;
+                nodes = Arrays.copyOf(nodes, capacity);
+                outEdges = Arrays.copyOf(outEdges, capacity);
+                inEdges = Arrays.copyOf(inEdges, capacity);
+            }
+            nodes[i] = node;
+            indexByNode.put(node, i);
+            nodeCount++;
+            return i;
+        }
+
+        /**
+         * Sets the new version changing the edges of two nodes
+         *
+         * @param newVersion the new version
+         * @param begin      the beginning node id of the changed edge
+         * @param out        the outgoing edges of the beginning node
+         * @param end        the end node id of the changed edge
+         * @param in         the incoming edges of the end node
+         * @param removed    the removed edge id or -1 if none
+         */
+        private void commit(int newVersion, int begin, int[] out, int end, int[] in, int removed) {
+            if (newVersion >= removedEdges.length) {
+                removedEdges = Arrays.copyOf(removedEdges, newVersion * 2);
+            }
+            removedEdges[newVersion] = removed;
+            if (removed >= 0) {
+                edgeRemoval[removed] = newVersion;
+            }
+            outEdges[begin] = new NodeEdges(newVersion, out, outEdges[begin]);
+            inEdges[end] = new NodeEdges(newVersion, in, inEdges[end]);
+            version = newVersion;
+        }
+    }
+}
@@ -0,0 +1,278 @@
+/*
+ *
+ * Copyright (c) 2023 Marco Marini, marco.marini@mmarini.org
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ *
+ *    END OF TERMS AND CONDITIONS
+ */
+
+package org.mmarini.routes.model2;
+
+import java.util.*;
+import java.util.stream.IntStream;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * The customizable contraction hierarchy of a topology.
+ * <p>
+ * The hierarchy depends only on the topology: the nodes are ordered by a greedy minimum degree elimination
+ * of the undirected graph and each node is linked by upward arcs to the higher nodes adjacent at its elimination
+ * (original edges and shortcuts).
+ * The edge travel times are applied by customization, computing the up and down weights of arcs by
+ * the lower triangles, then the distances to a site are computed by an upward search from the site
+ * followed by a downward sweep of all the nodes.
+ * </p>
+ */
+public class ContractionHierarchy {
+    /**
+     * Returns the contraction hierarchy of a topology
+     *
+     * @param topology the compiled topology
+     */
+    public static ContractionHierarchy createHierarchy(CompiledTopology topology) {
+        requireNonNull(topology);
+        int n = topology.getNodeCount();
+        // Creates the undirected graph
+        List<Set<Integer>> adjacent = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) {
+            adjacent.add(new HashSet<>());
+        }
+        for (int edge = 0; edge < topology.getEdgeCount(); edge++) {
+            int begin = topology.getEdgeBegin(edge);
+            int end = topology.getEdgeEnd(edge);
+            if (begin != end && topology.isEdgeAlive(edge)) {
+                adjacent.get(begin).add(end);
+                adjacent.get(end).add(begin);
+            }
+        }
+        // Eliminates the nodes by minimum degree
+        SlotQueue queue = new SlotQueue();
+        for (int i = 0; i < n; i++) {
+            queue.add(i, adjacent.get(i).size());
+        }
+        boolean[] eliminated = new boolean[n];
+        int[] ranks = new int[n];
+        int[][] upward = new int[n][];
+        int rank = 0;
+        while (!queue.isEmpty()) {
+            double degree = queue.peekKey();
+            int node = queue.poll();
+            if (eliminated[node] || degree != adjacent.get(node).size()) {
+                // Stale entry
+                continue;
+            }
+            eliminated[node] = true;
+            ranks[node] = rank++;
+            int[] neighbours = adjacent.get(node).stream().mapToInt(Integer::intValue).toArray();
+            upward[node] = neighbours;
+            for (int neighbour : neighbours) {
+                adjacent.get(neighbour).remove(node);
+            }
+            // Links the neighbours by shortcuts
+            for (int i = 0; i < neighbours.length; i++) {
+                for (int j = i + 1; j < neighbours.length; j++) {
+                    if (adjacent.get(neighbours[i]).add(neighbours[j])) {
+                        adjacent.get(neighbours[j]).add(neighbours[i]);
+                    }
+                }
+            }
+            for (int neighbour : neighbours) {
+                queue.add(neighbour, adjacent.get(neighbour).size());
+            }
+            adjacent.set(node, null);
+        }
+        // Creates the upward arcs by rank with head ranks sorted
+        int[] order = new int[n];
+        for (int i = 0; i < n; i++) {
+            order[ranks[i]] = i;
+        }
+        int[] arcOffsets = new int[n + 1];
+        for (int i = 0; i < n; i++) {
+            arcOffsets[i + 1] = arcOffsets[i] + upward[order[i]].length;
+        }
+        int[] arcHeads = new int[arcOffsets[n]];
+        for (int i = 0; i < n; i++) {
+            int[] heads = Arrays.stream(upward[order[i]])
+                    .map(node -> ranks[node])
+                    .sorted()
+                    .toArray();
+            System.arraycopy(heads, 0, arcHeads, arcOffsets[i], heads.length);
+        }
+        return new ContractionHierarchy(topology, ranks, order, arcOffsets, arcHeads);
+    }
+
+    private final CompiledTopology topology;
+    private final int[] ranks;
+    private final int[] order;
+    private final int[] arcOffsets;
+    private final int[] arcHeads;
+
+    /**
+     * Creates the contraction hierarchy
+     *
+     * @param topology   the compiled topology
+     * @param ranks      the node ranks by node id
+     * @param order      the node ids by rank
+     * @param arcOffsets the first upward arc of each rank (node count + 1 entries)
+     * @param arcHeads   the upward arc head ranks sorted for each rank
+     */
+    protected ContractionHierarchy(CompiledTopology topology, int[] ranks, int[] order,
+                                   int[] arcOffsets, int[] arcHeads) {
+        this.topology = requireNonNull(topology);
+        this.ranks = requireNonNull(ranks);
+        this.order = requireNonNull(order);
+        this.arcOffsets = requireNonNull(arcOffsets);
+        this.arcHeads = requireNonNull(arcHeads);
+    }
+
+    /**
+     * Returns the upward arc from a lower rank to a higher rank or -1 if not exists
+     *
+     * @param tail the lower rank
+     * @param head the higher rank
+     */
+    int arcOf(int tail, int head) {
+        int index = Arrays.binarySearch(arcHeads, arcOffsets[tail], arcOffsets[tail + 1], head);
+        return index >= 0 ? index : -1;
+    }
+
+    /**
+     * Returns the shortest path trees to each site computed in parallel
+     *
+     * @param edgeTravelTimes the edge travel times by edge id
+     */
+    public ShortestPathTree[] computeTrees(double[] edgeTravelTimes) {
+        requireNonNull(edgeTravelTimes);
+        boolean[] shadowed = ShortestPathTree.createShadowedEdges(topology);
+        double[] metric = customize(edgeTravelTimes, shadowed);
+        return IntStream.range(0, topology.getNodeCount())
+                .filter(i -> topology.getNodes().get(i) instanceof SiteNode)
+                .parallel()
+                .mapToObj(i -> createTree(metric, edgeTravelTimes, shadowed, i))
+                .toArray(ShortestPathTree[]::new);
+    }
+
+    /**
+     * Returns the arc weights for the edge travel times.
+     * The up weight (tail to head) of arc i is at index 2 i, the down weight (head to tail) at index 2 i + 1.
+     *
+     * @param edgeTravelTimes the edge travel times by edge id
+     * @param shadowed        true for the edges hidden by a following parallel edge
+     */
+    double[] customize(double[] edgeTravelTimes, boolean[] shadowed) {
+        double[] metric = new double[arcHeads.length * 2];
+        Arrays.fill(metric, Double.POSITIVE_INFINITY);
+        for (int edge = 0; edge < topology.getEdgeCount(); edge++) {
+            int begin = ranks[topology.getEdgeBegin(edge)];
+            int end = ranks[topology.getEdgeEnd(edge)];
+            if (!shadowed[edge] && begin != end) {
+                int index = begin < end
+                        ? arcOf(begin, end) * 2
+                        : arcOf(end, begin) * 2 + 1;
+                metric[index] = Math.min(metric[index], edgeTravelTimes[edge]);
+            }
+        }
+        // Applies the lower triangles in rank order
+        for (int rank = 0; rank < order.length; rank++) {
+            int from = arcOffsets[rank];
+            int to = arcOffsets[rank + 1];
+            for (int i = from; i < to; i++) {
+                for (int j = i + 1; j < to; j++) {
+                    int arc = arcOf(arcHeads[i], arcHeads[j]);
+                    metric[arc * 2] = Math.min(metric[arc * 2], metric[i * 2 + 1] + metric[j * 2]);
+                    metric[arc * 2 + 1] = Math.min(metric[arc * 2 + 1], metric[j * 2 + 1] + metric[i * 2]);
+                }
+            }
+        }
+        return metric;
+    }
+
+    /**
+     * Returns the shortest path tree to a target node
+     *
+     * @param metric          the arc weights
+     * @param edgeTravelTimes the edge travel times by edge id
+     * @param shadowed        true for the edges hidden by a following parallel edge
+     * @param target          the target node id
+     */
+    ShortestPathTree createTree(double[] metric, double[] edgeTravelTimes, boolean[] shadowed, int target) {
+        int n = ranks.length;
+        // Distances by rank
+        double[] rankDistances = new double[n];
+        Arrays.fill(rankDistances, Double.POSITIVE_INFINITY);
+        rankDistances[ranks[target]] = 0;
+        // Upward search from target along the elimination tree (the lowest upward arc)
+        for (int rank = ranks[target]; rank >= 0; ) {
+            int from = arcOffsets[rank];
+            int to = arcOffsets[rank + 1];
+            double distance = rankDistances[rank];
+            for (int i = from; i < to; i++) {
+                int head = arcHeads[i];
+                rankDistances[head] = Math.min(rankDistances[head], metric[i * 2 + 1] + distance);
+            }
+            rank = from < to ? arcHeads[from] : -1;
+        }
+        // Downward sweep
+        for (int rank = n - 1; rank >= 0; rank--) {
+            int to = arcOffsets[rank + 1];
+            double distance = rankDistances[rank];
+            for (int i = arcOffsets[rank]; i < to; i++) {
+                distance = Math.min(distance, metric[i * 2] + rankDistances[arcHeads[i]]);
+            }
+            rankDistances[rank] = distance;
+        }
+        double[] distances = new double[n];
+        for (int node = 0; node < n; node++) {
+            distances[node] = rankDistances[ranks[node]];
+        }
+        int[] nextEdges = new int[n];
+        for (int node = 0; node < n; node++) {
+            nextEdges[node] = ShortestPathTree.nextEdge(topology, edgeTravelTimes, shadowed, distances, node);
+        }
+        return new ShortestPathTree(target, distances, nextEdges);
+    }
+
+    /**
+     * Returns the number of upward arcs
+     */
+    public int getArcCount() {
+        return arcHeads.length;
+    }
+
+    /**
+     * Returns the rank of a node
+     *
+     * @param node the node id
+     */
+    public int getRank(int node) {
+        return ranks[node];
+    }
+
+    /**
+     * Returns the compiled topology
+     */
+    public CompiledTopology getTopology() {
+        return topology;
+    }
+}
@@ -0,0 +1,190 @@
+/*
+ *
+ * Copyright (c) 2023 Marco Marini, marco.marini@mmarini.org
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ *
+ *    END OF TERMS AND CONDITIONS
+ */
+
+package org.mmarini.routes.model2;
+
+import org.mmarini.Tuple2;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * The routes kept up to date with the edge travel times.
+ * <p>
+ * It keeps the shortest path trees to each destination site and, at each update of the travel times,
+ * repairs only the nodes affected by the changed edges reporting the changed next edges.
+ * The update cost is proportional to the extent of the changes instead of the whole map.
+ * </p>
+ */
+public class DynamicRoutes {
+    /**
+     * Returns the dynamic routes of a compiled topology
+     *
+     * @param topology        the compiled topology
+     * @param edgeTravelTimes the edge travel times by edge id
+     */
+    public static DynamicRoutes createRoutes(CompiledTopology topology, double[] edgeTravelTimes) {
+        requireNonNull(topology);
+        requireNonNull(edgeTravelTimes);
+        assert edgeTravelTimes.length == topology.getEdgeCount();
+        double[] travelTimes = Arrays.copyOf(edgeTravelTimes, edgeTravelTimes.length);
+        return new DynamicRoutes(topology, travelTimes,
+                ShortestPathTree.createShadowedEdges(topology),
+                Routes.computeTrees(topology, travelTimes));
+    }
+
+    /**
+     * Returns the dynamic routes of a topology
+     *
+     * @param topology        the topology
+     * @param edgeTravelTimes the edge travel times
+     */
+    public static DynamicRoutes createRoutes(Topology topology, TransitTimes edgeTravelTimes) {
+        CompiledTopology compiled = topology.getCompiled();
+        return createRoutes(compiled, Routes.toEdgeTravelTimes(compiled, edgeTravelTimes));
+    }
+
+    private final CompiledTopology topology;
+    private final boolean[] shadowed;
+    private final ShortestPathTree[] trees;
+    private double[] edgeTravelTimes;
+
+    /**
+     * Creates the dynamic routes
+     *
+     * @param topology        the compiled topology
+     * @param edgeTravelTimes the edge travel times by edge id
+     * @param shadowed        true for the edges hidden by a following parallel edge
+     * @param trees           the shortest path trees to each site
+     */
+    protected DynamicRoutes(CompiledTopology topology, double[] edgeTravelTimes, boolean[] shadowed,
+                            ShortestPathTree[] trees) {
+        this.topology = requireNonNull(topology);
+        this.edgeTravelTimes = requireNonNull(edgeTravelTimes);
+        this.shadowed = requireNonNull(shadowed);
+        this.trees = requireNonNull(trees);
+    }
+
+    /**
+     * Returns the current edge travel times by edge id
+     */
+    public double[] getEdgeTravelTimes() {
+        return Arrays.copyOf(edgeTravelTimes, edgeTravelTimes.length);
+    }
+
+    /**
+     * Returns the routes
+     */
+    public Map<Tuple2<MapNode, MapNode>, MapEdge> getRoutes() {
+        return Routes.createRoutes(topology, trees);
+    }
+
+    /**
+     * Returns the route table
+     */
+    public RouteTable getRouteTable() {
+        return RouteTable.createTable(topology, trees);
+    }
+
+    /**
+     * Returns the compiled topology
+     */
+    public CompiledTopology getTopology() {
+        return topology;
+    }
+
+    /**
+     * Returns the shortest path trees to each site
+     */
+    ShortestPathTree[] getTrees() {
+        return trees;
+    }
+
+    /**
+     * Returns the changes of next edges after the update of edge travel times
+     * The shortest path trees are repaired in parallel.
+     *
+     * @param edgeTravelTimes the new edge travel times by edge id
+     */
+    public List<RouteChange> update(double[] edgeTravelTimes) {
+        requireNonNull(edgeTravelTimes);
+        assert edgeTravelTimes.length == this.edgeTravelTimes.length;
+        double[] previous = this.edgeTravelTimes;
+        int[] changedEdges = IntStream.range(0, previous.length)
+                .filter(i -> edgeTravelTimes[i] != previous[i])
+                .toArray();
+        if (changedEdges.length == 0) {
+            return List.of();
+        }
+        double[] travelTimes = Arrays.copyOf(edgeTravelTimes, edgeTravelTimes.length);
+        this.edgeTravelTimes = travelTimes;
+        return Arrays.stream(trees)
+                .parallel()
+                .flatMap(tree -> tree.repair(topology, travelTimes, shadowed, changedEdges, previous).stream())
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * Returns the changes of next edges after the update of edge travel times
+     *
+     * @param edgeTravelTimes the new edge travel times
+     */
+    public List<RouteChange> update(TransitTimes edgeTravelTimes) {
+        return update(Routes.toEdgeTravelTimes(topology, edgeTravelTimes));
+    }
+
+    /**
+     * Returns a copy of routes with the changes applied
+     *
+     * @param routes  the routes
+     * @param changes the route changes
+     */
+    public Map<Tuple2<MapNode, MapNode>, MapEdge> updateRoutes(Map<Tuple2<MapNode, MapNode>, MapEdge> routes,
+                                                               List<RouteChange> changes) {
+        requireNonNull(routes);
+        requireNonNull(changes);
+        Map<Tuple2<MapNode, MapNode>, MapEdge> result = new HashMap<>(routes);
+        List<MapNode> nodes = topology.getNodes();
+        List<MapEdge> edges = topology.getEdges();
+        for (RouteChange change : changes) {
+            Tuple2<MapNode, MapNode> key = Tuple2.of(nodes.get(change.getFrom()), nodes.get(change.getTo()));
+            if (change.getNextEdge() >= 0) {
+                result.put(key, edges.get(change.getNextEdge()));
+            } else {
+                result.remove(key);
+            }
+        }
+        return result;
+    }
+}
@@ -0,0 +1,188 @@
+/*
+ *
+ * Copyright (c) 2023 Marco Marini, marco.marini@mmarini.org
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ *
+ *    END OF TERMS AND CONDITIONS
+ */
+
+package org.mmarini.routes.model2;
+
+import java.util.AbstractList;
+
+import static java.lang.Math.ceil;
+import static java.lang.Math.max;
+import static java.util.Objects.requireNonNull;
+import static org.mmarini.routes.model2.Constants.VEHICLE_LENGTH;
+
+/**
+ * The queue of vehicles in an edge backed by a growable circular array.
+ * <p>
+ * The vehicles enter the queue at the tail and exit from the head (the leader vehicle).
+ * Each vehicle keeps its absolute position in the queue so the vehicle ahead is found by position
+ * without any map.
+ * The list view is sorted from the tail (last entered vehicle) to the head.
+ * </p>
+ */
+public class EdgeQueue extends AbstractList<Vehicle> {
+    private static final int MIN_CAPACITY = 2;
+
+    /**
+     * Returns the empty queue for an edge presized to the maximum number of vehicles in the edge
+     *
+     * @param edge the edge
+     */
+    public static EdgeQueue createQueue(MapEdge edge) {
+        return createQueue((int) ceil(edge.getLength() / VEHICLE_LENGTH) + 1);
+    }
+
+    /**
+     * Returns the empty queue with a minimum capacity
+     *
+     * @param capacity the minimum capacity
+     */
+    public static EdgeQueue createQueue(int capacity) {
+        return new EdgeQueue(Integer.highestOneBit(max(MIN_CAPACITY, capacity) - 1) << 1);
+    }
+
+    private Vehicle[] buffer;
+    private int mask;
+    private long head;
+    private long tail;
+
+    /**
+     * Creates the queue
+     *
+     * @param capacity the capacity (power of 2)
+     */
+    protected EdgeQueue(int capacity) {
+        assert Integer.bitCount(capacity) == 1;
+        this.buffer = new Vehicle[capacity];
+        this.mask = capacity - 1;
+    }
+
+    /**
+     * Adds a vehicle at the tail of queue
+     *
+     * @param vehicle the vehicle
+     */
+    public void addFirst(Vehicle vehicle) {
+        requireNonNull(vehicle);
+        if (tail - head >= buffer.length) {
+            grow();
+        }
+        buffer[(int) (tail & mask)] = vehicle;
+        vehicle.setQueuePosition(tail);
+        tail++;
+    }
+
+    /**
+     * Returns the vehicle at the list index (0 is the tail of queue)
+     *
+     * @param index the index
+     */
+    @Override
+    public Vehicle get(int index) {
+        if (index < 0 || index >= size()) {
+            throw new IndexOutOfBoundsException(index);
+        }
+        return buffer[(int) ((tail - 1 - index) & mask)];
+    }
+
+    /**
+     * Returns the last entered vehicle (tail of queue) or null if empty
+     */
+    public Vehicle getFirst() {
+        return tail > head ? buffer[(int) ((tail - 1) & mask)] : null;
+    }
+
+    /**
+     * Returns the leader vehicle (head of queue) or null if empty
+     */
+    public Vehicle getLast() {
+        return tail > head ? buffer[(int) (head & mask)] : null;
+    }
+
+    /**
+     * Doubles the capacity preserving the vehicle positions
+     */
+    private void grow() {
+        int capacity = buffer.length * 2;
+        Vehicle[] newBuffer = new Vehicle[capacity];
+        int newMask = capacity - 1;
+        for (long i = head; i < tail; i++) {
+            newBuffer[(int) (i & newMask)] = buffer[(int) (i & mask)];
+        }
+        buffer = newBuffer;
+        mask = newMask;
+    }
+
+    /**
+     * Returns true if the vehicle is in the queue
+     *
+     * @param vehicle the vehicle
+     */
+    private boolean isQueued(Vehicle vehicle) {
+        long position = vehicle.getQueuePosition();
+        return position >= head && position < tail && buffer[(int) (position & mask)] == vehicle;
+    }
+
+    /**
+     * Returns the vehicle ahead of a vehicle or null if none or the vehicle is not in the queue
+     *
+     * @param vehicle the vehicle
+     */
+    public Vehicle nextOf(Vehicle vehicle) {
+        if (!isQueued(vehicle)) {
+            return null;
+        }
+        long position = vehicle.getQueuePosition() - 1;
+        return position >= head ? buffer[(int) (position & mask)] : null;
+    }
+
+    /**
+     * Removes the leader vehicle (head of queue) and returns it or null if empty
+     */
+    public Vehicle removeLast() {
+        if (tail == head) {
+            return null;
+        }
+        int index = (int) (head & mask);
+        Vehicle vehicle = buffer[index];
+        buffer[index] = null;
+        head++;
+        return vehicle;
+    }
+
+    /**
+     * Returns the capacity of queue
+     */
+    int capacity() {
+        return buffer.length;
+    }
+
+    @Override
+    public int size() {
+        return (int) (tail - head);
+    }
+}
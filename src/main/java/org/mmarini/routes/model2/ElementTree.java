@@ -0,0 +1,297 @@
+/*
+ *
+ * Copyright (c) 2023 Marco Marini, marco.marini@mmarini.org
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ *
+ *    END OF TERMS AND CONDITIONS
+ */
+
+package org.mmarini.routes.model2;
+
+import java.awt.geom.Point2D;
+import java.awt.geom.Rectangle2D;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Optional;
+import java.util.function.Function;
+
+import static java.lang.Math.*;
+import static java.util.Objects.requireNonNull;
+
+/**
+ * The immutable packed R-tree of map elements for hit testing.
+ * <p>
+ * The tree is bulk loaded by Sort-Tile-Recursive packing and
+ * the bounding boxes are stored level by level in primitive arrays.
+ * The first entries are the elements (leaves), followed by the upper levels up to the root.
+ * </p>
+ *
+ * @param <T> the type of elements
+ */
+public class ElementTree<T extends MapElement> {
+    static final int NODE_CAPACITY = 16;
+
+    /**
+     * Returns the tree of edges
+     *
+     * @param edges the edges
+     */
+    public static ElementTree<MapEdge> createEdgeTree(List<MapEdge> edges) {
+        return create(edges, edge -> {
+            Rectangle2D bound = new Rectangle2D.Double();
+            bound.setFrameFromDiagonal(edge.getBeginLocation(), edge.getEndLocation());
+            return bound;
+        });
+    }
+
+    /**
+     * Returns the tree of nodes
+     *
+     * @param nodes the nodes
+     */
+    public static ElementTree<MapNode> createNodeTree(List<MapNode> nodes) {
+        return create(nodes, node -> {
+            Point2D pt = node.getLocation();
+            return new Rectangle2D.Double(pt.getX(), pt.getY(), 0, 0);
+        });
+    }
+
+    /**
+     * Returns the tree of elements
+     *
+     * @param elements the elements
+     * @param bound    the bounding box of element
+     * @param <T>      the type of elements
+     */
+    public static <T extends MapElement> ElementTree<T> create(List<T> elements, Function<T, Rectangle2D> bound) {
+        requireNonNull(elements);
+        requireNonNull(bound);
+        // Creates the leaves
+        List<Entry> level = new ArrayList<>(elements.size());
+        for (int i = 0; i < elements.size(); i++) {
+            Rectangle2D box = bound.apply(elements.get(i));
+            level.add(new Entry(box.getMinX(), box.getMinY(), box.getMaxX(), box.getMaxY(), i, i + 1));
+        }
+        level = sortTiles(level);
+        List<List<Entry>> levels = new ArrayList<>();
+        levels.add(level);
+        // Packs the upper levels
+        while (level.size() > 1) {
+            List<Entry> parents = new ArrayList<>((level.size() + NODE_CAPACITY - 1) / NODE_CAPACITY);
+            for (int i = 0; i < level.size(); i += NODE_CAPACITY) {
+                int to = min(i + NODE_CAPACITY, level.size());
+                double minX = Double.POSITIVE_INFINITY;
+                double minY = Double.POSITIVE_INFINITY;
+                double maxX = Double.NEGATIVE_INFINITY;
+                double maxY = Double.NEGATIVE_INFINITY;
+                for (int j = i; j < to; j++) {
+                    Entry child = level.get(j);
+                    minX = min(minX, child.minX);
+                    minY = min(minY, child.minY);
+                    maxX = max(maxX, child.maxX);
+                    maxY = max(maxY, child.maxY);
+                }
+                parents.add(new Entry(minX, minY, maxX, maxY, i, to));
+            }
+            level = sortTiles(parents);
+            levels.add(level);
+        }
+        // Flattens the levels
+        int n = levels.stream().mapToInt(List::size).sum();
+        double[] minX = new double[n];
+        double[] minY = new double[n];
+        double[] maxX = new double[n];
+        double[] maxY = new double[n];
+        int[] childFrom = new int[n];
+        int[] childTo = new int[n];
+        List<T> sortedElements = new ArrayList<>(elements.size());
+        int offset = 0;
+        int childOffset = 0;
+        for (int k = 0; k < levels.size(); k++) {
+            List<Entry> entries = levels.get(k);
+            for (int i = 0; i < entries.size(); i++) {
+                Entry entry = entries.get(i);
+                int index = offset + i;
+                minX[index] = entry.minX;
+                minY[index] = entry.minY;
+                maxX[index] = entry.maxX;
+                maxY[index] = entry.maxY;
+                if (k == 0) {
+                    // Leaves refer the element index
+                    childFrom[index] = entry.from;
+                    sortedElements.add(elements.get(entry.from));
+                } else {
+                    childFrom[index] = childOffset + entry.from;
+                    childTo[index] = childOffset + entry.to;
+                }
+            }
+            childOffset = offset;
+            offset += entries.size();
+        }
+        // The depth first search keeps at most the siblings of the visited nodes for each level
+        int stackSize = levels.size() * NODE_CAPACITY;
+        return new ElementTree<>(sortedElements, minX, minY, maxX, maxY, childFrom, childTo, stackSize);
+    }
+
+    /**
+     * Returns the entries sorted by tiles.
+     * The entries are sorted by x center in vertical slices and each slice is sorted by y center
+     *
+     * @param entries the entries
+     */
+    private static List<Entry> sortTiles(List<Entry> entries) {
+        int n = entries.size();
+        int numNodes = (n + NODE_CAPACITY - 1) / NODE_CAPACITY;
+        int sliceSize = (int) ceil(sqrt(numNodes)) * NODE_CAPACITY;
+        List<Entry> result = new ArrayList<>(entries);
+        result.sort(Comparator.comparingDouble(Entry::getCenterX));
+        for (int i = 0; i < n; i += sliceSize) {
+            result.subList(i, min(i + sliceSize, n)).sort(Comparator.comparingDouble(Entry::getCenterY));
+        }
+        return result;
+    }
+
+    private final List<T> elements;
+    private final double[] minX;
+    private final double[] minY;
+    private final double[] maxX;
+    private final double[] maxY;
+    private final int[] childFrom;
+    private final int[] childTo;
+    private final int stackSize;
+
+    /**
+     * Creates the tree
+     *
+     * @param elements  the elements in leaf order
+     * @param minX      the minimum x of boxes
+     * @param minY      the minimum y of boxes
+     * @param maxX      the maximum x of boxes
+     * @param maxY      the maximum y of boxes
+     * @param childFrom the first child of nodes or the element index of leaves
+     * @param childTo   the last child (exclusive) of nodes
+     * @param stackSize the size of the search stack
+     */
+    protected ElementTree(List<T> elements, double[] minX, double[] minY, double[] maxX, double[] maxY,
+                          int[] childFrom, int[] childTo, int stackSize) {
+        this.elements = requireNonNull(elements);
+        this.minX = requireNonNull(minX);
+        this.minY = requireNonNull(minY);
+        this.maxX = requireNonNull(maxX);
+        this.maxY = requireNonNull(maxY);
+        this.childFrom = requireNonNull(childFrom);
+        this.childTo = requireNonNull(childTo);
+        this.stackSize = stackSize;
+    }
+
+    /**
+     * Returns the square distance between a box and a point
+     *
+     * @param index the box index
+     * @param x     the point x
+     * @param y     the point y
+     */
+    private double distanceSq(int index, double x, double y) {
+        double dx = max(max(minX[index] - x, x - maxX[index]), 0);
+        double dy = max(max(minY[index] - y, y - maxY[index]), 0);
+        return dx * dx + dy * dy;
+    }
+
+    /**
+     * Returns the nearest element within a distance from a point.
+     * The element with the highest original index is returned among elements at the same distance
+     *
+     * @param point     the point
+     * @param precision the distance
+     */
+    public Optional<T> findNearest(Point2D point, double precision) {
+        requireNonNull(point);
+        int n = minX.length;
+        if (n == 0) {
+            return Optional.empty();
+        }
+        double x = point.getX();
+        double y = point.getY();
+        int numElements = elements.size();
+        double bestDistanceSq = precision * precision;
+        int best = -1;
+        int[] stack = new int[stackSize];
+        int top = 0;
+        stack[top++] = n - 1;
+        while (top > 0) {
+            int index = stack[--top];
+            if (distanceSq(index, x, y) <= bestDistanceSq) {
+                if (index < numElements) {
+                    double distanceSq = elements.get(index).distanceSqFrom(point);
+                    if (distanceSq < bestDistanceSq
+                            || (distanceSq == bestDistanceSq && childFrom[index] > (best >= 0 ? childFrom[best] : -1))) {
+                        bestDistanceSq = distanceSq;
+                        best = index;
+                    }
+                } else {
+                    for (int i = childFrom[index]; i < childTo[index]; i++) {
+                        stack[top++] = i;
+                    }
+                }
+            }
+        }
+        return best >= 0 ? Optional.of(elements.get(best)) : Optional.empty();
+    }
+
+    /**
+     * Returns the number of elements
+     */
+    public int size() {
+        return elements.size();
+    }
+
+    /**
+     * The entry of tree under construction
+     */
+    private static class Entry {
+        final double minX;
+        final double minY;
+        final double maxX;
+        final double maxY;
+        final int from;
+        final int to;
+
+        Entry(double minX, double minY, double maxX, double maxY, int from, int to) {
+            this.minX = minX;
+            this.minY = minY;
+            this.maxX = maxX;
+            this.maxY = maxY;
+            this.from = from;
+            this.to = to;
+        }
+
+        double getCenterX() {
+            return (minX + maxX) / 2;
+        }
+
+        double getCenterY() {
+            return (minY + maxY) / 2;
+        }
+    }
+}
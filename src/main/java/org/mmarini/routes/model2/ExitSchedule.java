@@ -0,0 +1,182 @@
+/*
+ *
+ * Copyright (c) 2023 Marco Marini, marco.marini@mmarini.org
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ *
+ *    END OF TERMS AND CONDITIONS
+ */
+
+package org.mmarini.routes.model2;
+
+import java.util.Arrays;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * The schedule of the predicted exit times of the edges.
+ * <p>
+ * The exit time of an edge is the instant the leader vehicle reaches the edge end
+ * running at the edge speed limit.
+ * The prediction is valid until the leader of the edge changes,
+ * so the schedule is updated only for the edges invalidated by the engine
+ * when a vehicle enters an empty edge, the leader leaves the edge or reaches its end.
+ * </p>
+ */
+public class ExitSchedule {
+    private final VehicleStore vehicles;
+    private final SlotQueue queue;
+    private double[] exitTimes;
+    private int[] invalidEdges;
+    private boolean[] invalid;
+    private int invalidCount;
+
+    /**
+     * Creates the schedule of a vehicle store
+     *
+     * @param vehicles the vehicle store
+     */
+    protected ExitSchedule(VehicleStore vehicles) {
+        this.vehicles = requireNonNull(vehicles);
+        this.queue = new SlotQueue();
+        int n = vehicles.getEdges().size();
+        this.exitTimes = new double[n];
+        this.invalidEdges = new int[n];
+        this.invalid = new boolean[n];
+        Arrays.fill(exitTimes, Double.NaN);
+    }
+
+    /**
+     * Returns the schedule of the vehicles in a store at a given time
+     *
+     * @param vehicles the vehicle store
+     * @param time     the current time
+     */
+    public static ExitSchedule createSchedule(VehicleStore vehicles, double time) {
+        ExitSchedule schedule = new ExitSchedule(vehicles);
+        int n = vehicles.getEdges().size();
+        for (int i = 0; i < n; i++) {
+            schedule.invalidate(i);
+        }
+        schedule.refresh(time);
+        return schedule;
+    }
+
+    /**
+     * Ensures the capacity for a given edge index
+     *
+     * @param index the edge index
+     */
+    private void ensureCapacity(int index) {
+        if (index >= exitTimes.length) {
+            int n = Math.max(index + 1, exitTimes.length * 2);
+            int m = exitTimes.length;
+            exitTimes = Arrays.copyOf(exitTimes, n);
+            Arrays.fill(exitTimes, m, n, Double.NaN);
+            invalid = Arrays.copyOf(invalid, n);
+            invalidEdges = Arrays.copyOf(invalidEdges, n);
+        }
+    }
+
+    /**
+     * Returns the predicted exit time of an edge or NaN if no vehicle is exiting the edge
+     *
+     * @param index the edge index
+     */
+    double getExitTime(int index) {
+        return index < exitTimes.length ? exitTimes[index] : Double.NaN;
+    }
+
+    /**
+     * Marks an edge whose leader vehicle may have changed
+     *
+     * @param index the edge index
+     */
+    void invalidate(int index) {
+        if (index >= 0) {
+            ensureCapacity(index);
+            if (!invalid[index]) {
+                invalid[index] = true;
+                invalidEdges[invalidCount++] = index;
+            }
+        }
+    }
+
+    /**
+     * Returns the first predicted exit time or positive infinity if no vehicle is exiting any edge
+     */
+    double nextExitTime() {
+        // Drops the stale predictions
+        while (!queue.isEmpty()) {
+            int index = queue.peekSlot();
+            double key = queue.peekKey();
+            if (exitTimes[index] == key) {
+                return key;
+            }
+            queue.poll();
+        }
+        return Double.POSITIVE_INFINITY;
+    }
+
+    /**
+     * Removes the first predicted exit up to a given time and returns its edge index
+     * or -1 if no vehicle is exiting any edge up to the time.
+     * The edge has no prediction until it is invalidated and refreshed
+     *
+     * @param time the time
+     */
+    int pollExit(double time) {
+        if (nextExitTime() <= time) {
+            int index = queue.poll();
+            exitTimes[index] = Double.NaN;
+            return index;
+        }
+        return -1;
+    }
+
+    /**
+     * Updates the predictions of the invalidated edges
+     *
+     * @param time the current time
+     */
+    void refresh(double time) {
+        for (int i = 0; i < invalidCount; i++) {
+            int index = invalidEdges[i];
+            invalid[index] = false;
+            double exitTime = Double.NaN;
+            EdgeQueue edgeVehicles = vehicles.queueOrNull(index);
+            Vehicle leader = edgeVehicles != null ? edgeVehicles.getLast() : null;
+            if (leader != null) {
+                double distanceToEnd = vehicles.getEdgeLength(index) - leader.getDistance();
+                if (distanceToEnd > 0) {
+                    // The leader runs at speed limit up to the edge end
+                    exitTime = time + distanceToEnd / vehicles.getEdgeSpeedLimit(index);
+                }
+            }
+            exitTimes[index] = exitTime;
+            if (!Double.isNaN(exitTime)) {
+                queue.add(index, exitTime);
+            }
+        }
+        invalidCount = 0;
+    }
+}
@@ -0,0 +1,106 @@
+/*
+ *
+ * Copyright (c) 2023 Marco Marini, marco.marini@mmarini.org
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ *
+ *    END OF TERMS AND CONDITIONS
+ */
+
+package org.mmarini.routes.model2;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The lock free triple buffer of vehicle frames.
+ * <p>
+ * The producer (simulation thread) writes the back frame and publishes it swapping it with the middle frame,
+ * the consumer (rendering thread) acquires the last published frame swapping the middle frame with the front
+ * frame.
+ * The producer never blocks and never writes the front frame so the consumer always reads a consistent
+ * frame until the next acquisition.
+ * There must be only a producer thread and a consumer thread.
+ * </p>
+ */
+public class FrameBuffer {
+    private static final int INDEX_MASK = 3;
+    private static final int FRESH = 4;
+
+    /**
+     * Returns the frame buffer with empty frames
+     */
+    public static FrameBuffer create() {
+        return new FrameBuffer(new VehicleFrame[]{
+                VehicleFrame.create(), VehicleFrame.create(), VehicleFrame.create()
+        });
+    }
+
+    private final VehicleFrame[] frames;
+    private final AtomicInteger middle;
+    private int back;
+    private int front;
+
+    /**
+     * Creates the frame buffer
+     *
+     * @param frames the three frames
+     */
+    protected FrameBuffer(VehicleFrame[] frames) {
+        assert frames.length == 3;
+        this.frames = frames;
+        this.front = 0;
+        this.middle = new AtomicInteger(1);
+        this.back = 2;
+    }
+
+    /**
+     * Returns the last published frame (consumer side).
+     * The frame is owned by the consumer until the next acquisition.
+     */
+    public VehicleFrame acquire() {
+        if ((middle.get() & FRESH) != 0) {
+            front = middle.getAndSet(front) & INDEX_MASK;
+        }
+        return frames[front];
+    }
+
+    /**
+     * Returns the frame to be written (producer side)
+     */
+    public VehicleFrame getBackFrame() {
+        return frames[back];
+    }
+
+    /**
+     * Returns true if a frame has been published after the last acquisition
+     */
+    public boolean hasFreshFrame() {
+        return (middle.get() & FRESH) != 0;
+    }
+
+    /**
+     * Publishes the back frame (producer side)
+     */
+    public void publish() {
+        back = middle.getAndSet(back | FRESH) & INDEX_MASK;
+    }
+}
@@ -0,0 +1,73 @@
+/*
+ *
+ * Copyright (c) 2023 Marco Marini, marco.marini@mmarini.org
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ *
+ *    END OF TERMS AND CONDITIONS
+ */
+
+package org.mmarini.routes.model2;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * The router by customizable contraction hierarchy.
+ * <p>
+ * The hierarchy is computed once for each topology and reused while the topology does not change,
+ * so that only the arc weights are customized by the edge travel times at each computation.
+ * </p>
+ */
+public class HierarchyRouter implements Router {
+    /**
+     * Returns the router by contraction hierarchy
+     */
+    public static HierarchyRouter createRouter() {
+        return new HierarchyRouter();
+    }
+
+    private ContractionHierarchy hierarchy;
+
+    /**
+     * Creates the router
+     */
+    protected HierarchyRouter() {
+    }
+
+    @Override
+    public ShortestPathTree[] computeTrees(CompiledTopology topology, double[] edgeTravelTimes) {
+        return getHierarchy(topology).computeTrees(edgeTravelTimes);
+    }
+
+    /**
+     * Returns the contraction hierarchy of a topology creating it if the topology is changed
+     *
+     * @param topology the compiled topology
+     */
+    synchronized ContractionHierarchy getHierarchy(CompiledTopology topology) {
+        requireNonNull(topology);
+        if (hierarchy == null || hierarchy.getTopology() != topology) {
+            hierarchy = ContractionHierarchy.createHierarchy(topology);
+        }
+        return hierarchy;
+    }
+}
@@ -0,0 +1,447 @@
+/*
+ *
+ * Copyright (c) 2023 Marco Marini, marco.marini@mmarini.org
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ *
+ *    END OF TERMS AND CONDITIONS
+ */
+
+package org.mmarini.routes.model2;
+
+import java.awt.geom.Point2D;
+import java.util.*;
+
+import static java.lang.Math.*;
+import static java.util.Objects.requireNonNull;
+
+/**
+ * The immutable spatial index of nodes in a uniform grid of square cells.
+ * <p>
+ * The cell size is computed to keep about a node per cell.
+ * The cells are stored in a persistent hash trie, so the grids derived with {@link #add(Collection)}
+ * copy only the trie paths of the changed cells and share the others with the original grid.
+ * The grid is rebuilt with a new cell size when the node density drifts
+ * beyond {@link #MAX_DENSITY_DRIFT} times the density of the cell size.
+ * </p>
+ */
+public class NodeGrid {
+    static final double MIN_CELL_SIZE = 10;
+    static final double DEFAULT_CELL_SIZE = 100;
+    static final double MAX_DENSITY_DRIFT = 2;
+    private static final int TRIE_BITS = 5;
+    private static final int TRIE_WIDTH = 1 << TRIE_BITS;
+    private static final int TRIE_MASK = TRIE_WIDTH - 1;
+    private static final int TRIE_DEPTH = 4;
+    private static final MapNode[] NO_NODES = new MapNode[0];
+    private static final NodeGrid EMPTY = new NodeGrid(DEFAULT_CELL_SIZE, new Object[TRIE_WIDTH], 0,
+            0, 0, 0, 0);
+
+    /**
+     * Returns the grid of nodes
+     *
+     * @param nodes the nodes
+     */
+    public static NodeGrid create(Collection<? extends MapNode> nodes) {
+        return EMPTY.add(nodes);
+    }
+
+    /**
+     * Returns the cell key of a location for a cell size
+     *
+     * @param location the location
+     * @param cellSize the cell size
+     */
+    private static long cellKey(Point2D location, double cellSize) {
+        return key((int) floor(location.getX() / cellSize), (int) floor(location.getY() / cellSize));
+    }
+
+    /**
+     * Returns the cell size keeping about a node per cell
+     *
+     * @param size the number of nodes
+     * @param minX the minimum x of nodes
+     * @param minY the minimum y of nodes
+     * @param maxX the maximum x of nodes
+     * @param maxY the maximum y of nodes
+     */
+    private static double computeCellSize(int size, double minX, double minY, double maxX, double maxY) {
+        return max(MIN_CELL_SIZE, sqrt((maxX - minX) * (maxY - minY) / size));
+    }
+
+    /**
+     * Returns the hash of a cell key
+     *
+     * @param key the cell key
+     */
+    private static int hash(long key) {
+        return Long.hashCode(key * 0x9E3779B97F4A7C15L);
+    }
+
+    /**
+     * Returns the trie with a node added to a cell.
+     * The trie arrays not owned by the current update are copied before changing
+     *
+     * @param root  the trie root
+     * @param key   the cell key
+     * @param node  the node
+     * @param owned the trie arrays owned by the current update
+     */
+    private static Object[] insert(Object[] root, long key, MapNode node, Set<Object> owned) {
+        int h = hash(key);
+        Object[] result = own(root, owned);
+        Object[] parent = result;
+        for (int d = 0; d < TRIE_DEPTH - 1; d++) {
+            int idx = (h >>> (d * TRIE_BITS)) & TRIE_MASK;
+            Object[] child = (Object[]) parent[idx];
+            if (child == null) {
+                child = new Object[TRIE_WIDTH];
+                owned.add(child);
+            } else {
+                child = own(child, owned);
+            }
+            parent[idx] = child;
+            parent = child;
+        }
+        int idx = (h >>> ((TRIE_DEPTH - 1) * TRIE_BITS)) & TRIE_MASK;
+        Cell[] bucket = (Cell[]) parent[idx];
+        if (bucket == null) {
+            parent[idx] = new Cell[]{new Cell(key, new MapNode[]{node})};
+        } else {
+            Cell[] newBucket = null;
+            for (int i = 0; i < bucket.length; i++) {
+                Cell cell = bucket[i];
+                if (cell.key == key) {
+                    MapNode[] nodes = Arrays.copyOf(cell.nodes, cell.nodes.length + 1);
+                    nodes[cell.nodes.length] = node;
+                    newBucket = bucket.clone();
+                    newBucket[i] = new Cell(key, nodes);
+                    break;
+                }
+            }
+            if (newBucket == null) {
+                // Appends a new cell colliding in the bucket
+                newBucket = Arrays.copyOf(bucket, bucket.length + 1);
+                newBucket[bucket.length] = new Cell(key, new MapNode[]{node});
+            }
+            parent[idx] = newBucket;
+        }
+        return result;
+    }
+
+    /**
+     * Returns the key of a cell
+     *
+     * @param cx the cell column
+     * @param cy the cell row
+     */
+    private static long key(int cx, int cy) {
+        return ((long) cx << 32) | (cy & 0xffffffffL);
+    }
+
+    /**
+     * Returns the trie array owned by the current update copying it if shared
+     *
+     * @param array the trie array
+     * @param owned the trie arrays owned by the current update
+     */
+    private static Object[] own(Object[] array, Set<Object> owned) {
+        if (owned.contains(array)) {
+            return array;
+        }
+        Object[] copy = array.clone();
+        owned.add(copy);
+        return copy;
+    }
+
+    private final double cellSize;
+    private final Object[] root;
+    private final int size;
+    private final double minX;
+    private final double minY;
+    private final double maxX;
+    private final double maxY;
+    private final int minCx;
+    private final int minCy;
+    private final int maxCx;
+    private final int maxCy;
+
+    /**
+     * Creates the grid
+     *
+     * @param cellSize the cell size
+     * @param root     the root of the cell trie
+     * @param size     the number of nodes
+     * @param minX     the minimum x of nodes
+     * @param minY     the minimum y of nodes
+     * @param maxX     the maximum x of nodes
+     * @param maxY     the maximum y of nodes
+     */
+    protected NodeGrid(double cellSize, Object[] root, int size,
+                       double minX, double minY, double maxX, double maxY) {
+        this.cellSize = cellSize;
+        this.root = requireNonNull(root);
+        this.size = size;
+        this.minX = minX;
+        this.minY = minY;
+        this.maxX = maxX;
+        this.maxY = maxY;
+        this.minCx = cell(minX);
+        this.minCy = cell(minY);
+        this.maxCx = cell(maxX);
+        this.maxCy = cell(maxY);
+    }
+
+    /**
+     * Returns the grid with added nodes
+     *
+     * @param nodes the added nodes
+     */
+    public NodeGrid add(Collection<? extends MapNode> nodes) {
+        requireNonNull(nodes);
+        if (nodes.isEmpty()) {
+            return this;
+        }
+        double newMinX = size > 0 ? minX : Double.POSITIVE_INFINITY;
+        double newMinY = size > 0 ? minY : Double.POSITIVE_INFINITY;
+        double newMaxX = size > 0 ? maxX : Double.NEGATIVE_INFINITY;
+        double newMaxY = size > 0 ? maxY : Double.NEGATIVE_INFINITY;
+        for (MapNode node : nodes) {
+            Point2D pt = node.getLocation();
+            newMinX = min(newMinX, pt.getX());
+            newMinY = min(newMinY, pt.getY());
+            newMaxX = max(newMaxX, pt.getX());
+            newMaxY = max(newMaxY, pt.getY());
+        }
+        int newSize = size + nodes.size();
+        double newCellSize = computeCellSize(newSize, newMinX, newMinY, newMaxX, newMaxY);
+        boolean drifted = size == 0
+                || newCellSize > cellSize * MAX_DENSITY_DRIFT
+                || newCellSize * MAX_DENSITY_DRIFT < cellSize;
+        Set<Object> owned = Collections.newSetFromMap(new IdentityHashMap<>());
+        Object[] newRoot;
+        if (drifted) {
+            // Rebuilds the grid with the new cell size
+            newRoot = new Object[TRIE_WIDTH];
+            owned.add(newRoot);
+            List<MapNode> allNodes = getNodes();
+            allNodes.addAll(nodes);
+            for (MapNode node : allNodes) {
+                newRoot = insert(newRoot, cellKey(node.getLocation(), newCellSize), node, owned);
+            }
+        } else {
+            newCellSize = cellSize;
+            newRoot = root;
+            for (MapNode node : nodes) {
+                newRoot = insert(newRoot, cellKey(node.getLocation(), cellSize), node, owned);
+            }
+        }
+        return new NodeGrid(newCellSize, newRoot, newSize, newMinX, newMinY, newMaxX, newMaxY);
+    }
+
+    /**
+     * Returns the cell coordinate of a location coordinate
+     *
+     * @param value the location coordinate
+     */
+    private int cell(double value) {
+        return (int) floor(value / cellSize);
+    }
+
+    /**
+     * Returns the nearest node to a point
+     *
+     * @param point the point
+     */
+    public Optional<MapNode> findNearest(Point2D point) {
+        requireNonNull(point);
+        if (size == 0) {
+            return Optional.empty();
+        }
+        int cx = cell(point.getX());
+        int cy = cell(point.getY());
+        // Starts from the first ring touching the grid bounds
+        int r0 = max(max(minCx - cx, cx - maxCx), max(minCy - cy, cy - maxCy));
+        int r1 = max(max(cx - minCx, maxCx - cx), max(cy - minCy, maxCy - cy));
+        MapNode nearest = null;
+        double nearestDistanceSq = Double.POSITIVE_INFINITY;
+        for (int r = max(r0, 0); r <= r1; r++) {
+            // Stops if the ring is farther than the nearest node
+            double ringDistance = (r - 1) * cellSize;
+            if (nearest != null && ringDistance > 0 && ringDistance * ringDistance > nearestDistanceSq) {
+                break;
+            }
+            // Scans the rows and the columns of the ring within the bounds
+            int x0 = max(cx - r, minCx);
+            int x1 = min(cx + r, maxCx);
+            int y0 = max(cy - r + 1, minCy);
+            int y1 = min(cy + r - 1, maxCy);
+            for (int x = x0; x <= x1; x++) {
+                for (MapNode node : nodesAt(x, cy - r)) {
+                    double distanceSq = node.getLocation().distanceSq(point);
+                    if (distanceSq < nearestDistanceSq) {
+                        nearest = node;
+                        nearestDistanceSq = distanceSq;
+                    }
+                }
+                if (r > 0) {
+                    for (MapNode node : nodesAt(x, cy + r)) {
+                        double distanceSq = node.getLocation().distanceSq(point);
+                        if (distanceSq < nearestDistanceSq) {
+                            nearest = node;
+                            nearestDistanceSq = distanceSq;
+                        }
+                    }
+                }
+            }
+            for (int y = y0; y <= y1; y++) {
+                for (MapNode node : nodesAt(cx - r, y)) {
+                    double distanceSq = node.getLocation().distanceSq(point);
+                    if (distanceSq < nearestDistanceSq) {
+                        nearest = node;
+                        nearestDistanceSq = distanceSq;
+                    }
+                }
+                for (MapNode node : nodesAt(cx + r, y)) {
+                    double distanceSq = node.getLocation().distanceSq(point);
+                    if (distanceSq < nearestDistanceSq) {
+                        nearest = node;
+                        nearestDistanceSq = distanceSq;
+                    }
+                }
+            }
+        }
+        return Optional.ofNullable(nearest);
+    }
+
+    /**
+     * Returns the nodes within a distance from a point
+     *
+     * @param point  the point
+     * @param radius the distance
+     */
+    public List<MapNode> findWithin(Point2D point, double radius) {
+        requireNonNull(point);
+        List<MapNode> result = new ArrayList<>();
+        if (size == 0 || radius < 0) {
+            return result;
+        }
+        double radiusSq = radius * radius;
+        int x0 = max(cell(point.getX() - radius), minCx);
+        int x1 = min(cell(point.getX() + radius), maxCx);
+        int y0 = max(cell(point.getY() - radius), minCy);
+        int y1 = min(cell(point.getY() + radius), maxCy);
+        for (int x = x0; x <= x1; x++) {
+            for (int y = y0; y <= y1; y++) {
+                for (MapNode node : nodesAt(x, y)) {
+                    if (node.getLocation().distanceSq(point) <= radiusSq) {
+                        result.add(node);
+                    }
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns the cell size
+     */
+    public double getCellSize() {
+        return cellSize;
+    }
+
+    /**
+     * Returns all the nodes of the grid
+     */
+    private List<MapNode> getNodes() {
+        List<MapNode> result = new ArrayList<>(size);
+        Deque<Object[]> stack = new ArrayDeque<>();
+        Deque<Integer> depths = new ArrayDeque<>();
+        stack.push(root);
+        depths.push(0);
+        while (!stack.isEmpty()) {
+            Object[] array = stack.pop();
+            int depth = depths.pop();
+            for (Object child : array) {
+                if (child == null) {
+                    continue;
+                }
+                if (depth < TRIE_DEPTH - 1) {
+                    stack.push((Object[]) child);
+                    depths.push(depth + 1);
+                } else {
+                    for (Cell cell : (Cell[]) child) {
+                        result.addAll(Arrays.asList(cell.nodes));
+                    }
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns the nodes in a cell
+     *
+     * @param cx the cell column
+     * @param cy the cell row
+     */
+    private MapNode[] nodesAt(int cx, int cy) {
+        long key = key(cx, cy);
+        int h = hash(key);
+        Object[] array = root;
+        for (int d = 0; d < TRIE_DEPTH - 1; d++) {
+            array = (Object[]) array[(h >>> (d * TRIE_BITS)) & TRIE_MASK];
+            if (array == null) {
+                return NO_NODES;
+            }
+        }
+        Cell[] bucket = (Cell[]) array[(h >>> ((TRIE_DEPTH - 1) * TRIE_BITS)) & TRIE_MASK];
+        if (bucket != null) {
+            for (Cell cell : bucket) {
+                if (cell.key == key) {
+                    return cell.nodes;
+                }
+            }
+        }
+        return NO_NODES;
+    }
+
+    /**
+     * Returns the number of nodes
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * The immutable nodes of a grid cell
+     */
+    private static class Cell {
+        final long key;
+        final MapNode[] nodes;
+
+        Cell(long key, MapNode[] nodes) {
+            this.key = key;
+            this.nodes = nodes;
+        }
+    }
+}
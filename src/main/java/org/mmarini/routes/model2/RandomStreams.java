@@ -0,0 +1,140 @@
+/*
+ *
+ * Copyright (c) 2023 Marco Marini, marco.marini@mmarini.org
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ *
+ *    END OF TERMS AND CONDITIONS
+ */
+
+package org.mmarini.routes.model2;
+
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+/**
+ * The reproducible random streams of a simulation.
+ * <p>
+ * The streams are derived from a single root seed for each replica and for each site,
+ * so the generation of a site does not depend on the generation order of the other sites
+ * and can run in parallel with the same results.
+ * </p>
+ */
+public class RandomStreams {
+    private static final long GOLDEN_GAMMA = 0x9e3779b97f4a7c15L;
+
+    /**
+     * Returns the streams of the first replica from a root seed
+     *
+     * @param seed the root seed
+     */
+    public static RandomStreams createStreams(long seed) {
+        return new RandomStreams(seed, 0);
+    }
+
+    /**
+     * Returns the mixed bits of a value (SplitMix64 finalizer)
+     *
+     * @param z the value
+     */
+    static long mix64(long z) {
+        z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+        z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+        return z ^ (z >>> 31);
+    }
+
+    /**
+     * Returns the seed derived from a parent seed for a child index
+     *
+     * @param seed  the parent seed
+     * @param index the child index
+     */
+    static long deriveSeed(long seed, long index) {
+        return mix64(seed + GOLDEN_GAMMA * (index + 1));
+    }
+
+    private final long seed;
+    private final int replica;
+    private final long replicaSeed;
+    private SplittableRandom[] siteStreams;
+
+    /**
+     * Creates the streams
+     *
+     * @param seed    the root seed
+     * @param replica the replica index
+     */
+    protected RandomStreams(long seed, int replica) {
+        this.seed = seed;
+        this.replica = replica;
+        this.replicaSeed = deriveSeed(seed, replica);
+        this.siteStreams = new SplittableRandom[0];
+    }
+
+    /**
+     * Returns the replica index
+     */
+    public int getReplica() {
+        return replica;
+    }
+
+    /**
+     * Returns the root seed
+     */
+    public long getSeed() {
+        return seed;
+    }
+
+    /**
+     * Returns the random stream of a site
+     *
+     * @param site the site index
+     */
+    public SplittableRandom getSiteStream(int site) {
+        return getSiteStreams(site + 1)[site];
+    }
+
+    /**
+     * Returns the random streams of the sites creating the missing ones
+     *
+     * @param siteCount the number of sites
+     */
+    public SplittableRandom[] getSiteStreams(int siteCount) {
+        int n = siteStreams.length;
+        if (siteCount > n) {
+            siteStreams = Arrays.copyOf(siteStreams, siteCount);
+            for (int i = n; i < siteCount; i++) {
+                siteStreams[i] = new SplittableRandom(deriveSeed(replicaSeed, i));
+            }
+        }
+        return siteStreams;
+    }
+
+    /**
+     * Returns the streams of a replica with the same root seed
+     *
+     * @param replica the replica index
+     */
+    public RandomStreams replica(int replica) {
+        return new RandomStreams(seed, replica);
+    }
+}
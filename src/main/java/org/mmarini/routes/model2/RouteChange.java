@@ -0,0 +1,120 @@
+/*
+ *
+ * Copyright (c) 2023 Marco Marini, marco.marini@mmarini.org
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ *
+ *    END OF TERMS AND CONDITIONS
+ */
+
+package org.mmarini.routes.model2;
+
+import java.util.Objects;
+import java.util.StringJoiner;
+
+/**
+ * The change of the next edge from a node to a destination node
+ */
+public class RouteChange {
+    /**
+     * Returns the route change
+     *
+     * @param from         the departure node id
+     * @param to           the destination node id
+     * @param previousEdge the previous next edge id (-1 if the destination was unreachable)
+     * @param nextEdge     the new next edge id (-1 if the destination is unreachable)
+     */
+    public static RouteChange createChange(int from, int to, int previousEdge, int nextEdge) {
+        return new RouteChange(from, to, previousEdge, nextEdge);
+    }
+
+    private final int from;
+    private final int to;
+    private final int previousEdge;
+    private final int nextEdge;
+
+    /**
+     * Creates the route change
+     *
+     * @param from         the departure node id
+     * @param to           the destination node id
+     * @param previousEdge the previous next edge id (-1 if the destination was unreachable)
+     * @param nextEdge     the new next edge id (-1 if the destination is unreachable)
+     */
+    protected RouteChange(int from, int to, int previousEdge, int nextEdge) {
+        this.from = from;
+        this.to = to;
+        this.previousEdge = previousEdge;
+        this.nextEdge = nextEdge;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        RouteChange that = (RouteChange) o;
+        return from == that.from && to == that.to && previousEdge == that.previousEdge && nextEdge == that.nextEdge;
+    }
+
+    /**
+     * Returns the departure node id
+     */
+    public int getFrom() {
+        return from;
+    }
+
+    /**
+     * Returns the new next edge id (-1 if the destination is unreachable)
+     */
+    public int getNextEdge() {
+        return nextEdge;
+    }
+
+    /**
+     * Returns the previous next edge id (-1 if the destination was unreachable)
+     */
+    public int getPreviousEdge() {
+        return previousEdge;
+    }
+
+    /**
+     * Returns the destination node id
+     */
+    public int getTo() {
+        return to;
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(from, to, previousEdge, nextEdge);
+    }
+
+    @Override
+    public String toString() {
+        return new StringJoiner(", ", RouteChange.class.getSimpleName() + "[", "]")
+                .add("from=" + from)
+                .add("to=" + to)
+                .add("previousEdge=" + previousEdge)
+                .add("nextEdge=" + nextEdge)
+                .toString();
+    }
+}
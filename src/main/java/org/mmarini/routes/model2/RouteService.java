@@ -0,0 +1,251 @@
+/*
+ *
+ * Copyright (c) 2023 Marco Marini, marco.marini@mmarini.org
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ *
+ *    END OF TERMS AND CONDITIONS
+ */
+
+package org.mmarini.routes.model2;
+
+import io.reactivex.rxjava3.core.Scheduler.Worker;
+import io.reactivex.rxjava3.schedulers.Schedulers;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * The service computing and publishing the route tables.
+ * <p>
+ * The service is bound to a new dedicated thread worker that computes the routes on request.
+ * The requests are coalesced: when the worker is busy only the last request is processed.
+ * The routes are repaired incrementally by the dynamic routes while the topology does not change
+ * or, if a router is set (e.g. contraction hierarchy for large maps), are computed by the router.
+ * Each computed table is published with an increasing version and may be picked up atomically
+ * by the traffic engine at the next simulation step.
+ * </p>
+ * <p>
+ * The traffic engine requests new routes only when the topology changes or when the aggregated drift
+ * of the edge transit times from the last request exceeds the drift threshold.
+ * The drift is the sum of absolute changes of edge transit times relative to the total transit time.
+ * </p>
+ */
+public class RouteService {
+    public static final double DEFAULT_DRIFT_THRESHOLD = 0.1;
+    private static final Logger logger = LoggerFactory.getLogger(RouteService.class);
+
+    /**
+     * Returns the route service with the default drift threshold
+     */
+    public static RouteService createService() {
+        return createService(DEFAULT_DRIFT_THRESHOLD);
+    }
+
+    /**
+     * Returns the route service
+     *
+     * @param driftThreshold the relative drift of transit times triggering the computation of routes
+     */
+    public static RouteService createService(double driftThreshold) {
+        return createService(driftThreshold, null);
+    }
+
+    /**
+     * Returns the route service computing the routes by a router
+     *
+     * @param driftThreshold the relative drift of transit times triggering the computation of routes
+     * @param router         the router or null if routes repaired incrementally
+     */
+    public static RouteService createService(double driftThreshold, Router router) {
+        return new RouteService(Schedulers.newThread().createWorker(), driftThreshold, router);
+    }
+
+    private final Worker worker;
+    private final double driftThreshold;
+    private final Router router;
+    private final AtomicReference<Request> pending;
+    private final AtomicLong requestCount;
+    private volatile CompiledTopology requestedTopology;
+    private volatile RouteTable routes;
+    private volatile double publishedTime;
+    private volatile long latency;
+    private DynamicRoutes dynamicRoutes;
+    private RouteTable lastTable;
+
+    /**
+     * Creates the route service
+     *
+     * @param worker         the assigned worker
+     * @param driftThreshold the relative drift of transit times triggering the computation of routes
+     * @param router         the router or null if routes repaired incrementally
+     */
+    protected RouteService(Worker worker, double driftThreshold, Router router) {
+        this.worker = requireNonNull(worker);
+        this.driftThreshold = driftThreshold;
+        this.router = router;
+        this.pending = new AtomicReference<>();
+        this.requestCount = new AtomicLong();
+        this.publishedTime = Double.NaN;
+    }
+
+    /**
+     * Returns the relative drift of transit times triggering the computation of routes
+     */
+    public double getDriftThreshold() {
+        return driftThreshold;
+    }
+
+    /**
+     * Returns the router or null if routes repaired incrementally
+     */
+    public Router getRouter() {
+        return router;
+    }
+
+    /**
+     * Returns the elapsed time in nanoseconds from the request to the publication of the last routes
+     */
+    public long getLatency() {
+        return latency;
+    }
+
+    /**
+     * Returns the simulation time of the transit times of the published routes (NaN if no routes)
+     */
+    public double getPublishedTime() {
+        return publishedTime;
+    }
+
+    /**
+     * Returns the number of requests
+     */
+    public long getRequestCount() {
+        return requestCount.get();
+    }
+
+    /**
+     * Returns the topology of the last request
+     */
+    public CompiledTopology getRequestedTopology() {
+        return requestedTopology;
+    }
+
+    /**
+     * Returns the last published routes (null if no routes)
+     */
+    public RouteTable getRoutes() {
+        return routes;
+    }
+
+    /**
+     * Returns the simulation time elapsed from the transit times of published routes (NaN if no routes)
+     *
+     * @param time the current simulation time
+     */
+    public double getStaleness(double time) {
+        return time - publishedTime;
+    }
+
+    /**
+     * Returns the version of published routes (0 if no routes)
+     */
+    public long getVersion() {
+        RouteTable table = routes;
+        return table != null ? table.getVersion() : 0;
+    }
+
+    /**
+     * Processes the pending request
+     */
+    private void process() {
+        Request request = pending.getAndSet(null);
+        if (request != null) {
+            try {
+                RouteTable table;
+                if (router != null) {
+                    table = RouteTable.createTable(request.topology,
+                            router.computeTrees(request.topology, request.edgeTravelTimes));
+                } else if (dynamicRoutes == null || dynamicRoutes.getTopology() != request.topology) {
+                    dynamicRoutes = DynamicRoutes.createRoutes(request.topology, request.edgeTravelTimes);
+                    table = dynamicRoutes.getRouteTable();
+                } else {
+                    List<RouteChange> changes = dynamicRoutes.update(request.edgeTravelTimes);
+                    table = lastTable.setChanges(changes, dynamicRoutes.getTrees());
+                }
+                lastTable = table.setVersion(lastTable != null ? lastTable.getVersion() + 1 : 1);
+                publishedTime = request.time;
+                latency = System.nanoTime() - request.instant;
+                routes = lastTable;
+                logger.debug("Published routes version {}", lastTable.getVersion());
+            } catch (Throwable ex) {
+                logger.error(ex.getMessage(), ex);
+            }
+        }
+    }
+
+    /**
+     * Requests the computation of routes
+     *
+     * @param topology        the compiled topology
+     * @param edgeTravelTimes the edge travel times by edge id
+     * @param time            the simulation time of the edge travel times
+     */
+    public void request(CompiledTopology topology, double[] edgeTravelTimes, double time) {
+        requireNonNull(topology);
+        requireNonNull(edgeTravelTimes);
+        requestedTopology = topology;
+        requestCount.incrementAndGet();
+        if (pending.getAndSet(new Request(topology, edgeTravelTimes, time, System.nanoTime())) == null) {
+            worker.schedule(this::process);
+        }
+    }
+
+    /**
+     * Stops the service
+     */
+    public void shutdown() {
+        worker.dispose();
+    }
+
+    /**
+     * The request of routes computation
+     */
+    static class Request {
+        final CompiledTopology topology;
+        final double[] edgeTravelTimes;
+        final double time;
+        final long instant;
+
+        Request(CompiledTopology topology, double[] edgeTravelTimes, double time, long instant) {
+            this.topology = topology;
+            this.edgeTravelTimes = edgeTravelTimes;
+            this.time = time;
+            this.instant = instant;
+        }
+    }
+}
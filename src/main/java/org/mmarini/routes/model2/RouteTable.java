@@ -0,0 +1,304 @@
+/*
+ *
+ * Copyright (c) 2023 Marco Marini, marco.marini@mmarini.org
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ *
+ *    END OF TERMS AND CONDITIONS
+ */
+
+package org.mmarini.routes.model2;
+
+import org.mmarini.Tuple2;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * The immutable table of next edges from each node to each destination site.
+ * <p>
+ * The next edge ids are stored in a single array indexed by node id and site index
+ * (the site node ids are in the range [0, siteCount) of the compiled topology) so that
+ * the lookups do not require any allocation.
+ * The tables computed from the shortest path trees carry also the dense matrix of travel times from site to site
+ * (the shortest path distances) so that the site to site transit times do not require to walk the routes.
+ * The table may be shared between the traffic engine and the status snapshots.
+ * The version identifies the publication of the table by the route service (0 if not published).
+ * </p>
+ */
+public class RouteTable {
+    /**
+     * Returns the route table from the edge travel times
+     *
+     * @param topology        the compiled topology
+     * @param edgeTravelTimes the edge travel times by edge id
+     */
+    public static RouteTable createTable(CompiledTopology topology, double[] edgeTravelTimes) {
+        return createTable(topology, Routes.computeTrees(topology, edgeTravelTimes));
+    }
+
+    /**
+     * Returns the route table from the shortest path trees to sites
+     *
+     * @param topology the compiled topology
+     * @param trees    the shortest path trees
+     */
+    public static RouteTable createTable(CompiledTopology topology, ShortestPathTree[] trees) {
+        requireNonNull(topology);
+        requireNonNull(trees);
+        int siteCount = topology.getSiteCount();
+        int[] nextEdges = new int[topology.getNodeCount() * siteCount];
+        Arrays.fill(nextEdges, -1);
+        for (ShortestPathTree tree : trees) {
+            int site = tree.getTarget();
+            for (int node = 0; node < tree.getNodeCount(); node++) {
+                nextEdges[node * siteCount + site] = tree.getNextEdge(node);
+            }
+        }
+        return new RouteTable(topology, nextEdges, createDistances(siteCount, trees), 0);
+    }
+
+    /**
+     * Returns the travel times by departure and destination site indices from the shortest path trees
+     *
+     * @param siteCount the number of sites
+     * @param trees     the shortest path trees
+     */
+    private static double[] createDistances(int siteCount, ShortestPathTree[] trees) {
+        double[] distances = new double[siteCount * siteCount];
+        Arrays.fill(distances, Double.POSITIVE_INFINITY);
+        for (ShortestPathTree tree : trees) {
+            int site = tree.getTarget();
+            for (int from = 0; from < siteCount; from++) {
+                distances[from * siteCount + site] = tree.getDistance(from);
+            }
+        }
+        return distances;
+    }
+
+    /**
+     * Returns the route table from the route map
+     *
+     * @param topology the compiled topology
+     * @param routes   the next edge by departure and destination nodes
+     */
+    public static RouteTable createTable(CompiledTopology topology, Map<Tuple2<MapNode, MapNode>, MapEdge> routes) {
+        requireNonNull(topology);
+        requireNonNull(routes);
+        int siteCount = topology.getSiteCount();
+        int[] nextEdges = new int[topology.getNodeCount() * siteCount];
+        Arrays.fill(nextEdges, -1);
+        for (Map.Entry<Tuple2<MapNode, MapNode>, MapEdge> entry : routes.entrySet()) {
+            int from = topology.nodeId(entry.getKey()._1);
+            int to = topology.nodeId(entry.getKey()._2);
+            int edge = topology.edgeId(entry.getValue());
+            if (from >= 0 && to >= 0 && to < siteCount && edge >= 0) {
+                nextEdges[from * siteCount + to] = edge;
+            }
+        }
+        return new RouteTable(topology, nextEdges, null, 0);
+    }
+
+    private final CompiledTopology topology;
+    private final int siteCount;
+    private final int[] nextEdges;
+    private final double[] distances;
+    private final long version;
+
+    /**
+     * Creates the route table
+     *
+     * @param topology  the compiled topology
+     * @param nextEdges the next edge ids by node id and site index (-1 if unreachable)
+     * @param distances the travel times by departure and destination site indices (infinity if unreachable)
+     *                  or null if unknown
+     * @param version   the version
+     */
+    protected RouteTable(CompiledTopology topology, int[] nextEdges, double[] distances, long version) {
+        this.topology = requireNonNull(topology);
+        this.nextEdges = requireNonNull(nextEdges);
+        this.distances = distances;
+        this.siteCount = topology.getSiteCount();
+        this.version = version;
+    }
+
+    /**
+     * Returns the travel time from a site to another site (infinity if unreachable)
+     *
+     * @param from the departure site index
+     * @param to   the destination site index
+     * @throws IllegalStateException if the table has no distances
+     */
+    public double getDistance(int from, int to) {
+        if (distances == null) {
+            throw new IllegalStateException("missing distances");
+        }
+        return distances[from * siteCount + to];
+    }
+
+    /**
+     * Returns the copy of travel time matrix from site to site by site indices (infinity if unreachable)
+     *
+     * @throws IllegalStateException if the table has no distances
+     */
+    public double[][] getDistanceMatrix() {
+        if (distances == null) {
+            throw new IllegalStateException("missing distances");
+        }
+        double[][] result = new double[siteCount][siteCount];
+        for (int i = 0; i < siteCount; i++) {
+            System.arraycopy(distances, i * siteCount, result[i], 0, siteCount);
+        }
+        return result;
+    }
+
+    /**
+     * Returns the next edge id from a node to a site (-1 if unreachable)
+     *
+     * @param node the node id
+     * @param site the site index
+     */
+    public int getNextEdge(int node, int site) {
+        return nextEdges[node * siteCount + site];
+    }
+
+    /**
+     * Returns the next edge from a node to a site if any.
+     * The nodes are looked up by id, the simulation uses {@link #getNextEdge(int, int)}
+     *
+     * @param from the departure node
+     * @param to   the destination site
+     */
+    public Optional<MapEdge> getNextEdge(MapNode from, MapNode to) {
+        return Optional.ofNullable(nextEdgeOrNull(from, to));
+    }
+
+    /**
+     * Returns the number of sites
+     */
+    public int getSiteCount() {
+        return siteCount;
+    }
+
+    /**
+     * Returns the compiled topology
+     */
+    public CompiledTopology getTopology() {
+        return topology;
+    }
+
+    /**
+     * Returns true if the table has the site to site travel times
+     */
+    public boolean hasDistances() {
+        return distances != null;
+    }
+
+    /**
+     * Returns the version
+     */
+    public long getVersion() {
+        return version;
+    }
+
+    /**
+     * Returns the next edge from a node to a site or null if unreachable.
+     * The nodes are looked up by id, the simulation uses {@link #getNextEdge(int, int)}
+     *
+     * @param from the departure node
+     * @param to   the destination site
+     */
+    public MapEdge nextEdgeOrNull(MapNode from, MapNode to) {
+        int node = topology.nodeId(from);
+        int site = topology.nodeId(to);
+        if (node < 0 || site < 0 || site >= siteCount) {
+            return null;
+        }
+        int edge = nextEdges[node * siteCount + site];
+        return edge >= 0 ? topology.getEdges().get(edge) : null;
+    }
+
+    /**
+     * Returns the route table with the changes applied.
+     * The changes do not carry the travel times so the resulting table has no distances.
+     *
+     * @param changes the route changes
+     */
+    public RouteTable setChanges(List<RouteChange> changes) {
+        requireNonNull(changes);
+        if (changes.isEmpty()) {
+            return this;
+        }
+        int[] newNextEdges = Arrays.copyOf(nextEdges, nextEdges.length);
+        for (RouteChange change : changes) {
+            newNextEdges[change.getFrom() * siteCount + change.getTo()] = change.getNextEdge();
+        }
+        return new RouteTable(topology, newNextEdges, null, version);
+    }
+
+    /**
+     * Returns the route table with the changes applied and the distances of the repaired shortest path trees.
+     * The distances are refreshed even if no route changes because the travel times may change
+     * without changing the next edges.
+     *
+     * @param changes the route changes
+     * @param trees   the shortest path trees after the changes
+     */
+    public RouteTable setChanges(List<RouteChange> changes, ShortestPathTree[] trees) {
+        requireNonNull(trees);
+        RouteTable table = setChanges(changes);
+        return new RouteTable(topology, table.nextEdges, createDistances(siteCount, trees), version);
+    }
+
+    /**
+     * Returns the route table with a version
+     *
+     * @param version the version
+     */
+    public RouteTable setVersion(long version) {
+        // The next edges and distances are never modified so they can be shared
+        return new RouteTable(topology, nextEdges, distances, version);
+    }
+
+    /**
+     * Returns the map of next edges by departure and destination nodes
+     */
+    public Map<Tuple2<MapNode, MapNode>, MapEdge> toMap() {
+        List<MapNode> nodes = topology.getNodes();
+        List<MapEdge> edges = topology.getEdges();
+        Map<Tuple2<MapNode, MapNode>, MapEdge> result = new HashMap<>();
+        for (int node = 0; node < nodes.size(); node++) {
+            for (int site = 0; site < siteCount; site++) {
+                int edge = nextEdges[node * siteCount + site];
+                if (edge >= 0) {
+                    result.put(Tuple2.of(nodes.get(node), nodes.get(site)), edges.get(edge));
+                }
+            }
+        }
+        return result;
+    }
+}
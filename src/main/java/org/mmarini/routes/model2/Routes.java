@@ -31,9 +31,11 @@ package org.mmarini.routes.model2;
 import org.mmarini.Tuple2;
 
 import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 import java.util.stream.Stream;
 
 import static org.mmarini.Tuple2.swap;
@@ -114,6 +116,148 @@ public interface Routes {
         return createRoutes(nodes, edgeMatrix, nextMatrix);
     }
 
+    /**
+     * Returns the routes of a topology
+     *
+     * @param topology        the topology
+     * @param edgeTravelTimes the edge travel times
+     */
+    static Map<Tuple2<MapNode, MapNode>, MapEdge> computeRoutes(Topology topology, TransitTimes edgeTravelTimes) {
+        CompiledTopology compiled = topology.getCompiled();
+        return computeRoutes(compiled, toEdgeTravelTimes(compiled, edgeTravelTimes));
+    }
+
+    /**
+     * Returns the edge travel times by edge id of a compiled topology
+     *
+     * @param topology        the compiled topology
+     * @param edgeTravelTimes the edge travel times
+     */
+    static double[] toEdgeTravelTimes(CompiledTopology topology, TransitTimes edgeTravelTimes) {
+        return edgeTravelTimes.toArray(topology.getEdges());
+    }
+
+    /**
+     * Returns the routes of a compiled topology
+     * The routes are computed by a reverse Dijkstra search from each destination site in parallel.
+     * The next edges are the same of the Floyd-Warshall algorithm except for paths with the same travel time
+     * that may resolve to a different edge.
+     *
+     * @param topology        the compiled topology
+     * @param edgeTravelTimes the edge travel times by edge id
+     */
+    static Map<Tuple2<MapNode, MapNode>, MapEdge> computeRoutes(CompiledTopology topology, double[] edgeTravelTimes) {
+        return createRoutes(topology, computeTrees(topology, edgeTravelTimes));
+    }
+
+    /**
+     * Returns the routes of the shortest path trees
+     *
+     * @param topology the compiled topology
+     * @param trees    the shortest path trees
+     */
+    static Map<Tuple2<MapNode, MapNode>, MapEdge> createRoutes(CompiledTopology topology, ShortestPathTree[] trees) {
+        List<MapNode> nodes = topology.getNodes();
+        List<MapEdge> edges = topology.getEdges();
+        Map<Tuple2<MapNode, MapNode>, MapEdge> result = new HashMap<>();
+        for (ShortestPathTree tree : trees) {
+            MapNode to = nodes.get(tree.getTarget());
+            for (int i = 0; i < tree.getNodeCount(); i++) {
+                int next = tree.getNextEdge(i);
+                if (next >= 0) {
+                    result.put(Tuple2.of(nodes.get(i), to), edges.get(next));
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns the shortest path trees to each site of a compiled topology computed in parallel
+     *
+     * @param topology        the compiled topology
+     * @param edgeTravelTimes the edge travel times by edge id
+     */
+    static ShortestPathTree[] computeTrees(CompiledTopology topology, double[] edgeTravelTimes) {
+        List<MapNode> nodes = topology.getNodes();
+        boolean[] shadowed = ShortestPathTree.createShadowedEdges(topology);
+        return IntStream.range(0, nodes.size())
+                .filter(i -> nodes.get(i) instanceof SiteNode)
+                .parallel()
+                .mapToObj(i -> ShortestPathTree.createTree(topology, edgeTravelTimes, shadowed, i))
+                .toArray(ShortestPathTree[]::new);
+    }
+
+    /**
+     * Returns the routes of a compiled topology by Floyd-Warshall algorithm
+     * The nodes are processed in order of appearance in the edge list
+     *
+     * @param topology        the compiled topology
+     * @param edgeTravelTimes the edge travel times by edge id
+     */
+    static Map<Tuple2<MapNode, MapNode>, MapEdge> computeFloydWarshallRoutes(CompiledTopology topology, double[] edgeTravelTimes) {
+        int m = topology.getEdgeCount();
+        // Maps the node ids to the order of appearance in the edges
+        int[] indexByNodeId = new int[topology.getNodeCount()];
+        Arrays.fill(indexByNodeId, -1);
+        int[] nodeIds = new int[topology.getNodeCount()];
+        int n = 0;
+        for (int i = 0; i < m; i++) {
+            if (!topology.isEdgeAlive(i)) {
+                continue;
+            }
+            int begin = topology.getEdgeBegin(i);
+            if (indexByNodeId[begin] < 0) {
+                nodeIds[n] = begin;
+                indexByNodeId[begin] = n++;
+            }
+            int end = topology.getEdgeEnd(i);
+            if (indexByNodeId[end] < 0) {
+                nodeIds[n] = end;
+                indexByNodeId[end] = n++;
+            }
+        }
+        // Create initial adjacent matrices
+        int[][] previousMatrix = new int[n][n];
+        for (int[] matrix : previousMatrix) {
+            Arrays.fill(matrix, -1);
+        }
+        double[][] travelMatrix = new double[n][n];
+        for (double[] matrix : travelMatrix) {
+            Arrays.fill(matrix, Double.POSITIVE_INFINITY);
+        }
+        int[][] edgeMatrix = new int[n][n];
+        for (int k = 0; k < m; k++) {
+            if (!topology.isEdgeAlive(k)) {
+                continue;
+            }
+            int i = indexByNodeId[topology.getEdgeBegin(k)];
+            int j = indexByNodeId[topology.getEdgeEnd(k)];
+            travelMatrix[i][j] = edgeTravelTimes[k];
+            previousMatrix[i][j] = i;
+            edgeMatrix[i][j] = k;
+        }
+
+        // Computes the optimal paths
+        int[][] nextMatrix = nextMatrix(floydWarshall(previousMatrix, travelMatrix));
+
+        // Convert to path map
+        List<MapNode> nodes = topology.getNodes();
+        List<MapEdge> edges = topology.getEdges();
+        Map<Tuple2<MapNode, MapNode>, MapEdge> result = new HashMap<>();
+        for (int i = 0; i < n; i++) {
+            MapNode from = nodes.get(nodeIds[i]);
+            for (int j = 0; j < n; j++) {
+                int next = nextMatrix[i][j];
+                MapNode to = nodes.get(nodeIds[j]);
+                if (next >= 0 && to instanceof SiteNode) {
+                    result.put(Tuple2.of(from, to), edges.get(edgeMatrix[i][next]));
+                }
+            }
+        }
+        return result;
+    }
+
     static Map<Tuple2<MapNode, MapNode>, MapEdge> createRoutes(List<MapNode> nodes, MapEdge[][] edgeMatrix, int[][] nextMatrix) {
         int n = nodes.size();
         Stream.Builder<Tuple2<Tuple2<MapNode, MapNode>, MapEdge>> builder = Stream.builder();
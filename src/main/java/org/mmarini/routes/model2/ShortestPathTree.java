@@ -0,0 +1,370 @@
+/*
+ *
+ * Copyright (c) 2023 Marco Marini, marco.marini@mmarini.org
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ *
+ *    END OF TERMS AND CONDITIONS
+ */
+
+package org.mmarini.routes.model2;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * The shortest path tree rooted at a destination node.
+ * <p>
+ * The tree is computed by a reverse Dijkstra search from the destination over the incoming edges
+ * and keeps, for each node, the travel time to the destination and the next edge to follow.
+ * The destination node has the first edge of the shortest cycle through it as next edge.
+ * Among parallel edges with the same begin and end nodes only the last one in edge order is considered.
+ * </p>
+ * <p>
+ * The tree may be repaired in place when the edge travel times change, processing only the nodes
+ * affected by the changes.
+ * </p>
+ */
+public class ShortestPathTree {
+
+    /**
+     * Returns the shortest path tree to a destination node
+     *
+     * @param topology        the compiled topology
+     * @param edgeTravelTimes the edge travel times by edge id
+     * @param shadowed        true for the edges hidden by a following parallel edge
+     * @param target          the destination node id
+     */
+    public static ShortestPathTree createTree(CompiledTopology topology, double[] edgeTravelTimes,
+                                              boolean[] shadowed, int target) {
+        requireNonNull(topology);
+        requireNonNull(edgeTravelTimes);
+        requireNonNull(shadowed);
+        int n = topology.getNodeCount();
+        double[] distances = new double[n];
+        Arrays.fill(distances, Double.POSITIVE_INFINITY);
+        distances[target] = 0;
+        SlotQueue queue = new SlotQueue();
+        queue.add(target, 0);
+        while (!queue.isEmpty()) {
+            double distance = queue.peekKey();
+            int node = queue.poll();
+            if (distance > distances[node]) {
+                // Stale entry
+                continue;
+            }
+            for (int edge : topology.getInEdges(node)) {
+                if (!shadowed[edge]) {
+                    int begin = topology.getEdgeBegin(edge);
+                    double newDistance = distance + edgeTravelTimes[edge];
+                    if (newDistance < distances[begin]) {
+                        distances[begin] = newDistance;
+                        queue.add(begin, newDistance);
+                    }
+                }
+            }
+        }
+        int[] nextEdges = new int[n];
+        for (int node = 0; node < n; node++) {
+            nextEdges[node] = nextEdge(topology, edgeTravelTimes, shadowed, distances, node);
+        }
+        return new ShortestPathTree(target, distances, nextEdges);
+    }
+
+    /**
+     * Returns the flags of edges hidden by a following parallel edge (same begin and end nodes)
+     * or removed from the topology
+     *
+     * @param topology the compiled topology
+     */
+    public static boolean[] createShadowedEdges(CompiledTopology topology) {
+        requireNonNull(topology);
+        int m = topology.getEdgeCount();
+        boolean[] result = new boolean[m];
+        for (int edge = 0; edge < m; edge++) {
+            result[edge] = !topology.isEdgeAlive(edge);
+        }
+        int[] lastEdgeByEnd = new int[topology.getNodeCount()];
+        Arrays.fill(lastEdgeByEnd, -1);
+        for (int node = 0; node < topology.getNodeCount(); node++) {
+            int[] outEdges = topology.getOutEdges(node);
+            for (int edge : outEdges) {
+                int end = topology.getEdgeEnd(edge);
+                lastEdgeByEnd[end] = Math.max(lastEdgeByEnd[end], edge);
+            }
+            for (int edge : outEdges) {
+                result[edge] = lastEdgeByEnd[topology.getEdgeEnd(edge)] != edge;
+            }
+            for (int edge : outEdges) {
+                lastEdgeByEnd[topology.getEdgeEnd(edge)] = -1;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns the next edge of a node toward the destination or -1 if the destination is unreachable
+     *
+     * @param topology        the compiled topology
+     * @param edgeTravelTimes the edge travel times by edge id
+     * @param shadowed        true for the edges hidden by a following parallel edge
+     * @param distances       the travel times to the destination by node id
+     * @param node            the node id
+     */
+    static int nextEdge(CompiledTopology topology, double[] edgeTravelTimes, boolean[] shadowed,
+                        double[] distances, int node) {
+        int result = -1;
+        double best = Double.POSITIVE_INFINITY;
+        for (int edge : topology.getOutEdges(node)) {
+            if (!shadowed[edge]) {
+                double distance = edgeTravelTimes[edge] + distances[topology.getEdgeEnd(edge)];
+                if (distance < best) {
+                    best = distance;
+                    result = edge;
+                }
+            }
+        }
+        return result;
+    }
+
+    private final int target;
+    private final double[] distances;
+    private final int[] nextEdges;
+    private boolean[] touched;
+    private boolean[] affected;
+    private double[] previousDistances;
+    private int[] touchedNodes;
+    private int touchedCount;
+    private int[] stack;
+
+    /**
+     * Creates the shortest path tree
+     *
+     * @param target    the destination node id
+     * @param distances the travel times to the destination by node id
+     * @param nextEdges the next edge ids by node id (-1 if unreachable)
+     */
+    protected ShortestPathTree(int target, double[] distances, int[] nextEdges) {
+        this.target = target;
+        this.distances = requireNonNull(distances);
+        this.nextEdges = requireNonNull(nextEdges);
+    }
+
+    /**
+     * Marks the subtree rooted at a node as affected by an increase of travel time
+     *
+     * @param topology the compiled topology
+     * @param shadowed true for the edges hidden by a following parallel edge
+     * @param root     the root node id
+     */
+    private void markSubtree(CompiledTopology topology, boolean[] shadowed, int root) {
+        int top = 0;
+        stack[top++] = root;
+        affected[root] = true;
+        touch(root);
+        while (top > 0) {
+            int node = stack[--top];
+            for (int edge : topology.getInEdges(node)) {
+                int child = topology.getEdgeBegin(edge);
+                if (!shadowed[edge] && child != target && !affected[child] && nextEdges[child] == edge) {
+                    affected[child] = true;
+                    touch(child);
+                    stack[top++] = child;
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the changes of next edges after repairing in place this tree for changed edge travel times.
+     * <p>
+     * The nodes whose shortest path contains an edge with increased travel time are reset
+     * and bound by their unaffected neighbours, the nodes reached by an edge with decreased travel time
+     * are lowered, then the new distances are propagated by Dijkstra search.
+     * Finally, the next edges are recomputed only for the nodes with changed distances, their predecessors
+     * and the beginning nodes of the changed edges.
+     * </p>
+     *
+     * @param topology                the compiled topology
+     * @param edgeTravelTimes         the new edge travel times by edge id
+     * @param shadowed                true for the edges hidden by a following parallel edge
+     * @param changedEdges            the ids of edges with changed travel time
+     * @param previousEdgeTravelTimes the previous edge travel times by edge id
+     */
+    List<RouteChange> repair(CompiledTopology topology, double[] edgeTravelTimes, boolean[] shadowed,
+                             int[] changedEdges, double[] previousEdgeTravelTimes) {
+        int n = nextEdges.length;
+        if (touched == null) {
+            touched = new boolean[n];
+            affected = new boolean[n];
+            previousDistances = new double[n];
+            touchedNodes = new int[n];
+            stack = new int[n];
+        }
+        // Marks the subtrees with increased travel time
+        for (int edge : changedEdges) {
+            int begin = topology.getEdgeBegin(edge);
+            if (!shadowed[edge] && edgeTravelTimes[edge] > previousEdgeTravelTimes[edge]
+                    && begin != target && nextEdges[begin] == edge && !affected[begin]) {
+                markSubtree(topology, shadowed, begin);
+            }
+        }
+        int affectedCount = touchedCount;
+        for (int i = 0; i < affectedCount; i++) {
+            distances[touchedNodes[i]] = Double.POSITIVE_INFINITY;
+        }
+        SlotQueue queue = new SlotQueue();
+        // Bounds the affected nodes by the unaffected neighbours
+        for (int i = 0; i < affectedCount; i++) {
+            int node = touchedNodes[i];
+            double best = Double.POSITIVE_INFINITY;
+            for (int edge : topology.getOutEdges(node)) {
+                int end = topology.getEdgeEnd(edge);
+                if (!shadowed[edge] && !affected[end]) {
+                    best = Math.min(best, edgeTravelTimes[edge] + distances[end]);
+                }
+            }
+            if (best < Double.POSITIVE_INFINITY) {
+                distances[node] = best;
+                queue.add(node, best);
+            }
+        }
+        // Lowers the nodes with decreased travel time
+        for (int edge : changedEdges) {
+            int begin = topology.getEdgeBegin(edge);
+            if (!shadowed[edge] && edgeTravelTimes[edge] < previousEdgeTravelTimes[edge] && begin != target) {
+                double distance = edgeTravelTimes[edge] + distances[topology.getEdgeEnd(edge)];
+                if (distance < distances[begin]) {
+                    touch(begin);
+                    distances[begin] = distance;
+                    queue.add(begin, distance);
+                }
+            }
+        }
+        // Propagates the changes
+        while (!queue.isEmpty()) {
+            double distance = queue.peekKey();
+            int node = queue.poll();
+            if (distance > distances[node]) {
+                // Stale entry
+                continue;
+            }
+            for (int edge : topology.getInEdges(node)) {
+                int begin = topology.getEdgeBegin(edge);
+                if (!shadowed[edge] && begin != target) {
+                    double newDistance = distance + edgeTravelTimes[edge];
+                    if (newDistance < distances[begin]) {
+                        touch(begin);
+                        distances[begin] = newDistance;
+                        queue.add(begin, newDistance);
+                    }
+                }
+            }
+        }
+        // Recomputes the next edges
+        List<RouteChange> result = new ArrayList<>();
+        for (int edge : changedEdges) {
+            updateNextEdge(topology, edgeTravelTimes, shadowed, topology.getEdgeBegin(edge), result);
+        }
+        for (int i = 0; i < touchedCount; i++) {
+            int node = touchedNodes[i];
+            if (distances[node] != previousDistances[node]) {
+                updateNextEdge(topology, edgeTravelTimes, shadowed, node, result);
+                for (int edge : topology.getInEdges(node)) {
+                    int begin = topology.getEdgeBegin(edge);
+                    updateNextEdge(topology, edgeTravelTimes, shadowed, begin, result);
+                }
+            }
+            touched[node] = false;
+            affected[node] = false;
+        }
+        touchedCount = 0;
+        return result;
+    }
+
+    /**
+     * Records the previous distance of a node the first time it is changed
+     *
+     * @param node the node id
+     */
+    private void touch(int node) {
+        if (!touched[node]) {
+            touched[node] = true;
+            previousDistances[node] = distances[node];
+            touchedNodes[touchedCount++] = node;
+        }
+    }
+
+    /**
+     * Updates the next edge of a node adding the change to the result
+     *
+     * @param topology        the compiled topology
+     * @param edgeTravelTimes the edge travel times by edge id
+     * @param shadowed        true for the edges hidden by a following parallel edge
+     * @param node            the node id
+     * @param result          the change list
+     */
+    private void updateNextEdge(CompiledTopology topology, double[] edgeTravelTimes, boolean[] shadowed, int node,
+                                List<RouteChange> result) {
+        int previous = nextEdges[node];
+        int next = nextEdge(topology, edgeTravelTimes, shadowed, distances, node);
+        if (next != previous) {
+            nextEdges[node] = next;
+            result.add(RouteChange.createChange(node, target, previous, next));
+        }
+    }
+
+    /**
+     * Returns the travel time from a node to the destination (infinity if unreachable)
+     *
+     * @param node the node id
+     */
+    public double getDistance(int node) {
+        return distances[node];
+    }
+
+    /**
+     * Returns the next edge id from a node to the destination (-1 if unreachable)
+     *
+     * @param node the node id
+     */
+    public int getNextEdge(int node) {
+        return nextEdges[node];
+    }
+
+    /**
+     * Returns the number of nodes
+     */
+    public int getNodeCount() {
+        return nextEdges.length;
+    }
+
+    /**
+     * Returns the destination node id
+     */
+    public int getTarget() {
+        return target;
+    }
+}
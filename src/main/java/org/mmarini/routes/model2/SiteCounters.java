@@ -0,0 +1,216 @@
+/*
+ *
+ * Copyright (c) 2023 Marco Marini, marco.marini@mmarini.org
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ *
+ *    END OF TERMS AND CONDITIONS
+ */
+
+package org.mmarini.routes.model2;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Running traffic counters by site index.
+ * <p>
+ * The counters are the number of vehicles to each site destination and the number of vehicles waiting at each site.
+ * The vehicle store keeps them updated on vehicle creation, departure, arrival and removal,
+ * the status snapshots carry a copy of them.
+ * The delay accumulators are the number of delayed vehicles to each site destination
+ * and the sum of their deadlines (creation time plus free flow round trip time),
+ * so the total delay time at a given time is the number of delayed vehicles by the time minus the sum of deadlines.
+ * Negative site indices (unknown sites) are ignored.
+ * </p>
+ */
+public class SiteCounters {
+    /**
+     * Returns the zero counters
+     *
+     * @param siteCount the number of sites
+     */
+    public static SiteCounters create(int siteCount) {
+        return new SiteCounters(new int[siteCount], new int[siteCount], new int[siteCount], new double[siteCount]);
+    }
+
+    /**
+     * Returns the counters of vehicles computed in a single pass
+     *
+     * @param topology the topology
+     * @param vehicles the vehicles
+     * @param time     the time of delays
+     */
+    public static SiteCounters create(Topology topology, Collection<Vehicle> vehicles, double time) {
+        requireNonNull(topology);
+        requireNonNull(vehicles);
+        List<SiteNode> sites = topology.getSites();
+        CompiledTopology compiled = topology.getCompiled();
+        Map<MapNode, Integer> indexBySite = new HashMap<>();
+        for (int i = 0; i < sites.size(); i++) {
+            indexBySite.put(sites.get(i), i);
+        }
+        SiteCounters counters = create(sites.size());
+        for (Vehicle vehicle : vehicles) {
+            counters.addVehicle(indexBySite.getOrDefault(vehicle.getDestination(), -1), 1);
+            if (vehicle.getCurrentEdge().isEmpty()) {
+                counters.addWaiting(indexBySite.getOrDefault(vehicle.isReturning()
+                        ? vehicle.getDestination()
+                        : vehicle.getDeparture(), -1), 1);
+            }
+            int from = indexBySite.getOrDefault(vehicle.getDeparture(), -1);
+            int to = indexBySite.getOrDefault(vehicle.getDestination(), -1);
+            if (from >= 0 && to >= 0) {
+                double deadline = vehicle.getCreationTime() + compiled.getFreeRoundTripTime(from, to);
+                if (deadline < time) {
+                    counters.addDelay(to, 1, deadline);
+                }
+            }
+        }
+        return counters;
+    }
+
+    private final int[] vehicleCount;
+    private final int[] waitingCount;
+    private final int[] delayCount;
+    private final double[] deadlineSum;
+
+    /**
+     * Creates the counters
+     *
+     * @param vehicleCount the number of vehicles by destination site index
+     * @param waitingCount the number of waiting vehicles by site index
+     * @param delayCount   the number of delayed vehicles by destination site index
+     * @param deadlineSum  the sum of deadlines of delayed vehicles by destination site index
+     */
+    protected SiteCounters(int[] vehicleCount, int[] waitingCount, int[] delayCount, double[] deadlineSum) {
+        this.vehicleCount = requireNonNull(vehicleCount);
+        this.waitingCount = requireNonNull(waitingCount);
+        this.delayCount = requireNonNull(delayCount);
+        this.deadlineSum = requireNonNull(deadlineSum);
+        assert vehicleCount.length == waitingCount.length;
+        assert vehicleCount.length == delayCount.length;
+        assert vehicleCount.length == deadlineSum.length;
+    }
+
+    /**
+     * Changes the number of delayed vehicles to a site destination
+     *
+     * @param site     the destination site index
+     * @param delta    the change of number
+     * @param deadline the deadline of vehicles (creation time plus free flow round trip time)
+     */
+    void addDelay(int site, int delta, double deadline) {
+        if (site >= 0) {
+            delayCount[site] += delta;
+            deadlineSum[site] += delta * deadline;
+        }
+    }
+
+    /**
+     * Changes the number of vehicles to a site destination
+     *
+     * @param site  the destination site index
+     * @param delta the change of number
+     */
+    void addVehicle(int site, int delta) {
+        if (site >= 0) {
+            vehicleCount[site] += delta;
+        }
+    }
+
+    /**
+     * Changes the number of vehicles waiting at a site
+     *
+     * @param site  the site index
+     * @param delta the change of number
+     */
+    void addWaiting(int site, int delta) {
+        if (site >= 0) {
+            waitingCount[site] += delta;
+        }
+    }
+
+    /**
+     * Resets the delay accumulators
+     */
+    void clearDelays() {
+        Arrays.fill(delayCount, 0);
+        Arrays.fill(deadlineSum, 0);
+    }
+
+    /**
+     * Returns a copy of counters
+     */
+    public SiteCounters copy() {
+        return new SiteCounters(vehicleCount.clone(), waitingCount.clone(), delayCount.clone(), deadlineSum.clone());
+    }
+
+    /**
+     * Returns the number of delayed vehicles to a site destination
+     *
+     * @param site the site index
+     */
+    public int getDelayCount(int site) {
+        return delayCount[site];
+    }
+
+    /**
+     * Returns the number of sites
+     */
+    public int getSiteCount() {
+        return vehicleCount.length;
+    }
+
+    /**
+     * Returns the total delay time of vehicles to a site destination
+     *
+     * @param site the site index
+     * @param time the time of delays
+     */
+    public double getTotalDelayTime(int site, double time) {
+        return delayCount[site] * time - deadlineSum[site];
+    }
+
+    /**
+     * Returns the number of vehicles to a site destination
+     *
+     * @param site the site index
+     */
+    public int getVehicleCount(int site) {
+        return vehicleCount[site];
+    }
+
+    /**
+     * Returns the number of vehicles waiting at a site
+     *
+     * @param site the site index
+     */
+    public int getWaitingCount(int site) {
+        return waitingCount[site];
+    }
+}
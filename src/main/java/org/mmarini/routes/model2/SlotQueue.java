@@ -0,0 +1,178 @@
+/*
+ *
+ * Copyright (c) 2023 Marco Marini, marco.marini@mmarini.org
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ *
+ *    END OF TERMS AND CONDITIONS
+ */
+
+package org.mmarini.routes.model2;
+
+import java.util.Arrays;
+
+/**
+ * The priority queue of vehicle slots ordered by a time key.
+ * <p>
+ * The slots with the same key are ordered by insertion (first in first out).
+ * The queue is a binary heap over primitive arrays.
+ * </p>
+ */
+public class SlotQueue {
+    private static final int DEFAULT_CAPACITY = 8;
+
+    private int[] slots;
+    private double[] keys;
+    private long[] sequences;
+    private int size;
+    private long sequence;
+
+    /**
+     * Creates an empty queue
+     */
+    public SlotQueue() {
+        this.slots = new int[DEFAULT_CAPACITY];
+        this.keys = new double[DEFAULT_CAPACITY];
+        this.sequences = new long[DEFAULT_CAPACITY];
+    }
+
+    /**
+     * Adds a slot to the queue
+     *
+     * @param slot the slot
+     * @param key  the time key
+     */
+    public void add(int slot, double key) {
+        if (size >= slots.length) {
+            int capacity = slots.length * 2;
+            slots = Arrays.copyOf(slots, capacity);
+            keys = Arrays.copyOf(keys, capacity);
+            sequences = Arrays.copyOf(sequences, capacity);
+        }
+        int i = size++;
+        long seq = sequence++;
+        // Sift up
+        while (i > 0) {
+            int parent = (i - 1) >>> 1;
+            if (!isBefore(key, seq, keys[parent], sequences[parent])) {
+                break;
+            }
+            move(parent, i);
+            i = parent;
+        }
+        slots[i] = slot;
+        keys[i] = key;
+        sequences[i] = seq;
+    }
+
+    /**
+     * Removes all the slots
+     */
+    public void clear() {
+        size = 0;
+    }
+
+    /**
+     * Returns true if the queue is empty
+     */
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Returns true if the entry a is before the entry b
+     *
+     * @param keyA the key of a
+     * @param seqA the sequence of a
+     * @param keyB the key of b
+     * @param seqB the sequence of b
+     */
+    private static boolean isBefore(double keyA, long seqA, double keyB, long seqB) {
+        return keyA < keyB || (keyA == keyB && seqA < seqB);
+    }
+
+    /**
+     * Moves the entry from an index to another
+     *
+     * @param from the source index
+     * @param to   the destination index
+     */
+    private void move(int from, int to) {
+        slots[to] = slots[from];
+        keys[to] = keys[from];
+        sequences[to] = sequences[from];
+    }
+
+    /**
+     * Returns the key of first slot
+     */
+    public double peekKey() {
+        return keys[0];
+    }
+
+    /**
+     * Returns the first slot
+     */
+    public int peekSlot() {
+        return slots[0];
+    }
+
+    /**
+     * Removes the first slot and returns it
+     */
+    public int poll() {
+        int result = slots[0];
+        int n = --size;
+        if (n > 0) {
+            int slot = slots[n];
+            double key = keys[n];
+            long seq = sequences[n];
+            int i = 0;
+            // Sift down
+            for (; ; ) {
+                int child = 2 * i + 1;
+                if (child >= n) {
+                    break;
+                }
+                if (child + 1 < n && isBefore(keys[child + 1], sequences[child + 1], keys[child], sequences[child])) {
+                    child++;
+                }
+                if (!isBefore(keys[child], sequences[child], key, seq)) {
+                    break;
+                }
+                move(child, i);
+                i = child;
+            }
+            slots[i] = slot;
+            keys[i] = key;
+            sequences[i] = seq;
+        }
+        return result;
+    }
+
+    /**
+     * Returns the number of slots
+     */
+    public int size() {
+        return size;
+    }
+}
@@ -84,6 +84,11 @@ public interface Status {
      */
     Topology getTopology();
 
+    /**
+     * Returns the transit time matrix from site to site by the current routes (infinity if unreachable)
+     */
+    DoubleMatrix<SiteNode> getTransitTimeMatrix();
+
     /**
      * Returns the traffic info list
      */
@@ -0,0 +1,241 @@
+/*
+ *
+ * Copyright (c) 2023 Marco Marini, marco.marini@mmarini.org
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ *
+ *    END OF TERMS AND CONDITIONS
+ */
+
+package org.mmarini.routes.model2;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * The changes of vehicles between two consecutive emissions of a traffic engine.
+ * <p>
+ * The delta contains the vehicles added and removed and the vehicles whose edge, direction or quantized distance
+ * changed since the previous delta.
+ * A keyframe contains all the vehicles and resets the state of receivers.
+ * The edges and the sites are referenced by index in the edge and site lists of delta.
+ * Deltas are created by {@link StatusDeltaEncoder} and applied by {@link StatusDeltaDecoder}.
+ * </p>
+ */
+public class StatusDelta {
+    private final long sequence;
+    private final double time;
+    private final boolean keyframe;
+    private final double quantum;
+    private final List<SiteNode> sites;
+    private final List<MapEdge> edges;
+    private final List<UUID> removed;
+    private final UUID[] addedIds;
+    private final int[] addedDepartures;
+    private final int[] addedDestinations;
+    private final double[] addedCreationTimes;
+    private final UUID[] updatedIds;
+    private final int[] updatedEdges;
+    private final int[] updatedPositions;
+    private final boolean[] updatedReturning;
+
+    /**
+     * Creates the delta
+     *
+     * @param sequence           the sequence number
+     * @param time               the simulation time
+     * @param keyframe           true if the delta is a keyframe
+     * @param quantum            the quantum of distances (m)
+     * @param sites              the sites
+     * @param edges              the edges
+     * @param removed            the identifiers of removed vehicles
+     * @param addedIds           the identifiers of added vehicles
+     * @param addedDepartures    the departure indices of added vehicles
+     * @param addedDestinations  the destination indices of added vehicles
+     * @param addedCreationTimes the creation time of added vehicles
+     * @param updatedIds         the identifiers of updated vehicles
+     * @param updatedEdges       the edge indices of updated vehicles or -1 if none
+     * @param updatedPositions   the quantized distances of updated vehicles
+     * @param updatedReturning   the returning flags of updated vehicles
+     */
+    protected StatusDelta(long sequence, double time, boolean keyframe, double quantum,
+                          List<SiteNode> sites, List<MapEdge> edges, List<UUID> removed,
+                          UUID[] addedIds, int[] addedDepartures, int[] addedDestinations,
+                          double[] addedCreationTimes,
+                          UUID[] updatedIds, int[] updatedEdges, int[] updatedPositions,
+                          boolean[] updatedReturning) {
+        this.sequence = sequence;
+        this.time = time;
+        this.keyframe = keyframe;
+        this.quantum = quantum;
+        this.sites = requireNonNull(sites);
+        this.edges = requireNonNull(edges);
+        this.removed = requireNonNull(removed);
+        this.addedIds = requireNonNull(addedIds);
+        this.addedDepartures = requireNonNull(addedDepartures);
+        this.addedDestinations = requireNonNull(addedDestinations);
+        this.addedCreationTimes = requireNonNull(addedCreationTimes);
+        this.updatedIds = requireNonNull(updatedIds);
+        this.updatedEdges = requireNonNull(updatedEdges);
+        this.updatedPositions = requireNonNull(updatedPositions);
+        this.updatedReturning = requireNonNull(updatedReturning);
+    }
+
+    /**
+     * Returns the number of added vehicles
+     */
+    public int getAddedCount() {
+        return addedIds.length;
+    }
+
+    /**
+     * Returns the creation time of an added vehicle
+     *
+     * @param i the index of added vehicle
+     */
+    public double getAddedCreationTime(int i) {
+        return addedCreationTimes[i];
+    }
+
+    /**
+     * Returns the departure of an added vehicle
+     *
+     * @param i the index of added vehicle
+     */
+    public SiteNode getAddedDeparture(int i) {
+        return sites.get(addedDepartures[i]);
+    }
+
+    /**
+     * Returns the destination of an added vehicle
+     *
+     * @param i the index of added vehicle
+     */
+    public SiteNode getAddedDestination(int i) {
+        return sites.get(addedDestinations[i]);
+    }
+
+    /**
+     * Returns the identifier of an added vehicle
+     *
+     * @param i the index of added vehicle
+     */
+    public UUID getAddedId(int i) {
+        return addedIds[i];
+    }
+
+    /**
+     * Returns the edges
+     */
+    public List<MapEdge> getEdges() {
+        return edges;
+    }
+
+    /**
+     * Returns the quantum of distances (m)
+     */
+    public double getQuantum() {
+        return quantum;
+    }
+
+    /**
+     * Returns the identifiers of removed vehicles
+     */
+    public List<UUID> getRemoved() {
+        return removed;
+    }
+
+    /**
+     * Returns the sequence number
+     */
+    public long getSequence() {
+        return sequence;
+    }
+
+    /**
+     * Returns the sites
+     */
+    public List<SiteNode> getSites() {
+        return sites;
+    }
+
+    /**
+     * Returns the simulation time
+     */
+    public double getTime() {
+        return time;
+    }
+
+    /**
+     * Returns the number of updated vehicles
+     */
+    public int getUpdateCount() {
+        return updatedIds.length;
+    }
+
+    /**
+     * Returns the distance from the beginning of edge of an updated vehicle rounded to the quantum
+     *
+     * @param i the index of updated vehicle
+     */
+    public double getUpdatedDistance(int i) {
+        return updatedPositions[i] * quantum;
+    }
+
+    /**
+     * Returns the current edge of an updated vehicle
+     *
+     * @param i the index of updated vehicle
+     */
+    public Optional<MapEdge> getUpdatedEdge(int i) {
+        int index = updatedEdges[i];
+        return index >= 0 ? Optional.of(edges.get(index)) : Optional.empty();
+    }
+
+    /**
+     * Returns the identifier of an updated vehicle
+     *
+     * @param i the index of updated vehicle
+     */
+    public UUID getUpdatedId(int i) {
+        return updatedIds[i];
+    }
+
+    /**
+     * Returns true if the delta is a keyframe
+     */
+    public boolean isKeyframe() {
+        return keyframe;
+    }
+
+    /**
+     * Returns true if an updated vehicle is moving from destination to departure
+     *
+     * @param i the index of updated vehicle
+     */
+    public boolean isUpdatedReturning(int i) {
+        return updatedReturning[i];
+    }
+}
@@ -0,0 +1,160 @@
+/*
+ *
+ * Copyright (c) 2023 Marco Marini, marco.marini@mmarini.org
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ *
+ *    END OF TERMS AND CONDITIONS
+ */
+
+package org.mmarini.routes.model2;
+
+import java.util.*;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Rebuilds the vehicles applying the stream of {@link StatusDelta} created by a {@link StatusDeltaEncoder}.
+ * <p>
+ * The decoder applies the deltas in sequence.
+ * When a delta is missing the decoder loses the synchronization and ignores the deltas until the next keyframe.
+ * The edge entry time and the start waiting time of vehicles are not encoded in the deltas
+ * and the decoded vehicles report the time of last update.
+ * </p>
+ */
+public class StatusDeltaDecoder {
+
+    /**
+     * Returns the decoder
+     */
+    public static StatusDeltaDecoder create() {
+        return new StatusDeltaDecoder();
+    }
+
+    private final Map<UUID, DecodedVehicle> vehicles;
+    private boolean synchronizedState;
+    private long sequence;
+    private double time;
+
+    /**
+     * Creates the decoder
+     */
+    protected StatusDeltaDecoder() {
+        this.vehicles = new LinkedHashMap<>();
+    }
+
+    /**
+     * Returns true if the delta has been applied,
+     * false if the decoder is not synchronized and the delta is not a keyframe
+     *
+     * @param delta the delta
+     */
+    public boolean apply(StatusDelta delta) {
+        requireNonNull(delta);
+        if (delta.isKeyframe()) {
+            vehicles.clear();
+            synchronizedState = true;
+        } else if (!synchronizedState || delta.getSequence() != sequence + 1) {
+            synchronizedState = false;
+            return false;
+        }
+        sequence = delta.getSequence();
+        time = delta.getTime();
+        for (UUID id : delta.getRemoved()) {
+            vehicles.remove(id);
+        }
+        for (int i = 0; i < delta.getAddedCount(); i++) {
+            vehicles.put(delta.getAddedId(i), new DecodedVehicle(delta.getAddedDeparture(i),
+                    delta.getAddedDestination(i), delta.getAddedCreationTime(i)));
+        }
+        for (int i = 0; i < delta.getUpdateCount(); i++) {
+            DecodedVehicle vehicle = vehicles.get(delta.getUpdatedId(i));
+            if (vehicle != null) {
+                vehicle.edge = delta.getUpdatedEdge(i).orElse(null);
+                vehicle.distance = delta.getUpdatedDistance(i);
+                vehicle.returning = delta.isUpdatedReturning(i);
+                vehicle.updateTime = time;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns the time of last applied delta
+     */
+    public double getTime() {
+        return time;
+    }
+
+    /**
+     * Returns the number of vehicles
+     */
+    public int getVehicleCount() {
+        return vehicles.size();
+    }
+
+    /**
+     * Returns the decoded vehicles in insertion order
+     */
+    public List<Vehicle> getVehicles() {
+        List<Vehicle> result = new ArrayList<>(vehicles.size());
+        for (Map.Entry<UUID, DecodedVehicle> entry : vehicles.entrySet()) {
+            DecodedVehicle vehicle = entry.getValue();
+            result.add(new Vehicle(entry.getKey(), vehicle.departure, vehicle.destination, vehicle.creationTime,
+                    vehicle.edge, vehicle.distance, vehicle.returning, vehicle.updateTime, vehicle.updateTime));
+        }
+        return result;
+    }
+
+    /**
+     * Returns true if the decoder is synchronized with the encoder
+     */
+    public boolean isSynchronized() {
+        return synchronizedState;
+    }
+
+    /**
+     * The decoded state of a vehicle
+     */
+    private static class DecodedVehicle {
+        private final SiteNode departure;
+        private final SiteNode destination;
+        private final double creationTime;
+        private MapEdge edge;
+        private double distance;
+        private boolean returning;
+        private double updateTime;
+
+        /**
+         * Creates the vehicle state
+         *
+         * @param departure    the departure
+         * @param destination  the destination
+         * @param creationTime the creation time
+         */
+        DecodedVehicle(SiteNode departure, SiteNode destination, double creationTime) {
+            this.departure = departure;
+            this.destination = destination;
+            this.creationTime = creationTime;
+        }
+    }
+}
@@ -0,0 +1,248 @@
+/*
+ *
+ * Copyright (c) 2023 Marco Marini, marco.marini@mmarini.org
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ *
+ *    END OF TERMS AND CONDITIONS
+ */
+
+package org.mmarini.routes.model2;
+
+import java.util.*;
+
+/**
+ * Encodes the vehicles of a traffic engine into a stream of {@link StatusDelta}.
+ * <p>
+ * The encoder keeps the last encoded state of each vehicle and emits only the changes:
+ * the vehicles added and removed and the vehicles that changed edge, direction or quantized distance.
+ * A keyframe is emitted at the first encoding, every keyframe interval, on request
+ * and when the topology of engine changes.
+ * The encoder is not thread safe and must be used by the simulation thread,
+ * i.e. in the emit function of the {@link SimulatorEngine}.
+ * </p>
+ */
+public class StatusDeltaEncoder {
+    private static final int DEFAULT_CAPACITY = 16;
+
+    /**
+     * Returns the encoder
+     *
+     * @param quantum          the quantum of distances (m)
+     * @param keyframeInterval the number of deltas between keyframes
+     */
+    public static StatusDeltaEncoder create(double quantum, int keyframeInterval) {
+        if (!(quantum > 0)) {
+            throw new IllegalArgumentException("quantum must be positive");
+        }
+        if (keyframeInterval <= 0) {
+            throw new IllegalArgumentException("keyframeInterval must be positive");
+        }
+        return new StatusDeltaEncoder(quantum, keyframeInterval);
+    }
+
+    private final double quantum;
+    private final int keyframeInterval;
+    private final Map<UUID, EncodedVehicle> vehicles;
+    private final List<UUID> added;
+    private UUID[] updatedIds;
+    private int[] updatedEdges;
+    private int[] updatedPositions;
+    private boolean[] updatedReturning;
+    private int updatedSize;
+    private VehicleStore store;
+    private List<SiteNode> sites;
+    private List<MapEdge> edges;
+    private long sequence;
+    private int deltaCount;
+    private int generation;
+    private boolean keyframeRequested;
+
+    /**
+     * Creates the encoder
+     *
+     * @param quantum          the quantum of distances (m)
+     * @param keyframeInterval the number of deltas between keyframes
+     */
+    protected StatusDeltaEncoder(double quantum, int keyframeInterval) {
+        this.quantum = quantum;
+        this.keyframeInterval = keyframeInterval;
+        this.vehicles = new HashMap<>();
+        this.added = new ArrayList<>();
+        this.updatedIds = new UUID[DEFAULT_CAPACITY];
+        this.updatedEdges = new int[DEFAULT_CAPACITY];
+        this.updatedPositions = new int[DEFAULT_CAPACITY];
+        this.updatedReturning = new boolean[DEFAULT_CAPACITY];
+        this.keyframeRequested = true;
+    }
+
+    /**
+     * Returns the delta of the vehicles in a store since the last encoding
+     *
+     * @param time  the simulation time
+     * @param store the vehicle store
+     */
+    StatusDelta encode(double time, VehicleStore store) {
+        boolean keyframe = keyframeRequested
+                || store != this.store
+                || store.getEdges().size() != edges.size()
+                || deltaCount >= keyframeInterval;
+        if (keyframe) {
+            vehicles.clear();
+            this.store = store;
+            this.sites = List.copyOf(store.getSites());
+            this.edges = List.copyOf(store.getEdges());
+            keyframeRequested = false;
+            deltaCount = 0;
+        }
+        deltaCount++;
+        generation++;
+        added.clear();
+        updatedSize = 0;
+        for (int i = 0; i < store.orderSize(); i++) {
+            int slot = store.slotAt(i);
+            Vehicle view = store.view(slot);
+            if (view != null) {
+                UUID id = view.getId();
+                int edge = store.getEdgeIndex(slot);
+                int position = (int) Math.round(store.getDistance(slot) / quantum);
+                boolean returning = store.isReturning(slot);
+                EncodedVehicle state = vehicles.get(id);
+                boolean changed;
+                if (state == null) {
+                    state = new EncodedVehicle(store.getDeparture(slot), store.getDestination(slot),
+                            view.getCreationTime());
+                    vehicles.put(id, state);
+                    added.add(id);
+                    changed = true;
+                } else {
+                    changed = state.edge != edge || state.position != position || state.returning != returning;
+                }
+                state.generation = generation;
+                if (changed) {
+                    state.edge = edge;
+                    state.position = position;
+                    state.returning = returning;
+                    addUpdate(id, edge, position, returning);
+                }
+            }
+        }
+        // Removes the vehicles not found in the store
+        List<UUID> removed = new ArrayList<>();
+        for (Iterator<Map.Entry<UUID, EncodedVehicle>> it = vehicles.entrySet().iterator(); it.hasNext(); ) {
+            Map.Entry<UUID, EncodedVehicle> entry = it.next();
+            if (entry.getValue().generation != generation) {
+                removed.add(entry.getKey());
+                it.remove();
+            }
+        }
+        int n = added.size();
+        UUID[] addedIds = added.toArray(new UUID[0]);
+        int[] departures = new int[n];
+        int[] destinations = new int[n];
+        double[] creationTimes = new double[n];
+        for (int i = 0; i < n; i++) {
+            EncodedVehicle state = vehicles.get(addedIds[i]);
+            departures[i] = state.departure;
+            destinations[i] = state.destination;
+            creationTimes[i] = state.creationTime;
+        }
+        return new StatusDelta(sequence++, time, keyframe, quantum, sites, edges, removed,
+                addedIds, departures, destinations, creationTimes,
+                Arrays.copyOf(updatedIds, updatedSize),
+                Arrays.copyOf(updatedEdges, updatedSize),
+                Arrays.copyOf(updatedPositions, updatedSize),
+                Arrays.copyOf(updatedReturning, updatedSize));
+    }
+
+    /**
+     * Adds a vehicle update
+     *
+     * @param id        the vehicle identifier
+     * @param edge      the edge index
+     * @param position  the quantized distance
+     * @param returning true if the vehicle is returning
+     */
+    private void addUpdate(UUID id, int edge, int position, boolean returning) {
+        if (updatedSize >= updatedIds.length) {
+            int capacity = updatedIds.length * 2;
+            updatedIds = Arrays.copyOf(updatedIds, capacity);
+            updatedEdges = Arrays.copyOf(updatedEdges, capacity);
+            updatedPositions = Arrays.copyOf(updatedPositions, capacity);
+            updatedReturning = Arrays.copyOf(updatedReturning, capacity);
+        }
+        updatedIds[updatedSize] = id;
+        updatedEdges[updatedSize] = edge;
+        updatedPositions[updatedSize] = position;
+        updatedReturning[updatedSize] = returning;
+        updatedSize++;
+    }
+
+    /**
+     * Returns the keyframe interval
+     */
+    public int getKeyframeInterval() {
+        return keyframeInterval;
+    }
+
+    /**
+     * Returns the quantum of distances (m)
+     */
+    public double getQuantum() {
+        return quantum;
+    }
+
+    /**
+     * Returns this encoder requesting a keyframe at the next encoding
+     * (e.g. when a receiver lost a delta)
+     */
+    public StatusDeltaEncoder requestKeyframe() {
+        keyframeRequested = true;
+        return this;
+    }
+
+    /**
+     * The last encoded state of a vehicle
+     */
+    private static class EncodedVehicle {
+        private final int departure;
+        private final int destination;
+        private final double creationTime;
+        private int edge;
+        private int position;
+        private boolean returning;
+        private int generation;
+
+        /**
+         * Creates the vehicle state
+         *
+         * @param departure    the departure index
+         * @param destination  the destination index
+         * @param creationTime the creation time
+         */
+        EncodedVehicle(int departure, int destination, double creationTime) {
+            this.departure = departure;
+            this.destination = destination;
+            this.creationTime = creationTime;
+        }
+    }
+}
@@ -32,14 +32,11 @@ import org.mmarini.Tuple2;
 
 import java.util.List;
 import java.util.Map;
-import java.util.Optional;
 import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 
-import static org.mmarini.Tuple2.stream;
 import static org.mmarini.Tuple2.toMap;
-import static org.mmarini.Utils.getValue;
-import static org.mmarini.Utils.join;
-import static org.mmarini.routes.model2.Routes.computeRoutes;
+import static org.mmarini.routes.model2.Routes.toEdgeTravelTimes;
 
 public class StatusImpl implements Status {
 
@@ -56,7 +53,48 @@ public class StatusImpl implements Status {
      * @param weights          the cumulative probability of path from site to site
      */
     public static StatusImpl createStatus(int maxVehicles, double speedLimit, double frequency, double time, Topology topology, List<Vehicle> vehicles, TransitTimes edgeTransitTimes, double[][] weights) {
-        return new StatusImpl(maxVehicles, speedLimit, frequency, time, topology, vehicles, edgeTransitTimes, weights);
+        return createStatus(maxVehicles, speedLimit, frequency, time, topology, vehicles, edgeTransitTimes, weights, null);
+    }
+
+    /**
+     * Returns the status sharing the route table
+     *
+     * @param maxVehicles      the maximum number of vehicles
+     * @param speedLimit       the speed limit
+     * @param frequency        the frequency of new vehicles for every node
+     * @param time             the current time
+     * @param topology         the topology
+     * @param vehicles         the vehicle list
+     * @param edgeTransitTimes the effective edge transit time
+     * @param weights          the cumulative probability of path from site to site
+     * @param routeTable       the route table or null if computed by edge transit time
+     */
+    public static StatusImpl createStatus(int maxVehicles, double speedLimit, double frequency, double time,
+                                          Topology topology, List<Vehicle> vehicles, TransitTimes edgeTransitTimes,
+                                          double[][] weights, RouteTable routeTable) {
+        return createStatus(maxVehicles, speedLimit, frequency, time, topology, vehicles, edgeTransitTimes, weights,
+                routeTable, null);
+    }
+
+    /**
+     * Returns the status sharing the route table and the site counters
+     *
+     * @param maxVehicles      the maximum number of vehicles
+     * @param speedLimit       the speed limit
+     * @param frequency        the frequency of new vehicles for every node
+     * @param time             the current time
+     * @param topology         the topology
+     * @param vehicles         the vehicle list
+     * @param edgeTransitTimes the effective edge transit time
+     * @param weights          the cumulative probability of path from site to site
+     * @param routeTable       the route table or null if computed by edge transit time
+     * @param siteCounters     the site counters or null if computed by vehicles
+     */
+    public static StatusImpl createStatus(int maxVehicles, double speedLimit, double frequency, double time,
+                                          Topology topology, List<Vehicle> vehicles, TransitTimes edgeTransitTimes,
+                                          double[][] weights, RouteTable routeTable, SiteCounters siteCounters) {
+        return new StatusImpl(maxVehicles, speedLimit, frequency, time, topology, vehicles, edgeTransitTimes, weights,
+                routeTable, siteCounters);
     }
 
     /**
@@ -98,7 +136,7 @@ public class StatusImpl implements Status {
     ) {
         TransitTimes edgeTransitTimes = TransitTimes.create(topology.getEdges());
         return new StatusImpl(maxVehicles, speedLimit, frequency, time, topology,
-                vehicles, edgeTransitTimes, weights);
+                vehicles, edgeTransitTimes, weights, null, null);
     }
 
     private final int maxVehicles;
@@ -109,8 +147,11 @@ public class StatusImpl implements Status {
     private final List<Vehicle> vehicles;
     private final TransitTimes edgeTransitTimes;
     private final double[][] weights;
-    private Map<Tuple2<MapNode, MapNode>, MapEdge> edgeByPath;
-    private Map<MapEdge, Integer> vehicleCountByEdge;
+    private RouteTable routeTable;
+    private SiteCounters siteCounters;
+    private int[] vehicleCountByEdgeId;
+    private double[][] transitTimes;
+    private List<TrafficInfo> trafficInfo;
 
     /**
      * Create the status
@@ -123,8 +164,10 @@ public class StatusImpl implements Status {
      * @param vehicles         the vehicle list
      * @param edgeTransitTimes the effective edge transit time
      * @param weights          the weights
+     * @param routeTable       the route table or null if computed by edge transit time
+     * @param siteCounters     the site counters or null if computed by vehicles
      */
-    protected StatusImpl(int maxVehicles, double speedLimit, double frequency, double time, Topology topology, List<Vehicle> vehicles, TransitTimes edgeTransitTimes, double[][] weights) {
+    protected StatusImpl(int maxVehicles, double speedLimit, double frequency, double time, Topology topology, List<Vehicle> vehicles, TransitTimes edgeTransitTimes, double[][] weights, RouteTable routeTable, SiteCounters siteCounters) {
         this.maxVehicles = maxVehicles;
         this.time = time;
         this.topology = topology;
@@ -133,48 +176,45 @@ public class StatusImpl implements Status {
         this.vehicles = vehicles;
         this.edgeTransitTimes = edgeTransitTimes;
         this.weights = weights;
+        this.routeTable = routeTable;
+        this.siteCounters = siteCounters;
     }
 
     /**
-     * Returns the transit time from a site to another site if a path exists
+     * Returns the transit time from a site to another site by site indices walking the routes
+     * or infinity if no path exists
      *
-     * @param from the departure site
-     * @param to   the destination site
+     * @param from            the departure site index
+     * @param to              the destination site index
+     * @param edgeTravelTimes the effective edge travel times by edge id
      */
-    Optional<Double> computeTransitTime(SiteNode from, SiteNode to) {
-        Optional<MapEdge> edge = getNextEdge(from, to);
-        MapNode node = from;
+    private double computeTransitTime(int from, int to, double[] edgeTravelTimes) {
+        RouteTable routes = getRouteTable();
+        CompiledTopology compiled = routes.getTopology();
+        int edge = routes.getNextEdge(from, to);
+        int node = from;
         double time = 0;
-        while (edge.isPresent() && !node.equals(to)) {
-            time += edge.map(MapEdge::getTransitTime).orElse(0.0);
-            Optional<MapNode> nextNode = edge.map(MapEdge::getEnd);
-            edge = nextNode.flatMap(n -> getNextEdge(n, to));
-            node = nextNode.orElse(to);
+        for (int i = 0; edge >= 0 && node != to && i < compiled.getNodeCount(); i++) {
+            time += edgeTravelTimes[edge];
+            node = compiled.getEdgeEnd(edge);
+            edge = routes.getNextEdge(node, to);
         }
-        double finalTime = time;
-        return edge.map(e -> finalTime);
+        return node == to ? time : Double.POSITIVE_INFINITY;
     }
 
     /**
-     * Returns transit time matrix from site to site
+     * Returns round trip free transit time matrix from site to site
      */
     Map<Tuple2<SiteNode, SiteNode>, Double> createTransitTimeMatrix() {
-        Map<Tuple2<SiteNode, SiteNode>, Double> transitTimeMatrix = join(getSites(), getSites())
-                .filter(path -> !path._1.equals(path._2))
-                .flatMap(path ->
-                        computeTransitTime(path._1, path._2)
-                                .map(t -> Tuple2.of(path, t))
-                                .stream()
-                ).collect(toMap());
-        return join(getSites(), getSites())
-                .flatMap(path ->
-                        getValue(transitTimeMatrix, path)
-                                .map(t -> t
-                                        + getValue(transitTimeMatrix, Tuple2.of(path._2, path._1))
-                                        .orElse(0.0))
-                                .map(t -> Tuple2.of(path, t))
-                                .stream()
-                ).collect(toMap());
+        List<SiteNode> sites = getSites();
+        CompiledTopology compiled = topology.getCompiled();
+        return IntStream.range(0, sites.size())
+                .boxed()
+                .flatMap(i -> IntStream.range(0, sites.size())
+                        .filter(j -> Double.isFinite(compiled.getFreeRoundTripTime(i, j)))
+                        .mapToObj(j -> Tuple2.of(Tuple2.of(sites.get(i), sites.get(j)),
+                                compiled.getFreeRoundTripTime(i, j))))
+                .collect(toMap());
     }
 
     @Override
@@ -183,14 +223,59 @@ public class StatusImpl implements Status {
     }
 
     /**
-     *
+     * Returns the route table computing it by edge transit time if missing
      */
-    Map<Tuple2<MapNode, MapNode>, MapEdge> getEdgeByPath() {
-        if (edgeByPath == null) {
-            this.edgeByPath = computeRoutes(topology.getEdges(),
-                    edgeTransitTimes);
+    RouteTable getRouteTable() {
+        if (routeTable == null) {
+            CompiledTopology compiled = topology.getCompiled();
+            this.routeTable = RouteTable.createTable(compiled, toEdgeTravelTimes(compiled, edgeTransitTimes));
         }
-        return edgeByPath;
+        return routeTable;
+    }
+
+    /**
+     * Returns the transit times by site indices (infinity if no path exists).
+     * The transit times are the shortest path distances of the route table
+     * or, if missing, the effective edge transit times along the routes
+     */
+    private double[][] getTransitTimes() {
+        if (transitTimes == null) {
+            RouteTable routes = getRouteTable();
+            if (routes.hasDistances()) {
+                transitTimes = routes.getDistanceMatrix();
+            } else {
+                double[] edgeTravelTimes = toEdgeTravelTimes(routes.getTopology(), edgeTransitTimes);
+                int n = getSites().size();
+                double[][] times = new double[n][n];
+                for (int i = 0; i < n; i++) {
+                    for (int j = 0; j < n; j++) {
+                        times[i][j] = i != j ? computeTransitTime(i, j, edgeTravelTimes) : 0;
+                    }
+                }
+                transitTimes = times;
+            }
+        }
+        return transitTimes;
+    }
+
+    @Override
+    public DoubleMatrix<SiteNode> getTransitTimeMatrix() {
+        double[][] times = getTransitTimes();
+        double[][] values = new double[times.length][];
+        for (int i = 0; i < times.length; i++) {
+            values[i] = times[i].clone();
+        }
+        return new DoubleMatrix<>(getSites(), values);
+    }
+
+    /**
+     * Returns the site counters computing them by vehicles if missing
+     */
+    SiteCounters getSiteCounters() {
+        if (siteCounters == null) {
+            siteCounters = SiteCounters.create(topology, vehicles, time);
+        }
+        return siteCounters;
     }
 
     @Override
@@ -208,16 +293,6 @@ public class StatusImpl implements Status {
         return maxVehicles;
     }
 
-    /**
-     * Returns the edge to go from a node to another node
-     *
-     * @param from the start node
-     * @param to   the destination node
-     */
-    Optional<MapEdge> getNextEdge(MapNode from, MapNode to) {
-        return getValue(getEdgeByPath(), Tuple2.of(from, to));
-    }
-
     @Override
     public List<MapNode> getNodes() {
         return topology.getNodes();
@@ -265,31 +340,16 @@ public class StatusImpl implements Status {
 
     @Override
     public List<TrafficInfo> getTrafficInfo() {
-        Map<Tuple2<SiteNode, SiteNode>, Double> transitTime = createTransitTimeMatrix();
-        return getSites().stream()
-                .map(site -> {
-                    int noVehicles = (int) vehicles.stream()
-                            .map(Vehicle::getDestination)
-                            .filter(site::equals)
-                            .count();
-                    List<Double> delayTimes = vehicles.stream()
-                            .filter(v -> site.equals(v.getDestination()))
-                            .flatMap(v -> getValue(transitTime, Tuple2.of(v.getDeparture(), v.getDestination()))
-                                    .map(tt -> time - v.getCreationTime() - tt)
-                                    .stream())
-                            .filter(t -> t > 0)
-                            .collect(Collectors.toList());
-                    int delayCount = delayTimes.size();
-                    double totalDelayTime = delayTimes.stream().mapToDouble(v -> v).sum();
-                    int waiting = (int) vehicles.stream()
-                            .filter(v -> v.getCurrentEdge().isEmpty())
-                            .filter(v -> site.equals(v.isReturning()
-                                    ? v.getDestination()
-                                    : v.getDeparture()))
-                            .count();
-                    return new TrafficInfo(site, noVehicles, delayCount, waiting, totalDelayTime);
-                })
-                .collect(Collectors.toList());
+        if (trafficInfo == null) {
+            List<SiteNode> sites = getSites();
+            SiteCounters counters = getSiteCounters();
+            // The delays are accumulated by the counters against the free flow round trip
+            trafficInfo = IntStream.range(0, sites.size())
+                    .mapToObj(i -> new TrafficInfo(sites.get(i), counters.getVehicleCount(i), counters.getDelayCount(i),
+                            counters.getWaitingCount(i), counters.getTotalDelayTime(i, time)))
+                    .collect(Collectors.toList());
+        }
+        return trafficInfo;
     }
 
     /**
@@ -298,21 +358,37 @@ public class StatusImpl implements Status {
      * @param edge the edge
      */
     int getVehicleCount(MapEdge edge) {
-        Optional<MapEdge> edgeOpt = Optional.ofNullable(edge);
-        return edgeOpt.flatMap(getValue(getVehicleCountByEdge()))
-                .orElse(0);
+        int id = topology.getCompiled().edgeId(edge);
+        return id >= 0 ? getVehicleCountByEdgeId()[id] : 0;
     }
 
     public Map<MapEdge, Integer> getVehicleCountByEdge() {
-        if (vehicleCountByEdge == null) {
-            Map<MapEdge, List<Tuple2<MapEdge, Vehicle>>> map = vehicles.stream()
-                    .flatMap(v -> v.getCurrentEdge().map(edge -> Tuple2.of(edge, v)).stream())
-                    .collect(Collectors.groupingBy(Tuple2::getV1));
-            vehicleCountByEdge = stream(map)
-                    .map(t -> t.setV2(t.getV2().size()))
-                    .collect(toMap());
+        int[] counts = getVehicleCountByEdgeId();
+        List<MapEdge> edges = topology.getCompiled().getEdges();
+        return IntStream.range(0, counts.length)
+                .filter(i -> counts[i] > 0)
+                .boxed()
+                .collect(Collectors.toMap(edges::get, i -> counts[i]));
+    }
+
+    /**
+     * Returns the number of vehicles by edge id
+     */
+    private int[] getVehicleCountByEdgeId() {
+        if (vehicleCountByEdgeId == null) {
+            CompiledTopology compiled = topology.getCompiled();
+            int[] counts = new int[compiled.getEdgeCount()];
+            for (Vehicle vehicle : vehicles) {
+                vehicle.getCurrentEdge().ifPresent(edge -> {
+                    int id = compiled.edgeId(edge);
+                    if (id >= 0) {
+                        counts[id]++;
+                    }
+                });
+            }
+            vehicleCountByEdgeId = counts;
         }
-        return vehicleCountByEdge;
+        return vehicleCountByEdgeId;
     }
 
     @Override
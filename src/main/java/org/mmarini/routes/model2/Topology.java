@@ -28,14 +28,16 @@
 
 package org.mmarini.routes.model2;
 
+import org.mmarini.LazyValue;
+
 import java.awt.geom.AffineTransform;
 import java.awt.geom.Point2D;
-import java.util.ArrayList;
-import java.util.List;
-import java.util.Map;
-import java.util.Optional;
+import java.util.*;
+import java.util.function.Function;
 import java.util.function.Predicate;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 import java.util.stream.Stream;
 
 import static java.lang.Math.min;
@@ -43,10 +45,20 @@ import static java.util.Map.entry;
 import static java.util.Objects.requireNonNull;
 import static org.mmarini.Utils.entriesToMap;
 import static org.mmarini.Utils.getValue;
+import static org.mmarini.routes.model2.Constants.gridPoint;
 import static org.mmarini.routes.model2.CrossNode.createNode;
 
 /**
  * The topology of a map with nodes, sites and edges
+ * <p>
+ * The topology provides the integer indexed compiled form ({@link CompiledTopology})
+ * and the location indices of nodes and edges built once on demand.
+ * The spatial index of nodes ({@link NodeGrid}) is derived incrementally
+ * by the topologies adding nodes to this one.
+ * The topologies with an added or removed edge are derived from the compiled form of this topology
+ * (see {@link CompiledTopology#addEdge(MapEdge)}), so the edit does not copy the node and edge lists
+ * that are built on demand by the compiled form.
+ * </p>
  */
 public class Topology {
 
@@ -71,6 +83,19 @@ public class Topology {
      */
     public static Topology createTopology(List<? extends MapNode> nodes,
                                           List<MapEdge> edges) {
+        return createTopology(nodes, edges, null);
+    }
+
+    /**
+     * Returns a topology
+     *
+     * @param nodes    the node list
+     * @param edges    the edge list
+     * @param nodeGrid the spatial index of nodes or null if built on demand
+     */
+    static Topology createTopology(List<? extends MapNode> nodes,
+                                   List<MapEdge> edges,
+                                   NodeGrid nodeGrid) {
         // Sort nodes
         ArrayList<MapNode> sortedNode = new ArrayList<>(nodes);
         sortedNode.sort((a, b) -> {
@@ -86,69 +111,109 @@ public class Topology {
                 .filter(SiteNode.class::isInstance)
                 .map(n -> (SiteNode) n)
                 .collect(Collectors.toList());
-        // creates the map of entry edges by node
-        Map<MapNode, List<MapEdge>> entryEdgesByNode = edges.stream()
-                .collect(Collectors.groupingBy(MapEdge::getEnd));
-        // Sort edges by priority
-        entryEdgesByNode.replaceAll((node, list) -> {
-            list.sort((a, b) -> -Integer.compare(a.getPriority(), b.getPriority()));
-            return list;
-        });
-        return new Topology(sites, sortedNode, edges, entryEdgesByNode);
+        return new Topology(sites, () -> sortedNode, () -> edges,
+                () -> CompiledTopology.compile(sortedNode, edges, sites.size()), nodeGrid);
+    }
+
+    /**
+     * Returns the index of elements by grid snapped location
+     *
+     * @param elements the elements
+     * @param location the location of element
+     * @param <T>      the type of elements
+     */
+    static <T> Map<Point2D, List<T>> createLocationIndex(List<T> elements, Function<T, Point2D> location) {
+        return elements.stream()
+                .collect(Collectors.groupingBy(element -> gridPoint(location.apply(element))));
+    }
+
+    /**
+     * Returns the edges of a compiled topology without the removed edges in edge id order
+     *
+     * @param compiled the compiled topology
+     */
+    private static List<MapEdge> aliveEdges(CompiledTopology compiled) {
+        List<MapEdge> edges = compiled.getEdges();
+        return IntStream.range(0, edges.size())
+                .filter(compiled::isEdgeAlive)
+                .mapToObj(edges::get)
+                .collect(Collectors.toList());
     }
 
     private final List<SiteNode> sites;
-    private final List<MapNode> nodes;
-    private final List<MapEdge> edges;
-    private final Map<MapNode, List<MapEdge>> entryEdgesByNode;
+    private final LazyValue<List<MapNode>> nodes;
+    private final LazyValue<List<MapEdge>> edges;
+    private final LazyValue<CompiledTopology> compiled;
+    private final LazyValue<Map<Point2D, List<MapNode>>> nodesByLocation;
+    private final LazyValue<Map<Point2D, List<MapEdge>>> edgesByLocation;
+    private final LazyValue<NodeGrid> nodeGrid;
+
+    /**
+     * Create a topology derived from a compiled topology
+     *
+     * @param sites    the sites list
+     * @param compiled the compiled topology
+     * @param nodeGrid the spatial index of nodes or null if built on demand
+     */
+    private Topology(List<SiteNode> sites, CompiledTopology compiled, NodeGrid nodeGrid) {
+        this(sites, compiled::getNodes, () -> aliveEdges(compiled), () -> compiled, nodeGrid);
+    }
 
     /**
      * Create a topology
      *
-     * @param sites            the sites list
-     * @param nodes            the nodes list
-     * @param edges            the edge list
-     * @param entryEdgesByNode the entry edges by node ascending sorted by priority
+     * @param sites    the sites list
+     * @param nodes    the nodes list supplier, sites first
+     * @param edges    the edge list supplier
+     * @param compiled the compiled topology supplier
+     * @param nodeGrid the spatial index of nodes or null if built on demand
      */
-    protected Topology(List<SiteNode> sites,
-                       List<MapNode> nodes,
-                       List<MapEdge> edges,
-                       Map<MapNode, List<MapEdge>> entryEdgesByNode) {
+    private Topology(List<SiteNode> sites,
+                     Supplier<List<MapNode>> nodes,
+                     Supplier<List<MapEdge>> edges,
+                     Supplier<CompiledTopology> compiled,
+                     NodeGrid nodeGrid) {
         this.sites = requireNonNull(sites);
-        this.nodes = requireNonNull(nodes);
-        this.edges = requireNonNull(edges);
-        this.entryEdgesByNode = requireNonNull(entryEdgesByNode);
+        this.nodes = new LazyValue<>(nodes);
+        this.edges = new LazyValue<>(edges);
+        this.compiled = new LazyValue<>(compiled);
+        this.nodesByLocation = new LazyValue<>(() -> createLocationIndex(getNodes(), MapNode::getLocation));
+        this.edgesByLocation = new LazyValue<>(() -> createLocationIndex(getEdges(), edge -> edge.getBegin().getLocation()));
+        this.nodeGrid = new LazyValue<>(() -> nodeGrid != null ? nodeGrid : NodeGrid.create(getNodes()));
     }
 
     /**
-     * Returns the topology with a new edge
+     * Returns the topology with a new edge.
+     * The new edge is appended to the edges of the compiled topology
      *
      * @param edge the edge
      */
     public Topology addEdge(MapEdge edge) {
-        if (edges.contains(edge)) {
+        CompiledTopology compiled = getCompiled();
+        if (compiled.edgeId(edge) >= 0) {
             // No changes because edge already exist
             return this;
         } else {
             MapNode begin = edge.getBegin();
             MapNode end = edge.getEnd();
-            boolean isBeginNewNode = !nodes.contains(begin);
-            boolean isEndNewNode = !nodes.contains(end);
+            boolean isBeginNewNode = compiled.nodeId(begin) < 0;
+            boolean isEndNewNode = compiled.nodeId(end) < 0;
             assert !(isBeginNewNode && begin instanceof SiteNode)
                     : "begin cannot be a new SiteNode";
             assert !(isEndNewNode && end instanceof SiteNode)
                     : "end cannot be a new SiteNode";
-            List<MapNode> newNodes = isBeginNewNode || isEndNewNode
-                    ? new ArrayList<>(nodes) : nodes;
+            List<MapNode> addedNodes = new ArrayList<>(2);
             if (isBeginNewNode) {
-                newNodes.add(begin);
+                addedNodes.add(begin);
             }
-            if (isEndNewNode) {
-                newNodes.add(end);
+            if (isEndNewNode && end != begin) {
+                addedNodes.add(end);
             }
-            List<MapEdge> newEdges = new ArrayList<>(edges);
-            newEdges.add(edge);
-            return createTopology(newNodes, newEdges);
+            // Updates the spatial index only if already built
+            NodeGrid newNodeGrid = nodeGrid.peek()
+                    .map(grid -> grid.add(addedNodes))
+                    .orElse(null);
+            return new Topology(sites, compiled.addEdge(edge), newNodeGrid);
         }
     }
 
@@ -164,10 +229,11 @@ public class Topology {
         AffineTransform tr = AffineTransform.getTranslateInstance(location.getX(), location.getY());
         tr.rotate(direction.getX(), direction.getY());
         double epsilonSq = epsilon * epsilon;
+        NodeGrid grid = getNodeGrid();
         Map<MapNode, MapNode> nodeMap = mapModule.getNodes().stream()
                 .map(node -> {
                     Point2D pt = tr.transform(node.getLocation(), null);
-                    MapNode newNode = findNearestNode(pt)
+                    MapNode newNode = grid.findNearest(pt)
                             .filter(mapNode ->
                                     mapNode.getLocation().distanceSq(pt) <= epsilonSq
                             ).orElseGet(
@@ -177,7 +243,7 @@ public class Topology {
                 }).collect(entriesToMap());
         List<MapEdge> edges = Stream.concat(
                         // concatenates map edges
-                        this.edges.stream(),
+                        getEdges().stream(),
                         // generates mapModule edges
                         mapModule.getEdges().stream()
                                 .flatMap(edge ->
@@ -190,13 +256,15 @@ public class Topology {
                                 .map(edge ->
                                         edge.setSpeedLimit(min(edge.getSpeedLimit(), edge.getSafetySpeed()))))
                 .collect(Collectors.toList());
-        List<MapNode> nodes = Stream.concat(this.nodes.stream(),
-                        nodeMap.values()
-                                .stream()
-                                .filter(Predicate.not(this.nodes::contains)))
+        Set<MapNode> oldNodes = new HashSet<>(getNodes());
+        List<MapNode> addedNodes = nodeMap.values()
+                .stream()
+                .filter(Predicate.not(oldNodes::contains))
+                .collect(Collectors.toList());
+        List<MapNode> nodes = Stream.concat(getNodes().stream(), addedNodes.stream())
                 .collect(Collectors.toList());
 
-        return createTopology(nodes, edges);
+        return createTopology(nodes, edges, grid.add(addedNodes));
     }
 
     /**
@@ -208,11 +276,11 @@ public class Topology {
         MapNode newNode = node instanceof SiteNode
                 ? new CrossNode(node.getLocation())
                 : new SiteNode(node.getLocation());
-        List<MapNode> newNodes = nodes.stream()
+        List<MapNode> newNodes = getNodes().stream()
                 .filter(Predicate.not(node::equals))
                 .collect(Collectors.toList());
         newNodes.add(newNode);
-        List<MapEdge> newEdges = edges.stream()
+        List<MapEdge> newEdges = getEdges().stream()
                 .map(edge -> {
                     if (edge.getBegin().isSameLocation(node)) {
                         return edge.setBegin(newNode);
@@ -227,15 +295,14 @@ public class Topology {
     }
 
     /**
-     * Returns the map of nodes from this to another topology
+     * Returns the map of edges from this to another topology
      *
      * @param other the other topology
      */
     public Map<MapEdge, MapEdge> createEdgeMap(Topology other) {
-        return edges.stream()
+        return getEdges().stream()
                 .flatMap(edge ->
-                        other.edges.stream()
-                                .filter(edge::isSameLocation)
+                        other.findEdges(edge)
                                 .findAny()
                                 .stream()
                                 .map(otherEdge ->
@@ -250,10 +317,9 @@ public class Topology {
      * @param other the other topology
      */
     public Map<MapNode, MapNode> createNodeMap(Topology other) {
-        return nodes.stream()
+        return getNodes().stream()
                 .flatMap(node ->
-                        other.nodes.stream()
-                                .filter(node::isSameLocation)
+                        other.findNodes(node)
                                 .findAny()
                                 .stream()
                                 .map(otherNode ->
@@ -262,51 +328,103 @@ public class Topology {
     }
 
     /**
-     * Returns the map of nodes from this to another topology
+     * Returns the map of sites from this to another topology
      *
      * @param other the other topology
      */
     public Map<SiteNode, SiteNode> createSiteMap(Topology other) {
         return sites.stream()
                 .flatMap(site ->
-                        other.sites.stream()
-                                .filter(site::isSameLocation)
+                        other.findNodes(site)
+                                .filter(SiteNode.class::isInstance)
                                 .findAny()
                                 .stream()
                                 .map(otherSite ->
-                                        entry(site, otherSite))
+                                        entry(site, (SiteNode) otherSite))
                 )
                 .collect(entriesToMap());
     }
 
+    /**
+     * Returns the edges at the same location of an edge
+     *
+     * @param edge the edge
+     */
+    Stream<MapEdge> findEdges(MapEdge edge) {
+        return edgesByLocation.get()
+                .getOrDefault(gridPoint(edge.getBegin().getLocation()), List.of())
+                .stream()
+                .filter(edge::isSameLocation);
+    }
+
+    /**
+     * Returns the nodes at the same location of a node
+     *
+     * @param node the node
+     */
+    Stream<MapNode> findNodes(MapNode node) {
+        return nodesByLocation.get()
+                .getOrDefault(gridPoint(node.getLocation()), List.of())
+                .stream()
+                .filter(node::isSameLocation);
+    }
+
     /**
      * Returns the nearest node to a point
      *
      * @param point the point
      */
     Optional<MapNode> findNearestNode(Point2D point) {
-        return nodes.stream().reduce((a, b) ->
-                a.getLocation().distanceSq(point) <= b.getLocation().distanceSq(point)
-                        ? a : b
-        );
+        return getNodeGrid().findNearest(point);
+    }
+
+    /**
+     * Returns the nodes within a distance from a point
+     *
+     * @param point  the point
+     * @param radius the distance
+     */
+    List<MapNode> findNodesWithin(Point2D point, double radius) {
+        return getNodeGrid().findWithin(point, radius);
+    }
+
+    /**
+     * Returns the compiled topology
+     */
+    public CompiledTopology getCompiled() {
+        return compiled.get();
+    }
+
+    /**
+     * Returns the spatial index of nodes
+     */
+    public NodeGrid getNodeGrid() {
+        return nodeGrid.get();
     }
 
     /**
      * Returns the list of edges
      */
     public List<MapEdge> getEdges() {
-        return edges;
+        return edges.get();
     }
 
     /**
      * Returns the incoming edges at a given node.
-     * The list is sorted ascending by priority
+     * The list is sorted descending by priority
      *
      * @param node the node
      */
     public List<MapEdge> getIncomeEdges(MapNode node) {
-        List<MapEdge> list = entryEdgesByNode.get(node);
-        return list != null ? list : List.of();
+        CompiledTopology compiled = getCompiled();
+        int id = compiled.nodeId(node);
+        if (id < 0) {
+            return List.of();
+        }
+        List<MapEdge> edges = compiled.getEdges();
+        return Arrays.stream(compiled.getInEdges(id))
+                .mapToObj(edges::get)
+                .collect(Collectors.toList());
     }
 
     /**
@@ -327,7 +445,7 @@ public class Topology {
      * Returns the list of nodes
      */
     public List<MapNode> getNodes() {
-        return nodes;
+        return nodes.get();
     }
 
     /**
@@ -344,13 +462,14 @@ public class Topology {
      */
     public Topology optimize(double maxSpeed) {
         // Filter effective nodes
-        List<MapNode> nodes = this.nodes.stream().filter(
+        List<MapEdge> oldEdges = getEdges();
+        List<MapNode> nodes = getNodes().stream().filter(
                 node -> node instanceof SiteNode ||
-                        edges.stream().anyMatch(edge -> edge.isCrossingNode(node))
+                        oldEdges.stream().anyMatch(edge -> edge.isCrossingNode(node))
         ).collect(Collectors.toList());
 
         // Remap edges
-        List<MapEdge> edges = this.edges.stream()
+        List<MapEdge> edges = oldEdges.stream()
                 .map(edge -> edge.setSpeedLimit(min(maxSpeed, edge.getSafetySpeed())))
                 .collect(Collectors.toList());
 
@@ -359,15 +478,33 @@ public class Topology {
 
 
     /**
-     * Returns the topology without an edge
+     * Returns the topology without the edges at the same location of an edge.
+     * The removed edges are marked as removed in the compiled topology, the nodes are kept.
+     * The edges at the same location of an edge in the topology are searched
+     * in the outgoing edges of its beginning node, the other edges in the location index
      *
      * @param edge the edge
      */
     public Topology removeEdge(MapEdge edge) {
-        List<MapEdge> newEdges = edges.stream()
-                .filter(Predicate.not(e -> e.isSameLocation(edge)))
-                .collect(Collectors.toList());
-        return createTopology(nodes, newEdges);
+        CompiledTopology compiled = getCompiled();
+        int id = compiled.edgeId(edge);
+        List<MapEdge> removedEdges;
+        if (id >= 0) {
+            List<MapEdge> edges = compiled.getEdges();
+            removedEdges = Arrays.stream(compiled.getOutEdges(compiled.getEdgeBegin(id)))
+                    .mapToObj(edges::get)
+                    .filter(edge::isSameLocation)
+                    .collect(Collectors.toList());
+        } else {
+            removedEdges = findEdges(edge).collect(Collectors.toList());
+        }
+        if (removedEdges.isEmpty()) {
+            return this;
+        }
+        for (MapEdge removed : removedEdges) {
+            compiled = compiled.removeEdge(removed);
+        }
+        return new Topology(sites, compiled, nodeGrid.peek().orElse(null));
     }
 
     /**
@@ -376,10 +513,10 @@ public class Topology {
      * @param node the node
      */
     public Topology removeNode(MapNode node) {
-        List<MapNode> newNodes = nodes.stream()
+        List<MapNode> newNodes = getNodes().stream()
                 .filter(Predicate.not(node::isSameLocation))
                 .collect(Collectors.toList());
-        List<MapEdge> newEdges = edges.stream()
+        List<MapEdge> newEdges = getEdges().stream()
                 .filter(edge ->
                         !(edge.getBegin().equals(node) || edge.getEnd().equals(node)))
                 .collect(Collectors.toList());
@@ -0,0 +1,100 @@
+/*
+ *
+ * Copyright (c) 2023 Marco Marini, marco.marini@mmarini.org
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ *
+ *    END OF TERMS AND CONDITIONS
+ */
+package org.mmarini.routes.model2;
+
+import java.awt.geom.Point2D;
+
+/**
+ * The topology edits of a transaction applied at once to a traffic engine.
+ * <p>
+ * The edits are applied in order to the topology of the transaction
+ * and the engine moves the vehicles, the transit times and the path weights
+ * to the resulting topology only once at the end of transaction.
+ * </p>
+ *
+ * @see TrafficEngine#edit(java.util.function.Consumer)
+ */
+public interface TopologyEdit {
+    /**
+     * Returns this transaction with a new edge
+     *
+     * @param edge the edge
+     */
+    TopologyEdit addEdge(MapEdge edge);
+
+    /**
+     * Returns this transaction with the new mapModule
+     *
+     * @param mapModule the mapModule
+     * @param location  the mapModule location
+     * @param direction the directions
+     * @param epsilon   the marginal distance to map existing nodes
+     */
+    TopologyEdit addModule(MapModule mapModule, Point2D location, Point2D direction, double epsilon);
+
+    /**
+     * Returns this transaction with changed edge
+     *
+     * @param oldEdge the old edge
+     * @param newEdge the new edge
+     */
+    TopologyEdit changeEdge(MapEdge oldEdge, MapEdge newEdge);
+
+    /**
+     * Returns this transaction with a node changed
+     * if the node is a CrossNode it will b changed to SiteNode
+     * if the node is a SiteNode it will b changed to CrossNode
+     *
+     * @param node the node
+     */
+    TopologyEdit changeNode(MapNode node);
+
+    /**
+     * Returns the topology with the edits applied so far
+     */
+    Topology getTopology();
+
+    /**
+     * Returns this transaction with optimized nodes and edge speed limits
+     */
+    TopologyEdit optimize();
+
+    /**
+     * Returns this transaction without an edge
+     *
+     * @param edge the edge
+     */
+    TopologyEdit removeEdge(MapEdge edge);
+
+    /**
+     * Returns this transaction without a MapNode
+     *
+     * @param node the node
+     */
+    TopologyEdit removeNode(MapNode node);
+}
@@ -0,0 +1,175 @@
+/*
+ *
+ * Copyright (c) 2023 Marco Marini, marco.marini@mmarini.org
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ *
+ *    END OF TERMS AND CONDITIONS
+ */
+package org.mmarini.routes.model2;
+
+import java.awt.geom.Point2D;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.Predicate;
+
+import static java.util.Objects.requireNonNull;
+import static org.mmarini.routes.model2.TrafficEngineImpl.computeChangedEdges;
+import static org.mmarini.routes.model2.TrafficEngineImpl.vehicleNotInRemovedNode;
+
+/**
+ * The transaction of topology edits of a traffic engine.
+ * <p>
+ * The transaction tracks the replaced edges of the original topology
+ * and the predicate of the vehicles kept by the edits.
+ * The vehicles are still bound to the original topology during the transaction,
+ * so the vehicle predicates refer to the original edges.
+ * </p>
+ */
+class TopologyTransaction implements TopologyEdit {
+    private final double speedLimit;
+    private final Map<MapEdge, MapEdge> changedEdges;
+    private final Map<MapEdge, MapEdge> originalEdges;
+    private Topology topology;
+    private Predicate<Vehicle> filter;
+
+    /**
+     * Creates the transaction
+     *
+     * @param topology   the original topology
+     * @param speedLimit the speed limit of optimization
+     */
+    TopologyTransaction(Topology topology, double speedLimit) {
+        this.topology = requireNonNull(topology);
+        this.speedLimit = speedLimit;
+        this.changedEdges = new HashMap<>();
+        this.originalEdges = new HashMap<>();
+        this.filter = vehicle -> true;
+    }
+
+    @Override
+    public TopologyTransaction addEdge(MapEdge edge) {
+        topology = topology.addEdge(edge);
+        return this;
+    }
+
+    @Override
+    public TopologyTransaction addModule(MapModule mapModule, Point2D location, Point2D direction, double epsilon) {
+        topology = topology.addModule(mapModule, location, direction, epsilon);
+        return this;
+    }
+
+    @Override
+    public TopologyTransaction changeEdge(MapEdge oldEdge, MapEdge newEdge) {
+        // drop the vehicles beyond the new edge length
+        MapEdge original = getOriginalEdge(oldEdge);
+        double length = newEdge.getLength();
+        filter = filter.and(v -> !(v.isTransitingEdge(original) && v.getDistance() > length));
+        topology = topology.removeEdge(oldEdge).addEdge(newEdge);
+        replaceEdge(oldEdge, newEdge);
+        return this;
+    }
+
+    @Override
+    public TopologyTransaction changeNode(MapNode node) {
+        if (node instanceof SiteNode) {
+            // remove vehicles with departure or destination equal to old node
+            filter = filter.and(v -> !v.isSiteInPath(node));
+        }
+        return replaceTopology(topology.changeNode(node));
+    }
+
+    /**
+     * Returns the new edges by the replaced edges of the original topology
+     */
+    Map<MapEdge, MapEdge> getChangedEdges() {
+        return changedEdges;
+    }
+
+    /**
+     * Returns the predicate of the kept vehicles
+     */
+    Predicate<Vehicle> getFilter() {
+        return filter;
+    }
+
+    /**
+     * Returns the original edge of an edge
+     *
+     * @param edge the edge
+     */
+    private MapEdge getOriginalEdge(MapEdge edge) {
+        return originalEdges.getOrDefault(edge, edge);
+    }
+
+    @Override
+    public Topology getTopology() {
+        return topology;
+    }
+
+    @Override
+    public TopologyTransaction optimize() {
+        return replaceTopology(topology.optimize(speedLimit));
+    }
+
+    @Override
+    public TopologyTransaction removeEdge(MapEdge edge) {
+        MapEdge original = getOriginalEdge(edge);
+        filter = filter.and(vehicle -> !vehicle.isTransitingEdge(original));
+        topology = topology.removeEdge(edge);
+        return this;
+    }
+
+    @Override
+    public TopologyTransaction removeNode(MapNode node) {
+        filter = filter.and(vehicleNotInRemovedNode(node));
+        topology = topology.removeNode(node);
+        return this;
+    }
+
+    /**
+     * Replaces an edge tracking the original edge
+     *
+     * @param oldEdge the replaced edge
+     * @param newEdge the new edge
+     */
+    private void replaceEdge(MapEdge oldEdge, MapEdge newEdge) {
+        MapEdge original = originalEdges.remove(oldEdge);
+        if (original == null) {
+            original = oldEdge;
+        }
+        changedEdges.put(original, newEdge);
+        originalEdges.put(newEdge, original);
+    }
+
+    /**
+     * Returns this transaction with a topology with the same edge order
+     *
+     * @param newTopology the new topology
+     */
+    private TopologyTransaction replaceTopology(Topology newTopology) {
+        computeChangedEdges(topology.getEdges(), newTopology.getEdges())
+                .forEach(this::replaceEdge);
+        topology = newTopology;
+        return this;
+    }
+}
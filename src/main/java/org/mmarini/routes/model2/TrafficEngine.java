@@ -31,8 +31,8 @@ package org.mmarini.routes.model2;
 import org.mmarini.Tuple2;
 
 import java.awt.geom.Point2D;
-import java.util.Map;
 import java.util.Random;
+import java.util.function.Consumer;
 
 public interface TrafficEngine {
 
@@ -58,6 +58,21 @@ public interface TrafficEngine {
      */
     StatusImpl buildStatus();
 
+    /**
+     * Returns the delta of vehicles since the last encoding of the encoder.
+     * The optional delta stream may be emitted in place of the full status to the simulator observers
+     *
+     * @param encoder the encoder
+     */
+    StatusDelta encodeDelta(StatusDeltaEncoder encoder);
+
+    /**
+     * Returns this traffic engine after writing and publishing the vehicle frame
+     *
+     * @param frames the frame buffer
+     */
+    TrafficEngine writeFrame(FrameBuffer frames);
+
     /**
      * Returns the status with changed edge
      *
@@ -75,6 +90,14 @@ public interface TrafficEngine {
      */
     TrafficEngine changeNode(MapNode node);
 
+    /**
+     * Returns the engine with the topology edits of a transaction.
+     * The vehicles, the transit times and the routes are updated once for all the edits
+     *
+     * @param transaction the transaction applying the edits
+     */
+    TrafficEngine edit(Consumer<TopologyEdit> transaction);
+
     /**
      * Returns the engine with connections created by builder
      *
@@ -101,6 +124,15 @@ public interface TrafficEngine {
      */
     Topology getTopology();
 
+    /**
+     * Returns the edge travel times by compiled edge id
+     * including the time spent in the edges by the running vehicles
+     */
+    double[] getEdgeTravelTimes();
+
+    /**
+     * Returns the immutable snapshot of the edge transit times
+     */
     TransitTimes getTransitTimeByEdge();
 
     /**
@@ -111,6 +143,14 @@ public interface TrafficEngine {
      */
     Tuple2<TrafficEngine, Double> next(Random random, double dt);
 
+    /**
+     * Returns the next status after a time interval generating the vehicles from independent site streams
+     *
+     * @param streams the random streams
+     * @param dt      the time interval
+     */
+    Tuple2<TrafficEngine, Double> next(RandomStreams streams, double dt);
+
     /**
      * Returns the status with optimized nodes
      */
@@ -157,6 +197,13 @@ public interface TrafficEngine {
      */
     TrafficEngine setOffset(Point2D offset);
 
+    /**
+     * Returns the status with a route service publishing the routes
+     *
+     * @param routeService the route service or null if routes computed by the engine
+     */
+    TrafficEngine setRouteService(RouteService routeService);
+
     /**
      * Returns the status with changed weights
      *
@@ -164,5 +211,10 @@ public interface TrafficEngine {
      */
     TrafficEngine setWeights(double[][] weights);
 
-    TrafficEngine updateRoutes(Map<Tuple2<MapNode, MapNode>, MapEdge> routes);
+    /**
+     * Returns the status with updated routes
+     *
+     * @param routes the route table of the current topology
+     */
+    TrafficEngine updateRoutes(RouteTable routes);
 }
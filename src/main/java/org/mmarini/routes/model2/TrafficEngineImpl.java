@@ -28,13 +28,16 @@
 
 package org.mmarini.routes.model2;
 
+import org.mmarini.AliasTable;
 import org.mmarini.Tuple2;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.awt.geom.Point2D;
 import java.util.*;
-import java.util.function.Function;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Consumer;
+import java.util.function.DoubleFunction;
 import java.util.function.Predicate;
 import java.util.stream.Collectors;
 import java.util.stream.IntStream;
@@ -43,74 +46,64 @@ import java.util.stream.Stream;
 import static java.lang.Math.ceil;
 import static java.lang.Math.round;
 import static java.util.Objects.requireNonNull;
-import static org.mmarini.Tuple2.toMap;
 import static org.mmarini.Utils.*;
 import static org.mmarini.routes.model2.Constants.*;
-import static org.mmarini.routes.model2.Routes.computeRoutes;
+import static org.mmarini.routes.model2.Routes.toEdgeTravelTimes;
 import static org.mmarini.routes.model2.SiteNode.createSite;
 import static org.mmarini.routes.model2.StatusImpl.createStatus;
 import static org.mmarini.routes.model2.Topology.createTopology;
 
 public class TrafficEngineImpl implements TrafficEngine {
     private static final Logger logger = LoggerFactory.getLogger(TrafficEngineImpl.class);
+    private static final int MIN_PARALLEL_VEHICLES = 256;
+    private static final int CHUNKS_BY_THREAD = 4;
 
     /**
-     * Returns a new transit time by topology change
+     * Returns the map of the changed edges between two edge lists with the same edge order
      *
-     * @param oldTransitTime the old transit times
-     * @param newTopology    the new topology
-     * @param oldTopology    the old topology
-     * @param vehiclesByEdge the vehicle by edge in new topology
+     * @param oldEdges the old edges
+     * @param newEdges the new edges
      */
-    static TransitTimes computeNewTransitTime(TransitTimes oldTransitTime, Topology newTopology, Topology oldTopology, Map<MapEdge, LinkedList<Vehicle>> vehiclesByEdge) {
-        Map<MapEdge, MapEdge> oldEdgeByNewEdge = newTopology.createEdgeMap(oldTopology);
-        return TransitTimes.create(newTopology.getEdges().stream(), edge -> {
-            // Get the list of vehicle in the new edge
-            Optional<LinkedList<Vehicle>> value1 = getValue(vehiclesByEdge, edge);
-            return value1
-                    // filter if there is at least a vehicle
-                    .filter(Predicate.not(LinkedList::isEmpty))
-                    .flatMap(list -> getValue(oldEdgeByNewEdge, edge))
-                    // map to old transit time
-                    //.map(e -> oldTransitTime.getValue(e))
-                    .map(oldTransitTime::getValue)
-                    .orElseGet(edge::getTransitTime);
-        });
-    }
-
-    /**
-     * Returns the next vehicle map
-     *
-     * @param vehiclesByEdge the vehicle by edge
-     */
-    static Map<Vehicle, Vehicle> computeNextVehicleMap(Map<MapEdge, LinkedList<Vehicle>> vehiclesByEdge) {
-        return vehiclesByEdge.entrySet().stream()
-                .flatMap(entry -> {
-                    List<Vehicle> vehicles1 = entry.getValue();
-                    return IntStream.range(0, vehicles1.size() - 1)
-                            .mapToObj(i ->
-                                    Tuple2.of(vehicles1.get(i), vehicles1.get(i + 1))
-                            );
-                })
-                .collect(toMap());
+    static Map<MapEdge, MapEdge> computeChangedEdges(List<MapEdge> oldEdges, List<MapEdge> newEdges) {
+        assert oldEdges.size() == newEdges.size();
+        Map<MapEdge, MapEdge> result = new HashMap<>();
+        for (int i = 0; i < oldEdges.size(); i++) {
+            MapEdge oldEdge = oldEdges.get(i);
+            MapEdge newEdge = newEdges.get(i);
+            if (oldEdge != newEdge) {
+                result.put(oldEdge, newEdge);
+            }
+        }
+        return result;
     }
 
     /**
-     * Returns the vehicles by edge
+     * Returns a new transit time by topology change.
+     * The edges with vehicles keep the old transit time of the same or replaced edge at the same location,
+     * the other edges get the default transit time
      *
-     * @param vehicles the vehicles
+     * @param oldTransitTime the old transit time
+     * @param newTopology    the new topology
+     * @param changedEdges   the new edges by the replaced edges
+     * @param vehicles       the vehicle store in new topology
      */
-    private static Map<MapEdge, LinkedList<Vehicle>> computeVehicleByEdges(List<Vehicle> vehicles) {
-        return vehicles.parallelStream()
-                .filter(v -> v.getCurrentEdge().isPresent())
-                .collect(Collectors.groupingBy(
-                        v -> v.getCurrentEdge().orElseThrow()))
-                .entrySet().stream()
-                .peek(entry -> entry.getValue()
-                        .sort(Comparator.comparingDouble(
-                                Vehicle::getDistance)))
-                .map(mapValue(LinkedList::new))
-                .collect(entriesToMap());
+    static TransitTimes computeNewTransitTime(TransitTimes oldTransitTime, Topology newTopology,
+                                              Map<MapEdge, MapEdge> changedEdges, VehicleStore vehicles) {
+        Map<MapEdge, MapEdge> oldEdgeByNewEdge = new HashMap<>();
+        changedEdges.forEach((oldEdge, newEdge) -> {
+            if (oldEdge.isSameLocation(newEdge)) {
+                oldEdgeByNewEdge.put(newEdge, oldEdge);
+            }
+        });
+        return TransitTimes.create(newTopology.getEdges().stream(), edge -> {
+            // Get the list of vehicle in the new edge
+            EdgeQueue queue = vehicles.queueOrNull(vehicles.indexOf(edge));
+            if (queue == null || queue.isEmpty()) {
+                return edge.getTransitTime();
+            }
+            // the edges missing in the old transit time get the default transit time
+            return oldTransitTime.getValue(oldEdgeByNewEdge.getOrDefault(edge, edge));
+        });
     }
 
     /**
@@ -130,13 +123,12 @@ public class TrafficEngineImpl implements TrafficEngine {
                                                  double frequency,
                                                  double[][] weights
     ) {
-        Map<MapEdge, LinkedList<Vehicle>> vehiclesByEdge = computeVehicleByEdges(vehicles);
-        Map<Vehicle, Vehicle> nextVehicles = computeNextVehicleMap(vehiclesByEdge);
         TransitTimes edgeTransitTimes = TransitTimes.create(topology.getEdges());
 
-        return new TrafficEngineImpl(maxVehicles, time, topology, new ArrayList<>(vehicles),
-                speedLimit, frequency, toCdf(weights), vehiclesByEdge, nextVehicles,
-                edgeTransitTimes, null);
+        double[][] newPathCdf = toCdf(weights);
+        return new TrafficEngineImpl(maxVehicles, time, topology, VehicleStore.create(topology, vehicles),
+                speedLimit, frequency, newPathCdf, toAliases(newPathCdf), edgeTransitTimes, null,
+                SchedulingMode.FIXED_STEP, null, null);
     }
 
     /**
@@ -206,14 +198,12 @@ public class TrafficEngineImpl implements TrafficEngine {
         Topology topology = createTopology(nodes, List.of());
         return new TrafficEngineImpl(maxVehicles, 0,
                 topology,
-                new ArrayList<>(),
+                VehicleStore.create(topology, List.of()),
                 speedLimits,
                 profile.getFrequency(),
-                pathsCdf,
-                new HashMap<>(),
-                new HashMap<>(),
+                pathsCdf, toAliases(pathsCdf),
                 TransitTimes.create(topology.getEdges()),
-                null);
+                null, SchedulingMode.FIXED_STEP, null, null);
     }
 
     /**
@@ -233,23 +223,42 @@ public class TrafficEngineImpl implements TrafficEngine {
         return weights;
     }
 
-    static Stream<Vehicle> replaceEdge(Vehicle vehicle, Map<MapEdge, MapEdge> newEdgeMap) {
-        return vehicle.getCurrentEdge().
-                map(oldEdge ->
-                        // replace the edge or empty if not exits
-                        getValue(newEdgeMap, oldEdge)
-                                .map(vehicle::setCurrentEdge)
-                                .stream()
-                ).orElseGet(() -> Stream.of(vehicle));
+    /**
+     * Returns the movement of a vehicle in an edge for the time interval before the edge end check.
+     * The movement is bound to the speed limit of edge and the safety distance to the next vehicle if any
+     *
+     * @param speedLimit     the edge speed limit
+     * @param safetyDistance the edge safety distance
+     * @param distance       the distance of vehicle from the beginning of edge
+     * @param nextDistance   the distance of next vehicle from the beginning of edge or NaN if no next vehicle
+     * @param dt             the time interval
+     */
+    static double computeMovement(double speedLimit, double safetyDistance, double distance, double nextDistance, double dt) {
+        // Compute the maximum movement of the vehicle
+        final double maxMovement = dt * speedLimit;
+        if (!Double.isNaN(nextDistance)) {
+            // Gets the distance to next vehicle
+            final double distToNext = nextDistance - distance;
+            if (maxMovement + safetyDistance > distToNext) {
+                /*
+                  Vehicle is moving too close the next vehicle
+                  Computes the brake movement for the vehicle
+                 */
+                return brakingMovement(distToNext, dt);
+            }
+        }
+        return maxMovement;
     }
 
     /**
-     * Returns the stream ov the new vehicle with changed edge
+     * Returns the alias tables of the cumulative distribution rows
      *
-     * @param newEdgeMap the new edge by old edge
+     * @param cdf the cumulative distribution rows
      */
-    static Function<Vehicle, Stream<Vehicle>> replaceEdgeFun(Map<MapEdge, MapEdge> newEdgeMap) {
-        return vehicle -> replaceEdge(vehicle, newEdgeMap);
+    static AliasTable[] toAliases(double[][] cdf) {
+        return Arrays.stream(cdf)
+                .map(AliasTable::fromCdf)
+                .toArray(AliasTable[]::new);
     }
 
     /**
@@ -291,59 +300,69 @@ public class TrafficEngineImpl implements TrafficEngine {
 
     private final int maxVehicles;
     private final Topology topology;
-    private final List<Vehicle> vehicles;
+    private final VehicleStore vehicles;
     private final double frequency;
     private final double speedLimit;
     private final double[][] pathCdf;
-    private final Map<Vehicle, Vehicle> nextVehicles;
+    private final AliasTable[] pathAliases;
     private final TransitTimes transitTimeByEdge;
-    private final Map<MapEdge, LinkedList<Vehicle>> vehiclesByEdge;
     private double time;
-    private Map<Tuple2<MapNode, MapNode>, MapEdge> edgeByPath;
+    private RouteTable routeTable;
+    private final SchedulingMode schedulingMode;
+    private final ForkJoinPool movementPool;
+    private final RouteService routeService;
+    private ExitSchedule exitSchedule;
+    private double[] edgeTimes;
+    private double eventTime;
+    private double routeDrift;
+    private double routeBaseline;
 
     /**
      * @param maxVehicles       maximum number of vehicles
      * @param time              the current time
      * @param topology          the topology
-     * @param vehicles          the vehicle list
+     * @param vehicles          the vehicle store
      * @param speedLimit        the speed limit
      * @param frequency         the frequency of new vehicles for every node
      * @param pathCdf           the cumulative probability of path from site to site
-     * @param vehiclesByEdge    the vehicles by edge
-     * @param nextVehicles      the map between a vehicle and the next
+     * @param pathAliases       the alias tables of path from site to site
      * @param transitTimeByEdge the effective edge transit time
-     * @param edgeByPath        the edge by path
+     * @param routeTable        the route table or null if not computed
+     * @param schedulingMode    the scheduling mode of time advance
+     * @param movementPool      the pool of parallel vehicle movement or null if sequential movement
+     * @param routeService      the route service or null if routes computed by the engine
      */
     protected TrafficEngineImpl(int maxVehicles, double time,
                                 Topology topology,
-                                List<Vehicle> vehicles,
+                                VehicleStore vehicles,
                                 double speedLimit,
                                 double frequency,
                                 double[][] pathCdf,
-                                Map<MapEdge, LinkedList<Vehicle>> vehiclesByEdge, Map<Vehicle, Vehicle> nextVehicles,
+                                AliasTable[] pathAliases,
                                 TransitTimes transitTimeByEdge,
-                                Map<Tuple2<MapNode, MapNode>, MapEdge> edgeByPath) {
+                                RouteTable routeTable,
+                                SchedulingMode schedulingMode,
+                                ForkJoinPool movementPool,
+                                RouteService routeService) {
         this.topology = requireNonNull(topology);
         this.vehicles = requireNonNull(vehicles);
-        this.nextVehicles = requireNonNull(nextVehicles);
         this.transitTimeByEdge = requireNonNull(transitTimeByEdge);
-        this.vehiclesByEdge = requireNonNull(vehiclesByEdge);
         this.pathCdf = requireNonNull(pathCdf);
+        this.pathAliases = requireNonNull(pathAliases);
         assert pathCdf.length == topology.getSites().size();
         this.maxVehicles = maxVehicles;
         this.frequency = frequency;
         this.speedLimit = speedLimit;
         this.time = time;
-        this.edgeByPath = edgeByPath;
+        this.routeTable = routeTable;
+        this.schedulingMode = requireNonNull(schedulingMode);
+        this.movementPool = movementPool;
+        this.routeService = routeService;
     }
 
     @Override
     public TrafficEngineImpl addEdge(MapEdge edge) {
-        Topology newTopology = topology.addEdge(edge);
-        TransitTimes newEdgeTransitTime = computeNewTransitTime(
-                transitTimeByEdge, newTopology, topology, vehiclesByEdge);
-        return new TrafficEngineImpl(maxVehicles, time, newTopology, vehicles, speedLimit, frequency, pathCdf, vehiclesByEdge, nextVehicles,
-                newEdgeTransitTime, null);
+        return changeTopology(topology.addEdge(edge), Map.of(), vehicle -> true, pathCdf, pathAliases);
     }
 
     @Override
@@ -351,7 +370,9 @@ public class TrafficEngineImpl implements TrafficEngine {
         Topology topology = this.topology.addModule(mapModule, location, direction, epsilon);
         // TODO copy the edge transit time and add new edge modules
         TransitTimes edgeTransitTimes = TransitTimes.create(topology.getEdges());
-        return new TrafficEngineImpl(maxVehicles, time, topology, vehicles, speedLimit, frequency, pathCdf, vehiclesByEdge, nextVehicles, edgeTransitTimes, null);
+        return new TrafficEngineImpl(maxVehicles, time, topology,
+                VehicleStore.create(topology, vehicles.getVehicles()), speedLimit, frequency, pathCdf, pathAliases,
+                edgeTransitTimes, null, schedulingMode, movementPool, routeService);
     }
 
     /**
@@ -361,83 +382,309 @@ public class TrafficEngineImpl implements TrafficEngine {
      * @param dt     the time interval
      */
     double applyTimeInterval(Random random, double dt) {
+        return applyTimeInterval(stepDt -> createVehicles(random, stepDt), dt);
+    }
+
+    /**
+     * Returns the time interval to the changed status
+     *
+     * @param streams the random streams
+     * @param dt      the time interval
+     */
+    double applyTimeInterval(RandomStreams streams, double dt) {
+        return applyTimeInterval(stepDt -> createVehicles(streams, stepDt), dt);
+    }
+
+    /**
+     * Returns the time interval to the changed status
+     *
+     * @param generator the generator of new vehicles for a time interval
+     * @param dt        the time interval
+     */
+    private double applyTimeInterval(DoubleFunction<List<Vehicle>> generator, double dt) {
         if (dt > 0) {
-            // Finds the first exiting vehicle and gets the time interval for that vehicles
-            double realDt = findFirstExitingVehicle(dt)
-                    .map(VehicleMovement::getDt)
-                    .orElse(dt);
-            // snap the time interval
-            realDt = ceil(realDt / TIME_STEP) * TIME_STEP;
-            // moves all the vehicles for the time interval
-            moveVehicles(realDt);
+            if (routeService != null) {
+                pickUpRoutes();
+            }
+            return schedulingMode == SchedulingMode.EVENT_DRIVEN
+                    ? applyEventInterval(generator, dt)
+                    : applyFixedInterval(generator, dt);
+        }
+        return dt;
+    }
+
+    /**
+     * Returns the time interval to the changed status processing all the edge exits within the time interval.
+     * <p>
+     * The time is advanced from exit to exit by the predicted exit times of the exit schedule.
+     * At each exit only the edges involved in the crossings are moved up to the exit time:
+     * the edges of the exiting leaders, the entered edges and the incoming edges checked for priority.
+     * The vehicles of an edge depend only on the vehicles of the same edge,
+     * so the other edges are moved at the end of time interval
+     * and the cost of an exit does not depend on the number of vehicles.
+     * </p>
+     *
+     * @param generator the generator of new vehicles for a time interval
+     * @param dt        the time interval
+     */
+    private double applyEventInterval(DoubleFunction<List<Vehicle>> generator, double dt) {
+        ExitSchedule schedule = getExitSchedule();
+        edgeTimes = new double[vehicles.getEdges().size()];
+        Arrays.fill(edgeTimes, time);
+        double remaining = dt;
+        while (remaining > 0) {
+            double exitDt = schedule.nextExitTime() - time;
+            double stepDt = remaining;
+            if (exitDt < remaining) {
+                // snap the time interval to the next exit
+                stepDt = Math.min(Math.max(ceil(exitDt / TIME_STEP), 1) * TIME_STEP, remaining);
+            }
+            eventTime = time + stepDt;
+            // Moves the edges of the exiting leaders up to the exit
+            for (int index = schedule.pollExit(eventTime); index >= 0; index = schedule.pollExit(eventTime)) {
+                settleEdge(index);
+                schedule.invalidate(index);
+            }
             // Generates new vehicles
-            vehicles.addAll(createVehicles(random, realDt));
-            // Dispatches the waiting vehicles for the travel edge
+            for (Vehicle vehicle : generator.apply(stepDt)) {
+                vehicles.add(vehicle);
+            }
+            // Dispatches the waiting vehicles moving the crossed edges up to the exit
             handleWaitingVehicles();
-            // Updates the simulation time
-            time += realDt;
-            return realDt;
+            time = eventTime;
+            schedule.refresh(time);
+            remaining -= stepDt;
+        }
+        // Moves the vehicles of the other edges up to the end of interval
+        int n = vehicles.getEdges().size();
+        for (int i = 0; i < n; i++) {
+            settleEdge(i);
         }
+        edgeTimes = null;
+        // Releases the slots of removed vehicles
+        vehicles.compact();
+        schedule.refresh(time);
         return dt;
     }
 
+    /**
+     * Returns the time interval to the changed status up to the first exiting vehicle
+     *
+     * @param generator the generator of new vehicles for a time interval
+     * @param dt        the time interval
+     */
+    private double applyFixedInterval(DoubleFunction<List<Vehicle>> generator, double dt) {
+        // Finds the first exiting vehicle and gets the time interval for that vehicles
+        int slot = findFirstExitingSlot(dt);
+        double realDt = slot >= 0 ? computeExitTime(slot, dt) : dt;
+        // snap the time interval
+        realDt = ceil(realDt / TIME_STEP) * TIME_STEP;
+        applyStep(generator, realDt);
+        return realDt;
+    }
+
+    /**
+     * Applies a simulation step
+     *
+     * @param generator the generator of new vehicles for a time interval
+     * @param dt        the time interval
+     */
+    private void applyStep(DoubleFunction<List<Vehicle>> generator, double dt) {
+        // moves all the vehicles for the time interval
+        moveVehicles(dt);
+        // Generates new vehicles
+        for (Vehicle vehicle : generator.apply(dt)) {
+            vehicles.add(vehicle);
+        }
+        // Dispatches the waiting vehicles for the travel edge
+        handleWaitingVehicles();
+        // Releases the slots of removed vehicles
+        vehicles.compact();
+        // Updates the simulation time
+        time += dt;
+        if (exitSchedule != null) {
+            // Updates the exit predictions of the changed edges
+            exitSchedule.refresh(time);
+        }
+    }
+
     @Override
     public StatusImpl buildStatus() {
-        List<Vehicle> vehicles = this.vehicles.stream()
-                .map(Vehicle::copy)
-                .collect(Collectors.toList());
+        List<Vehicle> vehicles = this.vehicles.snapshot();
+        this.vehicles.updateDelays(topology.getCompiled(), time);
+        RouteTable routes = routeTable != null && routeTable.getTopology() == topology.getCompiled()
+                ? routeTable : null;
         return createStatus(maxVehicles, speedLimit, frequency, time,
-                topology, vehicles, transitTimeByEdge,
-                getWeightMatrix().getValues());
+                topology, vehicles, transitTimeByEdge.snapshot(),
+                getWeightMatrix().getValues(), routes, this.vehicles.getCounters().copy());
+    }
+
+    @Override
+    public StatusDelta encodeDelta(StatusDeltaEncoder encoder) {
+        return encoder.encode(time, vehicles);
     }
 
     @Override
     public TrafficEngineImpl changeEdge(MapEdge oldEdge, MapEdge newEdge) {
         Topology newTopology = topology.removeEdge(oldEdge).addEdge(newEdge);
-        // move all vehicle to the new edge
+        // move all vehicle to the new edge dropping the vehicles beyond the new edge length
         double length = newEdge.getLength();
-        List<Vehicle> vehicles = this.vehicles.stream()
-                .filter(v ->
-                        !(v.isTransitingEdge(oldEdge) && v.getDistance() > length)
-                ).map(v ->
-                        v.isTransitingEdge(oldEdge)
-                                ? v.copy().setCurrentEdge(newEdge)
-                                : v
-                ).collect(Collectors.toList());
-        Map<MapEdge, LinkedList<Vehicle>> vehiclesByEdge = computeVehicleByEdges(vehicles);
-        Map<Vehicle, Vehicle> nextVehicles = computeNextVehicleMap(vehiclesByEdge);
-        TransitTimes edgeTransitTimes = computeNewTransitTime(this.transitTimeByEdge, newTopology, topology, vehiclesByEdge);
-        return new TrafficEngineImpl(maxVehicles, time, newTopology, vehicles,
-                speedLimit, frequency, pathCdf, vehiclesByEdge, nextVehicles,
-                edgeTransitTimes, null);
+        return changeTopology(newTopology, Map.of(oldEdge, newEdge),
+                v -> !(v.isTransitingEdge(oldEdge) && v.getDistance() > length),
+                pathCdf, pathAliases);
     }
 
     @Override
     public TrafficEngineImpl changeNode(MapNode node) {
         Topology newTop = topology.changeNode(node);
-        // Creates edge mapping between new and old
-        Map<MapEdge, MapEdge> newEdgeMap = topology.createEdgeMap(newTop);
-
-        // remove vehicles with departure or destination equal to old node
-        Stream<Vehicle> vehicleStream = node instanceof SiteNode
-                ? vehicles.stream().filter(v -> !v.isSiteInPath(node))
-                : vehicles.stream();
-
-        // Substitutes the vehicle data
-        List<Vehicle> newVehicles = vehicleStream
-                // duplicate vehicles
-                .map(Vehicle::copy)
-                .flatMap(replaceEdgeFun(newEdgeMap))
-                .collect(Collectors.toList());
-        Map<MapEdge, LinkedList<Vehicle>> newVehiclesByEdge = computeVehicleByEdges(newVehicles);
-        Map<Vehicle, Vehicle> newNextVehicles = computeNextVehicleMap(newVehiclesByEdge);
-        TransitTimes newEdgeTransitTime = computeNewTransitTime(transitTimeByEdge, newTop, topology, newVehiclesByEdge);
         // Create the new weights
         Map<SiteNode, SiteNode> oldSiteMap = newTop.createSiteMap(this.topology);
         double[][] weights = getWeightMatrix().map(newTop.getSites(), site -> getValue(oldSiteMap, site)).getValues();
-        return new TrafficEngineImpl(maxVehicles, time, newTop, newVehicles, speedLimit, frequency,
-                toCdf(weights), newVehiclesByEdge, newNextVehicles, newEdgeTransitTime,
-                null);
+        double[][] newPathCdf = toCdf(weights);
+        // remove vehicles with departure or destination equal to old node
+        Predicate<Vehicle> filter = node instanceof SiteNode
+                ? v -> !v.isSiteInPath(node)
+                : v -> true;
+        return changeTopology(newTop, computeChangedEdges(topology.getEdges(), newTop.getEdges()), filter,
+                newPathCdf, toAliases(newPathCdf));
+    }
+
+    @Override
+    public TrafficEngineImpl edit(Consumer<TopologyEdit> transaction) {
+        requireNonNull(transaction);
+        TopologyTransaction tx = new TopologyTransaction(topology, speedLimit);
+        transaction.accept(tx);
+        Topology newTopology = tx.getTopology();
+        if (newTopology == topology) {
+            return this;
+        }
+        double[][] newPathCdf = pathCdf;
+        AliasTable[] newPathAliases = pathAliases;
+        if (!newTopology.getSites().equals(topology.getSites())) {
+            // Create the new weights
+            Map<SiteNode, SiteNode> oldSiteMap = newTopology.createSiteMap(topology);
+            double[][] weights = getWeightMatrix().map(newTopology.getSites(), site -> getValue(oldSiteMap, site)).getValues();
+            newPathCdf = toCdf(weights);
+            newPathAliases = toAliases(newPathCdf);
+        }
+        return changeTopology(newTopology, tx.getChangedEdges(), tx.getFilter(), newPathCdf, newPathAliases);
+    }
+
+    /**
+     * Returns the engine with a changed topology.
+     * The kept vehicles are moved to the new topology with their edge queues
+     * and the edges with vehicles keep their transit times.
+     * Only the replaced and removed edges are matched by the changed edges,
+     * without matching the edge locations of the two topologies.
+     * The topologies derived by edge edits change this engine in place (see {@link #changeEdges}),
+     * the other topologies rebuild the vehicle store and the transit times (see {@link VehicleStore#edit}).
+     *
+     * @param newTopology  the new topology
+     * @param changedEdges the new edges by the replaced edges
+     * @param filter       the predicate of kept vehicles
+     * @param pathCdf      the cumulative probability of path from site to site in the new topology
+     * @param pathAliases  the alias tables of path from site to site in the new topology
+     */
+    private TrafficEngineImpl changeTopology(Topology newTopology, Map<MapEdge, MapEdge> changedEdges,
+                                             Predicate<Vehicle> filter,
+                                             double[][] pathCdf, AliasTable[] pathAliases) {
+        CompiledTopology compiled = topology.getCompiled();
+        int[] removedEdges = newTopology.getCompiled().getRemovedEdges(compiled);
+        if (removedEdges != null && vehicles.getEdges().size() == compiled.getEdgeCount()) {
+            return changeEdges(newTopology, removedEdges, changedEdges, filter);
+        }
+        VehicleStore newStore = vehicles.edit(newTopology, changedEdges, filter);
+        TransitTimes newEdgeTransitTime = computeNewTransitTime(transitTimeByEdge, newTopology, changedEdges, newStore);
+        return new TrafficEngineImpl(maxVehicles, time, newTopology, newStore,
+                speedLimit, frequency, pathCdf, pathAliases, newEdgeTransitTime, null,
+                schedulingMode, movementPool, routeService);
+    }
+
+    /**
+     * Returns the engine with a topology derived by edge edits changing this engine in place.
+     * <p>
+     * The derived compiled topology keeps the edge ids, so only the removed and the added edges are processed:
+     * the vehicles of the removed edges are moved in the vehicle store
+     * (see {@link VehicleStore#editEdges(CompiledTopology, int[], Map, Predicate)}),
+     * the added edges get the transit time of the replaced edge at the same location if they have vehicles
+     * or the default transit time, and their exit predictions are invalidated.
+     * The other edges keep the vehicles, the transit times and the exit predictions.
+     * This engine must not be used after the edit.
+     * </p>
+     *
+     * @param newTopology  the new topology
+     * @param removedEdges the ids of the edges removed by the new topology
+     * @param changedEdges the new edges by the replaced edges
+     * @param filter       the predicate of kept vehicles of the removed edges
+     */
+    private TrafficEngineImpl changeEdges(Topology newTopology, int[] removedEdges,
+                                          Map<MapEdge, MapEdge> changedEdges, Predicate<Vehicle> filter) {
+        CompiledTopology compiled = newTopology.getCompiled();
+        int firstAddedEdge = vehicles.getEdges().size();
+        Map<MapEdge, MapEdge> oldEdgeByNewEdge = new HashMap<>();
+        for (int index : removedEdges) {
+            MapEdge oldEdge = vehicles.getEdges().get(index);
+            MapEdge newEdge = changedEdges.get(oldEdge);
+            if (newEdge != null && oldEdge.isSameLocation(newEdge)) {
+                oldEdgeByNewEdge.put(newEdge, oldEdge);
+            }
+        }
+        vehicles.editEdges(compiled, removedEdges, changedEdges, filter);
+        List<MapEdge> edges = compiled.getEdges();
+        for (int i = firstAddedEdge; i < edges.size(); i++) {
+            if (compiled.isEdgeAlive(i)) {
+                MapEdge edge = edges.get(i);
+                EdgeQueue queue = vehicles.queueOrNull(i);
+                transitTimeByEdge.add(edge, queue == null || queue.isEmpty()
+                        ? edge.getTransitTime()
+                        : transitTimeByEdge.getValue(oldEdgeByNewEdge.getOrDefault(edge, edge)));
+            }
+        }
+        TrafficEngineImpl result = new TrafficEngineImpl(maxVehicles, time, newTopology, vehicles,
+                speedLimit, frequency, pathCdf, pathAliases, transitTimeByEdge, null,
+                schedulingMode, movementPool, routeService);
+        if (exitSchedule != null) {
+            for (int index : removedEdges) {
+                exitSchedule.invalidate(index);
+            }
+            for (int i = firstAddedEdge; i < edges.size(); i++) {
+                exitSchedule.invalidate(i);
+            }
+            exitSchedule.refresh(time);
+            result.exitSchedule = exitSchedule;
+        }
+        return result;
+    }
+
+    /**
+     * Returns the movement of a vehicle in its edge for the time interval.
+     * The movement is bound to the speed limit of edge and
+     * the safety distance to the next vehicle if any.
+     * The state of vehicle and edge is read from the store arrays
+     *
+     * @param slot the vehicle slot
+     * @param dt   the time interval
+     */
+    private double computeMovement(int slot, double dt) {
+        int edgeIndex = vehicles.getEdgeIndex(slot);
+        EdgeQueue queue = vehicles.queueOrNull(edgeIndex);
+        Vehicle next = queue != null ? queue.nextOf(vehicles.view(slot)) : null;
+        return computeMovement(vehicles.getEdgeSpeedLimit(edgeIndex), vehicles.getEdgeSafetyDistance(edgeIndex),
+                vehicles.getDistance(slot), next != null ? next.getDistance() : Double.NaN, dt);
+    }
+
+    /**
+     * Returns the time for a vehicle to reach the end of its edge
+     * or the time interval if the vehicle does not reach the end of edge within the time interval
+     *
+     * @param slot the vehicle slot
+     * @param dt   the time interval
+     */
+    private double computeExitTime(int slot, double dt) {
+        double distance = vehicles.getDistance(slot);
+        double length = vehicles.getEdgeLength(vehicles.getEdgeIndex(slot));
+        double ds = computeMovement(slot, dt);
+        return distance + ds >= length ? (length - distance) * dt / ds : dt;
     }
 
     /**
@@ -452,46 +699,22 @@ public class TrafficEngineImpl implements TrafficEngine {
      * @param dt      the time interval
      */
     VehicleMovement computeVehicleMovement(Vehicle vehicle, double dt) {
-        return vehicle.getCurrentEdge().map(edge -> {
-            // Compute the maximum movement of the vehicle
-            final double dist = vehicle.getDistance();
-            final double maxMovement = dt * edge.getSpeedLimit();
-            /*
-              Checks for next vehicle distance.
-              Computes the distance to the next vehicle
-              */
-            double ds = findNextVehicle(vehicle).map(next -> {
-                // Gets the distance to next vehicle
-                final double distToNext = next.getDistance() - dist;
-                // Compute the safety distance
-                final double edgeSafetyDistance = edge.getSafetyDistance();
-                if (maxMovement + edgeSafetyDistance > distToNext) {
-                    /*
-                      Vehicle is moving too close the next vehicle
-                      Computes the brake movement for the vehicle
-                     */
-                    return brakingMovement(distToNext, dt);
-                } else {
-                    /*
-                    Returns the minimum movement between the distance of next vehicle
-                    and the maximum distance
-                     */
-                    return maxMovement;
-                }
-            }).orElse(maxMovement);
-            // Check for edge exit
-            if (dist + ds >= edge.getLength()) {
-                // Vehicle is exiting the edge
-                double distanceToEnd = edge.getLength() - vehicle.getDistance();
-                double timeToEnd = distanceToEnd * dt / ds;
-                return new VehicleMovement(vehicle, distanceToEnd, timeToEnd, true);
-            } else {
-                // Vehicle is not exiting the edge
-                return new VehicleMovement(vehicle, ds, dt, false);
-            }
-        }).orElseGet(() ->
-                // No edge
-                new VehicleMovement(vehicle, 0, dt, false));
+        int slot = vehicle.getSlot(vehicles);
+        if (slot < 0 || vehicles.getEdgeIndex(slot) < 0) {
+            // No edge
+            return new VehicleMovement(vehicle, 0, dt, false);
+        }
+        double distance = vehicles.getDistance(slot);
+        double length = vehicles.getEdgeLength(vehicles.getEdgeIndex(slot));
+        double ds = computeMovement(slot, dt);
+        if (distance + ds >= length) {
+            // Vehicle is exiting the edge
+            double distanceToEnd = length - distance;
+            return new VehicleMovement(vehicle, distanceToEnd, distanceToEnd * dt / ds, true);
+        } else {
+            // Vehicle is not exiting the edge
+            return new VehicleMovement(vehicle, ds, dt, false);
+        }
     }
 
     /**
@@ -510,7 +733,29 @@ public class TrafficEngineImpl implements TrafficEngine {
      */
     private void createPath() {
         updateTransitTime();
-        this.edgeByPath = computeRoutes(topology.getEdges(), transitTimeByEdge);
+        CompiledTopology compiled = topology.getCompiled();
+        this.routeTable = RouteTable.createTable(compiled, toEdgeTravelTimes(compiled, transitTimeByEdge));
+    }
+
+    /**
+     * Picks up the last routes published by the route service and
+     * requests new routes if the topology is changed or the transit time drift exceeds the threshold
+     */
+    private void pickUpRoutes() {
+        CompiledTopology compiled = topology.getCompiled();
+        RouteTable published = routeService.getRoutes();
+        if (published != null && published.getTopology() == compiled
+                && (routeTable == null || routeTable.getTopology() != compiled
+                || published.getVersion() > routeTable.getVersion())) {
+            routeTable = published;
+        }
+        if (routeService.getRequestedTopology() != compiled
+                || routeDrift > routeService.getDriftThreshold() * routeBaseline) {
+            double[] edgeTravelTimes = toEdgeTravelTimes(compiled, transitTimeByEdge);
+            routeBaseline = Arrays.stream(edgeTravelTimes).sum();
+            routeDrift = 0;
+            routeService.request(compiled, edgeTravelTimes, time);
+        }
     }
 
     /**
@@ -536,13 +781,44 @@ public class TrafficEngineImpl implements TrafficEngine {
                     int n = ary[1];
                     SiteNode depSite = sites.get(departure);
                     return IntStream.range(0, n)
-                            .map(i -> nextCdf(random, pathCdf[departure]))
+                            .map(i -> pathAliases[departure].next(random))
                             .mapToObj(sites::get)
                             .map(destination -> Vehicle.createVehicle(depSite, destination, time));
                 })
                 .collect(Collectors.toList());
     }
 
+    /**
+     * Returns the new vehicles generated from the independent streams of departure sites.
+     * The sites are generated in parallel and the vehicles are collected in site order
+     *
+     * @param streams the random streams
+     * @param dt      the time interval
+     */
+    List<Vehicle> createVehicles(RandomStreams streams, double dt) {
+        List<SiteNode> sites = topology.getSites();
+        if (vehicles.size() > maxVehicles) {
+            return List.of();
+        }
+        SplittableRandom[] siteStreams = streams.getSiteStreams(sites.size());
+        return IntStream.range(0, sites.size())
+                .parallel()
+                .mapToObj(departure -> {
+                    SplittableRandom random = siteStreams[departure];
+                    // Generates the number of vehicle for the departure node
+                    int n = nextPoison(random, frequency * dt);
+                    SiteNode depSite = sites.get(departure);
+                    List<Vehicle> result = new ArrayList<>(n);
+                    for (int i = 0; i < n; i++) {
+                        SiteNode destination = sites.get(pathAliases[departure].next(random));
+                        result.add(Vehicle.createVehicle(depSite, destination, time));
+                    }
+                    return result;
+                })
+                .flatMap(List::stream)
+                .collect(Collectors.toList());
+    }
+
     /**
      * Registers the entry of a vehicle into its current edge.
      * Sets the next vehicle if present.
@@ -555,16 +831,14 @@ public class TrafficEngineImpl implements TrafficEngine {
         vehicle.getCurrentEdge().ifPresent(edge -> {
             // Sets the entry time
             vehicle.setEdgeEntryTime(time);
-            // Set the next vehicle
-            if (vehiclesByEdge.containsKey(edge)) {
-                LinkedList<Vehicle> vehicles = findVehicles(edge);
-                if (!vehicles.isEmpty()) {
-                    nextVehicles.put(vehicle, vehicles.getFirst());
-                }
-                // Adds to the edge vehicle list
-                vehicles.addFirst(vehicle);
-            } else {
-                vehiclesByEdge.put(edge, new LinkedList<>(List.of(vehicle)));
+            // Adds to the edge vehicle queue
+            int index = vehicles.register(edge);
+            settleEdge(index);
+            EdgeQueue queue = vehicles.queue(index);
+            queue.addFirst(vehicle);
+            if (exitSchedule != null && queue.size() == 1) {
+                // The vehicle is the new leader of the edge
+                exitSchedule.invalidate(index);
             }
         });
     }
@@ -577,20 +851,21 @@ public class TrafficEngineImpl implements TrafficEngine {
     void exitVehicleFromEdge(Vehicle vehicle) {
         vehicle.getCurrentEdge().ifPresent(edge -> {
             // Updates edge transit time depending on it is the only vehicle
-            // Removes from vehicle list of edge
-            LinkedList<Vehicle> edgeVehicles = findVehicles(edge);
-            if (!edgeVehicles.isEmpty() && edgeVehicles.getLast().equals(vehicle)) {
-                // Removes from vehicle edge list
+            // Removes from vehicle queue of edge
+            int index = vehicles.indexOf(edge);
+            settleEdge(index);
+            EdgeQueue edgeVehicles = vehicles.queueOrNull(index);
+            if (edgeVehicles != null && edgeVehicles.getLast() == vehicle) {
+                // Removes from vehicle edge queue
                 edgeVehicles.removeLast();
-                int n = edgeVehicles.size();
-                double transitTime = n > 0
+                if (exitSchedule != null) {
+                    // The next vehicle is the new leader of the edge
+                    exitSchedule.invalidate(index);
+                }
+                double transitTime = !edgeVehicles.isEmpty()
                         ? time - vehicle.getEdgeEntryTime()
                         : edge.getTransitTime();
                 setEdgeTravelTimes(edge, transitTime);
-                // removes the previous next prev if present
-                if (!edgeVehicles.isEmpty()) {
-                    nextVehicles.remove(edgeVehicles.getLast());
-                }
             }
         });
     }
@@ -610,16 +885,39 @@ public class TrafficEngineImpl implements TrafficEngine {
      * @param dt the time interval
      */
     Optional<VehicleMovement> findFirstExitingVehicle(double dt) {
-        Stream<Vehicle> lastVehicles = getLastVehicles()
-                // Filter the vehicles that is in the current edge (position less than the length of edge
-                .filter(v -> v.getCurrentEdge()
-                        .map(MapEdge::getLength)
-                        .filter(length -> v.getDistance() < length)
-                        .isPresent());
-        // Moves all the last vehicles
-        return computeVehicleMovements(lastVehicles, dt)
-                .reduce((a, b) ->
-                        a.getDt() <= b.getDt() ? a : b);
+        int slot = findFirstExitingSlot(dt);
+        return slot >= 0
+                ? Optional.of(computeVehicleMovement(vehicles.view(slot), dt))
+                : Optional.empty();
+    }
+
+    /**
+     * Returns the slot of the leader vehicle with the lowest movement time within a given time interval
+     * or -1 if no vehicle is running in the edges.
+     * The edge leaders are scanned on the store arrays without allocations
+     *
+     * @param dt the time interval
+     */
+    private int findFirstExitingSlot(double dt) {
+        int result = -1;
+        double minDt = Double.POSITIVE_INFINITY;
+        int n = vehicles.getEdges().size();
+        for (int index = 0; index < n; index++) {
+            EdgeQueue queue = vehicles.queueOrNull(index);
+            Vehicle leader = queue != null ? queue.getLast() : null;
+            if (leader != null) {
+                int slot = leader.getSlot(vehicles);
+                // Skips the leaders at the end of edge
+                if (slot >= 0 && isMoving(slot)) {
+                    double exitDt = computeExitTime(slot, dt);
+                    if (exitDt < minDt) {
+                        minDt = exitDt;
+                        result = slot;
+                    }
+                }
+            }
+        }
+        return result;
     }
 
     /**
@@ -629,7 +927,23 @@ public class TrafficEngineImpl implements TrafficEngine {
      * @param to   the destination node
      */
     Optional<MapEdge> findNextEdge(MapNode from, MapNode to) {
-        return getValue(getEdgeByPath(), Tuple2.of(from, to));
+        CompiledTopology compiled = topology.getCompiled();
+        return Optional.ofNullable(nextEdgeOrNull(compiled.nodeId(from), compiled.nodeId(to)));
+    }
+
+    /**
+     * Returns the edge to go from a node to a site or null if not reachable
+     *
+     * @param from the start node id
+     * @param to   the destination site index
+     */
+    private MapEdge nextEdgeOrNull(int from, int to) {
+        RouteTable table = getRouteTable();
+        if (from < 0 || to < 0 || to >= table.getSiteCount()) {
+            return null;
+        }
+        int edge = table.getNextEdge(from, to);
+        return edge >= 0 ? table.getTopology().getEdges().get(edge) : null;
     }
 
     /**
@@ -638,7 +952,19 @@ public class TrafficEngineImpl implements TrafficEngine {
      * @param vehicle the vehicle
      */
     public Optional<Vehicle> findNextVehicle(Vehicle vehicle) {
-        return getValue(nextVehicles, vehicle);
+        return Optional.ofNullable(nextVehicleOf(vehicle));
+    }
+
+    /**
+     * Returns the vehicle ahead of a vehicle in its edge or null if none
+     *
+     * @param vehicle the vehicle
+     */
+    private Vehicle nextVehicleOf(Vehicle vehicle) {
+        return vehicle.getCurrentEdge()
+                .map(edge -> vehicles.queueOrNull(vehicles.indexOf(edge)))
+                .map(queue -> queue.nextOf(vehicle))
+                .orElse(null);
     }
 
     /**
@@ -646,58 +972,137 @@ public class TrafficEngineImpl implements TrafficEngine {
      *
      * @param edge the edge
      */
-    LinkedList<Vehicle> findVehicles(MapEdge edge) {
-        return vehiclesByEdge.getOrDefault(edge, new LinkedList<>());
+    List<Vehicle> findVehicles(MapEdge edge) {
+        EdgeQueue queue = vehicles.queueOrNull(vehicles.indexOf(edge));
+        return queue != null ? queue : List.of();
     }
 
     /**
      * Returns all the vehicles
      */
     List<Vehicle> findVehicles() {
-        return vehicles;
+        return vehicles.getVehicles();
     }
 
     @Override
     public TrafficEngine generateConnections(ConnectionBuilder builder) {
         Topology newTop = builder.build(this);
-        Map<MapEdge, LinkedList<Vehicle>> newVehiclesByEdge = new HashMap<>();
-        TransitTimes newTransitTimeByEdge = computeNewTransitTime(this.transitTimeByEdge, newTop, topology, newVehiclesByEdge);
+        VehicleStore newVehicles = VehicleStore.create(newTop, List.of());
+        TransitTimes newTransitTimeByEdge = computeNewTransitTime(this.transitTimeByEdge, newTop, Map.of(), newVehicles);
         return new TrafficEngineImpl(maxVehicles, time,
-                newTop, new ArrayList<>(),
+                newTop, newVehicles,
                 speedLimit, frequency,
-                pathCdf,
-                newVehiclesByEdge,
-                new HashMap<>(),
-                newTransitTimeByEdge, null);
+                pathCdf, pathAliases,
+                newTransitTimeByEdge, null, schedulingMode, movementPool, routeService);
     }
 
-    private Map<Tuple2<MapNode, MapNode>, MapEdge> getEdgeByPath() {
-        if (edgeByPath == null) {
+    /**
+     * Returns the route table computing it if missing or of a different topology
+     */
+    RouteTable getRouteTable() {
+        if (routeTable == null || routeTable.getTopology() != topology.getCompiled()) {
             createPath();
         }
-        return edgeByPath;
+        return routeTable;
     }
 
     List<MapEdge> getEdges() {
         return topology.getEdges();
     }
 
-    double getFrequency() {
+    /**
+     * Returns the frequency of new vehicles for every site
+     */
+    public double getFrequency() {
         return frequency;
     }
 
+    /**
+     * Returns the maximum number of vehicles
+     */
+    public int getMaxVehicles() {
+        return maxVehicles;
+    }
+
     @Override
     public TrafficEngineImpl setFrequency(double frequency) {
-        return new TrafficEngineImpl(maxVehicles, time, topology, vehicles, speedLimit, frequency, pathCdf, vehiclesByEdge, nextVehicles, transitTimeByEdge, edgeByPath);
+        return new TrafficEngineImpl(maxVehicles, time, topology, vehicles, speedLimit, frequency, pathCdf, pathAliases,
+                transitTimeByEdge, routeTable, schedulingMode, movementPool, routeService);
+    }
+
+    /**
+     * Returns the exit schedule creating it at first use
+     */
+    ExitSchedule getExitSchedule() {
+        if (exitSchedule == null) {
+            exitSchedule = ExitSchedule.createSchedule(vehicles, time);
+        }
+        return exitSchedule;
     }
 
     /**
      * Returns the list of last vehicles
      */
     Stream<Vehicle> getLastVehicles() {
-        return vehiclesByEdge.values().stream()
-                .filter(Predicate.not(List::isEmpty))
-                .map(LinkedList::getLast);
+        return IntStream.range(0, vehicles.getEdges().size())
+                .mapToObj(vehicles::queueOrNull)
+                .filter(Objects::nonNull)
+                .map(EdgeQueue::getLast)
+                .filter(Objects::nonNull);
+    }
+
+    /**
+     * Returns the scheduling mode of time advance
+     */
+    public SchedulingMode getSchedulingMode() {
+        return schedulingMode;
+    }
+
+    /**
+     * Returns the traffic engine with a scheduling mode of time advance
+     *
+     * @param schedulingMode the scheduling mode
+     */
+    public TrafficEngineImpl setSchedulingMode(SchedulingMode schedulingMode) {
+        return new TrafficEngineImpl(maxVehicles, time, topology, vehicles, speedLimit, frequency, pathCdf, pathAliases,
+                transitTimeByEdge, routeTable, schedulingMode, movementPool, routeService);
+    }
+
+    /**
+     * Returns the route service or null if routes computed by the engine
+     */
+    public RouteService getRouteService() {
+        return routeService;
+    }
+
+    /**
+     * Returns the traffic engine with a route service
+     *
+     * @param routeService the route service or null if routes computed by the engine
+     */
+    @Override
+    public TrafficEngineImpl setRouteService(RouteService routeService) {
+        return routeService == this.routeService
+                ? this
+                : new TrafficEngineImpl(maxVehicles, time, topology, vehicles, speedLimit, frequency,
+                pathCdf, pathAliases, transitTimeByEdge, routeTable, schedulingMode, movementPool, routeService);
+    }
+
+    /**
+     * Returns the pool of parallel vehicle movement or null if sequential movement
+     */
+    public ForkJoinPool getMovementPool() {
+        return movementPool;
+    }
+
+    /**
+     * Returns the traffic engine with a pool of parallel vehicle movement
+     *
+     * @param movementPool the pool or null for sequential movement
+     */
+    public TrafficEngineImpl setMovementPool(ForkJoinPool movementPool) {
+        return new TrafficEngineImpl(maxVehicles, time, topology, vehicles, speedLimit, frequency, pathCdf, pathAliases,
+                transitTimeByEdge, routeTable, schedulingMode, movementPool, routeService);
     }
 
     List<MapNode> getNodes() {
@@ -735,7 +1140,7 @@ public class TrafficEngineImpl implements TrafficEngine {
     @Override
     public TrafficEngineImpl setSpeedLimit(double speedLimit) {
         return new TrafficEngineImpl(maxVehicles, time, topology, vehicles, speedLimit, frequency,
-                pathCdf, vehiclesByEdge, nextVehicles, transitTimeByEdge, edgeByPath);
+                pathCdf, pathAliases, transitTimeByEdge, routeTable, schedulingMode, movementPool, routeService);
     }
 
     @Override
@@ -743,21 +1148,30 @@ public class TrafficEngineImpl implements TrafficEngine {
         return topology;
     }
 
+    @Override
+    public double[] getEdgeTravelTimes() {
+        updateTransitTime();
+        return toEdgeTravelTimes(topology.getCompiled(), transitTimeByEdge);
+    }
+
     @Override
     public TransitTimes getTransitTimeByEdge() {
-        return transitTimeByEdge;
+        return transitTimeByEdge.snapshot();
     }
 
     /**
      * Returns the vehicles without edge or at the end of edge
      */
     List<Vehicle> getWaitingVehicles() {
-        return vehicles.stream().filter(vehicle ->
-                        vehicle.getCurrentEdge()
-                                .map(MapEdge::getLength)
-                                .filter(length -> vehicle.getDistance() < length)
-                                .isEmpty())
-                .collect(Collectors.toList());
+        List<Vehicle> result = new ArrayList<>();
+        int n = vehicles.orderSize();
+        for (int i = 0; i < n; i++) {
+            int slot = vehicles.slotAt(i);
+            if (vehicles.isAlive(slot) && vehicles.isWaiting(slot)) {
+                result.add(vehicles.view(slot));
+            }
+        }
+        return result;
     }
 
     public DoubleMatrix<SiteNode> getWeightMatrix() {
@@ -767,10 +1181,12 @@ public class TrafficEngineImpl implements TrafficEngine {
     void handleVehicleAtSite(Vehicle vehicle) {
         // vehicle on the site
         // Extracts next edge
-        Optional<MapEdge> nextEdgeOpt = vehicle.isReturning()
-                ? findNextEdge(vehicle.getDestination(), vehicle.getDeparture())
-                : findNextEdge(vehicle.getDeparture(), vehicle.getDestination());
-        nextEdgeOpt.ifPresentOrElse(nextEdge -> {
+        // The site indices of vehicle store are the compiled topology node ids of sites
+        int slot = vehicle.getSlot(vehicles);
+        MapEdge nextEdge = nextEdgeOrNull(
+                vehicles.isReturning(slot) ? vehicles.getDestination(slot) : vehicles.getDeparture(slot),
+                vehicles.currentDestination(slot));
+        if (nextEdge != null) {
             // Next edge exist
             if (isEdgeAvailable(nextEdge)) {
                 // cross to next edge is free
@@ -778,12 +1194,12 @@ public class TrafficEngineImpl implements TrafficEngine {
                 vehicle.setCurrentEdge(nextEdge).setDistance(0);
                 enterVehicleToEdge(vehicle);
             }
-        }, () -> {
+        } else {
             // Next edge does not exist
             // remove vehicle
             exitVehicleFromEdge(vehicle);
-            vehicles.remove(vehicle);
-        });
+            removeVehicle(vehicle);
+        }
     }
 
     void handleWaitingVehicleOnEdge(Vehicle vehicle, MapEdge edge) {
@@ -792,7 +1208,7 @@ public class TrafficEngineImpl implements TrafficEngine {
             exitVehicleFromEdge(vehicle);
             if (vehicle.isReturning()) {
                 // Vehicle completed the trip
-                vehicles.remove(vehicle);
+                removeVehicle(vehicle);
             } else {
                 // Vehicle at destination
                 vehicle.setReturning(true).setCurrentEdge(null);
@@ -801,21 +1217,29 @@ public class TrafficEngineImpl implements TrafficEngine {
         } else {
             // vehicle on the edge
             // Extracts next edge
-            findNextEdge(edge.getEnd(), vehicle.getCurrentDestination())
-                    .ifPresentOrElse(nextEdge -> {
-                        // Next edge exists
-                        if (isCrossFree(edge, nextEdge)) {
-                            // cross to next edge is free
-                            exitVehicleFromEdge(vehicle);
-                            vehicle.setCurrentEdge(nextEdge).setDistance(0);
-                            enterVehicleToEdge(vehicle);
-                        }
-                    }, () -> {
-                        // Next edge does not exist
-                        // remove vehicle
-                        exitVehicleFromEdge(vehicle);
-                        vehicles.remove(vehicle);
-                    });
+            int slot = vehicle.getSlot(vehicles);
+            int edgeIndex = vehicles.getEdgeIndex(slot);
+            CompiledTopology compiled = topology.getCompiled();
+            // The edge indices of vehicle store are the compiled topology edge ids,
+            // the end node of edges out of topology is looked up once
+            int end = edgeIndex < compiled.getEdgeCount()
+                    ? compiled.getEdgeEnd(edgeIndex)
+                    : compiled.nodeId(edge.getEnd());
+            MapEdge nextEdge = nextEdgeOrNull(end, vehicles.currentDestination(slot));
+            if (nextEdge != null) {
+                // Next edge exists
+                if (isCrossFree(edge, nextEdge)) {
+                    // cross to next edge is free
+                    exitVehicleFromEdge(vehicle);
+                    vehicle.setCurrentEdge(nextEdge).setDistance(0);
+                    enterVehicleToEdge(vehicle);
+                }
+            } else {
+                // Next edge does not exist
+                // remove vehicle
+                exitVehicleFromEdge(vehicle);
+                removeVehicle(vehicle);
+            }
         }
     }
 
@@ -823,29 +1247,59 @@ public class TrafficEngineImpl implements TrafficEngine {
      * Handles the waiting vehicle moving them to the next edge if possible
      */
     void handleWaitingVehicles() {
-        // Partition the waiting vehicles at edge or at site
-        Map<Boolean, List<Vehicle>> map = getWaitingVehicles().stream()
-                .collect(Collectors.groupingBy(v -> v.getCurrentEdge().isPresent()));
-        // Sort vehicles vehicle on edge by age and handle
-        for (Vehicle vehicle : getValue(map, true)
-                .map(vehicles -> {
-                    vehicles.sort(Comparator.comparingDouble(Vehicle::getStartWaitingTime));
-                    return vehicles;
-                })
-                .orElse(List.of())) {
-            vehicle.getCurrentEdge().ifPresent(edge ->
-                    handleWaitingVehicleOnEdge(vehicle, edge)
-            );
+        // Extracts the vehicles waiting at the end of edges ordered by start waiting time
+        int[] edgeSlots = drain(vehicles.getEdgeWaiting());
+        // Extracts the vehicles waiting at sites ordered by edge entry time
+        int[][] siteSlots = new int[vehicles.getSiteWaitingCount()][];
+        for (int i = 0; i < siteSlots.length; i++) {
+            siteSlots[i] = drain(vehicles.getSiteWaiting(i));
         }
-        // vehicle on the site
-        // Extracts next edge
-        for (Vehicle vehicle : getValue(map, false)
-                .map(vehicles -> {
-                    vehicles.sort(Comparator.comparingDouble(Vehicle::getEdgeEntryTime));
-                    return vehicles;
-                })
-                .orElse(List.of())) {
-            handleVehicleAtSite(vehicle);
+        // Handles the vehicles on edge
+        for (int slot : edgeSlots) {
+            Vehicle vehicle = vehicles.view(slot);
+            if (vehicle != null && vehicles.getEdgeIndex(slot) >= 0 && vehicles.isWaiting(slot)) {
+                handleWaitingVehicleOnEdge(vehicle, vehicles.getEdge(slot));
+                reindexWaiting(slot, vehicle);
+            }
+        }
+        // Handles the vehicles on the site
+        for (int[] slots : siteSlots) {
+            for (int slot : slots) {
+                Vehicle vehicle = vehicles.view(slot);
+                if (vehicle != null && vehicles.getEdgeIndex(slot) < 0) {
+                    handleVehicleAtSite(vehicle);
+                    reindexWaiting(slot, vehicle);
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the slots removed from a waiting queue in queue order
+     *
+     * @param queue the queue
+     */
+    private static int[] drain(SlotQueue queue) {
+        int[] slots = new int[queue.size()];
+        for (int i = 0; i < slots.length; i++) {
+            slots[i] = queue.poll();
+        }
+        return slots;
+    }
+
+    /**
+     * Adds a handled vehicle to the dispatch index if it is still waiting
+     *
+     * @param slot    the vehicle slot
+     * @param vehicle the vehicle
+     */
+    private void reindexWaiting(int slot, Vehicle vehicle) {
+        if (vehicles.view(slot) == vehicle) {
+            if (vehicles.getEdgeIndex(slot) < 0) {
+                vehicles.addSiteWaiting(slot);
+            } else if (vehicles.isWaiting(slot)) {
+                vehicles.addEdgeWaiting(slot);
+            }
         }
     }
 
@@ -871,13 +1325,11 @@ public class TrafficEngineImpl implements TrafficEngine {
      * @param enteringEdge the edge
      */
     boolean isEdgeAvailable(MapEdge enteringEdge) {
-        return getValue(vehiclesByEdge, enteringEdge)
-                .filter(Predicate.not(List::isEmpty))
-                .map(LinkedList::getFirst)
-                .map(Vehicle::getDistance)
-                .filter(distance ->
-                        distance <= VEHICLE_LENGTH)
-                .isEmpty();
+        int index = vehicles.indexOf(enteringEdge);
+        settleEdge(index);
+        EdgeQueue queue = vehicles.queueOrNull(index);
+        Vehicle last = queue != null ? queue.getFirst() : null;
+        return last == null || last.getDistance() > VEHICLE_LENGTH;
     }
 
     /**
@@ -887,25 +1339,86 @@ public class TrafficEngineImpl implements TrafficEngine {
      * @param incomingEdge the edge
      */
     boolean isIncomesFree(MapEdge incomingEdge) {
-        return topology.getIncomeEdges(incomingEdge)
-                .stream()
-                // Gets the vehicles
-                .map(this::findVehicles)
-                // drop the empty list
-                .filter(Predicate.not(List::isEmpty))
-                // gets the last vehicle
-                .map(LinkedList::getLast)
-                // filter the vehicle in exit proximity
-                .filter(v -> v.getCurrentEdge()
-                        // Compute the distance for busy cross
-                        .map(edge -> edge.getLength() - edge.getSafetyDistance())
-                        // filter for vehicle beyond the busy distance
-                        .filter(busyDistance -> v.getDistance() >= busyDistance)
-                        .isPresent())
-                // get any vehicle
-                .findAny()
-                // return true not exit
-                .isEmpty();
+        CompiledTopology compiled = topology.getCompiled();
+        int node = compiled.nodeId(incomingEdge.getEnd());
+        if (node < 0) {
+            return true;
+        }
+        int priority = incomingEdge.getPriority();
+        // Scans the incoming edges with higher priority
+        for (int edgeId : compiled.getInEdges(node)) {
+            if (compiled.getEdgePriority(edgeId) <= priority) {
+                break;
+            }
+            settleEdge(edgeId);
+            EdgeQueue edgeVehicles = vehicles.queueOrNull(edgeId);
+            Vehicle leader = edgeVehicles != null ? edgeVehicles.getLast() : null;
+            if (leader != null) {
+                // Compute the distance for busy cross
+                double busyDistance = compiled.getEdgeLength(edgeId) - compiled.getEdgeSafetyDistance(edgeId);
+                // Checks for the last vehicle beyond the busy distance
+                if (leader.getDistance() >= busyDistance) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Moves a vehicle for the given time interval.
+     * Returns true if the vehicle has reached the end of edge
+     *
+     * @param slot      the vehicle slot
+     * @param startTime the start time of movement
+     * @param dt        the time interval
+     */
+    private boolean moveVehicle(int slot, double startTime, double dt) {
+        double length = vehicles.getEdgeLength(vehicles.getEdgeIndex(slot));
+        double distance = vehicles.getDistance(slot);
+        // Computes the movement of vehicle in edge
+        double ds = computeMovement(slot, dt);
+        double movementDt = dt;
+        if (distance + ds >= length) {
+            // Vehicle is exiting the edge
+            double distanceToEnd = length - distance;
+            movementDt = distanceToEnd * dt / ds;
+            ds = distanceToEnd;
+        }
+        double distance1 = distance + ds;
+        vehicles.setDistance(slot, distance1);
+        if (distance1 >= length) {
+            // Updates the instants of start of waiting status
+            // They are used to sort the dispatching of waiting vehicles
+            vehicles.setStartWaitingTime(slot, startTime + movementDt);
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Returns true if the vehicle is moving in an edge
+     *
+     * @param slot the vehicle slot
+     */
+    private boolean isMoving(int slot) {
+        int edgeIndex = vehicles.getEdgeIndex(slot);
+        // Skips the removed vehicles, the vehicles without edge and the vehicles at the end of traveling edge
+        return edgeIndex >= 0 && vehicles.isAlive(slot)
+                && vehicles.getDistance(slot) < vehicles.getEdgeLength(edgeIndex);
+    }
+
+    /**
+     * Registers the arrival of a vehicle at the end of edge
+     *
+     * @param slot the vehicle slot
+     */
+    private void arriveAtEdgeEnd(int slot) {
+        vehicles.addEdgeWaiting(slot);
+        if (exitSchedule != null) {
+            // The leader has exited the edge
+            exitSchedule.invalidate(vehicles.getEdgeIndex(slot));
+        }
     }
 
     /**
@@ -914,32 +1427,112 @@ public class TrafficEngineImpl implements TrafficEngine {
      * @param dt the time interval
      */
     void moveVehicles(double dt) {
-        // Creates the stream of vehicles not at end of traveling edge
-        Stream<Vehicle> stream = findVehicles().stream()
-                .filter(v ->
-                        v.getCurrentEdge()
-                                .map(MapEdge::getLength)
-                                .filter(length -> v.getDistance() < length)
-                                .isPresent()
-                );
-        // Computes the movement of vehicle in edges
-        // and for each update the vehicle and edge status
-        computeVehicleMovements(stream, dt)
-                .forEach(vm -> {
-                    Vehicle vehicle = vm.getVehicle();
-                    double distance = vehicle.getDistance();
-                    double distance1 = distance + vm.getDs();
-                    vehicle.setDistance(distance1);
-                    // Update the instant of
-                    vehicle.getCurrentEdge()
-                            .map(MapEdge::getLength)
-                            .filter(length -> distance < length && distance1 >= length)
-                            .ifPresent(l -> {
-                                // Updates the instants of start of waiting status
-                                // They are used to sort the dispatching of waiting vehicles
-                                vehicle.setStartWaitingTime(time + vm.getDt());
-                            });
-                });
+        if (movementPool != null && vehicles.size() >= MIN_PARALLEL_VEHICLES) {
+            moveVehiclesParallel(dt);
+        } else {
+            int n = vehicles.orderSize();
+            for (int i = 0; i < n; i++) {
+                int slot = vehicles.slotAt(i);
+                if (isMoving(slot) && moveVehicle(slot, time, dt)) {
+                    arriveAtEdgeEnd(slot);
+                }
+            }
+        }
+    }
+
+    /**
+     * Moves all the vehicles for the given time interval partitioning the edges in the movement pool.
+     * <p>
+     * The vehicles of each edge are moved in the store order as in the sequential movement,
+     * and the arrivals at edge ends are registered in the store order,
+     * so the result is the same of the sequential movement.
+     * </p>
+     *
+     * @param dt the time interval
+     */
+    void moveVehiclesParallel(double dt) {
+        int n = vehicles.orderSize();
+        int edgeCount = vehicles.getEdges().size();
+        // Groups the moving vehicle order positions by edge preserving the store order
+        int[] offsets = new int[edgeCount + 1];
+        for (int i = 0; i < n; i++) {
+            int slot = vehicles.slotAt(i);
+            if (isMoving(slot)) {
+                offsets[vehicles.getEdgeIndex(slot) + 1]++;
+            }
+        }
+        for (int i = 0; i < edgeCount; i++) {
+            offsets[i + 1] += offsets[i];
+        }
+        int[] positions = new int[offsets[edgeCount]];
+        int[] fill = Arrays.copyOf(offsets, edgeCount);
+        for (int i = 0; i < n; i++) {
+            int slot = vehicles.slotAt(i);
+            if (isMoving(slot)) {
+                positions[fill[vehicles.getEdgeIndex(slot)]++] = i;
+            }
+        }
+        // Splits the edges in chunks balanced by vehicle count
+        int chunkCount = movementPool.getParallelism() * CHUNKS_BY_THREAD;
+        int chunkSize = Math.max(1, (positions.length + chunkCount - 1) / chunkCount);
+        int[] chunks = new int[edgeCount + 1];
+        int chunkIndex = 0;
+        for (int i = 0; i < edgeCount; i++) {
+            if (offsets[i + 1] - offsets[chunks[chunkIndex]] >= chunkSize) {
+                chunks[++chunkIndex] = i + 1;
+            }
+        }
+        if (chunks[chunkIndex] < edgeCount) {
+            chunks[++chunkIndex] = edgeCount;
+        }
+        int numChunks = chunkIndex;
+        // Moves the vehicles of chunks
+        boolean[] arrived = new boolean[n];
+        movementPool.submit(() -> IntStream.range(0, numChunks).parallel().forEach(chunk -> {
+            int to = offsets[chunks[chunk + 1]];
+            for (int i = offsets[chunks[chunk]]; i < to; i++) {
+                int position = positions[i];
+                arrived[position] = moveVehicle(vehicles.slotAt(position), time, dt);
+            }
+        })).join();
+        // Merges the arrivals at edge end in store order
+        for (int i = 0; i < n; i++) {
+            if (arrived[i]) {
+                arriveAtEdgeEnd(vehicles.slotAt(i));
+            }
+        }
+    }
+
+    /**
+     * Moves the vehicles of an edge up to the event time in an event driven interval.
+     * The vehicles are moved from the leader to the last entered vehicle.
+     * No vehicle is moved out of event driven intervals
+     *
+     * @param index the edge index
+     */
+    private void settleEdge(int index) {
+        if (edgeTimes != null && index >= 0) {
+            if (index >= edgeTimes.length) {
+                // The edges registered in the interval are empty up to the event time
+                int n = edgeTimes.length;
+                edgeTimes = Arrays.copyOf(edgeTimes, Math.max(index + 1, n * 2));
+                Arrays.fill(edgeTimes, n, edgeTimes.length, eventTime);
+            }
+            double edgeTime = edgeTimes[index];
+            if (edgeTime < eventTime) {
+                EdgeQueue queue = vehicles.queueOrNull(index);
+                if (queue != null) {
+                    double dt = eventTime - edgeTime;
+                    for (int i = queue.size() - 1; i >= 0; i--) {
+                        int slot = queue.get(i).getSlot(vehicles);
+                        if (slot >= 0 && isMoving(slot) && moveVehicle(slot, edgeTime, dt)) {
+                            arriveAtEdgeEnd(slot);
+                        }
+                    }
+                }
+                edgeTimes[index] = eventTime;
+            }
+        }
     }
 
     /**
@@ -957,22 +1550,17 @@ public class TrafficEngineImpl implements TrafficEngine {
         return Tuple2.of(this, resultDt);
     }
 
+    @Override
+    public Tuple2<TrafficEngine, Double> next(RandomStreams streams, double dt) {
+        // Computes the new status after elapsed time interval
+        double resultDt = applyTimeInterval(streams, dt);
+        return Tuple2.of(this, resultDt);
+    }
+
     public TrafficEngineImpl optimize() {
         Topology newTopology = this.topology.optimize(speedLimit);
-        Map<MapEdge, MapEdge> newEdgeMap = this.topology.createEdgeMap(newTopology);
-        List<Vehicle> vehicles = this.vehicles.stream()
-                // Change the edge
-                .map(v -> v.getCurrentEdge()
-                        .flatMap(getValue(newEdgeMap))
-                        .map(v::setCurrentEdge)
-                        .orElse(v))
-                .collect(Collectors.toList());
-        Map<MapEdge, LinkedList<Vehicle>> vehiclesByEdge = computeVehicleByEdges(vehicles);
-        Map<Vehicle, Vehicle> nextVehicles = computeNextVehicleMap(vehiclesByEdge);
-        TransitTimes edgeTransitTimes = computeNewTransitTime(this.transitTimeByEdge, newTopology, this.topology, vehiclesByEdge);
-
-        return new TrafficEngineImpl(maxVehicles, time, newTopology, vehicles, speedLimit, frequency, pathCdf,
-                vehiclesByEdge, nextVehicles, edgeTransitTimes, null);
+        return changeTopology(newTopology, computeChangedEdges(topology.getEdges(), newTopology.getEdges()),
+                vehicle -> true, pathCdf, pathAliases);
     }
 
     @Override
@@ -988,37 +1576,38 @@ public class TrafficEngineImpl implements TrafficEngine {
     @Override
     public TrafficEngineImpl randomizeWeights(Random random, double minWeight) {
         double[][] weights = createRandomWeights(topology.getSites().size(), minWeight, random);
-        return new TrafficEngineImpl(maxVehicles, time, topology, vehicles, speedLimit, frequency, toCdf(weights),
-                vehiclesByEdge, nextVehicles, transitTimeByEdge, edgeByPath);
+        double[][] newPathCdf = toCdf(weights);
+        return new TrafficEngineImpl(maxVehicles, time, topology, vehicles, speedLimit, frequency,
+                newPathCdf, toAliases(newPathCdf),
+                transitTimeByEdge, routeTable, schedulingMode, movementPool, routeService);
     }
 
     @Override
     public TrafficEngineImpl removeEdge(MapEdge edge) {
-        Topology newTopology = this.topology.removeEdge(edge);
-        List<Vehicle> newVehicles = vehicles.stream()
-                .filter(vehicle -> !vehicle.isTransitingEdge(edge))
-                .collect(Collectors.toList());
-        Map<MapEdge, LinkedList<Vehicle>> newVehicleByEdge = computeVehicleByEdges(newVehicles);
-        Map<Vehicle, Vehicle> newNextVehicle = computeNextVehicleMap(newVehicleByEdge);
-        TransitTimes newEdgeTransitTime = computeNewTransitTime(transitTimeByEdge, newTopology, this.topology, newVehicleByEdge);
-        return new TrafficEngineImpl(maxVehicles, time, newTopology, newVehicles, speedLimit, frequency, pathCdf,
-                newVehicleByEdge, newNextVehicle, newEdgeTransitTime, null);
+        return changeTopology(topology.removeEdge(edge), Map.of(),
+                vehicle -> !vehicle.isTransitingEdge(edge), pathCdf, pathAliases);
     }
 
     @Override
     public TrafficEngineImpl removeNode(MapNode node) {
         Topology newTopology = this.topology.removeNode(node);
-
-        List<Vehicle> newVehicles = vehicles.stream()
-                .filter(vehicleNotInRemovedNode(node))
-                .collect(Collectors.toList());
-        Map<MapEdge, LinkedList<Vehicle>> newVehiclesByEdge = computeVehicleByEdges(newVehicles);
-        Map<Vehicle, Vehicle> newNextVehicles = computeNextVehicleMap(newVehiclesByEdge);
-        TransitTimes newEdgeTransitTimes = computeNewTransitTime(transitTimeByEdge, newTopology, topology, newVehiclesByEdge);
         Map<SiteNode, SiteNode> olsSiteMap = newTopology.createSiteMap(this.topology);
         double[][] weights = getWeightMatrix().map(newTopology.getSites(), site -> getValue(olsSiteMap, site)).getValues();
-        return new TrafficEngineImpl(maxVehicles, time, newTopology, newVehicles, speedLimit, frequency, toCdf(weights),
-                newVehiclesByEdge, newNextVehicles, newEdgeTransitTimes, null);
+        double[][] newPathCdf = toCdf(weights);
+        return changeTopology(newTopology, Map.of(), vehicleNotInRemovedNode(node),
+                newPathCdf, toAliases(newPathCdf));
+    }
+
+    /**
+     * Removes a vehicle from the vehicle store
+     *
+     * @param vehicle the vehicle
+     */
+    private void removeVehicle(Vehicle vehicle) {
+        int slot = vehicle.getSlot(vehicles);
+        if (slot >= 0) {
+            vehicles.remove(slot);
+        }
     }
 
     /**
@@ -1028,6 +1617,9 @@ public class TrafficEngineImpl implements TrafficEngine {
      * @param travelTime the travel time
      */
     TrafficEngineImpl setEdgeTravelTimes(MapEdge edge, double travelTime) {
+        if (routeService != null) {
+            routeDrift += Math.abs(travelTime - transitTimeByEdge.getValue(edge));
+        }
         transitTimeByEdge.setValue(edge, travelTime);
         return this;
     }
@@ -1065,7 +1657,7 @@ public class TrafficEngineImpl implements TrafficEngine {
         Topology topology = createTopology(newNodes, newEdges);
 
         // Creates new vehicles
-        List<Vehicle> vehicles = this.vehicles.stream()
+        List<Vehicle> vehicles = this.vehicles.getVehicles().stream()
                 .flatMap(v -> getValue(nodeMap, v.getDeparture())
                         .flatMap(departure -> getValue(nodeMap, v.getDestination())
                                 .flatMap(destination ->
@@ -1079,37 +1671,29 @@ public class TrafficEngineImpl implements TrafficEngine {
                                 ))
                         .stream())
                 .collect(Collectors.toList());
-        Map<MapEdge, LinkedList<Vehicle>> vehiclesByEdge = computeVehicleByEdges(vehicles);
-        Map<Vehicle, Vehicle> nextVehicles = computeNextVehicleMap(vehiclesByEdge);
         TransitTimes newEdgeTransitTimes = transitTimeByEdge.copy().mapKeys(edgeMap::get);
 
-        return new TrafficEngineImpl(maxVehicles, time, topology, vehicles, speedLimit, frequency,
-                pathCdf, vehiclesByEdge, nextVehicles, newEdgeTransitTimes, edgeByPath);
+        return new TrafficEngineImpl(maxVehicles, time, topology, VehicleStore.create(topology, vehicles),
+                speedLimit, frequency, pathCdf, pathAliases, newEdgeTransitTimes, routeTable,
+                schedulingMode, movementPool, routeService);
     }
 
     @Override
     public TrafficEngineImpl setWeights(double[][] weights) {
         assert weights.length == getSites().size();
+        double[][] newPathCdf = toCdf(weights);
         return new TrafficEngineImpl(maxVehicles, time, topology, vehicles, speedLimit, frequency,
-                toCdf(weights), vehiclesByEdge, nextVehicles, transitTimeByEdge,
-                edgeByPath);
+                newPathCdf, toAliases(newPathCdf), transitTimeByEdge, routeTable, schedulingMode, movementPool, routeService);
     }
 
     @Override
-    public TrafficEngineImpl updateRoutes(Map<Tuple2<MapNode, MapNode>, MapEdge> routes) {
+    public TrafficEngineImpl updateRoutes(RouteTable routes) {
         // Validate
-        List<MapNode> nodes = topology.getNodes();
-        List<MapEdge> edges = topology.getEdges();
-        for (Map.Entry<Tuple2<MapNode, MapNode>, MapEdge> entry : routes.entrySet()) {
-            MapNode from = entry.getKey()._1;
-            MapNode to = entry.getKey()._2;
-            MapEdge edge = entry.getValue();
-            if (!(nodes.contains(from) && nodes.contains(to) && edges.contains(edge))) {
-                logger.error("Wrong routes");
-                return this;
-            }
+        if (routes.getTopology() != topology.getCompiled()) {
+            logger.error("Wrong routes");
+            return this;
         }
-        this.edgeByPath = routes;
+        this.routeTable = routes;
         return this;
     }
 
@@ -1121,6 +1705,28 @@ public class TrafficEngineImpl implements TrafficEngine {
         return this;
     }
 
+    @Override
+    public TrafficEngineImpl writeFrame(FrameBuffer frames) {
+        VehicleFrame frame = frames.getBackFrame();
+        frame.clear(time);
+        for (int i = 0; i < vehicles.orderSize(); i++) {
+            int slot = vehicles.slotAt(i);
+            int index = vehicles.isAlive(slot) ? vehicles.getEdgeIndex(slot) : -1;
+            if (index >= 0) {
+                MapEdge edge = vehicles.getEdges().get(index);
+                Point2D begin = edge.getBeginLocation();
+                Point2D end = edge.getEndLocation();
+                double dx = end.getX() - begin.getX();
+                double dy = end.getY() - begin.getY();
+                double k = vehicles.getDistance(slot) / vehicles.getEdgeLength(index);
+                frame.add(begin.getX() + k * dx, begin.getY() + k * dy, dx, dy,
+                        vehicles.view(slot).getCurrentDestination());
+            }
+        }
+        frames.publish();
+        return this;
+    }
+
     /**
      * The movement of a vehicle in a time interval with the distance traveled, the time elapsed
      * and the indicator of end of edge reached
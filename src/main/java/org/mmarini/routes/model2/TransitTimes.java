@@ -25,23 +25,30 @@
  *    END OF TERMS AND CONDITIONS
  *
  */
-
 package org.mmarini.routes.model2;
 
-import org.mmarini.Tuple2;
-
-import java.util.HashMap;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
-import java.util.function.Function;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.function.ToDoubleFunction;
 import java.util.function.UnaryOperator;
-import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
 import static java.util.Objects.requireNonNull;
-import static org.mmarini.Tuple2.stream;
 
+/**
+ * Transit time by edge.
+ * <p>
+ * The transit times are stored in a primitive array indexed by the position of the edge in the edge array
+ * so that updates do not allocate.
+ * Each change increases the epoch of the transit times, the snapshots are immutable copies
+ * created on demand only when the epoch is changed since the last snapshot.
+ * The snapshots share the edge array and the edge index with the transit times,
+ * the added edges are appended beyond the size of snapshots ({@link #add(MapEdge, double)}),
+ * so the snapshots may be read by other threads without locking.
+ * </p>
+ */
 public class TransitTimes {
     /**
      * Returns the default transit time by edge
@@ -59,28 +66,94 @@ public class TransitTimes {
      * @param mapper the transit time mapper
      */
     public static TransitTimes create(Stream<MapEdge> edges, ToDoubleFunction<MapEdge> mapper) {
-        return new TransitTimes(edges.collect(Collectors.toMap(
-                Function.identity(),
-                mapper::applyAsDouble
-        )));
+        requireNonNull(mapper);
+        MapEdge[] edgeArray = edges.toArray(MapEdge[]::new);
+        double[] values = Arrays.stream(edgeArray).mapToDouble(mapper).toArray();
+        return new TransitTimes(edgeArray, createIndex(edgeArray), values, edgeArray.length, false);
+    }
+
+    /**
+     * Returns the index of edges
+     *
+     * @param edges the edges
+     */
+    private static Map<MapEdge, Integer> createIndex(MapEdge[] edges) {
+        Map<MapEdge, Integer> indexByEdge = new ConcurrentHashMap<>();
+        for (int i = 0; i < edges.length; i++) {
+            indexByEdge.put(edges[i], i);
+        }
+        return indexByEdge;
     }
 
-    private final Map<MapEdge, Double> transitTimeByEdge;
+    private final Map<MapEdge, Integer> indexByEdge;
+    private final boolean readOnly;
+    private MapEdge[] edges;
+    private double[] values;
+    private int size;
+    private long epoch;
+    private TransitTimes snapshot;
 
     /**
-     * Creates a Map of double by edge
+     * Creates the transit time by edge
      *
-     * @param transitTimeByEdge the transit time map
+     * @param edges       the edges
+     * @param indexByEdge the index of edges
+     * @param values      the transit times by edge index
+     * @param size        the number of edges
+     * @param readOnly    true if the transit times are immutable
      */
-    protected TransitTimes(Map<MapEdge, Double> transitTimeByEdge) {
-        this.transitTimeByEdge = requireNonNull(transitTimeByEdge);
+    protected TransitTimes(MapEdge[] edges, Map<MapEdge, Integer> indexByEdge, double[] values, int size,
+                           boolean readOnly) {
+        this.edges = requireNonNull(edges);
+        this.indexByEdge = requireNonNull(indexByEdge);
+        this.values = requireNonNull(values);
+        this.size = size;
+        this.readOnly = readOnly;
+        assert size <= edges.length && size <= values.length;
+    }
+
+    /**
+     * Returns this transit time adding an edge or changing its transit time if already in the transit times.
+     * The added edge is appended to the edge array
+     *
+     * @param edge        the edge
+     * @param transitTime the transit time
+     * @throws UnsupportedOperationException if the transit times are read only
+     */
+    public TransitTimes add(MapEdge edge, double transitTime) {
+        requireNonNull(edge);
+        if (readOnly) {
+            throw new UnsupportedOperationException("read only transit times");
+        }
+        if (indexByEdge.containsKey(edge)) {
+            return setValue(edge, transitTime);
+        }
+        if (size >= values.length) {
+            int capacity = Math.max(16, size * 2);
+            edges = Arrays.copyOf(edges, capacity);
+            values = Arrays.copyOf(values, capacity);
+        }
+        edges[size] = edge;
+        values[size] = transitTime;
+        indexByEdge.put(edge, size);
+        size++;
+        epoch++;
+        return this;
     }
 
     /**
      * Returns a copy o f transit time
      */
     public TransitTimes copy() {
-        return new TransitTimes(new HashMap<>(transitTimeByEdge));
+        MapEdge[] edgeArray = Arrays.copyOf(edges, size);
+        return new TransitTimes(edgeArray, createIndex(edgeArray), Arrays.copyOf(values, size), size, false);
+    }
+
+    /**
+     * Returns the epoch of transit times, increased by each change
+     */
+    public long getEpoch() {
+        return epoch;
     }
 
     /**
@@ -90,38 +163,85 @@ public class TransitTimes {
      */
     public double getValue(MapEdge edge) {
         requireNonNull(edge);
-        Double t = transitTimeByEdge.get(edge);
-        return t != null ? t : edge.getTransitTime();
+        Integer index = indexByEdge.get(edge);
+        return index != null && index < size ? values[index] : edge.getTransitTime();
+    }
+
+    /**
+     * Returns true if the transit times are immutable
+     */
+    public boolean isReadOnly() {
+        return readOnly;
     }
 
     /**
-     * Returns this transit time by applying the key mapper
+     * Returns the transit time with the keys mapped by the key mapper
      *
      * @param mapper the key mapper
      */
     public TransitTimes mapKeys(UnaryOperator<MapEdge> mapper) {
         requireNonNull(mapper);
-        Map<MapEdge, Double> newMap = stream(transitTimeByEdge)
-                .collect(Collectors.toMap(
-                        t -> mapper.apply(t._1),
-                        Tuple2::getV2));
-        transitTimeByEdge.clear();
-        transitTimeByEdge.putAll(newMap);
-        return this;
+        MapEdge[] newEdges = Arrays.stream(edges, 0, size)
+                .map(mapper)
+                .toArray(MapEdge[]::new);
+        return new TransitTimes(newEdges, createIndex(newEdges), Arrays.copyOf(values, size), size, false);
     }
 
     /**
-     * Returns this transit time by changing an edge transit time
+     * Returns this transit time by changing an edge transit time.
+     * The edges not in the transit time are ignored.
      *
      * @param edge        the edge
      * @param transitTime the transit time
+     * @throws UnsupportedOperationException if the transit times are read only
      */
     public TransitTimes setValue(MapEdge edge, double transitTime) {
         requireNonNull(edge);
-        transitTimeByEdge.put(edge, transitTime);
+        if (readOnly) {
+            throw new UnsupportedOperationException("read only transit times");
+        }
+        Integer index = indexByEdge.get(edge);
+        if (index != null && index < size && values[index] != transitTime) {
+            values[index] = transitTime;
+            epoch++;
+        }
         return this;
     }
 
+    /**
+     * Returns the immutable snapshot of the current transit times.
+     * The last snapshot is returned if no transit time has changed since its creation.
+     */
+    public TransitTimes snapshot() {
+        if (readOnly) {
+            return this;
+        }
+        TransitTimes last = snapshot;
+        if (last == null || last.epoch != epoch) {
+            last = new TransitTimes(edges, indexByEdge, Arrays.copyOf(values, size), size, true);
+            last.epoch = epoch;
+            snapshot = last;
+        }
+        return last;
+    }
+
+    /**
+     * Returns the transit times of edges
+     *
+     * @param edges the edges
+     */
+    public double[] toArray(List<MapEdge> edges) {
+        requireNonNull(edges);
+        double[] result = new double[edges.size()];
+        for (int i = 0; i < result.length; i++) {
+            MapEdge edge = edges.get(i);
+            result[i] = i < size && this.edges[i] == edge
+                    ? values[i]
+                    : getValue(edge);
+        }
+        return result;
+    }
+
     /**
      * Returns this transit time with the value updated by vehicle states and time
      *
@@ -130,17 +250,13 @@ public class TransitTimes {
      */
     public TransitTimes update(double time, Stream<Vehicle> vehicles) {
         requireNonNull(vehicles);
-        // map to vehicle edge and vehicle in edge time
-        vehicles.flatMap(v -> v.getCurrentEdge()
-                        .map(edge ->
-                                Tuple2.of(edge, time - v.getEdgeEntryTime()))
-                        .stream())
-                // filter on vehicle in edge time > edge transit time
-                .filter(tuple -> tuple._2 > getValue(tuple._1))
-                // apply the new transit time values
-                .forEach(tuple ->
-                        transitTimeByEdge.put(tuple._1, tuple._2)
-                );
+        vehicles.forEach(vehicle -> vehicle.getCurrentEdge().ifPresent(edge -> {
+            // apply vehicle in edge time greater than edge transit time
+            double transitTime = time - vehicle.getEdgeEntryTime();
+            if (transitTime > getValue(edge)) {
+                setValue(edge, transitTime);
+            }
+        }));
         return this;
     }
 }
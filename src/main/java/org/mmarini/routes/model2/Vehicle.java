@@ -37,6 +37,10 @@ import static java.util.Objects.requireNonNull;
 
 /**
  * The vehicle from a departure node to a destination node
+ * <p>
+ * A vehicle bound to a {@link VehicleStore} is a view of the store slot:
+ * the state of vehicle is read and written in the store arrays.
+ * </p>
  */
 public class Vehicle {
 
@@ -61,6 +65,9 @@ public class Vehicle {
     private boolean returning;
     private double edgeEntryTime;
     private double startWaitingTime;
+    private long queuePosition;
+    private VehicleStore store;
+    private int slot;
 
     /**
      * Creates a vehicle
@@ -98,7 +105,19 @@ public class Vehicle {
      * Returns a copy of this vehicle
      */
     public Vehicle copy() {
-        return new Vehicle(id, departure, destination, creationTime, currentEdge, distance, returning, edgeEntryTime, startWaitingTime);
+        return new Vehicle(id, departure, destination, creationTime, getCurrentEdge().orElse(null), getDistance(), isReturning(), getEdgeEntryTime(), getStartWaitingTime());
+    }
+
+    /**
+     * Binds the vehicle to a store slot
+     *
+     * @param store the store
+     * @param slot  the slot
+     */
+    void bind(VehicleStore store, int slot) {
+        this.store = requireNonNull(store);
+        this.slot = slot;
+        this.currentEdge = null;
     }
 
     public double getCreationTime() {
@@ -110,14 +129,14 @@ public class Vehicle {
      * destination if not returning else departure
      */
     public SiteNode getCurrentDestination() {
-        return returning ? departure : destination;
+        return isReturning() ? departure : destination;
     }
 
     /**
      * Returns the current edge
      */
     public Optional<MapEdge> getCurrentEdge() {
-        return Optional.ofNullable(currentEdge);
+        return Optional.ofNullable(store != null ? store.getEdge(slot) : currentEdge);
     }
 
     /**
@@ -126,7 +145,11 @@ public class Vehicle {
      * @param currentEdge the edge
      */
     public Vehicle setCurrentEdge(MapEdge currentEdge) {
-        this.currentEdge = currentEdge;
+        if (store != null) {
+            store.setEdgeIndex(slot, store.register(currentEdge));
+        } else {
+            this.currentEdge = currentEdge;
+        }
         return this;
     }
 
@@ -143,7 +166,7 @@ public class Vehicle {
      * @param departure the departure
      */
     public Vehicle setDeparture(SiteNode departure) {
-        return new Vehicle(id, departure, destination, creationTime, currentEdge, distance, returning, edgeEntryTime, startWaitingTime);
+        return new Vehicle(id, departure, destination, creationTime, getCurrentEdge().orElse(null), getDistance(), isReturning(), getEdgeEntryTime(), getStartWaitingTime());
     }
 
     /**
@@ -159,7 +182,7 @@ public class Vehicle {
      * @param destination the destination
      */
     public Vehicle setDestination(SiteNode destination) {
-        return new Vehicle(id, departure, destination, creationTime, currentEdge, distance, returning, edgeEntryTime, startWaitingTime);
+        return new Vehicle(id, departure, destination, creationTime, getCurrentEdge().orElse(null), getDistance(), isReturning(), getEdgeEntryTime(), getStartWaitingTime());
     }
 
     /**
@@ -173,7 +196,7 @@ public class Vehicle {
      * Returns the distance from beginning of edge
      */
     public double getDistance() {
-        return distance;
+        return store != null ? store.getDistance(slot) : distance;
     }
 
     /**
@@ -182,7 +205,11 @@ public class Vehicle {
      * @param distance the distance
      */
     public Vehicle setDistance(double distance) {
-        this.distance = distance;
+        if (store != null) {
+            store.setDistance(slot, distance);
+        } else {
+            this.distance = distance;
+        }
         return this;
     }
 
@@ -190,7 +217,7 @@ public class Vehicle {
      * Returns the edge entry time
      */
     public double getEdgeEntryTime() {
-        return edgeEntryTime;
+        return store != null ? store.getEdgeEntryTime(slot) : edgeEntryTime;
     }
 
     /**
@@ -199,7 +226,11 @@ public class Vehicle {
      * @param edgeEntryTime the edge entry time
      */
     public Vehicle setEdgeEntryTime(double edgeEntryTime) {
-        this.edgeEntryTime = edgeEntryTime;
+        if (store != null) {
+            store.setEdgeEntryTime(slot, edgeEntryTime);
+        } else {
+            this.edgeEntryTime = edgeEntryTime;
+        }
         return this;
     }
 
@@ -214,14 +245,44 @@ public class Vehicle {
      * Returns the location of vehicle
      */
     public Optional<Point2D> getLocation() {
+        double distance = getDistance();
         return getCurrentEdge().map(edge -> edge.locationAt(distance));
     }
 
+    /**
+     * Returns the position of vehicle in the current edge queue
+     */
+    long getQueuePosition() {
+        return store != null ? store.getQueuePosition(slot) : queuePosition;
+    }
+
+    /**
+     * Sets the position of vehicle in the current edge queue
+     *
+     * @param queuePosition the queue position
+     */
+    void setQueuePosition(long queuePosition) {
+        if (store != null) {
+            store.setQueuePosition(slot, queuePosition);
+        } else {
+            this.queuePosition = queuePosition;
+        }
+    }
+
+    /**
+     * Returns the store slot of the vehicle or -1 if not bound to the store
+     *
+     * @param store the store
+     */
+    int getSlot(VehicleStore store) {
+        return this.store == store ? slot : -1;
+    }
+
     /**
      * Returns the time at stop end edge
      */
     public double getStartWaitingTime() {
-        return startWaitingTime;
+        return store != null ? store.getStartWaitingTime(slot) : startWaitingTime;
     }
 
     /**
@@ -230,7 +291,11 @@ public class Vehicle {
      * @param startWaintingTime the start waiting time
      */
     public void setStartWaitingTime(double startWaintingTime) {
-        this.startWaitingTime = startWaintingTime;
+        if (store != null) {
+            store.setStartWaitingTime(slot, startWaintingTime);
+        } else {
+            this.startWaitingTime = startWaintingTime;
+        }
     }
 
     /**
@@ -239,7 +304,7 @@ public class Vehicle {
      * @param node the node
      */
     public boolean isCrossingNode(MapNode node) {
-        return currentEdge != null && currentEdge.isCrossingNode(node);
+        return getCurrentEdge().filter(edge -> edge.isCrossingNode(node)).isPresent();
     }
 
     /**
@@ -257,7 +322,7 @@ public class Vehicle {
      * Returns true if the vehicle is moving from destination to departure
      */
     public boolean isReturning() {
-        return returning;
+        return store != null ? store.isReturning(slot) : returning;
     }
 
     /**
@@ -266,7 +331,11 @@ public class Vehicle {
      * @param returning true if the vehicle is moving from destination to departure
      */
     public Vehicle setReturning(boolean returning) {
-        this.returning = returning;
+        if (store != null) {
+            store.setReturning(slot, returning);
+        } else {
+            this.returning = returning;
+        }
         return this;
     }
 
@@ -285,7 +354,27 @@ public class Vehicle {
      * @param edge the edge
      */
     public boolean isTransitingEdge(MapEdge edge) {
-        return currentEdge != null && currentEdge.equals(edge);
+        return getCurrentEdge().filter(edge::equals).isPresent();
+    }
+
+    /**
+     * Unbinds the vehicle from the store keeping the given state
+     *
+     * @param currentEdge      the current edge
+     * @param distance         the distance from the beginning of edge
+     * @param returning        true if it is moving from destination to departure
+     * @param edgeEntryTime    the entry time of vehicle into the edge
+     * @param startWaitingTime the start waiting time
+     * @param queuePosition    the position in the edge queue
+     */
+    void unbind(MapEdge currentEdge, double distance, boolean returning, double edgeEntryTime, double startWaitingTime, long queuePosition) {
+        this.store = null;
+        this.queuePosition = queuePosition;
+        this.currentEdge = currentEdge;
+        this.distance = distance;
+        this.returning = returning;
+        this.edgeEntryTime = edgeEntryTime;
+        this.startWaitingTime = startWaitingTime;
     }
 
     @Override
@@ -0,0 +1,170 @@
+/*
+ *
+ * Copyright (c) 2023 Marco Marini, marco.marini@mmarini.org
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ *
+ *    END OF TERMS AND CONDITIONS
+ */
+
+package org.mmarini.routes.model2;
+
+import java.util.Arrays;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * The reusable frame of vehicle positions for rendering.
+ * <p>
+ * The frame stores the location, the direction and the current destination of the vehicles in edges
+ * into primitive arrays that grow on demand and are reused by the following frames,
+ * so that writing a frame does not allocate after the warm up.
+ * The frames are exchanged between the simulation and the consumers by a {@link FrameBuffer}.
+ * </p>
+ */
+public class VehicleFrame {
+    private static final int DEFAULT_CAPACITY = 16;
+
+    /**
+     * Returns an empty frame
+     */
+    public static VehicleFrame create() {
+        return new VehicleFrame(DEFAULT_CAPACITY);
+    }
+
+    private double time;
+    private int size;
+    private double[] x;
+    private double[] y;
+    private double[] directionX;
+    private double[] directionY;
+    private SiteNode[] destinations;
+
+    /**
+     * Creates the frame
+     *
+     * @param capacity the initial capacity
+     */
+    protected VehicleFrame(int capacity) {
+        this.x = new double[capacity];
+        this.y = new double[capacity];
+        this.directionX = new double[capacity];
+        this.directionY = new double[capacity];
+        this.destinations = new SiteNode[capacity];
+    }
+
+    /**
+     * Adds a vehicle to the frame
+     *
+     * @param x           the x coordinate of location
+     * @param y           the y coordinate of location
+     * @param directionX  the x component of direction
+     * @param directionY  the y component of direction
+     * @param destination the current destination
+     */
+    void add(double x, double y, double directionX, double directionY, SiteNode destination) {
+        if (size >= this.x.length) {
+            int capacity = size * 2;
+            this.x = Arrays.copyOf(this.x, capacity);
+            this.y = Arrays.copyOf(this.y, capacity);
+            this.directionX = Arrays.copyOf(this.directionX, capacity);
+            this.directionY = Arrays.copyOf(this.directionY, capacity);
+            this.destinations = Arrays.copyOf(this.destinations, capacity);
+        }
+        this.x[size] = x;
+        this.y[size] = y;
+        this.directionX[size] = directionX;
+        this.directionY[size] = directionY;
+        this.destinations[size] = requireNonNull(destination);
+        size++;
+    }
+
+    /**
+     * Clears the frame for a new simulation time
+     *
+     * @param time the simulation time
+     */
+    void clear(double time) {
+        Arrays.fill(destinations, 0, size, null);
+        this.time = time;
+        this.size = 0;
+    }
+
+    /**
+     * Returns the current destination of a vehicle
+     *
+     * @param index the vehicle index
+     */
+    public SiteNode getDestination(int index) {
+        return destinations[index];
+    }
+
+    /**
+     * Returns the x component of direction of a vehicle
+     *
+     * @param index the vehicle index
+     */
+    public double getDirectionX(int index) {
+        return directionX[index];
+    }
+
+    /**
+     * Returns the y component of direction of a vehicle
+     *
+     * @param index the vehicle index
+     */
+    public double getDirectionY(int index) {
+        return directionY[index];
+    }
+
+    /**
+     * Returns the number of vehicles
+     */
+    public int getSize() {
+        return size;
+    }
+
+    /**
+     * Returns the simulation time
+     */
+    public double getTime() {
+        return time;
+    }
+
+    /**
+     * Returns the x coordinate of location of a vehicle
+     *
+     * @param index the vehicle index
+     */
+    public double getX(int index) {
+        return x[index];
+    }
+
+    /**
+     * Returns the y coordinate of location of a vehicle
+     *
+     * @param index the vehicle index
+     */
+    public double getY(int index) {
+        return y[index];
+    }
+}
@@ -0,0 +1,905 @@
+/*
+ *
+ * Copyright (c) 2023 Marco Marini, marco.marini@mmarini.org
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ *
+ *    END OF TERMS AND CONDITIONS
+ */
+
+package org.mmarini.routes.model2;
+
+import java.util.*;
+import java.util.function.Predicate;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * The store of vehicle states in parallel primitive arrays.
+ * <p>
+ * Each vehicle occupies a slot that keeps the distance, the current edge index, the edge entry time,
+ * the start waiting time, the returning flag and the departure and destination site indices.
+ * The {@link Vehicle} instances bound to the store are views of the slots.
+ * The vehicles in each edge are kept in an {@link EdgeQueue} indexed by edge.
+ * The waiting vehicles are indexed for dispatching in a queue of vehicles at the end of edges
+ * and in a departure queue for each site.
+ * The slots of removed vehicles are reused after the store compaction.
+ * The deadlines of vehicles (creation time plus free flow round trip time) are kept in a queue
+ * to update the delay accumulators of the site counters only when vehicles become delayed.
+ * The edges are indexed by the compiled topology edge ids, the edges out of topology are appended on demand.
+ * The removed edges of the compiled topology keep their index without queue
+ * so the edits of edges derived by the compiled topology change the store in place
+ * (see {@link #editEdges(CompiledTopology, int[], Map, Predicate)}).
+ * </p>
+ */
+public class VehicleStore {
+    private static final int DEFAULT_CAPACITY = 16;
+
+    /**
+     * Returns the vehicle store of vehicles in a topology.
+     * The vehicles are bound to the new store
+     *
+     * @param topology the topology
+     * @param vehicles the vehicles
+     */
+    public static VehicleStore create(Topology topology, Collection<Vehicle> vehicles) {
+        requireNonNull(topology);
+        requireNonNull(vehicles);
+        List<SiteNode> sites = topology.getSites();
+        Map<MapNode, Integer> indexBySite = new HashMap<>();
+        for (int i = 0; i < sites.size(); i++) {
+            indexBySite.put(sites.get(i), i);
+        }
+        VehicleStore store = new VehicleStore(sites, indexBySite, Math.max(DEFAULT_CAPACITY, vehicles.size()));
+        store.registerEdges(topology.getCompiled());
+        for (Vehicle vehicle : vehicles) {
+            store.add(vehicle);
+        }
+        store.buildQueues(vehicles);
+        return store;
+    }
+
+    private final List<MapEdge> edges;
+    private final Map<MapEdge, Integer> indexByEdge;
+    private double[] edgeLength;
+    private double[] edgeSpeedLimit;
+    private double[] edgeSafetyDistance;
+    private EdgeQueue[] queues;
+    private final SlotQueue edgeWaiting;
+    private final SlotQueue[] siteWaiting;
+    private final List<SiteNode> sites;
+    private final Map<MapNode, Integer> indexBySite;
+    private final SiteCounters counters;
+    private final SlotQueue delayQueue;
+    private CompiledTopology delayTopology;
+    private Vehicle[] views;
+    private double[] distance;
+    private int[] edge;
+    private double[] edgeEntryTime;
+    private double[] startWaitingTime;
+    private long[] queuePosition;
+    private boolean[] returning;
+    private int[] departure;
+    private int[] destination;
+    private double[] deadline;
+    private boolean[] delayed;
+    private int[] order;
+    private int orderSize;
+    private int[] freeSlots;
+    private int freeSize;
+    private int[] releasedSlots;
+    private int releasedSize;
+    private int highWater;
+    private int size;
+
+    /**
+     * Creates the vehicle store
+     *
+     * @param sites       the sites
+     * @param indexBySite the site indices
+     * @param capacity    the initial capacity
+     */
+    protected VehicleStore(List<SiteNode> sites, Map<MapNode, Integer> indexBySite, int capacity) {
+        this.edges = new ArrayList<>();
+        this.indexByEdge = new HashMap<>();
+        this.edgeLength = new double[DEFAULT_CAPACITY];
+        this.edgeSpeedLimit = new double[DEFAULT_CAPACITY];
+        this.edgeSafetyDistance = new double[DEFAULT_CAPACITY];
+        this.queues = new EdgeQueue[DEFAULT_CAPACITY];
+        this.edgeWaiting = new SlotQueue();
+        this.siteWaiting = new SlotQueue[sites.size() + 1];
+        for (int i = 0; i < siteWaiting.length; i++) {
+            siteWaiting[i] = new SlotQueue();
+        }
+        this.sites = requireNonNull(sites);
+        this.indexBySite = requireNonNull(indexBySite);
+        this.counters = SiteCounters.create(sites.size());
+        this.delayQueue = new SlotQueue();
+        this.views = new Vehicle[capacity];
+        this.distance = new double[capacity];
+        this.edge = new int[capacity];
+        this.edgeEntryTime = new double[capacity];
+        this.startWaitingTime = new double[capacity];
+        this.queuePosition = new long[capacity];
+        this.returning = new boolean[capacity];
+        this.departure = new int[capacity];
+        this.destination = new int[capacity];
+        this.deadline = new double[capacity];
+        this.delayed = new boolean[capacity];
+        this.order = new int[capacity];
+        this.freeSlots = new int[capacity];
+        this.releasedSlots = new int[capacity];
+    }
+
+    /**
+     * Returns the slot of a vehicle added to the store.
+     * The vehicle state is copied into the slot and the vehicle is bound to it
+     *
+     * @param vehicle the vehicle
+     */
+    int add(Vehicle vehicle) {
+        requireNonNull(vehicle);
+        MapEdge currentEdge = vehicle.getCurrentEdge().orElse(null);
+        return insert(vehicle, register(currentEdge), vehicle.getDistance(),
+                vehicle.getEdgeEntryTime(), vehicle.getStartWaitingTime(), vehicle.isReturning(),
+                indexBySite.getOrDefault(vehicle.getDeparture(), -1),
+                indexBySite.getOrDefault(vehicle.getDestination(), -1));
+    }
+
+    /**
+     * Returns the slot of a vehicle inserted in the store with the given state.
+     * The vehicle is bound to the slot
+     *
+     * @param vehicle          the vehicle
+     * @param edgeIndex        the current edge index or -1 if none
+     * @param distance         the distance from the beginning of edge
+     * @param edgeEntryTime    the edge entry time
+     * @param startWaitingTime the start waiting time
+     * @param returning        true if the vehicle is moving from destination to departure
+     * @param departure        the departure site index
+     * @param destination      the destination site index
+     */
+    private int insert(Vehicle vehicle, int edgeIndex, double distance, double edgeEntryTime,
+                       double startWaitingTime, boolean returning, int departure, int destination) {
+        int slot = allocate();
+        this.distance[slot] = distance;
+        this.edge[slot] = edgeIndex;
+        this.edgeEntryTime[slot] = edgeEntryTime;
+        this.startWaitingTime[slot] = startWaitingTime;
+        this.returning[slot] = returning;
+        this.departure[slot] = departure;
+        this.destination[slot] = destination;
+        this.delayed[slot] = false;
+        views[slot] = vehicle;
+        order[orderSize++] = slot;
+        size++;
+        vehicle.bind(this, slot);
+        counters.addVehicle(destination, 1);
+        countWaiting(slot, 1);
+        scheduleDelay(slot);
+        // Indexes the waiting vehicle
+        if (edge[slot] < 0) {
+            addSiteWaiting(slot);
+        } else if (isWaiting(slot)) {
+            addEdgeWaiting(slot);
+        }
+        return slot;
+    }
+
+    /**
+     * Adds a vehicle waiting at the end of its edge to the dispatch index
+     *
+     * @param slot the vehicle slot
+     */
+    void addEdgeWaiting(int slot) {
+        edgeWaiting.add(slot, startWaitingTime[slot]);
+    }
+
+    /**
+     * Adds a vehicle waiting at its current site to the dispatch index
+     *
+     * @param slot the vehicle slot
+     */
+    void addSiteWaiting(int slot) {
+        int site = returning[slot] ? destination[slot] : departure[slot];
+        siteWaiting[site >= 0 ? site : sites.size()].add(slot, edgeEntryTime[slot]);
+    }
+
+    /**
+     * Returns a free slot growing the arrays if required
+     */
+    private int allocate() {
+        if (freeSize > 0) {
+            return freeSlots[--freeSize];
+        }
+        if (highWater >= views.length || orderSize >= order.length) {
+            grow();
+        }
+        return highWater++;
+    }
+
+    /**
+     * Builds the edge queues of vehicles sorted by distance
+     *
+     * @param vehicles the vehicles
+     */
+    private void buildQueues(Collection<Vehicle> vehicles) {
+        List<Vehicle> sorted = new ArrayList<>(vehicles);
+        sorted.sort(Comparator.comparingDouble(Vehicle::getDistance));
+        // The leaders (farthest vehicles) enter the queues first
+        for (int i = sorted.size() - 1; i >= 0; i--) {
+            Vehicle vehicle = sorted.get(i);
+            int index = edge[vehicle.getSlot(this)];
+            if (index >= 0) {
+                queue(index).addFirst(vehicle);
+            }
+        }
+    }
+
+    /**
+     * Compacts the insertion order of vehicles and releases the slots of removed vehicles for reuse
+     */
+    void compact() {
+        if (releasedSize > 0) {
+            int n = 0;
+            for (int i = 0; i < orderSize; i++) {
+                int slot = order[i];
+                if (views[slot] != null) {
+                    order[n++] = slot;
+                }
+            }
+            orderSize = n;
+            System.arraycopy(releasedSlots, 0, freeSlots, freeSize, releasedSize);
+            freeSize += releasedSize;
+            releasedSize = 0;
+        }
+    }
+
+    /**
+     * Changes the waiting counter of the site of a vehicle if it is at site (without edge)
+     *
+     * @param slot  the vehicle slot
+     * @param delta the change of counter
+     */
+    private void countWaiting(int slot, int delta) {
+        if (edge[slot] < 0) {
+            counters.addWaiting(returning[slot] ? destination[slot] : departure[slot], delta);
+        }
+    }
+
+    /**
+     * Returns the vehicle store of a changed topology moving the vehicles of this store.
+     * <p>
+     * The kept vehicles are moved to the new store in insertion order and bound to it,
+     * the vehicles of the replaced edges are moved to the new edges
+     * and the vehicles of the edges missing in the new topology are dropped.
+     * The edge queues keep the order of this store without the sort of vehicles
+     * required by {@link #create(Topology, Collection)}.
+     * The edit remaps every queue and every vehicle edge index to the edge ids of the new compiled topology,
+     * the topologies derived by edge edits are changed in place by
+     * {@link #editEdges(CompiledTopology, int[], Map, Predicate)}.
+     * This store must not be used after the edit.
+     * </p>
+     *
+     * @param topology     the new topology
+     * @param changedEdges the new edges by the replaced edges
+     * @param filter       the predicate of kept vehicles
+     */
+    VehicleStore edit(Topology topology, Map<MapEdge, MapEdge> changedEdges, Predicate<Vehicle> filter) {
+        requireNonNull(topology);
+        requireNonNull(changedEdges);
+        requireNonNull(filter);
+        // Maps the site indices
+        List<SiteNode> newSites = topology.getSites();
+        Map<MapNode, Integer> newIndexBySite;
+        if (newSites.equals(sites)) {
+            newIndexBySite = indexBySite;
+        } else {
+            newIndexBySite = new HashMap<>();
+            for (int i = 0; i < newSites.size(); i++) {
+                newIndexBySite.put(newSites.get(i), i);
+            }
+        }
+        int[] siteMap = new int[sites.size()];
+        for (int i = 0; i < siteMap.length; i++) {
+            siteMap[i] = newIndexBySite.getOrDefault(sites.get(i), -1);
+        }
+        VehicleStore store = new VehicleStore(newSites, newIndexBySite, Math.max(DEFAULT_CAPACITY, size));
+        store.registerEdges(topology.getCompiled());
+        // Maps the edge indices
+        int[] edgeMap = new int[edges.size()];
+        for (int i = 0; i < edgeMap.length; i++) {
+            MapEdge edge = edges.get(i);
+            edgeMap[i] = store.indexOf(changedEdges.getOrDefault(edge, edge));
+        }
+        // Moves the vehicles
+        for (int i = 0; i < orderSize; i++) {
+            int slot = order[i];
+            Vehicle view = views[slot];
+            if (view != null) {
+                int index = edge[slot];
+                int newIndex = index >= 0 ? edgeMap[index] : -1;
+                if ((index < 0 || newIndex >= 0) && filter.test(view)) {
+                    store.insert(view, newIndex, distance[slot], edgeEntryTime[slot], startWaitingTime[slot],
+                            returning[slot],
+                            departure[slot] >= 0 ? siteMap[departure[slot]] : -1,
+                            destination[slot] >= 0 ? siteMap[destination[slot]] : -1);
+                }
+            }
+        }
+        // Moves the edge queues from the leaders
+        for (int i = 0; i < edgeMap.length; i++) {
+            EdgeQueue queue = queues[i];
+            if (queue != null && edgeMap[i] >= 0) {
+                for (int j = queue.size() - 1; j >= 0; j--) {
+                    Vehicle vehicle = queue.get(j);
+                    if (vehicle.getSlot(store) >= 0) {
+                        store.queue(edgeMap[i]).addFirst(vehicle);
+                    }
+                }
+            }
+        }
+        return store;
+    }
+
+    /**
+     * Changes in place the edges of this store for a compiled topology derived by edge edits
+     * from the compiled topology of this store (see {@link CompiledTopology#getRemovedEdges(CompiledTopology)}).
+     * <p>
+     * The derived topology keeps the edge ids, so only the changed edges are processed:
+     * the added edges are appended with their edge ids and the removed edges keep their index without queue.
+     * The vehicles of the removed edges are moved from the leaders to the new edges of the changed edges
+     * if kept by the filter, the other ones are removed from the store.
+     * The vehicles of the other edges and at the sites are kept without testing the filter.
+     * </p>
+     *
+     * @param topology     the derived compiled topology
+     * @param removedEdges the ids of edges removed by the derived topology
+     * @param changedEdges the new edges by the replaced edges
+     * @param filter       the predicate of kept vehicles of the removed edges
+     */
+    void editEdges(CompiledTopology topology, int[] removedEdges, Map<MapEdge, MapEdge> changedEdges,
+                   Predicate<Vehicle> filter) {
+        requireNonNull(topology);
+        requireNonNull(removedEdges);
+        requireNonNull(changedEdges);
+        requireNonNull(filter);
+        registerEdges(topology);
+        for (int index : removedEdges) {
+            MapEdge removed = edges.get(index);
+            indexByEdge.remove(removed);
+            EdgeQueue queue = queues[index];
+            queues[index] = null;
+            if (queue != null) {
+                MapEdge target = changedEdges.get(removed);
+                int targetIndex = target != null ? topology.edgeId(target) : -1;
+                for (int i = queue.size() - 1; i >= 0; i--) {
+                    Vehicle vehicle = queue.get(i);
+                    int slot = vehicle.getSlot(this);
+                    if (slot < 0) {
+                        continue;
+                    }
+                    if (targetIndex >= 0 && filter.test(vehicle)) {
+                        boolean waiting = isWaiting(slot);
+                        edge[slot] = targetIndex;
+                        queue(targetIndex).addFirst(vehicle);
+                        if (!waiting && isWaiting(slot)) {
+                            addEdgeWaiting(slot);
+                        }
+                    } else {
+                        remove(slot);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the current destination site index of a vehicle
+     * destination if not returning else departure
+     *
+     * @param slot the vehicle slot
+     */
+    int currentDestination(int slot) {
+        return returning[slot] ? departure[slot] : destination[slot];
+    }
+
+    /**
+     * Returns the running traffic counters by site
+     */
+    SiteCounters getCounters() {
+        return counters;
+    }
+
+    /**
+     * Returns the queue of vehicles waiting at the end of edges ordered by start waiting time
+     */
+    SlotQueue getEdgeWaiting() {
+        return edgeWaiting;
+    }
+
+    /**
+     * Returns the queue of vehicles waiting at a site ordered by edge entry time.
+     * The queue at index equal to the number of sites contains the vehicles at unknown sites
+     *
+     * @param index the site index
+     */
+    SlotQueue getSiteWaiting(int index) {
+        return siteWaiting[index];
+    }
+
+    /**
+     * Returns the number of site waiting queues
+     */
+    int getSiteWaitingCount() {
+        return siteWaiting.length;
+    }
+
+    /**
+     * Returns the departure site index of a vehicle
+     *
+     * @param slot the vehicle slot
+     */
+    int getDeparture(int slot) {
+        return departure[slot];
+    }
+
+    /**
+     * Returns the destination site index of a vehicle
+     *
+     * @param slot the vehicle slot
+     */
+    int getDestination(int slot) {
+        return destination[slot];
+    }
+
+    /**
+     * Returns the distance from the beginning of edge of a vehicle
+     *
+     * @param slot the vehicle slot
+     */
+    double getDistance(int slot) {
+        return distance[slot];
+    }
+
+    /**
+     * Returns the current edge of a vehicle or null if none
+     *
+     * @param slot the vehicle slot
+     */
+    MapEdge getEdge(int slot) {
+        int idx = edge[slot];
+        return idx >= 0 ? edges.get(idx) : null;
+    }
+
+    /**
+     * Returns the edge entry time of a vehicle
+     *
+     * @param slot the vehicle slot
+     */
+    double getEdgeEntryTime(int slot) {
+        return edgeEntryTime[slot];
+    }
+
+    /**
+     * Returns the current edge index of a vehicle or -1 if none
+     *
+     * @param slot the vehicle slot
+     */
+    int getEdgeIndex(int slot) {
+        return edge[slot];
+    }
+
+    /**
+     * Returns the length of an edge
+     *
+     * @param index the edge index
+     */
+    double getEdgeLength(int index) {
+        return edgeLength[index];
+    }
+
+    /**
+     * Returns the safety distance of an edge
+     *
+     * @param index the edge index
+     */
+    double getEdgeSafetyDistance(int index) {
+        return edgeSafetyDistance[index];
+    }
+
+    /**
+     * Returns the speed limit of an edge
+     *
+     * @param index the edge index
+     */
+    double getEdgeSpeedLimit(int index) {
+        return edgeSpeedLimit[index];
+    }
+
+    /**
+     * Returns the list of edges indexed by the store
+     */
+    List<MapEdge> getEdges() {
+        return edges;
+    }
+
+    /**
+     * Returns the list of sites indexed by the store
+     */
+    List<SiteNode> getSites() {
+        return sites;
+    }
+
+    /**
+     * Returns the start waiting time of a vehicle
+     *
+     * @param slot the vehicle slot
+     */
+    double getStartWaitingTime(int slot) {
+        return startWaitingTime[slot];
+    }
+
+    /**
+     * Returns the list of vehicles in insertion order
+     */
+    public List<Vehicle> getVehicles() {
+        List<Vehicle> result = new ArrayList<>(size);
+        for (int i = 0; i < orderSize; i++) {
+            Vehicle view = views[order[i]];
+            if (view != null) {
+                result.add(view);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Grows the arrays doubling the capacity
+     */
+    private void grow() {
+        int capacity = views.length * 2;
+        views = Arrays.copyOf(views, capacity);
+        distance = Arrays.copyOf(distance, capacity);
+        edge = Arrays.copyOf(edge, capacity);
+        edgeEntryTime = Arrays.copyOf(edgeEntryTime, capacity);
+        startWaitingTime = Arrays.copyOf(startWaitingTime, capacity);
+        queuePosition = Arrays.copyOf(queuePosition, capacity);
+        returning = Arrays.copyOf(returning, capacity);
+        departure = Arrays.copyOf(departure, capacity);
+        destination = Arrays.copyOf(destination, capacity);
+        deadline = Arrays.copyOf(deadline, capacity);
+        delayed = Arrays.copyOf(delayed, capacity);
+        order = Arrays.copyOf(order, capacity);
+        freeSlots = Arrays.copyOf(freeSlots, capacity);
+        releasedSlots = Arrays.copyOf(releasedSlots, capacity);
+    }
+
+    /**
+     * Returns the index of an edge or -1 if the edge is null or not indexed
+     *
+     * @param edge the edge
+     */
+    int indexOf(MapEdge edge) {
+        if (edge == null) {
+            return -1;
+        }
+        Integer idx = indexByEdge.get(edge);
+        return idx != null ? idx : -1;
+    }
+
+    /**
+     * Returns the queue position of a vehicle
+     *
+     * @param slot the vehicle slot
+     */
+    long getQueuePosition(int slot) {
+        return queuePosition[slot];
+    }
+
+    /**
+     * Returns true if the slot is used by a vehicle
+     *
+     * @param slot the vehicle slot
+     */
+    boolean isAlive(int slot) {
+        return views[slot] != null;
+    }
+
+    /**
+     * Returns true if the vehicle is moving from destination to departure
+     *
+     * @param slot the vehicle slot
+     */
+    boolean isReturning(int slot) {
+        return returning[slot];
+    }
+
+    /**
+     * Returns true if the vehicle is waiting: without edge or at the end of edge
+     *
+     * @param slot the vehicle slot
+     */
+    boolean isWaiting(int slot) {
+        int idx = edge[slot];
+        return idx < 0 || distance[slot] >= edgeLength[idx];
+    }
+
+    /**
+     * Returns the number of slots in insertion order including the removed vehicles before compaction
+     */
+    int orderSize() {
+        return orderSize;
+    }
+
+    /**
+     * Returns the index of an edge registering it if not already indexed or -1 if the edge is null
+     *
+     * @param edge the edge
+     */
+    int register(MapEdge edge) {
+        if (edge == null) {
+            return -1;
+        }
+        Integer idx = indexByEdge.get(edge);
+        if (idx != null) {
+            return idx;
+        }
+        int index = edges.size();
+        if (index >= edgeLength.length) {
+            edgeLength = Arrays.copyOf(edgeLength, index * 2);
+            edgeSpeedLimit = Arrays.copyOf(edgeSpeedLimit, index * 2);
+            edgeSafetyDistance = Arrays.copyOf(edgeSafetyDistance, index * 2);
+            queues = Arrays.copyOf(queues, index * 2);
+        }
+        edges.add(edge);
+        indexByEdge.put(edge, index);
+        edgeLength[index] = edge.getLength();
+        edgeSpeedLimit[index] = edge.getSpeedLimit();
+        edgeSafetyDistance[index] = edge.getSafetyDistance();
+        return index;
+    }
+
+    /**
+     * Registers the edges of a compiled topology missing in the store by edge id.
+     * The removed edges of the topology are registered without index of edge
+     *
+     * @param topology the compiled topology
+     */
+    private void registerEdges(CompiledTopology topology) {
+        List<MapEdge> topologyEdges = topology.getEdges();
+        for (int i = edges.size(); i < topologyEdges.size(); i++) {
+            MapEdge edge = topologyEdges.get(i);
+            register(edge);
+            if (!topology.isEdgeAlive(i)) {
+                indexByEdge.remove(edge);
+            }
+        }
+    }
+
+    /**
+     * Returns the vehicle queue of an edge creating it if missing
+     *
+     * @param index the edge index
+     */
+    EdgeQueue queue(int index) {
+        EdgeQueue queue = queues[index];
+        if (queue == null) {
+            queue = EdgeQueue.createQueue(edges.get(index));
+            queues[index] = queue;
+        }
+        return queue;
+    }
+
+    /**
+     * Returns the vehicle queue of an edge or null if the edge has no queue
+     *
+     * @param index the edge index
+     */
+    EdgeQueue queueOrNull(int index) {
+        return index >= 0 ? queues[index] : null;
+    }
+
+    /**
+     * Removes a vehicle from the store.
+     * The vehicle is detached from the store keeping the last state
+     *
+     * @param slot the vehicle slot
+     */
+    void remove(int slot) {
+        Vehicle view = views[slot];
+        if (view != null) {
+            counters.addVehicle(destination[slot], -1);
+            countWaiting(slot, -1);
+            if (delayed[slot]) {
+                counters.addDelay(destination[slot], -1, deadline[slot]);
+                delayed[slot] = false;
+            }
+            views[slot] = null;
+            view.unbind(getEdge(slot), distance[slot], returning[slot], edgeEntryTime[slot], startWaitingTime[slot],
+                    queuePosition[slot]);
+            edge[slot] = -1;
+            releasedSlots[releasedSize++] = slot;
+            size--;
+        }
+    }
+
+    /**
+     * Schedules the deadline of a vehicle by the free flow round trip time of the delay topology
+     *
+     * @param slot the vehicle slot
+     */
+    private void scheduleDelay(int slot) {
+        deadline[slot] = Double.POSITIVE_INFINITY;
+        int from = departure[slot];
+        int to = destination[slot];
+        if (delayTopology != null && from >= 0 && to >= 0) {
+            double time = views[slot].getCreationTime() + delayTopology.getFreeRoundTripTime(from, to);
+            if (time < Double.POSITIVE_INFINITY) {
+                deadline[slot] = time;
+                delayQueue.add(slot, time);
+            }
+        }
+    }
+
+    /**
+     * Sets the distance from the beginning of edge of a vehicle
+     *
+     * @param slot     the vehicle slot
+     * @param distance the distance
+     */
+    void setDistance(int slot, double distance) {
+        this.distance[slot] = distance;
+    }
+
+    /**
+     * Sets the current edge index of a vehicle
+     *
+     * @param slot  the vehicle slot
+     * @param index the edge index or -1 if none
+     */
+    void setEdgeIndex(int slot, int index) {
+        countWaiting(slot, -1);
+        edge[slot] = index;
+        countWaiting(slot, 1);
+    }
+
+    /**
+     * Sets the edge entry time of a vehicle
+     *
+     * @param slot the vehicle slot
+     * @param time the edge entry time
+     */
+    void setEdgeEntryTime(int slot, double time) {
+        edgeEntryTime[slot] = time;
+    }
+
+    /**
+     * Sets if the vehicle is moving from destination to departure
+     *
+     * @param slot      the vehicle slot
+     * @param returning true if the vehicle is moving from destination to departure
+     */
+    void setReturning(int slot, boolean returning) {
+        countWaiting(slot, -1);
+        this.returning[slot] = returning;
+        countWaiting(slot, 1);
+    }
+
+    /**
+     * Sets the queue position of a vehicle
+     *
+     * @param slot     the vehicle slot
+     * @param position the queue position
+     */
+    void setQueuePosition(int slot, long position) {
+        queuePosition[slot] = position;
+    }
+
+    /**
+     * Sets the start waiting time of a vehicle
+     *
+     * @param slot the vehicle slot
+     * @param time the start waiting time
+     */
+    void setStartWaitingTime(int slot, double time) {
+        startWaitingTime[slot] = time;
+    }
+
+    /**
+     * Returns the number of vehicles
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Returns the slot in insertion order
+     *
+     * @param i the insertion order index
+     */
+    int slotAt(int i) {
+        return order[i];
+    }
+
+    /**
+     * Returns the detached copies of vehicles in insertion order
+     */
+    public List<Vehicle> snapshot() {
+        List<Vehicle> result = new ArrayList<>(size);
+        for (int i = 0; i < orderSize; i++) {
+            int slot = order[i];
+            Vehicle view = views[slot];
+            if (view != null) {
+                result.add(new Vehicle(view.getId(), view.getDeparture(), view.getDestination(),
+                        view.getCreationTime(), getEdge(slot), distance[slot], returning[slot],
+                        edgeEntryTime[slot], startWaitingTime[slot]));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Updates the delay accumulators of the site counters at a given time.
+     * <p>
+     * The vehicles whose deadline is before the time are counted as delayed,
+     * each vehicle is counted once when it becomes delayed and uncounted when removed.
+     * The deadlines are rescheduled in a single pass when the compiled topology changes.
+     * </p>
+     *
+     * @param compiled the compiled topology of the store sites
+     * @param time     the time
+     */
+    void updateDelays(CompiledTopology compiled, double time) {
+        requireNonNull(compiled);
+        if (compiled != delayTopology) {
+            delayTopology = compiled;
+            delayQueue.clear();
+            counters.clearDelays();
+            for (int i = 0; i < orderSize; i++) {
+                int slot = order[i];
+                if (views[slot] != null) {
+                    delayed[slot] = false;
+                    scheduleDelay(slot);
+                }
+            }
+        }
+        while (!delayQueue.isEmpty() && delayQueue.peekKey() < time) {
+            double key = delayQueue.peekKey();
+            int slot = delayQueue.poll();
+            // Skips the deadlines of removed vehicles
+            if (views[slot] != null && !delayed[slot] && deadline[slot] == key) {
+                delayed[slot] = true;
+                counters.addDelay(destination[slot], 1, key);
+            }
+        }
+    }
+
+    /**
+     * Returns the vehicle view of a slot or null if the slot is not used
+     *
+     * @param slot the vehicle slot
+     */
+    Vehicle view(int slot) {
+        return views[slot];
+    }
+}
@@ -228,11 +228,22 @@ public class Painter {
      * @param color    the color
      */
     public void paintVehicle(final Point2D location, final Point2D vec, final Color color) {
+        paintVehicle(location.getX(), location.getY(), vec.getX(), vec.getY(), color);
+    }
+
+    /**
+     * @param x     the x coordinate of location
+     * @param y     the y coordinate of location
+     * @param vecX  the x component of direction vector
+     * @param vecY  the y component of direction vector
+     * @param color the color
+     */
+    public void paintVehicle(final double x, final double y, final double vecX, final double vecY, final Color color) {
         graphics.setColor(color);
         final AffineTransform old = graphics.getTransform();
         final AffineTransform tr = graphics.getTransform();
-        tr.setToTranslation(location.getX(), location.getY());
-        tr.rotate(vec.getX(), vec.getY());
+        tr.setToTranslation(x, y);
+        tr.rotate(vecX, vecY);
         graphics.transform(tr);
         graphics.fill(VEHICLE_SHAPE);
         if (borderPainted) {
@@ -109,6 +109,7 @@ public class RouteMapViewport extends JComponent {
     private boolean trafficView;
     private Mode currentMode;
     private StatusView status;
+    private FrameBuffer frames;
     private boolean ctrPressed;
     private MapEdge changingEdge;
     private Point2D viewportLocation;
@@ -940,6 +941,18 @@ public class RouteMapViewport extends JComponent {
      *
      */
     private void paintVehicles() {
+        if (frames != null) {
+            // Paints the last vehicle frame published by the running simulation
+            final VehicleFrame frame = frames.acquire();
+            for (int i = 0; i < frame.getSize(); i++) {
+                final Color color = status.getNodeView(frame.getDestination(i))
+                        .map(NodeView::getColor)
+                        .orElse(DEFAULT_NODE_COLOR);
+                painter.paintVehicle(frame.getX(i), frame.getY(i), frame.getDirectionX(i), frame.getDirectionY(i),
+                        color);
+            }
+            return;
+        }
         for (final Vehicle vehicle : status.getVehicles()) {
             vehicle.getLocation().ifPresent(point ->
                     vehicle.getDirection().ifPresent(direction -> {
@@ -1043,6 +1056,16 @@ public class RouteMapViewport extends JComponent {
         }
     }
 
+    /**
+     * Sets the frame buffer of vehicles painted instead of the status vehicles
+     *
+     * @param frames the frame buffer or null to paint the status vehicles
+     */
+    public void setFrames(FrameBuffer frames) {
+        this.frames = frames;
+        repaint();
+    }
+
     /**
      * @param status the status
      */
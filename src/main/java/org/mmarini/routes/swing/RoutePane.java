@@ -116,6 +116,15 @@ public class RoutePane extends Box {
         departureList.setSelectedIndex(0);
     }
 
+    /**
+     * Sets the transit times from site to site
+     *
+     * @param transitTimes the transit times
+     */
+    public void setTransitTimes(DoubleMatrix<NodeView> transitTimes) {
+        routeTableModel.setTransitTimes(transitTimes);
+    }
+
     private void init() {
         routeTable.setDefaultRenderer(NodeView.class, new NodeViewTableCellRenderer());
         departureList.setSelectionMode(ListSelectionModel.SINGLE_SELECTION);
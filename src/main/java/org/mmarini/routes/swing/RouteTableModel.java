@@ -39,9 +39,10 @@ import javax.swing.table.AbstractTableModel;
  */
 public class RouteTableModel extends AbstractTableModel {
     private static final long serialVersionUID = -2634066472823732066L;
-    private static final String[] COLUMN_NAMES = {"Destination", "Weight"};
+    private static final String[] COLUMN_NAMES = {"Destination", "Weight", "Transit time (s)"};
     private static final Logger logger = LoggerFactory.getLogger(RouteTableModel.class);
     private DoubleMatrix<NodeView> pathEntry;
+    private DoubleMatrix<NodeView> transitTimes;
     private int row;
 
     /**
@@ -52,7 +53,7 @@ public class RouteTableModel extends AbstractTableModel {
 
     @Override
     public Class<?> getColumnClass(final int columnIndex) {
-        return columnIndex == 1 ? Double.class : NodeView.class;
+        return columnIndex == 0 ? NodeView.class : Double.class;
     }
 
     @Override
@@ -74,8 +75,10 @@ public class RouteTableModel extends AbstractTableModel {
     public Object getValueAt(final int row, final int col) {
         if (col == 0) {
             return pathEntry.getKeys().get(row);
-        } else {
+        } else if (col == 1) {
             return pathEntry.getValues()[this.row][row];
+        } else {
+            return transitTimes != null ? transitTimes.getValues()[this.row][row] : null;
         }
     }
 
@@ -92,6 +95,16 @@ public class RouteTableModel extends AbstractTableModel {
         fireTableDataChanged();
     }
 
+    /**
+     * Sets the transit times from site to site
+     *
+     * @param transitTimes the transit times
+     */
+    public void setTransitTimes(DoubleMatrix<NodeView> transitTimes) {
+        this.transitTimes = transitTimes;
+        fireTableDataChanged();
+    }
+
     /**
      * @param row the departure index
      */
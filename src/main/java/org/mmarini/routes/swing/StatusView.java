@@ -121,7 +121,12 @@ public class StatusView {
                         .filter(node -> node.getNode() instanceof SiteNode)
                         .collect(Collectors.toList())
         );
-        return new StatusView(status, nodeViews, siteViews, edgesViews, viewByNode, viewByEdge);
+        // Creates the hit testing trees
+        LazyValue<ElementTree<MapNode>> nodeTree = new LazyValue<>(() ->
+                ElementTree.createNodeTree(status.getNodes()));
+        LazyValue<ElementTree<MapEdge>> edgeTree = new LazyValue<>(() ->
+                ElementTree.createEdgeTree(status.getEdges()));
+        return new StatusView(status, nodeViews, siteViews, edgesViews, viewByNode, viewByEdge, nodeTree, edgeTree);
     }
 
     private final Status status;
@@ -130,6 +135,8 @@ public class StatusView {
     private final LazyValue<List<EdgeView>> edgesViews;
     private final LazyValue<Map<MapNode, NodeView>> viewByNode;
     private final LazyValue<Map<MapEdge, EdgeView>> viewByEdge;
+    private final LazyValue<ElementTree<MapNode>> nodeTree;
+    private final LazyValue<ElementTree<MapEdge>> edgeTree;
 
     /**
      * @param status     the status
@@ -138,19 +145,25 @@ public class StatusView {
      * @param edgesViews the edge Views
      * @param viewByNode the view by node
      * @param viewByEdge the view by edge
+     * @param nodeTree   the hit testing tree of nodes
+     * @param edgeTree   the hit testing tree of edges
      */
     protected StatusView(Status status,
                          LazyValue<List<NodeView>> nodeViews,
                          LazyValue<List<NodeView>> siteViews,
                          LazyValue<List<EdgeView>> edgesViews,
                          LazyValue<Map<MapNode, NodeView>> viewByNode,
-                         LazyValue<Map<MapEdge, EdgeView>> viewByEdge) {
+                         LazyValue<Map<MapEdge, EdgeView>> viewByEdge,
+                         LazyValue<ElementTree<MapNode>> nodeTree,
+                         LazyValue<ElementTree<MapEdge>> edgeTree) {
         this.status = requireNonNull(status);
         this.nodeViews = requireNonNull(nodeViews);
         this.siteViews = requireNonNull(siteViews);
         this.edgesViews = requireNonNull(edgesViews);
         this.viewByNode = requireNonNull(viewByNode);
         this.viewByEdge = requireNonNull(viewByEdge);
+        this.nodeTree = requireNonNull(nodeTree);
+        this.edgeTree = requireNonNull(edgeTree);
     }
 
     /**
@@ -178,16 +191,7 @@ public class StatusView {
      * @param precision the precision
      */
     public Optional<MapEdge> findEdge(final Point2D point, final double precision) {
-        double dist = precision * precision;
-        MapEdge edge = null;
-        for (final MapEdge e : status.getEdges()) {
-            final double d = e.distanceSqFrom(point);
-            if (d <= dist) {
-                dist = d;
-                edge = e;
-            }
-        }
-        return Optional.ofNullable(edge);
+        return edgeTree.get().findNearest(point, precision);
     }
 
     /**
@@ -205,16 +209,7 @@ public class StatusView {
      * @param precision the precision
      */
     public Optional<MapNode> findNode(final Point2D point, final double precision) {
-        double dist = precision * precision;
-        MapNode element = null;
-        for (final MapNode n : status.getNodes()) {
-            final double d = n.distanceSqFrom(point);
-            if (d <= dist) {
-                dist = d;
-                element = n;
-            }
-        }
-        return Optional.ofNullable(element);
+        return nodeTree.get().findNearest(point, precision);
     }
 
     public Optional<EdgeView> getEdgeViews(MapEdge edge) {
@@ -267,6 +262,11 @@ public class StatusView {
         return status;
     }
 
+    public DoubleMatrix<NodeView> getTransitTimeMatrix() {
+        return status.getTransitTimeMatrix().map(getSiteViews(),
+                view -> Optional.of((SiteNode) view.getNode()));
+    }
+
     public List<TrafficInfo> getTrafficInfo() {
         return status.getTrafficInfo();
     }
@@ -303,7 +303,7 @@ public class StatusView {
         if (status.equals(this.status)) {
             return this;
         } else if (status.getTopology().equals(this.status.getTopology())) {
-            return new StatusView(status, nodeViews, siteViews, edgesViews, viewByNode, viewByEdge);
+            return new StatusView(status, nodeViews, siteViews, edgesViews, viewByNode, viewByEdge, nodeTree, edgeTree);
         } else {
             return createStatusView(status);
         }
@@ -30,6 +30,7 @@ package org.mmarini.routes.swing;
 
 public interface UIConstants {
     long FPS = 60;
+    long STATUS_FPS = 4;
     long NANOSPS = 1000000000L;
     long MAX_FPS_MILLIS = 300L;
     double SECS_PER_MILLIS = 1e-3;
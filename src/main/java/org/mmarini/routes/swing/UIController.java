@@ -29,9 +29,6 @@
 package org.mmarini.routes.swing;
 
 import com.fasterxml.jackson.databind.JsonNode;
-import io.reactivex.rxjava3.core.Completable;
-import io.reactivex.rxjava3.core.Single;
-import io.reactivex.rxjava3.schedulers.Schedulers;
 import org.mmarini.Tuple2;
 import org.mmarini.routes.model2.*;
 import org.mmarini.routes.model2.yaml.Parsers;
@@ -53,7 +50,6 @@ import java.text.MessageFormat;
 import java.time.Duration;
 import java.util.List;
 import java.util.*;
-import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 import java.util.stream.IntStream;
 import java.util.stream.Stream;
@@ -63,7 +59,6 @@ import static java.lang.Math.round;
 import static java.util.Objects.requireNonNull;
 import static org.mmarini.Utils.getValue;
 import static org.mmarini.routes.model2.Constants.*;
-import static org.mmarini.routes.model2.Routes.computeRoutes;
 import static org.mmarini.routes.model2.Topology.createTopology;
 import static org.mmarini.routes.model2.TrafficEngineImpl.createEngine;
 import static org.mmarini.routes.model2.TrafficEngineImpl.createRandom;
@@ -81,7 +76,6 @@ import static org.mmarini.yaml.Utils.fromResource;
  */
 public class UIController {
     public static final double GAMMA = 0.9;
-    public static final long CREATE_ROUTE_INTERVAL = 100L; // ms
     private static final Logger logger = LoggerFactory.getLogger(UIController.class);
     private final JFileChooser fileChooser;
     private final OptimizePane optimizePane;
@@ -102,6 +96,11 @@ public class UIController {
     private final Random random;
     private final SimulatorEngine<Status, TrafficEngine> simulator;
     private final ConnectionsPane connectionPane;
+    private final RouteService routeService;
+    private final FrameBuffer frames;
+    private TrafficEngine lastEmittedEngine;
+    private Status lastEmittedStatus;
+    private long lastStatusNanos;
     private boolean running;
     private StatusView statusView;
     private int edgePriority;
@@ -112,6 +111,8 @@ public class UIController {
      */
     public UIController() {
         random = new Random();
+        routeService = RouteService.createService();
+        frames = FrameBuffer.create();
         routeMap = new RouteMapViewport();
         infoPane = new InfoPane();
         mapViewPane = new MapViewPane(routeMap, infoPane);
@@ -127,7 +128,7 @@ public class UIController {
         simulator = SimulatorEngineImpl.<Status, TrafficEngine>create(
                 initialSeed,
                 this::performTimeTick,
-                TrafficEngine::buildStatus
+                this::emitStatus
         ).setEventInterval(Duration.ofNanos(NANOSPS / FPS));
 
 
@@ -344,10 +345,12 @@ public class UIController {
         });
 
         simulator.setOnEvent(status -> {
+            fpsMeter.tick();
             if (!status.equals(statusView.getStatus())) {
                 statusView = createStatusView(status);
-                fpsMeter.tick();
                 refresh();
+            } else {
+                routeMap.repaint();
             }
         });
         // Scroll engine
@@ -357,10 +360,10 @@ public class UIController {
      * @param moduleParameters the module parameters
      */
     private void createModule(RouteMapViewport.ModuleParameters moduleParameters) {
-        simulator.request(engine -> engine.addModule(moduleParameters.getModule(),
+        simulator.request(engine -> engine.edit(tx -> tx.addModule(moduleParameters.getModule(),
                 moduleParameters.getLocation(),
                 moduleParameters.getDirection(),
-                MAX_PRECISION_DISTANCE)).doOnSuccess(engine -> {
+                MAX_PRECISION_DISTANCE))).doOnSuccess(engine -> {
             statusView = createStatusView(engine.buildStatus());
             refreshTopology();
             routeMap.reset();
@@ -524,7 +527,6 @@ public class UIController {
         routeMap.reset();
         createFlows();
         refreshTopology();
-        updateRoutes();
     }
 
     /**
@@ -682,7 +684,8 @@ public class UIController {
         if (opt == JOptionPane.OK_OPTION) {
             final double speedLimit = optimizePane.getSpeedLimit();
             final boolean optimizeSpeed = optimizePane.isOptimizeSpeed();
-            simulator.request(engine -> (optimizeSpeed ? engine.optimizeSpeed(speedLimit) : engine).optimizeNodes())
+            simulator.request(engine -> (optimizeSpeed ? engine.setSpeedLimit(speedLimit) : engine)
+                            .edit(TopologyEdit::optimize))
                     .doOnSuccess(engine -> {
                         statusView = createStatusView(engine.buildStatus());
                         refreshTopology();
@@ -692,6 +695,25 @@ public class UIController {
 
     }
 
+    /**
+     * Returns the status emitted at each frame of the running simulation.
+     * The vehicle positions are written into the frame buffer at each frame
+     * while the full status is built at most at STATUS_FPS rate or when the engine changes
+     *
+     * @param engine the engine
+     */
+    private Status emitStatus(TrafficEngine engine) {
+        engine.writeFrame(frames);
+        long now = System.nanoTime();
+        if (lastEmittedStatus == null || engine != lastEmittedEngine
+                || now - lastStatusNanos >= NANOSPS / STATUS_FPS) {
+            lastEmittedStatus = engine.buildStatus();
+            lastEmittedEngine = engine;
+            lastStatusNanos = now;
+        }
+        return lastEmittedStatus;
+    }
+
     /**
      * Returns the engine at a time interval from an engine
      *
@@ -700,9 +722,11 @@ public class UIController {
      */
     private Tuple2<TrafficEngine, Double> performTimeTick(TrafficEngine engine, double dt) {
         tpsMeter.tick();
+        // Attaches the route service to the engines created by loading or editing the map
+        TrafficEngine routedEngine = engine.setRouteService(routeService);
         return dt > 0.0
-                ? engine.next(random, dt)
-                : Tuple2.of(engine, dt);
+                ? routedEngine.next(random, dt)
+                : Tuple2.of(routedEngine, dt);
     }
 
     /**
@@ -830,6 +854,7 @@ public class UIController {
     public void setRouteSetting() {
         DoubleMatrix<NodeView> weights = statusView.getWeightMatrix();
         routesPane.setPathEntry(weights);
+        routesPane.setTransitTimes(statusView.getTransitTimeMatrix());
         final int opt = JOptionPane.showConfirmDialog(mainFrame, routesPane,
                 Messages.getString("RouteMediator.routePane.title"), JOptionPane.OK_CANCEL_OPTION); //$NON-NLS-1$
         if (opt == JOptionPane.OK_OPTION) {
@@ -933,6 +958,7 @@ public class UIController {
             running = true;
             fpsMeter.reset();
             tpsMeter.reset();
+            routeMap.setFrames(frames);
             simulator.start();
         }
 //        start = System.nanoTime();
@@ -942,7 +968,13 @@ public class UIController {
      *
      */
     private void stopSimulation() {
-        simulator.stop();
+        simulator.stop()
+                .doOnSuccess(engine -> {
+                    // Paints the vehicles of the final status
+                    routeMap.setFrames(null);
+                    statusView = createStatusView(engine.buildStatus());
+                    refresh();
+                }).subscribe();
         running = false;
     }
 
@@ -990,23 +1022,4 @@ public class UIController {
                     mainFrame.repaint();
                 }).subscribe();
     }
-
-    void updateRoutes() {
-        simulator.request(trafficEngine -> {
-            List<MapEdge> edges = trafficEngine.getTopology().getEdges();
-            TransitTimes transitTimeByEdge = trafficEngine.getTransitTimeByEdge();
-            Single<Map<Tuple2<MapNode, MapNode>, MapEdge>> result = Single.fromSupplier(() -> computeRoutes(edges, transitTimeByEdge)).subscribeOn(Schedulers.computation());
-            result.doOnSuccess(routes ->
-                    simulator.request(trafficEngine1 -> {
-                        // Process routes result
-                        TrafficEngine trafficEngine2 = trafficEngine1.updateRoutes(routes);
-                        // Reschedules process
-                        Completable.complete()
-                                .delay(CREATE_ROUTE_INTERVAL, TimeUnit.MILLISECONDS)
-                                .subscribe(this::updateRoutes);
-                        return trafficEngine2;
-                    })).subscribe();
-            return trafficEngine;
-        });
-    }
 }
\ No newline at end of file
@@ -0,0 +1,120 @@
+/*
+ * Copyright (c) 2019 Marco Marini, marco.marini@mmarini.org
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ *
+ *    END OF TERMS AND CONDITIONS
+ *
+ */
+
+package org.mmarini;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.lessThan;
+
+class AliasTableTest {
+
+    static final long SEED = 1234L;
+    static final int NUM_SAMPLES = 100000;
+    /**
+     * Chi square critical value for 7 degrees of freedom at 0.001 significance
+     */
+    static final double CHI2_7_999 = 24.322;
+
+    @Test
+    void fromCdf() {
+        /*
+        Given a cumulative distribution with zero probability values
+         */
+        double[] cdf = {0.5, 0.5, 1, 1};
+
+        /*
+        When creating the alias table
+         */
+        AliasTable table = AliasTable.fromCdf(cdf);
+
+        /*
+        Then the table should sample only the values with probability
+         */
+        assertThat(table.size(), equalTo(4));
+        for (int i = 0; i < 1000; i++) {
+            int value = table.next(i / 1000.0);
+            assertThat(value == 0 || value == 2, equalTo(true));
+        }
+    }
+
+    @Test
+    void fromCdfDegenerated() {
+        /*
+        Given a cumulative distribution with all zero values
+         */
+        double[] cdf = {0, 0, 0};
+
+        /*
+        When creating the alias table
+         */
+        AliasTable table = AliasTable.fromCdf(cdf);
+
+        /*
+        Then the table should sample the last value as the cumulative scan
+         */
+        assertThat(table.next(0), equalTo(2));
+        assertThat(table.next(0.9999), equalTo(2));
+    }
+
+    @Test
+    void next() {
+        /*
+        Given an alias table of 8 values with different weights
+         */
+        double[] weights = {1, 2, 3, 4, 0.5, 10, 0.25, 6};
+        AliasTable table = AliasTable.fromWeights(weights);
+        Random random = new Random(SEED);
+
+        /*
+        When sampling the table
+         */
+        int[] counts = new int[weights.length];
+        for (int i = 0; i < NUM_SAMPLES; i++) {
+            counts[table.next(random)]++;
+        }
+
+        /*
+        Then the frequencies should fit the weights (chi square test)
+         */
+        double total = 0;
+        for (double weight : weights) {
+            total += weight;
+        }
+        double chi2 = 0;
+        for (int i = 0; i < weights.length; i++) {
+            double expected = NUM_SAMPLES * weights[i] / total;
+            chi2 += (counts[i] - expected) * (counts[i] - expected) / expected;
+        }
+        assertThat(chi2, lessThan(CHI2_7_999));
+    }
+}
@@ -0,0 +1,136 @@
+/*
+ * Copyright (c) 2019 Marco Marini, marco.marini@mmarini.org
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ *
+ *    END OF TERMS AND CONDITIONS
+ *
+ */
+
+package org.mmarini;
+
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.util.Random;
+import java.util.SplittableRandom;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.closeTo;
+import static org.hamcrest.Matchers.lessThan;
+
+class UtilsTest {
+
+    static final long SEED = 1234L;
+    static final int NUM_SAMPLES = 100000;
+
+    /**
+     * Returns the chi square statistics of Poisson samples
+     * grouping the values with expected count lower than 5 in the tails
+     *
+     * @param counts the sample counts
+     * @param lambda the mean value
+     */
+    static double[] chiSquare(int[] counts, double lambda) {
+        double chi2 = 0;
+        int bins = 0;
+        double expectedTail = 0;
+        double observedTail = 0;
+        double logP = -lambda;
+        for (int k = 0; k < counts.length; k++) {
+            if (k > 0) {
+                logP += Math.log(lambda) - Math.log(k);
+            }
+            double expected = NUM_SAMPLES * Math.exp(logP);
+            if (expected < 5) {
+                expectedTail += expected;
+                observedTail += counts[k];
+            } else {
+                chi2 += (counts[k] - expected) * (counts[k] - expected) / expected;
+                bins++;
+            }
+        }
+        if (expectedTail > 0) {
+            chi2 += (observedTail - expectedTail) * (observedTail - expectedTail) / expectedTail;
+            bins++;
+        }
+        return new double[]{chi2, bins - 1};
+    }
+
+    @ParameterizedTest
+    @ValueSource(doubles = {0.5, 3, 9.9, 10, 30, 200})
+    void nextPoison(double lambda) {
+        /*
+        Given a random generator
+         */
+        Random random = new Random(SEED);
+
+        /*
+        When sampling the Poisson distribution
+         */
+        int[] counts = new int[(int) (lambda * 3 + 30)];
+        double sum = 0;
+        double sum2 = 0;
+        for (int i = 0; i < NUM_SAMPLES; i++) {
+            int k = Utils.nextPoison(random, lambda);
+            counts[Math.min(k, counts.length - 1)]++;
+            sum += k;
+            sum2 += (double) k * k;
+        }
+
+        /*
+        Then the mean and variance should be lambda
+        And the frequencies should fit the distribution (chi square test)
+         */
+        double mean = sum / NUM_SAMPLES;
+        double variance = sum2 / NUM_SAMPLES - mean * mean;
+        assertThat(mean, closeTo(lambda, 5 * Math.sqrt(lambda / NUM_SAMPLES)));
+        assertThat(variance, closeTo(lambda, lambda * 0.05));
+        double[] chi2 = chiSquare(counts, lambda);
+        // Wilson-Hilferty approximation of chi square critical value at 0.001 significance
+        double df = chi2[1];
+        double critical = df * Math.pow(1 - 2 / (9 * df) + 3.09 * Math.sqrt(2 / (9 * df)), 3);
+        assertThat(chi2[0], lessThan(critical));
+    }
+
+    @ParameterizedTest
+    @ValueSource(doubles = {3, 30})
+    void nextPoisonSplittable(double lambda) {
+        /*
+        Given a splittable random generator
+         */
+        SplittableRandom random = new SplittableRandom(SEED);
+
+        /*
+        When sampling the Poisson distribution
+         */
+        double sum = 0;
+        for (int i = 0; i < NUM_SAMPLES; i++) {
+            sum += Utils.nextPoison(random, lambda);
+        }
+
+        /*
+        Then the mean should be lambda
+         */
+        assertThat(sum / NUM_SAMPLES, closeTo(lambda, 5 * Math.sqrt(lambda / NUM_SAMPLES)));
+    }
+}
@@ -0,0 +1,208 @@
+/*
+ * Copyright (c) 2019 Marco Marini, marco.marini@mmarini.org
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ *
+ *    END OF TERMS AND CONDITIONS
+ *
+ */
+
+package org.mmarini.routes.batch;
+
+import org.junit.jupiter.api.Test;
+import org.mmarini.routes.model2.*;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.util.List;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+import static org.mmarini.routes.batch.BatchSimulation.createSimulation;
+import static org.mmarini.routes.model2.CrossNode.createNode;
+import static org.mmarini.routes.model2.RandomStreams.createStreams;
+import static org.mmarini.routes.model2.SiteNode.createSite;
+import static org.mmarini.routes.model2.Topology.createTopology;
+import static org.mmarini.routes.model2.TrafficEngineImpl.createEngine;
+
+class BatchSimulationTest {
+
+    static final double SPEED_LIMIT = 10.0;
+    static final int PRIORITY = 0;
+    static final int MAX_VEHICLES = 1000;
+    static final double FREQUENCY = 0.5;
+    static final double DURATION = 60;
+    static final long SEED = 1234L;
+
+    static TrafficEngineImpl createTestEngine() {
+        /*
+        0 ---> 1 ---> 2
+          <---   <---
+         */
+        SiteNode node0 = createSite(0, 0);
+        SiteNode node2 = createSite(100, 0);
+        CrossNode node1 = createNode(50, 0);
+        MapEdge edge01 = new MapEdge(node0, node1, SPEED_LIMIT, PRIORITY);
+        MapEdge edge10 = new MapEdge(node1, node0, SPEED_LIMIT, PRIORITY);
+        MapEdge edge12 = new MapEdge(node1, node2, SPEED_LIMIT, PRIORITY);
+        MapEdge edge21 = new MapEdge(node2, node1, SPEED_LIMIT, PRIORITY);
+        return createEngine(MAX_VEHICLES,
+                createTopology(List.of(node0, node2, node1), List.of(edge01, edge10, edge12, edge21)),
+                0, List.of(), SPEED_LIMIT, FREQUENCY);
+    }
+
+    @Test
+    void run() {
+        /*
+        Given a batch simulation of 60 s
+         */
+        BatchSimulation simulation = createSimulation(createTestEngine(), DURATION, 0.25, createStreams(SEED));
+
+        /*
+        When running the simulation
+         */
+        BatchReport report = simulation.run();
+
+        /*
+        Then the report should cover the whole simulated interval
+        And should contain the traffic information of the 2 sites
+        And the transit times of 4 edges
+         */
+        assertThat(report.getSimulated(), allOf(
+                greaterThanOrEqualTo(DURATION),
+                lessThan(DURATION + 0.25)));
+        assertThat(report.getThroughput(), greaterThan(0.0));
+        assertThat(report.getVehicleCount(), greaterThan(0));
+        assertThat(report.getTrafficInfo(), hasSize(2));
+        assertThat(report.getEdges(), hasSize(4));
+        for (int i = 0; i < 4; i++) {
+            assertThat(report.getTransitTime(i), greaterThan(0.0));
+        }
+    }
+
+    @Test
+    void runRefreshingRoutes() {
+        /*
+        Given a topology of
+               y
+             /   \
+        a --- x --- b
+              |
+              c
+        And the edges from c to x with higher priority
+        And the vehicles from a to b, from b to c and from c to b
+         */
+        SiteNode a = createSite(0, 0);
+        SiteNode b = createSite(200, 0);
+        SiteNode c = createSite(100, -100);
+        CrossNode x = createNode(100, 0);
+        CrossNode y = createNode(100, 50);
+        MapEdge edgeAY = new MapEdge(a, y, SPEED_LIMIT, PRIORITY);
+        MapEdge edgeYB = new MapEdge(y, b, SPEED_LIMIT, PRIORITY);
+        Topology topology = createTopology(List.of(a, b, c, x, y), List.of(
+                new MapEdge(a, x, SPEED_LIMIT, PRIORITY),
+                new MapEdge(x, a, SPEED_LIMIT, PRIORITY),
+                new MapEdge(x, b, SPEED_LIMIT, PRIORITY),
+                new MapEdge(b, x, SPEED_LIMIT, PRIORITY),
+                new MapEdge(c, x, SPEED_LIMIT, PRIORITY + 1),
+                new MapEdge(x, c, SPEED_LIMIT, PRIORITY),
+                edgeAY,
+                new MapEdge(y, a, SPEED_LIMIT, PRIORITY),
+                edgeYB,
+                new MapEdge(b, y, SPEED_LIMIT, PRIORITY)));
+        double[][] weights = {{0, 1, 0}, {0, 0, 1}, {0, 1, 0}};
+        TrafficEngineImpl refreshed = createEngine(MAX_VEHICLES, topology, 0, List.of(), SPEED_LIMIT, 0.3, weights);
+        TrafficEngineImpl frozen = createEngine(MAX_VEHICLES, topology, 0, List.of(), SPEED_LIMIT, 0.3, weights);
+
+        /*
+        When running the simulation for 300 s refreshing the routes every 10 s
+        And running the simulation without route refreshes
+         */
+        createSimulation(refreshed, 300, 0.25, 10, createStreams(SEED)).run();
+        createSimulation(frozen, 300, 0.25, Double.POSITIVE_INFINITY, createStreams(SEED)).run();
+
+        /*
+        Then the congestion at x should move the vehicles from a to b on the longer route through y
+        And the frozen routes should never use the route through y
+         */
+        assertThat(countVehicles(refreshed, edgeAY, edgeYB), greaterThan(0L));
+        assertThat(countVehicles(frozen, edgeAY, edgeYB), equalTo(0L));
+    }
+
+    /**
+     * Returns the number of vehicles in the given edges
+     *
+     * @param engine the engine
+     * @param edges  the edges
+     */
+    static long countVehicles(TrafficEngineImpl engine, MapEdge... edges) {
+        List<MapEdge> edgeList = List.of(edges);
+        return engine.buildStatus().getVehicles().stream()
+                .filter(vehicle -> vehicle.getCurrentEdge().filter(edgeList::contains).isPresent())
+                .count();
+    }
+
+    @Test
+    void runReproducible() {
+        /*
+        Given two batch simulations with the same seed
+         */
+        BatchSimulation simulation1 = createSimulation(createTestEngine(), DURATION, 0.25, createStreams(SEED));
+        BatchSimulation simulation2 = createSimulation(createTestEngine(), DURATION, 0.25, createStreams(SEED));
+
+        /*
+        When running the simulations
+         */
+        BatchReport report1 = simulation1.run();
+        BatchReport report2 = simulation2.run();
+
+        /*
+        Then the reports should be the same
+         */
+        assertThat(report2.getVehicleCount(), equalTo(report1.getVehicleCount()));
+        for (int i = 0; i < 4; i++) {
+            assertThat(report2.getTransitTime(i), equalTo(report1.getTransitTime(i)));
+        }
+    }
+
+    @Test
+    void write() {
+        /*
+        Given the report of a batch simulation
+         */
+        BatchReport report = createSimulation(createTestEngine(), DURATION, 0.25, createStreams(SEED)).run();
+
+        /*
+        When writing the report
+         */
+        StringWriter out = new StringWriter();
+        report.write(new PrintWriter(out));
+
+        /*
+        Then the text should contain the throughput, the sites and the edges
+         */
+        String text = out.toString();
+        assertThat(text, containsString("Throughput:"));
+        assertThat(text, containsString("Site, Vehicles, Waiting, Delayed, Average delay (s)"));
+        assertThat(text, containsString("Node_0, Node_2, 50.0"));
+    }
+}
@@ -0,0 +1,93 @@
+/*
+ * Copyright (c) 2019 Marco Marini, marco.marini@mmarini.org
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ *
+ *    END OF TERMS AND CONDITIONS
+ *
+ */
+
+package org.mmarini.routes.batch;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+import static org.mmarini.routes.batch.BatchSimulationTest.createTestEngine;
+import static org.mmarini.routes.batch.ParameterSweep.createSweep;
+import static org.mmarini.routes.model2.RandomStreams.createStreams;
+
+class ParameterSweepTest {
+
+    static final double DURATION = 30;
+    static final long SEED = 1234L;
+
+    @Test
+    void run() throws Exception {
+        /*
+        Given a sweep of 2 frequencies, 2 speed limits and 2 replicas
+         */
+        ParameterSweep sweep = createSweep(createTestEngine(), DURATION, 0.25, createStreams(SEED))
+                .setFrequencies(0.2, 0.5)
+                .setSpeedLimits(10, 15)
+                .setReplicas(2);
+        ExecutorService multiThread = Executors.newFixedThreadPool(4);
+        ExecutorService singleThread = Executors.newSingleThreadExecutor();
+
+        /*
+        When running the sweep on a multi thread pool and on a single thread pool
+         */
+        List<SweepResult> results;
+        List<SweepResult> singleResults;
+        try {
+            results = sweep.run(multiThread);
+            singleResults = sweep.run(singleThread);
+        } finally {
+            multiThread.shutdown();
+            singleThread.shutdown();
+        }
+
+        /*
+        Then the results should be in grid order
+        And the results should not depend on the number of threads
+         */
+        assertThat(sweep.getRunCount(), equalTo(8));
+        assertThat(results, hasSize(8));
+        assertThat(results.get(0).getFrequency(), equalTo(0.2));
+        assertThat(results.get(0).getSpeedLimit(), equalTo(10.0));
+        assertThat(results.get(0).getReplica(), equalTo(0));
+        assertThat(results.get(1).getReplica(), equalTo(1));
+        assertThat(results.get(2).getSpeedLimit(), equalTo(15.0));
+        assertThat(results.get(4).getFrequency(), equalTo(0.5));
+        for (int i = 0; i < results.size(); i++) {
+            SweepResult result = results.get(i);
+            SweepResult single = singleResults.get(i);
+            assertThat(result.getReport().getSimulated(), greaterThanOrEqualTo(DURATION));
+            assertThat(single.getReport().getVehicleCount(), equalTo(result.getReport().getVehicleCount()));
+            assertThat(single.getAverageTransitTime(), equalTo(result.getAverageTransitTime()));
+        }
+    }
+}
@@ -0,0 +1,177 @@
+/*
+ * Copyright (c) 2019 Marco Marini, marco.marini@mmarini.org
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ *
+ *    END OF TERMS AND CONDITIONS
+ *
+ */
+
+package org.mmarini.routes.model2;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mmarini.routes.model2.CrossNode.createNode;
+import static org.mmarini.routes.model2.SiteNode.createSite;
+import static org.mmarini.routes.model2.Topology.createTopology;
+
+class CompiledTopologyTest {
+
+    @Test
+    void compile() {
+        /*
+        Given a topology of
+               2
+               |
+               v
+        0 ---> 1 ---> 3
+        with edge21 priority higher than edge01
+         */
+        SiteNode node0 = createSite(0, 0);
+        CrossNode node1 = createNode(30, 0);
+        SiteNode node2 = createSite(30, 40);
+        SiteNode node3 = createSite(60, 0);
+        MapEdge edge01 = new MapEdge(node0, node1, 10, 0);
+        MapEdge edge21 = new MapEdge(node2, node1, 20, 1);
+        MapEdge edge13 = new MapEdge(node1, node3, 10, 0);
+        Topology topology = createTopology(List.of(node0, node1, node2, node3), List.of(edge01, edge21, edge13));
+
+        /*
+        When compiling the topology
+         */
+        CompiledTopology result = topology.getCompiled();
+
+        /*
+        Then the nodes should be indexed with sites first
+         */
+        assertEquals(3, result.getSiteCount());
+        assertEquals(4, result.getNodeCount());
+        assertThat(result.getNodes(), contains(node0, node2, node3, node1));
+        assertEquals(0, result.nodeId(node0));
+        assertEquals(3, result.nodeId(node1));
+        assertEquals(-1, result.nodeId(createNode(0, 0)));
+        /*
+        And the edges should be indexed in topology order
+         */
+        assertEquals(3, result.getEdgeCount());
+        assertEquals(1, result.edgeId(edge21));
+        assertEquals(-1, result.edgeId(new MapEdge(node0, node1, 10, 0)));
+        assertEquals(1, result.getEdgeBegin(1));
+        assertEquals(3, result.getEdgeEnd(1));
+        assertEquals(40.0, result.getEdgeLength(1));
+        assertEquals(0.0, result.getEdgeDirectionX(1));
+        assertEquals(-1.0, result.getEdgeDirectionY(1));
+        assertEquals(20.0, result.getEdgeSpeedLimit(1));
+        assertEquals(1, result.getEdgePriority(1));
+        assertEquals(2.0, result.getEdgeTransitTime(1));
+        assertEquals(edge21.getSafetyDistance(), result.getEdgeSafetyDistance(1));
+        /*
+        And the outgoing edges of node1 should be edge13
+         */
+        assertArrayEquals(new int[]{2}, result.getOutEdges(3));
+        /*
+        And the incoming edges of node1 should be sorted by descending priority
+         */
+        assertArrayEquals(new int[]{1, 0}, result.getInEdges(3));
+        /*
+        And the compiled topology should be built once
+         */
+        assertThat(topology.getCompiled(), sameInstance(result));
+    }
+
+    @Test
+    void editEdges() {
+        /*
+        Given a compiled topology of
+               2
+               |
+               v
+        0 ---> 1 ---> 3
+        with edge21 priority higher than edge01
+         */
+        SiteNode node0 = createSite(0, 0);
+        CrossNode node1 = createNode(30, 0);
+        SiteNode node2 = createSite(30, 40);
+        SiteNode node3 = createSite(60, 0);
+        MapEdge edge01 = new MapEdge(node0, node1, 10, 0);
+        MapEdge edge21 = new MapEdge(node2, node1, 20, 1);
+        MapEdge edge13 = new MapEdge(node1, node3, 10, 0);
+        CompiledTopology compiled = createTopology(List.of(node0, node1, node2, node3),
+                List.of(edge01, edge21, edge13)).getCompiled();
+
+        /*
+        When removing edge01
+        And adding edge31 with the highest priority
+         */
+        MapEdge edge31 = new MapEdge(node3, node1, 10, 2);
+        CompiledTopology result = compiled.removeEdge(edge01).addEdge(edge31);
+
+        /*
+        Then the kept edges should keep the ids
+        And the removed edge should keep the id as removed
+        And the new edge should get the next id
+         */
+        assertEquals(4, result.getEdgeCount());
+        assertEquals(1, result.edgeId(edge21));
+        assertEquals(2, result.edgeId(edge13));
+        assertEquals(-1, result.edgeId(edge01));
+        assertFalse(result.isEdgeAlive(0));
+        assertEquals(3, result.edgeId(edge31));
+        assertTrue(result.isEdgeAlive(3));
+        /*
+        And the nodes should keep the ids
+        And the outgoing edges of node3 should be edge31
+        And the incoming edges of node1 should be sorted by descending priority
+         */
+        assertThat(result.getNodes(), contains(node0, node2, node3, node1));
+        assertArrayEquals(new int[]{3}, result.getOutEdges(2));
+        assertArrayEquals(new int[]{3, 1}, result.getInEdges(3));
+        assertArrayEquals(new int[0], result.getOutEdges(0));
+        /*
+        And the removed edges from the original topology should be edge01
+         */
+        assertArrayEquals(new int[]{0}, result.getRemovedEdges(compiled));
+        assertNull(compiled.getRemovedEdges(result));
+        /*
+        And the original topology should be unchanged
+         */
+        assertEquals(3, compiled.getEdgeCount());
+        assertEquals(0, compiled.edgeId(edge01));
+        assertEquals(-1, compiled.edgeId(edge31));
+        assertArrayEquals(new int[0], compiled.getOutEdges(2));
+        assertArrayEquals(new int[]{1, 0}, compiled.getInEdges(3));
+        assertArrayEquals(new int[]{2}, compiled.getOutEdges(3));
+        /*
+        And a topology derived from the original topology should be compiled again
+         */
+        CompiledTopology other = compiled.addEdge(edge31);
+        assertNull(other.getRemovedEdges(compiled));
+        assertNull(other.getRemovedEdges(result));
+        assertEquals(3, other.edgeId(edge31));
+        assertArrayEquals(new int[]{3, 1, 0}, other.getInEdges(3));
+    }
+}
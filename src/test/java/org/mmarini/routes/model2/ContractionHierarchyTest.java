@@ -0,0 +1,164 @@
+/*
+ * Copyright (c) 2019 Marco Marini, marco.marini@mmarini.org
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ *
+ *    END OF TERMS AND CONDITIONS
+ *
+ */
+
+package org.mmarini.routes.model2;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.IntStream;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+import static org.mmarini.routes.model2.DynamicRoutesTest.createGrid;
+
+class ContractionHierarchyTest {
+
+    static final double EPSILON = 1e-9;
+
+    /**
+     * Asserts that the trees have the same distances and next edges
+     *
+     * @param result   the resulting trees
+     * @param expected the expected trees
+     */
+    static void assertSameTrees(ShortestPathTree[] result, ShortestPathTree[] expected) {
+        assertThat(result.length, equalTo(expected.length));
+        for (int i = 0; i < result.length; i++) {
+            assertThat(result[i].getTarget(), equalTo(expected[i].getTarget()));
+            for (int j = 0; j < expected[i].getNodeCount(); j++) {
+                double distance = expected[i].getDistance(j);
+                assertThat(result[i].getDistance(j), distance < Double.POSITIVE_INFINITY
+                        ? closeTo(distance, EPSILON)
+                        : equalTo(distance));
+                assertThat(result[i].getNextEdge(j), equalTo(expected[i].getNextEdge(j)));
+            }
+        }
+    }
+
+    @Test
+    void computeTrees() {
+        /*
+        Given a grid topology with random travel times
+        And the contraction hierarchy
+         */
+        CompiledTopology topology = createGrid(8).getCompiled();
+        Random random = new Random(1234);
+        ContractionHierarchy hierarchy = ContractionHierarchy.createHierarchy(topology);
+
+        for (int k = 0; k < 5; k++) {
+            /*
+            When computing the trees for random travel times
+             */
+            double[] times = random.doubles(topology.getEdgeCount(), 1, 10).toArray();
+            ShortestPathTree[] trees = hierarchy.computeTrees(times);
+
+            /*
+            Then should result the trees of the Dijkstra search
+             */
+            assertSameTrees(trees, Routes.computeTrees(topology, times));
+        }
+    }
+
+    @Test
+    void computeTreesOneWay() {
+        /*
+        Given a grid topology with some one-way roads
+        And random travel times
+         */
+        Topology grid = createGrid(8);
+        Random random = new Random(4321);
+        List<MapEdge> edges = new ArrayList<>();
+        for (MapEdge edge : grid.getEdges()) {
+            if (random.nextDouble() >= 0.2) {
+                edges.add(edge);
+            }
+        }
+        CompiledTopology topology = Topology.createTopology(grid.getNodes(), edges).getCompiled();
+        double[] times = random.doubles(topology.getEdgeCount(), 1, 10).toArray();
+
+        /*
+        When computing the trees by contraction hierarchy
+         */
+        ShortestPathTree[] trees = ContractionHierarchy.createHierarchy(topology).computeTrees(times);
+
+        /*
+        Then should result the trees of the Dijkstra search
+         */
+        assertSameTrees(trees, Routes.computeTrees(topology, times));
+    }
+
+    @Test
+    void createHierarchy() {
+        /*
+        Given a grid topology
+         */
+        CompiledTopology topology = createGrid(8).getCompiled();
+
+        /*
+        When creating the hierarchy
+         */
+        ContractionHierarchy hierarchy = ContractionHierarchy.createHierarchy(topology);
+
+        /*
+        Then all the nodes should have different ranks
+        And the arcs should include at least the undirected edges
+         */
+        assertThat(hierarchy.getTopology(), sameInstance(topology));
+        long ranks = IntStream.range(0, topology.getNodeCount())
+                .map(hierarchy::getRank)
+                .distinct()
+                .count();
+        assertThat(ranks, equalTo((long) topology.getNodeCount()));
+        assertThat(hierarchy.getArcCount(), greaterThanOrEqualTo(topology.getEdgeCount() / 2));
+    }
+
+    @Test
+    void routerReusesHierarchy() {
+        /*
+        Given a router by contraction hierarchy
+         */
+        CompiledTopology topology = createGrid(5).getCompiled();
+        HierarchyRouter router = HierarchyRouter.createRouter();
+
+        /*
+        When getting the hierarchy twice for the same topology and for a new topology
+         */
+        ContractionHierarchy first = router.getHierarchy(topology);
+        ContractionHierarchy second = router.getHierarchy(topology);
+        ContractionHierarchy other = router.getHierarchy(createGrid(5).getCompiled());
+
+        /*
+        Then the hierarchy should be reused only for the same topology
+         */
+        assertThat(second, sameInstance(first));
+        assertThat(other, not(sameInstance(first)));
+    }
+}
@@ -0,0 +1,142 @@
+/*
+ * Copyright (c) 2019 Marco Marini, marco.marini@mmarini.org
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ *
+ *    END OF TERMS AND CONDITIONS
+ *
+ */
+
+package org.mmarini.routes.model2;
+
+import org.junit.jupiter.api.Test;
+import org.mmarini.Tuple2;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.Matchers.equalTo;
+import static org.mmarini.routes.model2.CrossNode.createNode;
+import static org.mmarini.routes.model2.SiteNode.createSite;
+
+class DynamicRoutesTest {
+
+    static final int SIZE = 6;
+    static final int UPDATES = 30;
+
+    /**
+     * Returns a grid of two-way roads with sites on the border
+     *
+     * @param size the grid size
+     */
+    static Topology createGrid(int size) {
+        List<MapNode> nodes = new ArrayList<>();
+        for (int i = 0; i < size; i++) {
+            for (int j = 0; j < size; j++) {
+                boolean border = i == 0 || j == 0 || i == size - 1 || j == size - 1;
+                nodes.add(border ? createSite(i * 100, j * 100) : createNode(i * 100, j * 100));
+            }
+        }
+        List<MapEdge> edges = new ArrayList<>();
+        for (int i = 0; i < size; i++) {
+            for (int j = 0; j < size; j++) {
+                MapNode node = nodes.get(i * size + j);
+                if (i < size - 1) {
+                    MapNode other = nodes.get(i * size + j + size);
+                    edges.add(new MapEdge(node, other, 10, 0));
+                    edges.add(new MapEdge(other, node, 10, 0));
+                }
+                if (j < size - 1) {
+                    MapNode other = nodes.get(i * size + j + 1);
+                    edges.add(new MapEdge(node, other, 10, 0));
+                    edges.add(new MapEdge(other, node, 10, 0));
+                }
+            }
+        }
+        return Topology.createTopology(nodes, edges);
+    }
+
+    @Test
+    void update() {
+        /*
+        Given a grid topology with random travel times
+        And the dynamic routes
+         */
+        CompiledTopology topology = createGrid(SIZE).getCompiled();
+        Random random = new Random(1234);
+        double[] times = random.doubles(topology.getEdgeCount(), 1, 10).toArray();
+        DynamicRoutes routes = DynamicRoutes.createRoutes(topology, times);
+
+        for (int k = 0; k < UPDATES; k++) {
+            /*
+            When changing randomly the travel times of some edges
+             */
+            for (int i = 0; i < times.length; i++) {
+                if (random.nextDouble() < 0.1) {
+                    times[i] = times[i] * (0.3 + random.nextDouble() * 2.7);
+                }
+            }
+            Map<Tuple2<MapNode, MapNode>, MapEdge> previous = routes.getRoutes();
+            List<RouteChange> changes = routes.update(times);
+
+            /*
+            Then should result the same routes and distances of a full computation
+            And applying the changes to the previous routes should result the new routes
+             */
+            Map<Tuple2<MapNode, MapNode>, MapEdge> expected = Routes.computeRoutes(topology, times);
+            assertThat(routes.getRoutes(), equalTo(expected));
+            assertThat(routes.updateRoutes(previous, changes), equalTo(expected));
+            ShortestPathTree[] expectedTrees = Routes.computeTrees(topology, times);
+            ShortestPathTree[] trees = routes.getTrees();
+            for (int i = 0; i < trees.length; i++) {
+                for (int j = 0; j < topology.getNodeCount(); j++) {
+                    assertThat(trees[i].getDistance(j), equalTo(expectedTrees[i].getDistance(j)));
+                }
+            }
+        }
+    }
+
+    @Test
+    void updateNoChange() {
+        /*
+        Given a grid topology with random travel times
+        And the dynamic routes
+         */
+        CompiledTopology topology = createGrid(SIZE).getCompiled();
+        double[] times = new Random(1234).doubles(topology.getEdgeCount(), 1, 10).toArray();
+        DynamicRoutes routes = DynamicRoutes.createRoutes(topology, times);
+
+        /*
+        When updating with the same travel times
+         */
+        List<RouteChange> changes = routes.update(times);
+
+        /*
+        Then should result no changes
+         */
+        assertThat(changes, empty());
+    }
+}
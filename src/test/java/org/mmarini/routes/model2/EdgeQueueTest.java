@@ -0,0 +1,136 @@
+/*
+ * Copyright (c) 2019 Marco Marini, marco.marini@mmarini.org
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ *
+ *    END OF TERMS AND CONDITIONS
+ *
+ */
+
+package org.mmarini.routes.model2;
+
+import org.junit.jupiter.api.Test;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mmarini.routes.model2.CrossNode.createNode;
+import static org.mmarini.routes.model2.SiteNode.createSite;
+import static org.mmarini.routes.model2.Vehicle.createVehicle;
+
+class EdgeQueueTest {
+
+    static final double SPEED_LIMIT = 10.0;
+    static final int PRIORITY = 0;
+
+    @Test
+    void addFirst() {
+        /*
+        Given an empty queue
+        And 3 vehicles
+         */
+        SiteNode node0 = createSite(0, 0);
+        SiteNode node1 = createSite(100, 0);
+        EdgeQueue queue = EdgeQueue.createQueue(2);
+        Vehicle v0 = createVehicle(node0, node1, 0);
+        Vehicle v1 = createVehicle(node0, node1, 0);
+        Vehicle v2 = createVehicle(node0, node1, 0);
+
+        /*
+        When adding the vehicles beyond the capacity
+         */
+        queue.addFirst(v0);
+        queue.addFirst(v1);
+        queue.addFirst(v2);
+
+        /*
+        Then the queue should grow
+        And contain the vehicles from the last entered
+        And the next vehicles should be the previous entered vehicles
+         */
+        assertThat(queue.capacity(), equalTo(4));
+        assertThat(queue, contains(v2, v1, v0));
+        assertThat(queue.getFirst(), sameInstance(v2));
+        assertThat(queue.getLast(), sameInstance(v0));
+        assertThat(queue.nextOf(v2), sameInstance(v1));
+        assertThat(queue.nextOf(v1), sameInstance(v0));
+        assertNull(queue.nextOf(v0));
+    }
+
+    @Test
+    void createQueue() {
+        /*
+        Given an edge of 100 m
+         */
+        MapEdge edge = new MapEdge(createSite(0, 0), createNode(100, 0), SPEED_LIMIT, PRIORITY);
+
+        /*
+        When creating the queue
+         */
+        EdgeQueue queue = EdgeQueue.createQueue(edge);
+
+        /*
+        Then the queue should be empty
+        And presized to contain the maximum number of vehicles in the edge
+         */
+        assertThat(queue, empty());
+        assertNull(queue.getFirst());
+        assertNull(queue.getLast());
+        assertThat(queue.capacity(), greaterThanOrEqualTo(21));
+    }
+
+    @Test
+    void removeLast() {
+        /*
+        Given a queue with 3 vehicles
+         */
+        SiteNode node0 = createSite(0, 0);
+        SiteNode node1 = createSite(100, 0);
+        EdgeQueue queue = EdgeQueue.createQueue(4);
+        Vehicle v0 = createVehicle(node0, node1, 0);
+        Vehicle v1 = createVehicle(node0, node1, 0);
+        Vehicle v2 = createVehicle(node0, node1, 0);
+        queue.addFirst(v0);
+        queue.addFirst(v1);
+        queue.addFirst(v2);
+
+        /*
+        When removing the leader and adding it again
+         */
+        Vehicle result = queue.removeLast();
+        queue.addFirst(v0);
+
+        /*
+        Then the leader should be removed
+        And the queue should contain the vehicles wrapping the buffer
+         */
+        assertThat(result, sameInstance(v0));
+        assertThat(queue, contains(v0, v2, v1));
+        assertNull(queue.nextOf(v1));
+        assertThat(queue.nextOf(v0), sameInstance(v2));
+        assertThat(queue.removeLast(), sameInstance(v1));
+        assertThat(queue.removeLast(), sameInstance(v2));
+        assertThat(queue.removeLast(), sameInstance(v0));
+        assertNull(queue.removeLast());
+        assertNull(queue.nextOf(v0));
+    }
+}
@@ -0,0 +1,170 @@
+/*
+ *
+ * Copyright (c) 2023 Marco Marini, marco.marini@mmarini.org
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ *
+ *    END OF TERMS AND CONDITIONS
+ */
+
+package org.mmarini.routes.model2;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+
+import java.awt.geom.Point2D;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.Random;
+import java.util.stream.Stream;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.mmarini.routes.model2.CrossNode.createNode;
+
+class ElementTreeTest {
+
+    static final long SEED = 1234L;
+    static final int NUM_NODES = 1000;
+    static final int NUM_EDGES = 1500;
+    static final double MAP_SIZE = 5000;
+    static final double GRID_SIZE = 100;
+
+    static Stream<Arguments> pointArgs() {
+        return ArgumentGenerator.create(SEED)
+                .uniform(-GRID_SIZE, MAP_SIZE + GRID_SIZE)
+                .uniform(-GRID_SIZE, MAP_SIZE + GRID_SIZE)
+                .uniform(0.0, 2 * GRID_SIZE)
+                .generate();
+    }
+
+    /**
+     * Returns the nearest element within a distance by scanning all the elements
+     *
+     * @param elements  the elements
+     * @param point     the point
+     * @param precision the distance
+     */
+    static <T extends MapElement> Optional<T> findNearest(List<T> elements, Point2D point, double precision) {
+        double dist = precision * precision;
+        T result = null;
+        for (T element : elements) {
+            double d = element.distanceSqFrom(point);
+            if (d <= dist) {
+                dist = d;
+                result = element;
+            }
+        }
+        return Optional.ofNullable(result);
+    }
+
+    /**
+     * Returns random nodes snapped to a grid (with overlapping nodes)
+     */
+    static List<MapNode> createNodes() {
+        Random random = new Random(SEED);
+        List<MapNode> nodes = new ArrayList<>();
+        int n = (int) (MAP_SIZE / GRID_SIZE);
+        for (int i = 0; i < NUM_NODES; i++) {
+            nodes.add(createNode(random.nextInt(n) * GRID_SIZE, random.nextInt(n) * GRID_SIZE));
+        }
+        return nodes;
+    }
+
+    /**
+     * Returns random edges between nodes
+     *
+     * @param nodes the nodes
+     */
+    static List<MapEdge> createEdges(List<MapNode> nodes) {
+        Random random = new Random(SEED);
+        List<MapEdge> edges = new ArrayList<>();
+        while (edges.size() < NUM_EDGES) {
+            MapNode begin = nodes.get(random.nextInt(nodes.size()));
+            MapNode end = nodes.get(random.nextInt(nodes.size()));
+            if (!begin.isSameLocation(end)) {
+                edges.add(new MapEdge(begin, end, 10, 0));
+            }
+        }
+        return edges;
+    }
+
+    @Test
+    void createEmpty() {
+        /*
+        Given an empty tree
+         */
+        ElementTree<MapNode> tree = ElementTree.createNodeTree(List.of());
+
+        /*
+        When finding the nearest node
+        Then should return empty
+         */
+        assertThat(tree.size(), equalTo(0));
+        assertThat(tree.findNearest(new Point2D.Double(), 100).isEmpty(), equalTo(true));
+    }
+
+    @ParameterizedTest
+    @MethodSource("pointArgs")
+    void findNearestEdge(double x, double y, double precision) {
+        /*
+        Given a tree of random edges
+         */
+        List<MapEdge> edges = createEdges(createNodes());
+        ElementTree<MapEdge> tree = ElementTree.createEdgeTree(edges);
+        Point2D point = new Point2D.Double(x, y);
+
+        /*
+        When finding the nearest edge
+         */
+        Optional<MapEdge> result = tree.findNearest(point, precision);
+
+        /*
+        Then should return the same edge of the linear scan
+         */
+        assertThat(result, equalTo(findNearest(edges, point, precision)));
+    }
+
+    @ParameterizedTest
+    @MethodSource("pointArgs")
+    void findNearestNode(double x, double y, double precision) {
+        /*
+        Given a tree of random nodes
+         */
+        List<MapNode> nodes = createNodes();
+        ElementTree<MapNode> tree = ElementTree.createNodeTree(nodes);
+        Point2D point = new Point2D.Double(x, y);
+
+        /*
+        When finding the nearest node
+         */
+        Optional<MapNode> result = tree.findNearest(point, precision);
+
+        /*
+        Then should return the same node of the linear scan
+         */
+        assertThat(result, equalTo(findNearest(nodes, point, precision)));
+    }
+}
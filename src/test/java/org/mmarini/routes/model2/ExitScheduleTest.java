@@ -0,0 +1,188 @@
+/*
+ * Copyright (c) 2019 Marco Marini, marco.marini@mmarini.org
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ *
+ *    END OF TERMS AND CONDITIONS
+ *
+ */
+
+package org.mmarini.routes.model2;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.closeTo;
+import static org.hamcrest.Matchers.equalTo;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mmarini.routes.model2.CrossNode.createNode;
+import static org.mmarini.routes.model2.SiteNode.createSite;
+import static org.mmarini.routes.model2.Topology.createTopology;
+import static org.mmarini.routes.model2.Vehicle.createVehicle;
+
+class ExitScheduleTest {
+
+    static final double SPEED_LIMIT = 10.0;
+    static final int PRIORITY = 0;
+    static final double EPSILON = 1e-6;
+
+    SiteNode node0;
+    SiteNode node2;
+    CrossNode node1;
+    MapEdge edge01;
+    MapEdge edge12;
+    Topology topology;
+
+    void createMap() {
+        /*
+        Given a topology of
+        0 ---> 1 ---> 2
+         */
+        node0 = createSite(0, 0);
+        node2 = createSite(100, 0);
+        node1 = createNode(50, 0);
+        edge01 = new MapEdge(node0, node1, SPEED_LIMIT, PRIORITY);
+        edge12 = new MapEdge(node1, node2, SPEED_LIMIT, PRIORITY);
+        topology = createTopology(List.of(node0, node2, node1), List.of(edge01, edge12));
+    }
+
+    @Test
+    void createSchedule() {
+        /*
+        Given a topology of
+        0 ---> 1 ---> 2
+        And the vehicles at 10m and 30m of edge01
+        And a vehicle at 40m of edge12
+         */
+        createMap();
+        Vehicle v0 = createVehicle(node0, node2, 0).setCurrentEdge(edge01).setDistance(10);
+        Vehicle v1 = createVehicle(node0, node2, 0).setCurrentEdge(edge01).setDistance(30);
+        Vehicle v2 = createVehicle(node0, node2, 0).setCurrentEdge(edge12).setDistance(40);
+        VehicleStore store = VehicleStore.create(topology, List.of(v0, v1, v2));
+
+        /*
+        When creating the schedule at 2s
+         */
+        ExitSchedule schedule = ExitSchedule.createSchedule(store, 2);
+
+        /*
+        Then the exit time of edge01 should be 4s (leader at 30m)
+        And the exit time of edge12 should be 3s
+        And the next exit time should be 3s
+         */
+        assertThat(schedule.getExitTime(store.indexOf(edge01)), closeTo(4, EPSILON));
+        assertThat(schedule.getExitTime(store.indexOf(edge12)), closeTo(3, EPSILON));
+        assertThat(schedule.nextExitTime(), closeTo(3, EPSILON));
+    }
+
+    @Test
+    void createScheduleEmpty() {
+        /*
+        Given a topology of
+        0 ---> 1 ---> 2
+        And a vehicle at the end of edge01
+         */
+        createMap();
+        Vehicle v0 = createVehicle(node0, node2, 0).setCurrentEdge(edge01).setDistance(50);
+        VehicleStore store = VehicleStore.create(topology, List.of(v0));
+
+        /*
+        When creating the schedule
+         */
+        ExitSchedule schedule = ExitSchedule.createSchedule(store, 0);
+
+        /*
+        Then no exit should be scheduled
+         */
+        assertTrue(Double.isNaN(schedule.getExitTime(store.indexOf(edge01))));
+        assertThat(schedule.nextExitTime(), equalTo(Double.POSITIVE_INFINITY));
+    }
+
+    @Test
+    void pollExit() {
+        /*
+        Given a topology of
+        0 ---> 1 ---> 2
+        And the vehicles at 10m and 30m of edge01
+        And a vehicle at 40m of edge12
+        And the schedule at 0s
+         */
+        createMap();
+        Vehicle v0 = createVehicle(node0, node2, 0).setCurrentEdge(edge01).setDistance(10);
+        Vehicle v1 = createVehicle(node0, node2, 0).setCurrentEdge(edge01).setDistance(30);
+        Vehicle v2 = createVehicle(node0, node2, 0).setCurrentEdge(edge12).setDistance(40);
+        VehicleStore store = VehicleStore.create(topology, List.of(v0, v1, v2));
+        ExitSchedule schedule = ExitSchedule.createSchedule(store, 0);
+
+        /*
+        When polling the exits up to 1.5s
+         */
+        int first = schedule.pollExit(1.5);
+        int second = schedule.pollExit(1.5);
+
+        /*
+        Then the exit of edge12 should be polled once
+        And the edge12 should have no prediction
+        And the next exit time should be 2s
+         */
+        assertThat(first, equalTo(store.indexOf(edge12)));
+        assertThat(second, equalTo(-1));
+        assertTrue(Double.isNaN(schedule.getExitTime(first)));
+        assertThat(schedule.nextExitTime(), closeTo(2, EPSILON));
+    }
+
+    @Test
+    void refresh() {
+        /*
+        Given a topology of
+        0 ---> 1 ---> 2
+        And the vehicles at 10m and 30m of edge01
+        And a vehicle at 40m of edge12
+        And the schedule at 0s
+         */
+        createMap();
+        Vehicle v0 = createVehicle(node0, node2, 0).setCurrentEdge(edge01).setDistance(10);
+        Vehicle v1 = createVehicle(node0, node2, 0).setCurrentEdge(edge01).setDistance(30);
+        Vehicle v2 = createVehicle(node0, node2, 0).setCurrentEdge(edge12).setDistance(40);
+        VehicleStore store = VehicleStore.create(topology, List.of(v0, v1, v2));
+        ExitSchedule schedule = ExitSchedule.createSchedule(store, 0);
+
+        /*
+        When the leader of edge12 leaves the edge
+        And invalidating the edge
+        And refreshing the schedule at 1s
+         */
+        int index12 = store.indexOf(edge12);
+        store.queue(index12).removeLast();
+        schedule.invalidate(index12);
+        schedule.refresh(1);
+
+        /*
+        Then no exit should be scheduled for edge12
+        And the next exit time should be 2s
+         */
+        assertTrue(Double.isNaN(schedule.getExitTime(index12)));
+        assertThat(schedule.nextExitTime(), closeTo(2, EPSILON));
+    }
+}
@@ -0,0 +1,124 @@
+/*
+ * Copyright (c) 2019 Marco Marini, marco.marini@mmarini.org
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ *
+ *    END OF TERMS AND CONDITIONS
+ *
+ */
+package org.mmarini.routes.model2;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+import static org.mmarini.routes.model2.SiteNode.createSite;
+
+class FrameBufferTest {
+
+    static final int FRAMES = 20000;
+
+    @Test
+    void acquire() {
+        /*
+        Given a frame buffer
+         */
+        FrameBuffer frames = FrameBuffer.create();
+        SiteNode site = createSite(0, 0);
+        VehicleFrame initial = frames.acquire();
+
+        /*
+        When publishing two frames
+         */
+        VehicleFrame first = frames.getBackFrame();
+        first.clear(1);
+        first.add(1, 2, 3, 4, site);
+        frames.publish();
+        VehicleFrame second = frames.getBackFrame();
+        second.clear(2);
+        frames.publish();
+
+        /*
+        Then the back frames should be different from the consumer frame
+        And the consumer should acquire the last published frame
+        And the consumer should keep the frame without new publication
+         */
+        assertThat(first, not(sameInstance(initial)));
+        assertThat(second, not(sameInstance(initial)));
+        assertThat(second, not(sameInstance(first)));
+        assertThat(frames.hasFreshFrame(), equalTo(true));
+        VehicleFrame result = frames.acquire();
+        assertThat(result, sameInstance(second));
+        assertThat(result.getTime(), equalTo(2.0));
+        assertThat(frames.hasFreshFrame(), equalTo(false));
+        assertThat(frames.acquire(), sameInstance(second));
+        assertThat(frames.getBackFrame(), not(sameInstance(second)));
+    }
+
+    @Test
+    void acquireConcurrent() throws InterruptedException {
+        /*
+        Given a frame buffer
+        and a producer thread writing frames with the number of vehicles equal to the frame time
+         */
+        FrameBuffer frames = FrameBuffer.create();
+        SiteNode site = createSite(0, 0);
+        Thread producer = new Thread(() -> {
+            for (int i = 1; i <= FRAMES; i++) {
+                VehicleFrame frame = frames.getBackFrame();
+                frame.clear(i);
+                for (int j = 0; j < i % 100; j++) {
+                    frame.add(i, j, i, j, site);
+                }
+                frames.publish();
+            }
+        });
+
+        /*
+        When acquiring the frames while producing
+         */
+        AtomicBoolean consistent = new AtomicBoolean(true);
+        producer.start();
+        double lastTime = 0;
+        while (lastTime < FRAMES) {
+            VehicleFrame frame = frames.acquire();
+            int time = (int) frame.getTime();
+            boolean valid = time >= lastTime && frame.getSize() == time % 100;
+            for (int j = 0; j < frame.getSize(); j++) {
+                valid &= frame.getX(j) == time && frame.getY(j) == j;
+            }
+            if (!valid) {
+                consistent.set(false);
+                break;
+            }
+            lastTime = time;
+        }
+        producer.join();
+
+        /*
+        Then each acquired frame should be consistent and not older than the previous one
+         */
+        assertThat(consistent.get(), equalTo(true));
+    }
+}
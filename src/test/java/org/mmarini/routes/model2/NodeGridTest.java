@@ -0,0 +1,189 @@
+/*
+ *
+ * Copyright (c) 2023 Marco Marini, marco.marini@mmarini.org
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ *
+ *    END OF TERMS AND CONDITIONS
+ */
+
+package org.mmarini.routes.model2;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+
+import java.awt.geom.Point2D;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Stream;
+
+import static java.lang.Math.sqrt;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+import static org.mmarini.routes.model2.CrossNode.createNode;
+
+class NodeGridTest {
+
+    static final long SEED = 1234L;
+    static final int NUM_NODES = 500;
+    static final double MAP_SIZE = 5000;
+
+    static Stream<Arguments> pointArgs() {
+        return ArgumentGenerator.create(SEED)
+                .uniform(-MAP_SIZE, 2 * MAP_SIZE)
+                .uniform(-MAP_SIZE, 2 * MAP_SIZE)
+                .uniform(0.0, 500.0)
+                .generate();
+    }
+
+    /**
+     * Returns random nodes in the map area
+     *
+     * @param n the number of nodes
+     */
+    static List<MapNode> createNodes(int n) {
+        Random random = new Random(SEED);
+        List<MapNode> nodes = new ArrayList<>();
+        for (int i = 0; i < n; i++) {
+            nodes.add(createNode(random.nextDouble() * MAP_SIZE, random.nextDouble() * MAP_SIZE));
+        }
+        return nodes;
+    }
+
+    @Test
+    void createEmpty() {
+        /*
+        Given an empty grid
+         */
+        NodeGrid grid = NodeGrid.create(List.of());
+
+        /*
+        When finding the nodes
+        Then should return empty
+         */
+        assertThat(grid.size(), equalTo(0));
+        assertThat(grid.findNearest(new Point2D.Double()).isEmpty(), equalTo(true));
+        assertThat(grid.findWithin(new Point2D.Double(), 100), empty());
+    }
+
+    @ParameterizedTest
+    @MethodSource("pointArgs")
+    void findNearest(double x, double y, double radius) {
+        /*
+        Given a grid of random nodes
+         */
+        List<MapNode> nodes = createNodes(NUM_NODES);
+        NodeGrid grid = NodeGrid.create(nodes);
+        Point2D point = new Point2D.Double(x, y);
+
+        /*
+        When finding the nearest node
+         */
+        MapNode result = grid.findNearest(point).orElseThrow();
+
+        /*
+        Then should return the node at the minimum distance
+         */
+        double expected = nodes.stream()
+                .mapToDouble(node -> node.getLocation().distanceSq(point))
+                .min()
+                .orElseThrow();
+        assertThat(result.getLocation().distanceSq(point), equalTo(expected));
+    }
+
+    @ParameterizedTest
+    @MethodSource("pointArgs")
+    void findWithin(double x, double y, double radius) {
+        /*
+        Given a grid of random nodes added incrementally
+         */
+        List<MapNode> nodes = createNodes(NUM_NODES);
+        NodeGrid grid0 = NodeGrid.create(nodes.subList(0, NUM_NODES / 2));
+        NodeGrid grid = grid0.add(nodes.subList(NUM_NODES / 2, NUM_NODES));
+        Point2D point = new Point2D.Double(x, y);
+
+        /*
+        When finding the nodes within the radius
+         */
+        List<MapNode> result = grid.findWithin(point, radius);
+
+        /*
+        Then should return the nodes within the radius
+        And the original grid should be unchanged
+         */
+        MapNode[] expected = nodes.stream()
+                .filter(node -> node.getLocation().distance(point) <= radius)
+                .toArray(MapNode[]::new);
+        assertThat(result, containsInAnyOrder(expected));
+        assertThat(grid.size(), equalTo(NUM_NODES));
+        assertThat(grid0.size(), equalTo(NUM_NODES / 2));
+        MapNode[] expected0 = nodes.subList(0, NUM_NODES / 2).stream()
+                .filter(node -> node.getLocation().distance(point) <= radius)
+                .toArray(MapNode[]::new);
+        assertThat(grid0.findWithin(point, radius), containsInAnyOrder(expected0));
+    }
+
+    @Test
+    void addGrowingMap() {
+        /*
+        Given a grid of nodes in a small area
+         */
+        Random random = new Random(SEED);
+        List<MapNode> nodes = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            nodes.add(createNode(random.nextDouble() * 100, random.nextDouble() * 100));
+        }
+        NodeGrid grid0 = NodeGrid.create(nodes);
+
+        /*
+        When adding nodes in a growing area
+         */
+        List<MapNode> added = new ArrayList<>();
+        NodeGrid grid = grid0;
+        for (int i = 0; i < NUM_NODES; i++) {
+            MapNode node = createNode(random.nextDouble() * MAP_SIZE, random.nextDouble() * MAP_SIZE);
+            added.add(node);
+            grid = grid.add(List.of(node));
+        }
+
+        /*
+        Then the cell size should follow the node density
+         */
+        int n = nodes.size() + added.size();
+        double expectedCellSize = sqrt(MAP_SIZE * MAP_SIZE / n);
+        assertThat(grid.getCellSize(), greaterThan(expectedCellSize / NodeGrid.MAX_DENSITY_DRIFT / 1.1));
+        assertThat(grid.getCellSize(), lessThan(expectedCellSize * NodeGrid.MAX_DENSITY_DRIFT * 1.1));
+        assertThat(grid.size(), equalTo(n));
+        List<MapNode> all = new ArrayList<>(nodes);
+        all.addAll(added);
+        assertThat(grid.findWithin(new Point2D.Double(), 2 * MAP_SIZE), containsInAnyOrder(all.toArray()));
+
+        /*
+        And the original grid should be unchanged
+         */
+        assertThat(grid0.size(), equalTo(nodes.size()));
+        assertThat(grid0.findWithin(new Point2D.Double(), 2 * MAP_SIZE), containsInAnyOrder(nodes.toArray()));
+    }
+}
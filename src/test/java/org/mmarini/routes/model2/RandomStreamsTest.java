@@ -0,0 +1,110 @@
+/*
+ * Copyright (c) 2019 Marco Marini, marco.marini@mmarini.org
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ *
+ *    END OF TERMS AND CONDITIONS
+ *
+ */
+
+package org.mmarini.routes.model2;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.SplittableRandom;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.mmarini.routes.model2.RandomStreams.createStreams;
+
+class RandomStreamsTest {
+
+    static final long SEED = 1234L;
+
+    @Test
+    void getSiteStream() {
+        /*
+        Given two streams with the same seed
+         */
+        RandomStreams streams1 = createStreams(SEED);
+        RandomStreams streams2 = createStreams(SEED);
+
+        /*
+        When getting the site streams in different order
+         */
+        SplittableRandom site1a = streams1.getSiteStream(1);
+        SplittableRandom site0a = streams1.getSiteStream(0);
+        SplittableRandom[] sites = streams2.getSiteStreams(2);
+
+        /*
+        Then the site streams should generate the same sequences
+        And the site streams should be cached
+         */
+        assertThat(site0a.nextLong(), equalTo(sites[0].nextLong()));
+        assertThat(site1a.nextLong(), equalTo(sites[1].nextLong()));
+        assertThat(streams1.getSiteStream(0), sameInstance(site0a));
+    }
+
+    @Test
+    void getSiteStreamIndependent() {
+        /*
+        Given a stream
+         */
+        RandomStreams streams = createStreams(SEED);
+
+        /*
+        When getting the site streams
+         */
+        SplittableRandom[] sites = streams.getSiteStreams(2);
+
+        /*
+        Then the site streams should generate different sequences
+         */
+        assertThat(sites[0].nextLong(), not(equalTo(sites[1].nextLong())));
+    }
+
+    @Test
+    void replica() {
+        /*
+        Given a stream
+         */
+        RandomStreams streams = createStreams(SEED);
+
+        /*
+        When getting the replicas
+         */
+        RandomStreams replica0 = streams.replica(0);
+        RandomStreams replica1 = streams.replica(1);
+
+        /*
+        Then the replica 0 should generate the same sequence of stream
+        And the replica 1 should generate a different sequence
+         */
+        assertThat(replica1.getReplica(), equalTo(1));
+        assertThat(replica1.getSeed(), equalTo(SEED));
+        long value = streams.getSiteStream(0).nextLong();
+        assertThat(replica0.getSiteStream(0).nextLong(), equalTo(value));
+        assertThat(replica1.getSiteStream(0).nextLong(), not(equalTo(value)));
+    }
+}
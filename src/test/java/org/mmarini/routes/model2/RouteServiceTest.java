@@ -0,0 +1,146 @@
+/*
+ * Copyright (c) 2019 Marco Marini, marco.marini@mmarini.org
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ *
+ *    END OF TERMS AND CONDITIONS
+ *
+ */
+
+package org.mmarini.routes.model2;
+
+import io.reactivex.rxjava3.schedulers.Schedulers;
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+import static org.mmarini.routes.model2.DynamicRoutesTest.createGrid;
+
+class RouteServiceTest {
+
+    static RouteService createSyncService() {
+        return new RouteService(Schedulers.trampoline().createWorker(), RouteService.DEFAULT_DRIFT_THRESHOLD, null);
+    }
+
+    @Test
+    void request() {
+        /*
+        Given a route service running in the caller thread
+        And a grid topology with random travel times
+         */
+        RouteService service = createSyncService();
+        CompiledTopology topology = createGrid(5).getCompiled();
+        double[] times = new Random(1234).doubles(topology.getEdgeCount(), 1, 10).toArray();
+
+        /*
+        When requesting the routes at time 10
+         */
+        service.request(topology, times, 10);
+
+        /*
+        Then the routes of version 1 should be published
+         */
+        RouteTable routes = service.getRoutes();
+        assertThat(routes, notNullValue());
+        assertThat(routes.getVersion(), equalTo(1L));
+        assertThat(routes.getTopology(), sameInstance(topology));
+        assertThat(routes.toMap(), equalTo(Routes.computeRoutes(topology, times)));
+        assertThat(service.getVersion(), equalTo(1L));
+        assertThat(service.getRequestCount(), equalTo(1L));
+        assertThat(service.getRequestedTopology(), sameInstance(topology));
+        assertThat(service.getPublishedTime(), equalTo(10.0));
+        assertThat(service.getStaleness(12), equalTo(2.0));
+        assertThat(service.getLatency(), greaterThanOrEqualTo(0L));
+    }
+
+    @Test
+    void requestChanges() {
+        /*
+        Given a route service running in the caller thread with published routes
+         */
+        RouteService service = createSyncService();
+        CompiledTopology topology = createGrid(5).getCompiled();
+        Random random = new Random(1234);
+        double[] times = random.doubles(topology.getEdgeCount(), 1, 10).toArray();
+        service.request(topology, times, 10);
+        RouteTable previous = service.getRoutes();
+
+        /*
+        When requesting the routes with changed transit times
+         */
+        double[] newTimes = random.doubles(topology.getEdgeCount(), 1, 10).toArray();
+        service.request(topology, newTimes, 20);
+
+        /*
+        Then the repaired routes of version 2 should be published
+        And the previous routes should be unchanged
+         */
+        assertThat(service.getVersion(), equalTo(2L));
+        assertThat(service.getRoutes().toMap(), equalTo(Routes.computeRoutes(topology, newTimes)));
+        assertThat(previous.getVersion(), equalTo(1L));
+        assertThat(previous.toMap(), equalTo(Routes.computeRoutes(topology, times)));
+    }
+
+    @Test
+    void requestByRouter() {
+        /*
+        Given a route service by contraction hierarchy running in the caller thread
+        And a grid topology with random travel times
+         */
+        RouteService service = new RouteService(Schedulers.trampoline().createWorker(),
+                RouteService.DEFAULT_DRIFT_THRESHOLD, HierarchyRouter.createRouter());
+        CompiledTopology topology = createGrid(5).getCompiled();
+        Random random = new Random(1234);
+        double[] times = random.doubles(topology.getEdgeCount(), 1, 10).toArray();
+        double[] newTimes = random.doubles(topology.getEdgeCount(), 1, 10).toArray();
+
+        /*
+        When requesting the routes twice
+         */
+        service.request(topology, times, 10);
+        service.request(topology, newTimes, 20);
+
+        /*
+        Then the routes of version 2 should be published
+         */
+        assertThat(service.getVersion(), equalTo(2L));
+        assertThat(service.getRoutes().toMap(), equalTo(Routes.computeRoutes(topology, newTimes)));
+    }
+
+    @Test
+    void requestNoRoutes() {
+        /*
+        Given a route service
+         */
+        RouteService service = createSyncService();
+
+        /*
+        When no request is done
+        Then no routes should be published
+         */
+        assertThat(service.getRoutes(), nullValue());
+        assertThat(service.getVersion(), equalTo(0L));
+        assertThat(service.getStaleness(10), equalTo(Double.NaN));
+    }
+}
@@ -0,0 +1,118 @@
+/*
+ * Copyright (c) 2019 Marco Marini, marco.marini@mmarini.org
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ *
+ *    END OF TERMS AND CONDITIONS
+ *
+ */
+
+package org.mmarini.routes.model2;
+
+import org.mmarini.Tuple2;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import static org.mmarini.routes.model2.DynamicRoutesTest.createGrid;
+
+/**
+ * Benchmarks the next edge lookup of the route map against the route table.
+ * <p>
+ * The benchmark runs by the main method in the test class path.
+ * </p>
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class RouteTableBenchmark {
+    private static final int LOOKUPS = 1024;
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(RouteTableBenchmark.class.getSimpleName())
+                .build()).run();
+    }
+
+    @Param({"10", "30"})
+    private int size;
+    private Map<Tuple2<MapNode, MapNode>, MapEdge> routeMap;
+    private RouteTable routeTable;
+    private MapNode[] from;
+    private MapNode[] to;
+    private int[] fromIds;
+    private int[] toIds;
+
+    @Benchmark
+    @OperationsPerInvocation(LOOKUPS)
+    public void mapLookup(Blackhole blackhole) {
+        for (int i = 0; i < LOOKUPS; i++) {
+            blackhole.consume(routeMap.get(Tuple2.of(from[i], to[i])));
+        }
+    }
+
+    @Setup
+    public void setup() {
+        CompiledTopology topology = createGrid(size).getCompiled();
+        Random random = new Random(1234);
+        double[] times = random.doubles(topology.getEdgeCount(), 1, 10).toArray();
+        routeTable = RouteTable.createTable(topology, times);
+        routeMap = routeTable.toMap();
+        List<MapNode> nodes = topology.getNodes();
+        from = new MapNode[LOOKUPS];
+        to = new MapNode[LOOKUPS];
+        fromIds = new int[LOOKUPS];
+        toIds = new int[LOOKUPS];
+        for (int i = 0; i < LOOKUPS; i++) {
+            fromIds[i] = random.nextInt(nodes.size());
+            toIds[i] = random.nextInt(topology.getSiteCount());
+            from[i] = nodes.get(fromIds[i]);
+            to[i] = nodes.get(toIds[i]);
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(LOOKUPS)
+    public void tableIdLookup(Blackhole blackhole) {
+        for (int i = 0; i < LOOKUPS; i++) {
+            blackhole.consume(routeTable.getNextEdge(fromIds[i], toIds[i]));
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(LOOKUPS)
+    public void tableLookup(Blackhole blackhole) {
+        for (int i = 0; i < LOOKUPS; i++) {
+            blackhole.consume(routeTable.nextEdgeOrNull(from[i], to[i]));
+        }
+    }
+}
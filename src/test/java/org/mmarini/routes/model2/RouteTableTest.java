@@ -0,0 +1,199 @@
+/*
+ * Copyright (c) 2019 Marco Marini, marco.marini@mmarini.org
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ *
+ *    END OF TERMS AND CONDITIONS
+ *
+ */
+
+package org.mmarini.routes.model2;
+
+import org.junit.jupiter.api.Test;
+import org.mmarini.Tuple2;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+import static org.mmarini.routes.model2.CrossNode.createNode;
+import static org.mmarini.routes.model2.DynamicRoutesTest.createGrid;
+
+class RouteTableTest {
+
+    @Test
+    void createTable() {
+        /*
+        Given a grid topology with random travel times
+         */
+        CompiledTopology topology = createGrid(5).getCompiled();
+        double[] times = new Random(1234).doubles(topology.getEdgeCount(), 1, 10).toArray();
+
+        /*
+        When creating the route table
+         */
+        RouteTable table = RouteTable.createTable(topology, times);
+
+        /*
+        Then the table should have the same routes of the route map
+        And the table created by the route map should have the same routes
+         */
+        Map<Tuple2<MapNode, MapNode>, MapEdge> routes = Routes.computeRoutes(topology, times);
+        assertThat(table.getSiteCount(), equalTo(16));
+        assertThat(table.toMap(), equalTo(routes));
+        assertThat(RouteTable.createTable(topology, routes).toMap(), equalTo(routes));
+        List<MapNode> nodes = topology.getNodes();
+        for (Map.Entry<Tuple2<MapNode, MapNode>, MapEdge> entry : routes.entrySet()) {
+            assertThat(table.nextEdgeOrNull(entry.getKey()._1, entry.getKey()._2), sameInstance(entry.getValue()));
+            assertThat(table.getNextEdge(nodes.indexOf(entry.getKey()._1), nodes.indexOf(entry.getKey()._2)),
+                    equalTo(topology.edgeId(entry.getValue())));
+        }
+    }
+
+    @Test
+    void getDistanceMatrix() {
+        /*
+        Given a grid topology with random travel times
+         */
+        CompiledTopology topology = createGrid(5).getCompiled();
+        double[] times = new Random(1234).doubles(topology.getEdgeCount(), 1, 10).toArray();
+
+        /*
+        When creating the route table
+         */
+        RouteTable table = RouteTable.createTable(topology, times);
+        double[][] matrix = table.getDistanceMatrix();
+
+        /*
+        Then the distance matrix should be the sum of travel times along the routes from site to site
+         */
+        int n = table.getSiteCount();
+        assertThat(table.hasDistances(), equalTo(true));
+        assertThat(matrix.length, equalTo(n));
+        for (int from = 0; from < n; from++) {
+            for (int to = 0; to < n; to++) {
+                double expected = 0;
+                for (int node = from; node != to; node = topology.getEdgeEnd(table.getNextEdge(node, to))) {
+                    expected += times[table.getNextEdge(node, to)];
+                }
+                assertThat(matrix[from][to], closeTo(expected, 1e-9));
+                assertThat(table.getDistance(from, to), equalTo(matrix[from][to]));
+            }
+        }
+
+        /*
+        And the tables from route maps or route changes should have no distances
+         */
+        assertThat(RouteTable.createTable(topology, table.toMap()).hasDistances(), equalTo(false));
+        assertThat(table.setChanges(List.of(RouteChange.createChange(0, 1, 0, 0))).hasDistances(), equalTo(false));
+        assertThat(table.setVersion(1).hasDistances(), equalTo(true));
+    }
+
+    @Test
+    void nextEdgeOrNull() {
+        /*
+        Given a route table of a grid topology
+         */
+        CompiledTopology topology = createGrid(3).getCompiled();
+        RouteTable table = RouteTable.createTable(topology, new double[topology.getEdgeCount()]);
+        MapNode site = topology.getNodes().get(0);
+        MapNode cross = topology.getNodes().get(topology.getSiteCount());
+
+        /*
+        When getting the next edges to a cross node and from unknown nodes
+         */
+        MapEdge toCross = table.nextEdgeOrNull(site, cross);
+        MapEdge fromUnknown = table.nextEdgeOrNull(createNode(1000, 1000), site);
+
+        /*
+        Then should result null
+         */
+        assertThat(toCross, nullValue());
+        assertThat(fromUnknown, nullValue());
+        assertThat(table.getNextEdge(createNode(1000, 1000), site).isEmpty(), equalTo(true));
+    }
+
+    @Test
+    void setChanges() {
+        /*
+        Given a route table of a grid topology with random travel times
+        And the dynamic routes with changed travel times
+         */
+        CompiledTopology topology = createGrid(5).getCompiled();
+        Random random = new Random(1234);
+        double[] times = random.doubles(topology.getEdgeCount(), 1, 10).toArray();
+        DynamicRoutes routes = DynamicRoutes.createRoutes(topology, times);
+        RouteTable table = routes.getRouteTable();
+        double[] newTimes = random.doubles(topology.getEdgeCount(), 1, 10).toArray();
+        List<RouteChange> changes = routes.update(newTimes);
+
+        /*
+        When applying the changes
+         */
+        RouteTable result = table.setChanges(changes);
+
+        /*
+        Then should result a new table with the routes of new travel times
+        And the original table should be unchanged
+         */
+        assertThat(changes, not(empty()));
+        assertThat(result, not(sameInstance(table)));
+        assertThat(result.toMap(), equalTo(Routes.computeRoutes(topology, newTimes)));
+        assertThat(table.toMap(), equalTo(Routes.computeRoutes(topology, times)));
+        assertThat(table.setChanges(List.of()), sameInstance(table));
+    }
+
+    @Test
+    void setChangesWithTrees() {
+        /*
+        Given a route table of a grid topology with random travel times
+        And the dynamic routes with changed travel times
+         */
+        CompiledTopology topology = createGrid(5).getCompiled();
+        Random random = new Random(1234);
+        double[] times = random.doubles(topology.getEdgeCount(), 1, 10).toArray();
+        DynamicRoutes routes = DynamicRoutes.createRoutes(topology, times);
+        RouteTable table = routes.getRouteTable();
+        double[] newTimes = random.doubles(topology.getEdgeCount(), 1, 10).toArray();
+        List<RouteChange> changes = routes.update(newTimes);
+
+        /*
+        When applying the changes with the repaired trees
+         */
+        RouteTable result = table.setChanges(changes, routes.getTrees());
+
+        /*
+        Then should result the routes and the distances of new travel times
+         */
+        RouteTable expected = RouteTable.createTable(topology, newTimes);
+        assertThat(result.hasDistances(), equalTo(true));
+        assertThat(result.toMap(), equalTo(Routes.computeRoutes(topology, newTimes)));
+        int n = topology.getSiteCount();
+        for (int from = 0; from < n; from++) {
+            for (int to = 0; to < n; to++) {
+                assertThat(result.getDistance(from, to), closeTo(expected.getDistance(from, to), 1e-9));
+            }
+        }
+    }
+}
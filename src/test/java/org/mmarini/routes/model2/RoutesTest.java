@@ -31,9 +31,11 @@ package org.mmarini.routes.model2;
 import org.junit.jupiter.api.Test;
 import org.mmarini.Tuple2;
 
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
+import java.util.Random;
 
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.equalTo;
@@ -87,6 +89,87 @@ class RoutesTest {
         assertThat(result.get(Tuple2.of(node2, node2)), equalTo(edge20));
     }
 
+    @Test
+    void createMapByTopology() {
+        /*
+        Given the topology
+        v--------- 4 ---------
+        0 -- 2 --> 1 -- 3 --> 2
+         --------- 6 ---------^
+         */
+        SiteNode node0 = createSite(0, 0);
+        CrossNode node1 = createNode(10, 0);
+        SiteNode node2 = createSite(20, 0);
+        MapEdge edge01 = new MapEdge(node0, node1, 10, 0);
+        MapEdge edge02 = new MapEdge(node0, node2, 10, 0);
+        MapEdge edge12 = new MapEdge(node1, node2, 10, 0);
+        MapEdge edge20 = new MapEdge(node2, node0, 10, 0);
+        List<MapEdge> edges = List.of(edge01, edge02, edge12, edge20);
+        Topology topology = Topology.createTopology(List.of(node1, node2, node0), edges);
+        double[] times = new double[]{EDGE01_TIME, EDGE02_TIME, EDGE12_TIME, EDGE20_TIME};
+
+        /*
+        When computing the routes on the compiled topology
+         */
+        Map<Tuple2<MapNode, MapNode>, MapEdge> result = Routes.computeRoutes(topology.getCompiled(), times);
+
+        /*
+         * Then should result the same routes of the edge list
+         */
+        assertNotNull(result);
+        assertThat(result, equalTo(Routes.computeRoutes(edges,
+                Map.of(edge01, EDGE01_TIME, edge02, EDGE02_TIME, edge12, EDGE12_TIME, edge20, EDGE20_TIME))));
+        assertThat(result.size(), equalTo(6));
+        assertThat(result.get(Tuple2.of(node0, node2)), equalTo(edge01));
+        assertThat(result.get(Tuple2.of(node1, node0)), equalTo(edge12));
+        assertThat(result.get(Tuple2.of(node2, node2)), equalTo(edge20));
+    }
+
+    @Test
+    void computeRoutesRandom() {
+        /*
+        Given a 6 x 6 grid of two-way roads with sites on the border and random travel times
+         */
+        int size = 6;
+        List<MapNode> nodes = new ArrayList<>();
+        for (int i = 0; i < size; i++) {
+            for (int j = 0; j < size; j++) {
+                boolean border = i == 0 || j == 0 || i == size - 1 || j == size - 1;
+                nodes.add(border ? createSite(i * 100, j * 100) : createNode(i * 100, j * 100));
+            }
+        }
+        List<MapEdge> edges = new ArrayList<>();
+        for (int i = 0; i < size; i++) {
+            for (int j = 0; j < size; j++) {
+                MapNode node = nodes.get(i * size + j);
+                if (i < size - 1) {
+                    MapNode other = nodes.get(i * size + j + size);
+                    edges.add(new MapEdge(node, other, 10, 0));
+                    edges.add(new MapEdge(other, node, 10, 0));
+                }
+                if (j < size - 1) {
+                    MapNode other = nodes.get(i * size + j + 1);
+                    edges.add(new MapEdge(node, other, 10, 0));
+                    edges.add(new MapEdge(other, node, 10, 0));
+                }
+            }
+        }
+        Topology topology = Topology.createTopology(nodes, edges);
+        Random random = new Random(1234);
+        double[] times = random.doubles(topology.getCompiled().getEdgeCount(), 1, 10).toArray();
+
+        /*
+        When computing the routes by reverse Dijkstra search
+         */
+        Map<Tuple2<MapNode, MapNode>, MapEdge> result = Routes.computeRoutes(topology.getCompiled(), times);
+
+        /*
+         * Then should result the same routes of the Floyd-Warshall algorithm
+         */
+        assertThat(result.size(), equalTo(size * size * (4 * size - 4)));
+        assertThat(result, equalTo(Routes.computeFloydWarshallRoutes(topology.getCompiled(), times)));
+    }
+
     @Test
     void createPathMapDisjoint() {
         /*
@@ -0,0 +1,116 @@
+/*
+ * Copyright (c) 2019 Marco Marini, marco.marini@mmarini.org
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ *
+ *    END OF TERMS AND CONDITIONS
+ *
+ */
+
+package org.mmarini.routes.model2;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.mmarini.routes.model2.CrossNode.createNode;
+import static org.mmarini.routes.model2.SiteNode.createSite;
+
+class ShortestPathTreeTest {
+
+    @Test
+    void createShadowedEdges() {
+        /*
+        Given the topology with two parallel edges from 0 to 1
+        0 -- 2 --> 1
+        0 -- 3 --> 1
+         */
+        SiteNode node0 = createSite(0, 0);
+        SiteNode node1 = createSite(10, 0);
+        MapEdge edge01a = new MapEdge(node0, node1, 10, 0);
+        MapEdge edge01b = new MapEdge(node0, node1, 10, 0);
+        Topology topology = Topology.createTopology(List.of(node0, node1), List.of(edge01a, edge01b));
+        CompiledTopology compiled = topology.getCompiled();
+
+        /*
+        When creating the shadowed edges
+         */
+        boolean[] result = ShortestPathTree.createShadowedEdges(compiled);
+
+        /*
+        Then only the first edge should be shadowed
+         */
+        assertThat(result.length, equalTo(2));
+        assertThat(result[compiled.getEdges().indexOf(edge01a)], equalTo(true));
+        assertThat(result[compiled.getEdges().indexOf(edge01b)], equalTo(false));
+    }
+
+    @Test
+    void createTree() {
+        /*
+        Given the topology
+        v--------- 4 ---------
+        0 -- 2 --> 1 -- 3 --> 2
+         --------- 6 ---------^
+         */
+        SiteNode node0 = createSite(0, 0);
+        CrossNode node1 = createNode(10, 0);
+        SiteNode node2 = createSite(20, 0);
+        MapEdge edge01 = new MapEdge(node0, node1, 10, 0);
+        MapEdge edge02 = new MapEdge(node0, node2, 10, 0);
+        MapEdge edge12 = new MapEdge(node1, node2, 10, 0);
+        MapEdge edge20 = new MapEdge(node2, node0, 10, 0);
+        Topology topology = Topology.createTopology(List.of(node0, node1, node2),
+                List.of(edge01, edge02, edge12, edge20));
+        CompiledTopology compiled = topology.getCompiled();
+        List<MapNode> nodes = compiled.getNodes();
+        List<MapEdge> edges = compiled.getEdges();
+        double[] times = new double[edges.size()];
+        times[edges.indexOf(edge01)] = 2;
+        times[edges.indexOf(edge02)] = 6;
+        times[edges.indexOf(edge12)] = 3;
+        times[edges.indexOf(edge20)] = 4;
+        int target = nodes.indexOf(node2);
+        boolean[] shadowed = ShortestPathTree.createShadowedEdges(compiled);
+
+        /*
+        When creating the shortest path tree to node 2
+         */
+        ShortestPathTree result = ShortestPathTree.createTree(compiled, times, shadowed, target);
+
+        /*
+        Then the distances should be the shortest travel times to node 2
+        And the next edges should be the first edges of the shortest paths
+        And the destination should have the first edge of the shortest cycle
+         */
+        assertThat(result.getTarget(), equalTo(target));
+        assertThat(result.getNodeCount(), equalTo(3));
+        assertThat(result.getDistance(nodes.indexOf(node0)), equalTo(5.0));
+        assertThat(result.getDistance(nodes.indexOf(node1)), equalTo(3.0));
+        assertThat(result.getDistance(target), equalTo(0.0));
+        assertThat(result.getNextEdge(nodes.indexOf(node0)), equalTo(edges.indexOf(edge01)));
+        assertThat(result.getNextEdge(nodes.indexOf(node1)), equalTo(edges.indexOf(edge12)));
+        assertThat(result.getNextEdge(target), equalTo(edges.indexOf(edge20)));
+    }
+}
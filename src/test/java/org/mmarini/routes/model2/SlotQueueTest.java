@@ -0,0 +1,106 @@
+/*
+ * Copyright (c) 2019 Marco Marini, marco.marini@mmarini.org
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ *
+ *    END OF TERMS AND CONDITIONS
+ *
+ */
+
+package org.mmarini.routes.model2;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.equalTo;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SlotQueueTest {
+
+    static final long SEED = 1234L;
+    static final int NUM_SLOTS = 1000;
+
+    @Test
+    void poll() {
+        /*
+        Given a queue with random keys
+         */
+        SlotQueue queue = new SlotQueue();
+        Random random = new Random(SEED);
+        double[] keys = new double[NUM_SLOTS];
+        for (int i = 0; i < NUM_SLOTS; i++) {
+            keys[i] = random.nextInt(100);
+            queue.add(i, keys[i]);
+        }
+
+        /*
+        When polling all the slots
+         */
+        List<Integer> result = new ArrayList<>();
+        while (!queue.isEmpty()) {
+            result.add(queue.poll());
+        }
+
+        /*
+        Then the slots should be sorted by key and by insertion
+         */
+        assertEquals(NUM_SLOTS, result.size());
+        for (int i = 1; i < NUM_SLOTS; i++) {
+            int a = result.get(i - 1);
+            int b = result.get(i);
+            assertTrue(keys[a] < keys[b] || (keys[a] == keys[b] && a < b));
+        }
+    }
+
+    @Test
+    void pollSameKey() {
+        /*
+        Given a queue with slots with the same key
+         */
+        SlotQueue queue = new SlotQueue();
+        queue.add(3, 1);
+        queue.add(1, 1);
+        queue.add(2, 0);
+        queue.add(0, 1);
+
+        /*
+        When polling the slots
+         */
+        assertThat(queue.size(), equalTo(4));
+        assertThat(queue.peekSlot(), equalTo(2));
+        List<Integer> result = new ArrayList<>();
+        while (!queue.isEmpty()) {
+            result.add(queue.poll());
+        }
+
+        /*
+        Then the slots should be in key and insertion order
+         */
+        assertThat(result, contains(2, 3, 1, 0));
+    }
+}
@@ -0,0 +1,143 @@
+/*
+ * Copyright (c) 2019 Marco Marini, marco.marini@mmarini.org
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ *
+ *    END OF TERMS AND CONDITIONS
+ *
+ */
+package org.mmarini.routes.model2;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Random;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+import static org.mmarini.routes.model2.TrafficEngineImpl.createEngine;
+
+class StatusDeltaTest {
+
+    static final long SEED = 1234L;
+    static final int MAX_VEHICLES = 1000;
+    static final double SPEED_LIMIT = 10.0;
+    static final double QUANTUM = 0.1;
+
+    static TrafficEngineImpl createGridEngine() {
+        return createEngine(MAX_VEHICLES, DynamicRoutesTest.createGrid(4), 0, List.of(), SPEED_LIMIT, 1);
+    }
+
+    static void assertDecoded(StatusDeltaDecoder decoder, TrafficEngineImpl engine) {
+        StatusImpl status = engine.buildStatus();
+        List<Vehicle> expected = status.getVehicles();
+        List<Vehicle> actual = decoder.getVehicles();
+        assertThat(decoder.getTime(), equalTo(status.getTime()));
+        assertThat(actual, hasSize(expected.size()));
+        for (int i = 0; i < expected.size(); i++) {
+            Vehicle exp = expected.get(i);
+            Vehicle act = actual.get(i);
+            assertThat(act.getId(), equalTo(exp.getId()));
+            assertThat(act.getDeparture(), sameInstance(exp.getDeparture()));
+            assertThat(act.getDestination(), sameInstance(exp.getDestination()));
+            assertThat(act.getCreationTime(), equalTo(exp.getCreationTime()));
+            assertThat(act.getCurrentEdge(), equalTo(exp.getCurrentEdge()));
+            assertThat(act.isReturning(), equalTo(exp.isReturning()));
+            assertThat(act.getDistance(), closeTo(exp.getDistance(), QUANTUM / 2 + 1e-9));
+        }
+    }
+
+    @Test
+    void decode() {
+        /*
+        Given a running traffic engine on a grid topology
+        and an encoder and a decoder
+         */
+        TrafficEngineImpl engine = createGridEngine();
+        StatusDeltaEncoder encoder = StatusDeltaEncoder.create(QUANTUM, 10);
+        StatusDeltaDecoder decoder = StatusDeltaDecoder.create();
+        Random random = new Random(SEED);
+
+        /*
+        When applying the deltas of each step
+        Then the decoded vehicles should match the vehicles of engine within the quantum
+        And the keyframes should be emitted every keyframe interval
+         */
+        int updates = 0;
+        int vehicles = 0;
+        for (int i = 0; i < 50; i++) {
+            engine.applyTimeInterval(random, 1);
+            StatusDelta delta = engine.encodeDelta(encoder);
+            assertThat(delta.getSequence(), equalTo((long) i));
+            assertThat(delta.isKeyframe(), equalTo(i % 10 == 0));
+            assertThat(decoder.apply(delta), equalTo(true));
+            assertThat(decoder.isSynchronized(), equalTo(true));
+            assertDecoded(decoder, engine);
+            if (!delta.isKeyframe()) {
+                updates += delta.getUpdateCount();
+                vehicles += decoder.getVehicleCount();
+            }
+        }
+        assertThat(vehicles, greaterThan(0));
+        assertThat(updates, lessThanOrEqualTo(vehicles));
+    }
+
+    @Test
+    void decodeLost() {
+        /*
+        Given a running traffic engine on a grid topology
+        and a decoder synchronized with the encoder
+         */
+        TrafficEngineImpl engine = createGridEngine();
+        StatusDeltaEncoder encoder = StatusDeltaEncoder.create(QUANTUM, 1000);
+        StatusDeltaDecoder decoder = StatusDeltaDecoder.create();
+        Random random = new Random(SEED);
+        for (int i = 0; i < 10; i++) {
+            engine.applyTimeInterval(random, 1);
+            decoder.apply(engine.encodeDelta(encoder));
+        }
+
+        /*
+        When losing a delta
+         */
+        engine.applyTimeInterval(random, 1);
+        engine.encodeDelta(encoder);
+        engine.applyTimeInterval(random, 1);
+        boolean applied = decoder.apply(engine.encodeDelta(encoder));
+
+        /*
+        Then the decoder should lose the synchronization
+        and restore it at the requested keyframe
+         */
+        assertThat(applied, equalTo(false));
+        assertThat(decoder.isSynchronized(), equalTo(false));
+        encoder.requestKeyframe();
+        engine.applyTimeInterval(random, 1);
+        StatusDelta keyframe = engine.encodeDelta(encoder);
+        assertThat(keyframe.isKeyframe(), equalTo(true));
+        assertThat(keyframe.getRemoved(), empty());
+        assertThat(keyframe.getAddedCount(), equalTo(keyframe.getUpdateCount()));
+        assertThat(decoder.apply(keyframe), equalTo(true));
+        assertThat(decoder.isSynchronized(), equalTo(true));
+        assertDecoded(decoder, engine);
+    }
+}
@@ -0,0 +1,160 @@
+/*
+ * Copyright (c) 2019 Marco Marini, marco.marini@mmarini.org
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ *
+ *    END OF TERMS AND CONDITIONS
+ *
+ */
+package org.mmarini.routes.model2;
+
+import org.junit.jupiter.api.Test;
+import org.mmarini.Tuple2;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.stream.Collectors;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+import static org.mmarini.Utils.getValue;
+import static org.mmarini.routes.model2.DynamicRoutesTest.createGrid;
+import static org.mmarini.routes.model2.TrafficEngineImpl.createEngine;
+
+class StatusImplTest {
+
+    static final int SIZE = 5;
+    static final int STEPS = 100;
+    static final double DT = 1;
+    static final double SPEED_LIMIT = 10;
+    static final double FREQUENCY = 5;
+    static final int MAX_VEHICLES = 1000;
+
+    /**
+     * Returns the traffic information computed by scanning the vehicles for each site
+     *
+     * @param status the status
+     */
+    static List<TrafficInfo> scanTrafficInfo(StatusImpl status) {
+        Map<Tuple2<SiteNode, SiteNode>, Double> transitTime = status.createTransitTimeMatrix();
+        List<Vehicle> vehicles = status.getVehicles();
+        return status.getSites().stream()
+                .map(site -> {
+                    int noVehicles = (int) vehicles.stream()
+                            .filter(v -> site.equals(v.getDestination()))
+                            .count();
+                    List<Double> delayTimes = vehicles.stream()
+                            .filter(v -> site.equals(v.getDestination()))
+                            .flatMap(v -> getValue(transitTime, Tuple2.of(v.getDeparture(), v.getDestination()))
+                                    .map(tt -> status.getTime() - v.getCreationTime() - tt)
+                                    .stream())
+                            .filter(t -> t > 0)
+                            .collect(Collectors.toList());
+                    int waiting = (int) vehicles.stream()
+                            .filter(v -> v.getCurrentEdge().isEmpty())
+                            .filter(v -> site.equals(v.isReturning()
+                                    ? v.getDestination()
+                                    : v.getDeparture()))
+                            .count();
+                    return new TrafficInfo(site, noVehicles, delayTimes.size(), waiting,
+                            delayTimes.stream().mapToDouble(v -> v).sum());
+                })
+                .collect(Collectors.toList());
+    }
+
+    @Test
+    void getTrafficInfo() {
+        /*
+        Given a traffic engine on a grid topology
+         */
+        Topology topology = createGrid(SIZE);
+        TrafficEngineImpl engine = createEngine(MAX_VEHICLES, topology, 0, List.of(), SPEED_LIMIT, FREQUENCY);
+        Random random = new Random(1234);
+        boolean delayed = false;
+        for (int k = 0; k < STEPS; k++) {
+            /*
+            When running the simulation and building the status
+             */
+            engine.applyTimeInterval(random, DT);
+            StatusImpl status = engine.buildStatus();
+            List<TrafficInfo> result = status.getTrafficInfo();
+
+            /*
+            Then the traffic information by running counters should be the same of scanning the vehicles
+             */
+            List<TrafficInfo> expected = scanTrafficInfo(status);
+            assertThat(result, hasSize(expected.size()));
+            for (int i = 0; i < expected.size(); i++) {
+                TrafficInfo info = result.get(i);
+                TrafficInfo exp = expected.get(i);
+                assertThat(info.getSite(), sameInstance(exp.getSite()));
+                assertThat(info.getVehicleCount(), equalTo(exp.getVehicleCount()));
+                assertThat(info.getWaitingAtSite(), equalTo(exp.getWaitingAtSite()));
+                assertThat(info.getDelayCount(), equalTo(exp.getDelayCount()));
+                assertThat(info.getTotalDelayTime(), closeTo(exp.getTotalDelayTime(), 1e-6));
+                delayed |= exp.getDelayCount() > 0;
+            }
+        }
+        /*
+        And the simulation should have delayed vehicles
+         */
+        assertThat(delayed, equalTo(true));
+    }
+
+    @Test
+    void getTrafficInfoFreeFlowDelay() {
+        /*
+        Given a topology of
+        0 ---> 1
+          <---
+        And the edge transit times ten times the free transit times
+        And a vehicle from 0 to 1 created at 0s
+        And a status at 1s after the free round trip time
+         */
+        SiteNode site0 = SiteNode.createSite(0, 0);
+        SiteNode site1 = SiteNode.createSite(100, 0);
+        MapEdge edge01 = new MapEdge(site0, site1, SPEED_LIMIT, 0);
+        MapEdge edge10 = new MapEdge(site1, site0, SPEED_LIMIT, 0);
+        Topology topology = Topology.createTopology(List.of(site0, site1), List.of(edge01, edge10));
+        TransitTimes transitTimes = TransitTimes.create(topology.getEdges())
+                .setValue(edge01, edge01.getTransitTime() * 10)
+                .setValue(edge10, edge10.getTransitTime() * 10);
+        double roundTrip = edge01.getTransitTime() + edge10.getTransitTime();
+        Vehicle vehicle = Vehicle.createVehicle(site0, site1, 0);
+        StatusImpl status = StatusImpl.createStatus(MAX_VEHICLES, SPEED_LIMIT, FREQUENCY, roundTrip + 1, topology,
+                List.of(vehicle), transitTimes, new double[][]{{0, 1}, {1, 0}});
+
+        /*
+        When getting the traffic info
+         */
+        List<TrafficInfo> result = status.getTrafficInfo();
+
+        /*
+        Then the vehicle should be delayed by 1s against the free flow round trip
+        And the transit time matrix should report the congested transit times
+         */
+        assertThat(result.get(1).getDelayCount(), equalTo(1));
+        assertThat(result.get(1).getTotalDelayTime(), closeTo(1, 1e-6));
+        assertThat(status.getTransitTimeMatrix().getValues()[0][1], closeTo(edge01.getTransitTime() * 10, 1e-6));
+    }
+}
@@ -397,6 +397,52 @@ class TopologyTest {
         assertThat(result10, hasEntry(edge121, edge21));
     }
 
+    @Test
+    void createEdgeMapSameBegin() {
+        /*
+        Given sites, nodes, edges of the topology
+        1 <--- 0 ---> 2
+         */
+        SiteNode node0 = createSite(0, 0);
+        SiteNode node1 = createSite(-100, 0);
+        SiteNode node2 = createSite(100, 0);
+        MapEdge edge01 = new MapEdge(node0, node1, SPEED_LIMIT, HIGH_PRIORITY);
+        MapEdge edge02 = new MapEdge(node0, node2, SPEED_LIMIT, LOW_PRIORITY);
+        Topology topology0 = createTopology(
+                List.of(node0, node1, node2),
+                List.of(edge01, edge02));
+        /*
+        And sites, nodes, edges of another topology
+        1 <--- 0 ---> 2
+                ---> 3
+         */
+        SiteNode node10 = createSite(0, 0);
+        SiteNode node11 = createSite(-100, 0);
+        CrossNode node12 = createNode(100, 0);
+        CrossNode node13 = createNode(100, 0.001);
+        MapEdge edge101 = new MapEdge(node10, node11, SPEED_LIMIT, HIGH_PRIORITY);
+        MapEdge edge102 = new MapEdge(node10, node12, SPEED_LIMIT, LOW_PRIORITY);
+        MapEdge edge103 = new MapEdge(node10, node13, SPEED_LIMIT, LOW_PRIORITY);
+        Topology topology1 = createTopology(
+                List.of(node10, node11, node12, node13),
+                List.of(edge103, edge101, edge102));
+
+        /*
+        When mapping the edges
+         */
+        Map<MapEdge, MapEdge> result01 = topology0.createEdgeMap(topology1);
+        Map<MapEdge, MapEdge> result10 = topology1.createEdgeMap(topology0);
+
+        // Then should map only the edges at the same location
+        assertThat(result01.size(), equalTo(2));
+        assertThat(result01, hasEntry(edge01, edge101));
+        assertThat(result01, hasEntry(edge02, edge102));
+
+        assertThat(result10.size(), equalTo(2));
+        assertThat(result10, hasEntry(edge101, edge01));
+        assertThat(result10, hasEntry(edge102, edge02));
+    }
+
     @Test
     void createNodeMap() {
         /*
@@ -35,10 +35,8 @@ import org.junit.jupiter.params.provider.MethodSource;
 import org.mmarini.MockRandomBuilder;
 
 import java.awt.geom.Point2D;
-import java.util.LinkedList;
-import java.util.List;
-import java.util.Optional;
-import java.util.Random;
+import java.util.*;
+import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
 import static java.lang.Math.*;
@@ -588,7 +586,7 @@ class TrafficEngineChangeTopTest {
         /*
         And vehicle in edge be the corresponding of previous TrafficEngineImpl
          */
-        Optional<LinkedList<Vehicle>> vehicles01 = newEdge01.map(result::findVehicles);
+        Optional<List<Vehicle>> vehicles01 = newEdge01.map(result::findVehicles);
         assertThat(vehicles01, not(optionalEmpty()));
         vehicles01.ifPresent(vehicles ->
                 assertThat(vehicles, contains(
@@ -597,7 +595,7 @@ class TrafficEngineChangeTopTest {
                 ))
         );
 
-        Optional<LinkedList<Vehicle>> vehicles12 = newEdge12.map(result::findVehicles);
+        Optional<List<Vehicle>> vehicles12 = newEdge12.map(result::findVehicles);
         assertThat(vehicles12, not(optionalEmpty()));
         vehicles12.ifPresent(vehicles ->
                 assertThat(vehicles, empty())
@@ -1005,7 +1003,7 @@ class TrafficEngineChangeTopTest {
         /*
         And vehicles by edge
          */
-        Optional<LinkedList<Vehicle>> vehicles01 = findEdge(result.getEdges(), expEdge01)
+        Optional<List<Vehicle>> vehicles01 = findEdge(result.getEdges(), expEdge01)
                 .map(result::findVehicles);
         assertTrue(vehicles01.isPresent());
         vehicles01.ifPresent(list ->
@@ -1014,7 +1012,7 @@ class TrafficEngineChangeTopTest {
                 ))
         );
 
-        Optional<LinkedList<Vehicle>> vehicles12 = findEdge(result.getEdges(), expEdge12)
+        Optional<List<Vehicle>> vehicles12 = findEdge(result.getEdges(), expEdge12)
                 .map(result::findVehicles);
         assertTrue(vehicles12.isPresent());
         vehicles12.ifPresent(list ->
@@ -1024,7 +1022,7 @@ class TrafficEngineChangeTopTest {
                 ))
         );
 
-        Optional<LinkedList<Vehicle>> vehicles13 = findEdge(result.getEdges(), expEdge13)
+        Optional<List<Vehicle>> vehicles13 = findEdge(result.getEdges(), expEdge13)
                 .map(result::findVehicles);
         assertTrue(vehicles13.isPresent());
         vehicles13.ifPresent(list ->
@@ -1032,4 +1030,289 @@ class TrafficEngineChangeTopTest {
                         vehicleId(expV0))
                 ));
     }
+
+    static Stream<Arguments> editArgs() {
+        return ArgumentGenerator.create(SEED)
+                .uniform(0.0, 1.0)
+                .uniform(0.0, 1.0)
+                .uniform(0.0, 1.0)
+                .generate();
+    }
+
+    /**
+     * Returns the item of a list selected by a random value in the range 0, 1
+     *
+     * @param list  the list
+     * @param value the random value
+     */
+    static <T> T select(List<T> list, double value) {
+        return list.get(min((int) (value * list.size()), list.size() - 1));
+    }
+
+    /**
+     * Returns the engine edited by a random single edge or node change
+     *
+     * @param engine the engine
+     * @param kind   the random kind of change
+     * @param r1     the random selection of the changing element
+     * @param r2     the random selection of the change
+     */
+    static TrafficEngineImpl randomEdit(TrafficEngineImpl engine, double kind, double r1, double r2) {
+        Topology topology = engine.getTopology();
+        List<MapNode> nodes = topology.getNodes();
+        List<MapEdge> edges = topology.getEdges();
+        MapEdge edge = select(edges, r1);
+        MapNode node = select(nodes, r1);
+        switch (min((int) (kind * 6), 5)) {
+            case 0:
+                // Adds an edge between two unconnected nodes
+                MapNode end = nodes.stream()
+                        .filter(n -> !n.equals(node)
+                                && edges.stream().noneMatch(e -> e.isSameLocation(new MapEdge(node, n, SPEED_LIMIT, 0))))
+                        .skip((long) (r2 * (nodes.size() / 2)))
+                        .findFirst()
+                        .orElseThrow();
+                return engine.addEdge(new MapEdge(node, end, SPEED_LIMIT, r2 < 0.5 ? 0 : 1));
+            case 1:
+                return engine.changeEdge(edge, r2 < 0.5
+                        ? edge.setPriority(edge.getPriority() + 1)
+                        : edge.setSpeedLimit(edge.getSpeedLimit() / 2));
+            case 2:
+                return engine.changeNode(node);
+            case 3:
+                return engine.removeEdge(edge);
+            case 4:
+                return engine.removeNode(node);
+            default:
+                return engine.optimizeSpeed(SPEED_LIMIT * (0.5 + r2));
+        }
+    }
+
+    @ParameterizedTest
+    @MethodSource("editArgs")
+    void editEqualsRebuild(double kind, double r1, double r2) {
+        /*
+        Given a running traffic engine on a grid topology
+         */
+        TrafficEngineImpl engine = createEngine(MAX_VEHICLES, DynamicRoutesTest.createGrid(4), 0, List.of(),
+                SPEED_LIMIT, 1);
+        Random random = new Random(SEED);
+        for (int i = 0; i < 30; i++) {
+            engine.applyTimeInterval(random, 1);
+        }
+        Topology oldTopology = engine.getTopology();
+        List<Vehicle> oldVehicles = engine.buildStatus().getVehicles();
+        TransitTimes oldTransitTimes = engine.getTransitTimeByEdge();
+
+        /*
+        When editing incrementally the engine
+         */
+        TrafficEngineImpl result = randomEdit(engine, kind, r1, r2);
+
+        /*
+        Then the topology should be equal to the full rebuild of the topology
+         */
+        Topology topology = result.getTopology();
+        Topology rebuiltTopology = createTopology(topology.getNodes(), topology.getEdges());
+        assertThat(topology.getSites(), equalTo(rebuiltTopology.getSites()));
+        for (MapNode node : topology.getNodes()) {
+            assertThat(topology.getIncomeEdges(node), equalTo(rebuiltTopology.getIncomeEdges(node)));
+        }
+
+        /*
+        And the engine should be equal to the full rebuild of the kept vehicles
+         */
+        Set<UUID> keptIds = result.findVehicles().stream().map(Vehicle::getId).collect(Collectors.toSet());
+        Map<MapEdge, MapEdge> edgeMap = oldTopology.createEdgeMap(topology);
+        List<Vehicle> keptVehicles = oldVehicles.stream()
+                .filter(v -> keptIds.contains(v.getId()))
+                .map(v -> v.getCurrentEdge()
+                        .map(edge -> {
+                            assertThat(edgeMap, hasKey(edge));
+                            return v.setCurrentEdge(edgeMap.get(edge));
+                        })
+                        .orElse(v))
+                .collect(Collectors.toList());
+        TrafficEngineImpl rebuilt = createEngine(MAX_VEHICLES, topology, result.buildStatus().getTime(), keptVehicles,
+                result.getSpeedLimit(), result.getFrequency(), result.getWeightMatrix().getValues());
+
+        StatusImpl status = result.buildStatus();
+        StatusImpl rebuiltStatus = rebuilt.buildStatus();
+        List<Vehicle> vehicles = status.getVehicles();
+        List<Vehicle> rebuiltVehicles = rebuiltStatus.getVehicles();
+        assertThat(vehicles, hasSize(rebuiltVehicles.size()));
+        for (int i = 0; i < vehicles.size(); i++) {
+            Vehicle vehicle = vehicles.get(i);
+            Vehicle expected = rebuiltVehicles.get(i);
+            assertThat(vehicle.getId(), equalTo(expected.getId()));
+            assertThat(vehicle.getCurrentEdge(), equalTo(expected.getCurrentEdge()));
+            assertThat(vehicle.getDistance(), equalTo(expected.getDistance()));
+            assertThat(vehicle.isReturning(), equalTo(expected.isReturning()));
+            assertThat(vehicle.getEdgeEntryTime(), equalTo(expected.getEdgeEntryTime()));
+            assertThat(vehicle.getStartWaitingTime(), equalTo(expected.getStartWaitingTime()));
+        }
+        SiteCounters counters = status.getSiteCounters();
+        SiteCounters rebuiltCounters = rebuiltStatus.getSiteCounters();
+        for (int i = 0; i < topology.getSites().size(); i++) {
+            assertThat(counters.getVehicleCount(i), equalTo(rebuiltCounters.getVehicleCount(i)));
+            assertThat(counters.getWaitingCount(i), equalTo(rebuiltCounters.getWaitingCount(i)));
+        }
+
+        /*
+        And the edge queues should be ordered by distance as the full rebuild
+        And the edges with vehicles should keep the transit time of the old edges at the same location
+         */
+        Map<MapEdge, MapEdge> oldEdgeMap = topology.createEdgeMap(oldTopology);
+        TransitTimes transitTimes = result.getTransitTimeByEdge();
+        for (MapEdge edge : topology.getEdges()) {
+            List<Vehicle> queue = result.findVehicles(edge);
+            List<Vehicle> rebuiltQueue = rebuilt.findVehicles(edge);
+            assertThat(queue.stream().map(Vehicle::getDistance).collect(Collectors.toList()),
+                    equalTo(rebuiltQueue.stream().map(Vehicle::getDistance).collect(Collectors.toList())));
+            double expectedTime = !queue.isEmpty() && oldEdgeMap.containsKey(edge)
+                    ? oldTransitTimes.getValue(oldEdgeMap.get(edge))
+                    : edge.getTransitTime();
+            assertThat(transitTimes.getValue(edge), equalTo(expectedTime));
+        }
+    }
+
+    /**
+     * Returns the transaction with a sequence of edits
+     *
+     * @param tx the transaction
+     * @param r1 the random selection of the changed edge
+     * @param r2 the random selection of the removed edge
+     * @param r3 the random selection of the changed node
+     */
+    static TopologyEdit applyEdits(TopologyEdit tx, double r1, double r2, double r3) {
+        MapEdge edge = select(tx.getTopology().getEdges(), r1);
+        tx.changeEdge(edge, edge.setSpeedLimit(edge.getSpeedLimit() / 2));
+        tx.removeEdge(select(tx.getTopology().getEdges(), r2));
+        tx.changeNode(select(tx.getTopology().getNodes(), r3));
+        return tx.optimize();
+    }
+
+    @ParameterizedTest
+    @MethodSource("editArgs")
+    void editTransaction(double r1, double r2, double r3) {
+        /*
+        Given two equal running traffic engines on a grid topology
+         */
+        TrafficEngineImpl engine = createEngine(MAX_VEHICLES, DynamicRoutesTest.createGrid(4), 0, List.of(),
+                SPEED_LIMIT, 1);
+        TrafficEngineImpl engine1 = createEngine(MAX_VEHICLES, DynamicRoutesTest.createGrid(4), 0, List.of(),
+                SPEED_LIMIT, 1);
+        Random random = new Random(SEED);
+        Random random1 = new Random(SEED);
+        for (int i = 0; i < 30; i++) {
+            engine.applyTimeInterval(random, 1);
+            engine1.applyTimeInterval(random1, 1);
+        }
+
+        /*
+        When editing the first engine in a transaction
+        And editing the second engine by single edits
+         */
+        TrafficEngineImpl result = engine.edit(tx -> applyEdits(tx, r1, r2, r3));
+        EngineEdit chain = new EngineEdit(engine1);
+        applyEdits(chain, r1, r2, r3);
+        TrafficEngineImpl expected = chain.engine;
+
+        /*
+        Then the topologies should have the same edges
+         */
+        Topology topology = result.getTopology();
+        Topology expTopology = expected.getTopology();
+        Map<MapEdge, MapEdge> edgeMap = topology.createEdgeMap(expTopology);
+        assertThat(topology.getEdges(), hasSize(expTopology.getEdges().size()));
+        assertThat(edgeMap.size(), equalTo(topology.getEdges().size()));
+        assertThat(topology.getSites(), hasSize(expTopology.getSites().size()));
+
+        /*
+        And the vehicles should be equal
+         */
+        List<Vehicle> vehicles = result.buildStatus().getVehicles();
+        List<Vehicle> expVehicles = expected.buildStatus().getVehicles();
+        assertThat(vehicles, hasSize(expVehicles.size()));
+        for (int i = 0; i < vehicles.size(); i++) {
+            Vehicle vehicle = vehicles.get(i);
+            Vehicle expVehicle = expVehicles.get(i);
+            assertThat(vehicle.getCurrentEdge().map(edgeMap::get), equalTo(expVehicle.getCurrentEdge()));
+            assertThat(vehicle.getDistance(), equalTo(expVehicle.getDistance()));
+            assertThat(vehicle.isReturning(), equalTo(expVehicle.isReturning()));
+            assertThat(vehicle.getEdgeEntryTime(), equalTo(expVehicle.getEdgeEntryTime()));
+        }
+
+        /*
+        And the transit times and the weights should be equal
+         */
+        TransitTimes transitTimes = result.getTransitTimeByEdge();
+        TransitTimes expTransitTimes = expected.getTransitTimeByEdge();
+        for (MapEdge edge : topology.getEdges()) {
+            assertThat(transitTimes.getValue(edge), equalTo(expTransitTimes.getValue(edgeMap.get(edge))));
+        }
+        double[][] weights = result.getWeightMatrix().getValues();
+        double[][] expWeights = expected.getWeightMatrix().getValues();
+        for (int i = 0; i < weights.length; i++) {
+            assertThat(weights[i], equalTo(expWeights[i]));
+        }
+    }
+
+    /**
+     * The edits applied by single engine edits
+     */
+    static class EngineEdit implements TopologyEdit {
+        TrafficEngineImpl engine;
+
+        EngineEdit(TrafficEngineImpl engine) {
+            this.engine = engine;
+        }
+
+        @Override
+        public TopologyEdit addEdge(MapEdge edge) {
+            engine = engine.addEdge(edge);
+            return this;
+        }
+
+        @Override
+        public TopologyEdit addModule(MapModule mapModule, Point2D location, Point2D direction, double epsilon) {
+            engine = engine.addModule(mapModule, location, direction, epsilon);
+            return this;
+        }
+
+        @Override
+        public TopologyEdit changeEdge(MapEdge oldEdge, MapEdge newEdge) {
+            engine = engine.changeEdge(oldEdge, newEdge);
+            return this;
+        }
+
+        @Override
+        public TopologyEdit changeNode(MapNode node) {
+            engine = engine.changeNode(node);
+            return this;
+        }
+
+        @Override
+        public Topology getTopology() {
+            return engine.getTopology();
+        }
+
+        @Override
+        public TopologyEdit optimize() {
+            engine = engine.optimize();
+            return this;
+        }
+
+        @Override
+        public TopologyEdit removeEdge(MapEdge edge) {
+            engine = engine.removeEdge(edge);
+            return this;
+        }
+
+        @Override
+        public TopologyEdit removeNode(MapNode node) {
+            engine = engine.removeNode(node);
+            return this;
+        }
+    }
 }
\ No newline at end of file
@@ -35,10 +35,14 @@ import org.junit.jupiter.params.provider.CsvSource;
 import org.junit.jupiter.params.provider.MethodSource;
 import org.mmarini.MockRandomBuilder;
 
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Optional;
 import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 import java.util.stream.Stream;
 
 import static org.hamcrest.MatcherAssert.assertThat;
@@ -164,6 +168,244 @@ class TrafficEngineTest {
         assertThat(status.findVehicles(), not(hasItem(v0)));
     }
 
+    @Test
+    void applyTimeIntervalEventDriven() {
+        /*
+        Given a topology of
+        0 ---> 1 ---> 2
+          <---   <---
+        And a vehicle 0 at 20m of edge01
+        And an event driven traffic engine
+         */
+        SiteNode node0 = createSite(0, 0);
+        SiteNode node2 = createSite(100, 0);
+        CrossNode node1 = createNode(50, 0);
+        MapEdge edge01 = new MapEdge(node0, node1, SPEED_LIMIT, PRIORITY);
+        MapEdge edge10 = new MapEdge(node1, node0, SPEED_LIMIT, PRIORITY);
+        MapEdge edge12 = new MapEdge(node1, node2, SPEED_LIMIT, PRIORITY);
+        MapEdge edge21 = new MapEdge(node2, node1, SPEED_LIMIT, PRIORITY);
+        Vehicle v0 = createVehicle(node0, node2, 0)
+                .setCurrentEdge(edge01)
+                .setDistance(20);
+        TrafficEngineImpl status = createEngine(
+                MAX_VEHICLES, createTopology(
+                        List.of(node0, node2, node1),
+                        List.of(edge01, edge10, edge12, edge21)
+                ), 0,
+                List.of(v0), SPEED_LIMIT, 0)
+                .setSchedulingMode(SchedulingMode.EVENT_DRIVEN);
+
+        /*
+        When applying a time interval of 5s
+         */
+        double dt = status.applyTimeInterval(new Random(SEED), 5);
+
+        /*
+        Then the whole interval should be applied
+        And the vehicle should cross node 1 at 3s and run for 2s in edge12
+         */
+        assertThat(dt, equalTo(5.0));
+        assertThat(status.buildStatus().getTime(), closeTo(5, 1e-6));
+        assertThat(v0.getCurrentEdge(), optionalOf(edge12));
+        assertThat(v0.getDistance(), closeTo(20, SPEED_LIMIT * Constants.TIME_STEP));
+    }
+
+    @Test
+    void applyTimeIntervalEventDrivenIdleEdges() {
+        /*
+        Given a topology of
+        0 ---> 1 ---> 2
+          <---   <---
+        And a vehicle 0 at 20m of edge01
+        And a vehicle 1 at the beginning of edge21
+        And an event driven traffic engine
+         */
+        SiteNode node0 = createSite(0, 0);
+        SiteNode node2 = createSite(100, 0);
+        CrossNode node1 = createNode(50, 0);
+        MapEdge edge01 = new MapEdge(node0, node1, SPEED_LIMIT, PRIORITY);
+        MapEdge edge10 = new MapEdge(node1, node0, SPEED_LIMIT, PRIORITY);
+        MapEdge edge12 = new MapEdge(node1, node2, SPEED_LIMIT, PRIORITY);
+        MapEdge edge21 = new MapEdge(node2, node1, SPEED_LIMIT, PRIORITY);
+        Vehicle v0 = createVehicle(node0, node2, 0)
+                .setCurrentEdge(edge01)
+                .setDistance(20);
+        Vehicle v1 = createVehicle(node2, node0, 0)
+                .setCurrentEdge(edge21)
+                .setDistance(0);
+        TrafficEngineImpl status = createEngine(
+                MAX_VEHICLES, createTopology(
+                        List.of(node0, node2, node1),
+                        List.of(edge01, edge10, edge12, edge21)
+                ), 0,
+                List.of(v0, v1), SPEED_LIMIT, 0)
+                .setSchedulingMode(SchedulingMode.EVENT_DRIVEN);
+
+        /*
+        When applying a time interval of 4s
+         */
+        status.applyTimeInterval(new Random(SEED), 4);
+
+        /*
+        Then the vehicle 0 should cross node 1 at 3s and run for 1s in edge12
+        And the vehicle 1 should run for 4s in edge21
+         */
+        assertThat(v0.getCurrentEdge(), optionalOf(edge12));
+        assertThat(v0.getDistance(), closeTo(10, SPEED_LIMIT * Constants.TIME_STEP));
+        assertThat(v1.getCurrentEdge(), optionalOf(edge21));
+        assertThat(v1.getDistance(), closeTo(40, 1e-6));
+    }
+
+    @Test
+    void applyTimeIntervalRouteService() {
+        /*
+        Given a topology of
+        0 ---> 1 ---> 2
+          <---   <---
+        And a traffic engine with a route service running in the caller thread
+         */
+        SiteNode node0 = createSite(0, 0);
+        SiteNode node2 = createSite(100, 0);
+        CrossNode node1 = createNode(50, 0);
+        MapEdge edge01 = new MapEdge(node0, node1, SPEED_LIMIT, PRIORITY);
+        MapEdge edge10 = new MapEdge(node1, node0, SPEED_LIMIT, PRIORITY);
+        MapEdge edge12 = new MapEdge(node1, node2, SPEED_LIMIT, PRIORITY);
+        MapEdge edge21 = new MapEdge(node2, node1, SPEED_LIMIT, PRIORITY);
+        RouteService service = RouteServiceTest.createSyncService();
+        TrafficEngineImpl engine = createEngine(
+                MAX_VEHICLES, createTopology(
+                        List.of(node0, node2, node1),
+                        List.of(edge01, edge10, edge12, edge21)
+                ), 0,
+                List.of(), SPEED_LIMIT, 0)
+                .setRouteService(service);
+
+        /*
+        When applying two time intervals
+         */
+        engine.applyTimeInterval(new Random(SEED), 1);
+        engine.applyTimeInterval(new Random(SEED), 1);
+
+        /*
+        Then the routes should be requested once for the new topology
+        And the engine should use the published routes
+         */
+        assertThat(engine.getRouteService(), sameInstance(service));
+        assertThat(service.getRequestCount(), equalTo(1L));
+        assertThat(service.getRequestedTopology(), sameInstance(engine.getTopology().getCompiled()));
+        assertThat(engine.getRouteTable(), sameInstance(service.getRoutes()));
+        assertThat(engine.findNextEdge(node0, node2), optionalOf(edge01));
+    }
+
+    @Test
+    void applyTimeIntervalFixedStep() {
+        /*
+        Given a topology of
+        0 ---> 1 ---> 2
+          <---   <---
+        And a vehicle 0 at 20m of edge01
+        And a fixed step traffic engine
+         */
+        SiteNode node0 = createSite(0, 0);
+        SiteNode node2 = createSite(100, 0);
+        CrossNode node1 = createNode(50, 0);
+        MapEdge edge01 = new MapEdge(node0, node1, SPEED_LIMIT, PRIORITY);
+        MapEdge edge10 = new MapEdge(node1, node0, SPEED_LIMIT, PRIORITY);
+        MapEdge edge12 = new MapEdge(node1, node2, SPEED_LIMIT, PRIORITY);
+        MapEdge edge21 = new MapEdge(node2, node1, SPEED_LIMIT, PRIORITY);
+        Vehicle v0 = createVehicle(node0, node2, 0)
+                .setCurrentEdge(edge01)
+                .setDistance(20);
+        TrafficEngineImpl status = createEngine(
+                MAX_VEHICLES, createTopology(
+                        List.of(node0, node2, node1),
+                        List.of(edge01, edge10, edge12, edge21)
+                ), 0,
+                List.of(v0), SPEED_LIMIT, 0);
+
+        /*
+        When applying a time interval of 5s
+         */
+        double dt = status.applyTimeInterval(new Random(SEED), 5);
+
+        /*
+        Then the interval should stop at the vehicle exit
+        And the vehicle should cross node 1
+         */
+        assertThat(status.getSchedulingMode(), equalTo(SchedulingMode.FIXED_STEP));
+        assertThat(dt, closeTo(3, Constants.TIME_STEP));
+        assertThat(v0.getCurrentEdge(), optionalOf(edge12));
+        assertThat(v0.getDistance(), equalTo(0.0));
+    }
+
+    @Test
+    void applyTimeIntervalParallel() {
+        /*
+        Given a topology of a two-way road of 10 edges of 500m from site0 to site1
+         */
+        int n = 10;
+        List<MapNode> nodes = new ArrayList<>();
+        nodes.add(createSite(0, 0));
+        for (int i = 1; i < n; i++) {
+            nodes.add(createNode(i * 500, 0));
+        }
+        nodes.add(createSite(n * 500, 0));
+        List<MapEdge> edges = new ArrayList<>();
+        for (int i = 0; i < n; i++) {
+            edges.add(new MapEdge(nodes.get(i), nodes.get(i + 1), SPEED_LIMIT, PRIORITY));
+            edges.add(new MapEdge(nodes.get(i + 1), nodes.get(i), SPEED_LIMIT, PRIORITY));
+        }
+        Topology topology = createTopology(nodes, edges);
+        SiteNode site0 = (SiteNode) nodes.get(0);
+        SiteNode site1 = (SiteNode) nodes.get(n);
+        /*
+        And a sequential engine and a parallel engine with 15 vehicles per edge
+         */
+        Supplier<List<Vehicle>> vehiclesFactory = () -> edges.stream()
+                .flatMap(edge -> IntStream.range(0, 15)
+                        .mapToObj(i -> edge.getBegin().getLocation().getX() < edge.getEnd().getLocation().getX()
+                                ? createVehicle(site0, site1, 0)
+                                : createVehicle(site1, site0, 0))
+                        .map(vehicle -> vehicle.setCurrentEdge(edge)))
+                .collect(Collectors.toList());
+        List<Vehicle> sequentialVehicles = vehiclesFactory.get();
+        List<Vehicle> parallelVehicles = vehiclesFactory.get();
+        for (int i = 0; i < sequentialVehicles.size(); i++) {
+            double distance = 10 + (i % 15) * 30;
+            sequentialVehicles.get(i).setDistance(distance);
+            parallelVehicles.get(i).setDistance(distance);
+        }
+        TrafficEngineImpl sequential = createEngine(MAX_VEHICLES, topology, 0, sequentialVehicles, SPEED_LIMIT, 1);
+        TrafficEngineImpl parallel = createEngine(MAX_VEHICLES, topology, 0, parallelVehicles, SPEED_LIMIT, 1)
+                .setMovementPool(new ForkJoinPool(4));
+
+        /*
+        When applying the time intervals with the same random generators
+         */
+        Random sequentialRandom = new Random(SEED);
+        Random parallelRandom = new Random(SEED);
+        for (int i = 0; i < 200; i++) {
+            double dt1 = sequential.applyTimeInterval(sequentialRandom, MAX_DT);
+            double dt2 = parallel.applyTimeInterval(parallelRandom, MAX_DT);
+            assertThat(dt2, equalTo(dt1));
+        }
+
+        /*
+        Then the vehicles of engines should be the same
+         */
+        List<Vehicle> result1 = sequential.findVehicles();
+        List<Vehicle> result2 = parallel.findVehicles();
+        assertThat(result2, hasSize(result1.size()));
+        for (int i = 0; i < result1.size(); i++) {
+            Vehicle v1 = result1.get(i);
+            Vehicle v2 = result2.get(i);
+            assertThat(v2.getCurrentEdge(), equalTo(v1.getCurrentEdge()));
+            assertThat(v2.getDistance(), equalTo(v1.getDistance()));
+            assertThat(v2.isReturning(), equalTo(v1.isReturning()));
+            assertThat(v2.getStartWaitingTime(), equalTo(v1.getStartWaitingTime()));
+        }
+    }
+
     @ParameterizedTest
     @MethodSource("argsFrequencies")
     void changeFrequency(double f1, double f2) {
@@ -484,6 +726,59 @@ class TrafficEngineTest {
                 )));
     }
 
+    @Test
+    void createVehiclesByStreams() throws Exception {
+        /*
+        Given a topology of
+        0 ---> 1 ---> 2
+          <---   <---
+        3 --->
+          <---
+         */
+        SiteNode node0 = createSite(0, 0);
+        SiteNode node2 = createSite(100, 0);
+        SiteNode node3 = createSite(100, 100);
+        CrossNode node1 = createNode(50, 0);
+        MapEdge edge01 = new MapEdge(node0, node1, SPEED_LIMIT, PRIORITY);
+        MapEdge edge10 = new MapEdge(node1, node0, SPEED_LIMIT, PRIORITY);
+        MapEdge edge12 = new MapEdge(node1, node2, SPEED_LIMIT, PRIORITY);
+        MapEdge edge13 = new MapEdge(node1, node3, SPEED_LIMIT, PRIORITY);
+        MapEdge edge21 = new MapEdge(node2, node1, SPEED_LIMIT, PRIORITY);
+        MapEdge edge31 = new MapEdge(node3, node1, SPEED_LIMIT, PRIORITY);
+
+        TrafficEngineImpl status = createEngine(
+                MAX_VEHICLES, createTopology(
+                        List.of(node0, node2, node1, node3),
+                        List.of(edge01, edge10, edge12, edge13, edge21, edge31)
+                ), 0,
+                List.of(), SPEED_LIMIT, MAX_FREQUENCY);
+
+        /*
+        When creating vehicles from streams with the same seed in the common pool and in a single thread pool
+         */
+        List<Vehicle> result1 = status.createVehicles(RandomStreams.createStreams(SEED), MAX_DELAY_TIME);
+        List<Vehicle> result2 = new ForkJoinPool(1)
+                .submit(() -> status.createVehicles(RandomStreams.createStreams(SEED), MAX_DELAY_TIME))
+                .get();
+
+        /*
+        Then the vehicles should be generated
+        And the vehicles should be ordered by departure site
+        And the vehicles should be the same for both the pools
+         */
+        assertThat(result1, not(empty()));
+        List<SiteNode> sites = status.getSites();
+        List<Integer> departures = result1.stream()
+                .map(v -> sites.indexOf(v.getDeparture()))
+                .collect(Collectors.toList());
+        assertThat(departures, equalTo(departures.stream().sorted().collect(Collectors.toList())));
+        assertThat(result2, hasSize(result1.size()));
+        for (int i = 0; i < result1.size(); i++) {
+            assertThat(result2.get(i).getDeparture(), equalTo(result1.get(i).getDeparture()));
+            assertThat(result2.get(i).getDestination(), equalTo(result1.get(i).getDestination()));
+        }
+    }
+
     @ParameterizedTest
     @MethodSource("time")
     void entryVehicleFromEdge(double time) {
@@ -1022,4 +1317,43 @@ class TrafficEngineTest {
         assertThat(v100.getDistance(), closeTo(20 + (10.0 - 5) / (1 + 1 / MIN_DT), 0.1));
         assertThat(v101.getDistance(), closeTo(30.0 + 1, 0.1));
     }
-}
\ No newline at end of file
+
+    @Test
+    void writeFrame() {
+        /*
+        Given a running traffic engine on a grid topology
+        and a frame buffer
+         */
+        TrafficEngineImpl engine = createEngine(MAX_VEHICLES, DynamicRoutesTest.createGrid(4), 0, List.of(),
+                SPEED_LIMIT, 1);
+        Random random = new Random(SEED);
+        for (int i = 0; i < 20; i++) {
+            engine.applyTimeInterval(random, 1);
+        }
+        FrameBuffer frames = FrameBuffer.create();
+
+        /*
+        When writing the frame
+         */
+        engine.writeFrame(frames);
+        VehicleFrame frame = frames.acquire();
+
+        /*
+        Then the frame should contain the location, direction and destination of vehicles in edges
+         */
+        List<Vehicle> vehicles = engine.buildStatus().getVehicles().stream()
+                .filter(v -> v.getCurrentEdge().isPresent())
+                .collect(Collectors.toList());
+        assertThat(vehicles, not(empty()));
+        assertThat(frame.getSize(), equalTo(vehicles.size()));
+        assertThat(frame.getTime(), equalTo(engine.buildStatus().getTime()));
+        for (int i = 0; i < vehicles.size(); i++) {
+            Vehicle vehicle = vehicles.get(i);
+            assertThat(frame.getX(i), closeTo(vehicle.getLocation().orElseThrow().getX(), 1e-9));
+            assertThat(frame.getY(i), closeTo(vehicle.getLocation().orElseThrow().getY(), 1e-9));
+            assertThat(frame.getDirectionX(i), closeTo(vehicle.getDirection().orElseThrow().getX(), 1e-9));
+            assertThat(frame.getDirectionY(i), closeTo(vehicle.getDirection().orElseThrow().getY(), 1e-9));
+            assertThat(frame.getDestination(i), sameInstance(vehicle.getCurrentDestination()));
+        }
+    }
+}
@@ -0,0 +1,111 @@
+/*
+ * Copyright (c) 2019 Marco Marini, marco.marini@mmarini.org
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ *
+ *    END OF TERMS AND CONDITIONS
+ *
+ */
+package org.mmarini.routes.model2;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mmarini.routes.model2.SiteNode.createSite;
+
+class TransitTimesTest {
+
+    static final double SPEED_LIMIT = 10.0;
+    static final int PRIORITY = 0;
+
+    @Test
+    void snapshot() {
+        /*
+        Given a transit time of two edges
+         */
+        SiteNode node0 = createSite(0, 0);
+        SiteNode node1 = createSite(100, 0);
+        MapEdge edge01 = new MapEdge(node0, node1, SPEED_LIMIT, PRIORITY);
+        MapEdge edge10 = new MapEdge(node1, node0, SPEED_LIMIT, PRIORITY);
+        TransitTimes times = TransitTimes.create(List.of(edge01, edge10));
+
+        /*
+        When taking a snapshot and changing a transit time
+         */
+        TransitTimes snapshot = times.snapshot();
+        TransitTimes same = times.snapshot();
+        times.setValue(edge01, 20);
+        TransitTimes changed = times.snapshot();
+
+        /*
+        Then the snapshot should be immutable and unchanged
+         */
+        assertThat(snapshot.isReadOnly(), equalTo(true));
+        assertThat(snapshot.getValue(edge01), equalTo(10.0));
+        assertThrows(UnsupportedOperationException.class, () -> snapshot.setValue(edge01, 30));
+
+        /*
+        And the snapshot should be reused while the epoch does not change
+         */
+        assertThat(same, sameInstance(snapshot));
+
+        /*
+        And a new snapshot should be created after the change
+         */
+        assertThat(changed, not(sameInstance(snapshot)));
+        assertThat(changed.getValue(edge01), equalTo(20.0));
+        assertThat(changed.getEpoch(), equalTo(times.getEpoch()));
+        assertThat(times.getValue(edge10), equalTo(10.0));
+    }
+
+    @Test
+    void toArray() {
+        /*
+        Given a transit time of two edges
+         */
+        SiteNode node0 = createSite(0, 0);
+        SiteNode node1 = createSite(100, 0);
+        MapEdge edge01 = new MapEdge(node0, node1, SPEED_LIMIT, PRIORITY);
+        MapEdge edge10 = new MapEdge(node1, node0, SPEED_LIMIT, PRIORITY);
+        MapEdge other = new MapEdge(node0, node1, SPEED_LIMIT / 2, PRIORITY);
+        TransitTimes times = TransitTimes.create(List.of(edge01, edge10))
+                .setValue(edge10, 15)
+                .setValue(other, 30);
+
+        /*
+        When converting to array by a different edge list
+         */
+        double[] result = times.toArray(List.of(edge10, other, edge01));
+
+        /*
+        Then the values should be the transit times of edges
+        and the default transit time for unknown edges
+         */
+        assertThat(result[0], equalTo(15.0));
+        assertThat(result[1], equalTo(20.0));
+        assertThat(result[2], equalTo(10.0));
+    }
+}
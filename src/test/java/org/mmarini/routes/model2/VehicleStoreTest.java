@@ -0,0 +1,346 @@
+/*
+ * Copyright (c) 2019 Marco Marini, marco.marini@mmarini.org
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ *
+ *    END OF TERMS AND CONDITIONS
+ *
+ */
+
+package org.mmarini.routes.model2;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mmarini.routes.model2.CrossNode.createNode;
+import static org.mmarini.routes.model2.SiteNode.createSite;
+import static org.mmarini.routes.model2.TestUtils.optionalOf;
+import static org.mmarini.routes.model2.Topology.createTopology;
+import static org.mmarini.routes.model2.Vehicle.createVehicle;
+
+class VehicleStoreTest {
+
+    static final double SPEED_LIMIT = 10.0;
+    static final int PRIORITY = 0;
+
+    SiteNode node0;
+    SiteNode node2;
+    MapEdge edge01;
+    MapEdge edge12;
+    Topology topology;
+
+    @BeforeEach
+    void setUp() {
+        /*
+        Given a topology of
+        0 ---> 1 ---> 2
+         */
+        node0 = createSite(0, 0);
+        node2 = createSite(100, 0);
+        CrossNode node1 = createNode(50, 0);
+        edge01 = new MapEdge(node0, node1, SPEED_LIMIT, PRIORITY);
+        edge12 = new MapEdge(node1, node2, SPEED_LIMIT, PRIORITY);
+        topology = createTopology(List.of(node0, node2, node1), List.of(edge01, edge12));
+    }
+
+    @Test
+    void create() {
+        /*
+        Given a vehicle in edge01 at 10
+        And a vehicle returning in edge12 at 20
+         */
+        Vehicle v0 = createVehicle(node0, node2, 0)
+                .setCurrentEdge(edge01)
+                .setDistance(10);
+        Vehicle v1 = createVehicle(node0, node2, 1)
+                .setCurrentEdge(edge12)
+                .setReturning(true)
+                .setDistance(20);
+
+        /*
+        When creating the store
+         */
+        VehicleStore store = VehicleStore.create(topology, List.of(v0, v1));
+
+        /*
+        Then the store should contain the vehicles in insertion order
+        And the vehicles should be bound to the store slots
+         */
+        assertEquals(2, store.size());
+        assertThat(store.getVehicles(), contains(sameInstance(v0), sameInstance(v1)));
+        int slot0 = v0.getSlot(store);
+        int slot1 = v1.getSlot(store);
+        assertThat(slot0, greaterThanOrEqualTo(0));
+        assertThat(slot1, greaterThanOrEqualTo(0));
+        assertEquals(0, store.getEdgeIndex(slot0));
+        assertEquals(1, store.getEdgeIndex(slot1));
+        assertEquals(10.0, store.getDistance(slot0));
+        assertEquals(20.0, store.getDistance(slot1));
+        assertFalse(store.isReturning(slot0));
+        assertTrue(store.isReturning(slot1));
+        assertEquals(1, store.currentDestination(slot0));
+        assertEquals(0, store.currentDestination(slot1));
+    }
+
+    @Test
+    void createWaiting() {
+        /*
+        Given a vehicle at the end of edge01 waiting since 2
+        And a vehicle at the end of edge12 waiting since 1
+        And a vehicle at site0
+        And a vehicle returning at site2
+         */
+        Vehicle v0 = createVehicle(node0, node2, 0)
+                .setCurrentEdge(edge01)
+                .setDistance(50);
+        v0.setStartWaitingTime(2);
+        Vehicle v1 = createVehicle(node0, node2, 0)
+                .setCurrentEdge(edge12)
+                .setDistance(50);
+        v1.setStartWaitingTime(1);
+        Vehicle v2 = createVehicle(node0, node2, 0);
+        Vehicle v3 = createVehicle(node0, node2, 0)
+                .setReturning(true);
+
+        /*
+        When creating the store
+         */
+        VehicleStore store = VehicleStore.create(topology, List.of(v0, v1, v2, v3));
+
+        /*
+        Then the edge waiting queue should contain the vehicles at the end of edges by waiting time
+        And the site waiting queues should contain the vehicles at sites
+         */
+        SlotQueue edgeWaiting = store.getEdgeWaiting();
+        assertEquals(2, edgeWaiting.size());
+        assertEquals(v1.getSlot(store), edgeWaiting.poll());
+        assertEquals(v0.getSlot(store), edgeWaiting.poll());
+        assertEquals(3, store.getSiteWaitingCount());
+        assertEquals(1, store.getSiteWaiting(0).size());
+        assertEquals(v2.getSlot(store), store.getSiteWaiting(0).poll());
+        assertEquals(1, store.getSiteWaiting(1).size());
+        assertEquals(v3.getSlot(store), store.getSiteWaiting(1).poll());
+    }
+
+    @Test
+    void editEdges() {
+        /*
+        Given three vehicles in edge01
+        And a vehicle in edge12
+         */
+        Vehicle v0 = createVehicle(node0, node2, 0)
+                .setCurrentEdge(edge01)
+                .setDistance(10);
+        Vehicle v1 = createVehicle(node0, node2, 0)
+                .setCurrentEdge(edge01)
+                .setDistance(20);
+        Vehicle v2 = createVehicle(node0, node2, 0)
+                .setCurrentEdge(edge01)
+                .setDistance(30);
+        Vehicle v3 = createVehicle(node0, node2, 0)
+                .setCurrentEdge(edge12)
+                .setDistance(40);
+        VehicleStore store = VehicleStore.create(topology, List.of(v0, v1, v2, v3));
+        EdgeQueue queue12 = store.queue(1);
+
+        /*
+        When replacing edge01 with a new edge
+        And keeping the vehicles but v1
+         */
+        MapEdge newEdge01 = new MapEdge(edge01.getBegin(), edge01.getEnd(), SPEED_LIMIT * 2, PRIORITY);
+        CompiledTopology compiled = topology.removeEdge(edge01).addEdge(newEdge01).getCompiled();
+        store.editEdges(compiled, compiled.getRemovedEdges(topology.getCompiled()),
+                Map.of(edge01, newEdge01), vehicle -> vehicle != v1);
+        store.compact();
+
+        /*
+        Then the new edge should be appended with its edge id
+        And the removed edge should keep its index without queue
+         */
+        assertThat(store.getEdges(), contains(edge01, edge12, newEdge01));
+        assertEquals(2, store.indexOf(newEdge01));
+        assertEquals(-1, store.indexOf(edge01));
+        assertNull(store.queueOrNull(0));
+        /*
+        And the kept vehicles of edge01 should be moved to the new edge in the same order
+        And v1 should be removed
+         */
+        assertEquals(3, store.size());
+        assertEquals(-1, v1.getSlot(store));
+        assertThat(store.queue(2), contains(sameInstance(v0), sameInstance(v2)));
+        assertEquals(2, store.getEdgeIndex(v0.getSlot(store)));
+        assertEquals(2, store.getEdgeIndex(v2.getSlot(store)));
+        /*
+        And the vehicle in edge12 should keep the queue
+         */
+        assertEquals(1, store.getEdgeIndex(v3.getSlot(store)));
+        assertThat(store.queue(1), sameInstance(queue12));
+        assertThat(queue12, contains(sameInstance(v3)));
+    }
+
+    @Test
+    void remove() {
+        /*
+        Given a store with two vehicles
+         */
+        Vehicle v0 = createVehicle(node0, node2, 0)
+                .setCurrentEdge(edge01)
+                .setDistance(10);
+        Vehicle v1 = createVehicle(node0, node2, 1);
+        VehicleStore store = VehicleStore.create(topology, List.of(v0, v1));
+        int slot0 = v0.getSlot(store);
+
+        /*
+        When removing the first vehicle and compacting the store
+         */
+        store.remove(slot0);
+        store.compact();
+
+        /*
+        Then the store should contain the second vehicle
+        And the removed vehicle should be detached with the last state
+         */
+        assertEquals(1, store.size());
+        assertEquals(1, store.orderSize());
+        assertThat(store.getVehicles(), contains(sameInstance(v1)));
+        assertEquals(-1, v0.getSlot(store));
+        assertThat(v0.getCurrentEdge(), optionalOf(edge01));
+        assertEquals(10.0, v0.getDistance());
+
+        /*
+        And a new vehicle should reuse the released slot
+         */
+        Vehicle v2 = createVehicle(node2, node0, 2);
+        store.add(v2);
+        assertEquals(slot0, v2.getSlot(store));
+        assertThat(store.getVehicles(), contains(sameInstance(v1), sameInstance(v2)));
+    }
+
+    @Test
+    void snapshot() {
+        /*
+        Given a store with a vehicle
+         */
+        Vehicle v0 = createVehicle(node0, node2, 0)
+                .setCurrentEdge(edge01)
+                .setDistance(10);
+        VehicleStore store = VehicleStore.create(topology, List.of(v0));
+
+        /*
+        When taking a snapshot and moving the vehicle
+         */
+        List<Vehicle> result = store.snapshot();
+        v0.setCurrentEdge(edge12).setDistance(20);
+
+        /*
+        Then the snapshot should contain a detached copy of vehicle
+         */
+        assertThat(result, hasSize(1));
+        Vehicle copy = result.get(0);
+        assertThat(copy, not(sameInstance(v0)));
+        assertEquals(v0.getId(), copy.getId());
+        assertThat(copy.getCurrentEdge(), optionalOf(edge01));
+        assertEquals(10.0, copy.getDistance());
+        assertThat(v0.getCurrentEdge(), optionalOf(edge12));
+        assertEquals(20.0, v0.getDistance());
+    }
+
+    @Test
+    void updateDelays() {
+        /*
+        Given a topology of
+        0 ---> 2
+          <---
+        And a store with a vehicle from 0 to 2 created at 0s and a vehicle created at 5s
+        And the free flow round trip of 20s
+         */
+        MapEdge edge02 = new MapEdge(node0, node2, SPEED_LIMIT, PRIORITY);
+        MapEdge edge20 = new MapEdge(node2, node0, SPEED_LIMIT, PRIORITY);
+        Topology topology = createTopology(List.of(node0, node2), List.of(edge02, edge20));
+        CompiledTopology compiled = topology.getCompiled();
+        Vehicle v0 = createVehicle(node0, node2, 0);
+        Vehicle v1 = createVehicle(node0, node2, 5);
+        VehicleStore store = VehicleStore.create(topology, List.of(v0, v1));
+
+        /*
+        When updating the delays at 22s
+         */
+        store.updateDelays(compiled, 22);
+
+        /*
+        Then the first vehicle should be delayed by 2s
+         */
+        SiteCounters counters = store.getCounters();
+        assertEquals(1, counters.getDelayCount(1));
+        assertEquals(2.0, counters.getTotalDelayTime(1, 22), 1e-9);
+        assertEquals(0, counters.getDelayCount(0));
+
+        /*
+        When removing the delayed vehicle and updating the delays at 30s
+         */
+        store.remove(v0.getSlot(store));
+        store.compact();
+        store.updateDelays(compiled, 30);
+
+        /*
+        Then the second vehicle should be delayed by 5s
+         */
+        assertEquals(1, counters.getDelayCount(1));
+        assertEquals(5.0, counters.getTotalDelayTime(1, 30), 1e-9);
+    }
+
+    @Test
+    void view() {
+        /*
+        Given a store with a vehicle
+         */
+        Vehicle v0 = createVehicle(node0, node2, 0);
+        VehicleStore store = VehicleStore.create(topology, List.of(v0));
+        int slot = v0.getSlot(store);
+
+        /*
+        When changing the vehicle state
+         */
+        v0.setCurrentEdge(edge12)
+                .setDistance(50)
+                .setReturning(true)
+                .setEdgeEntryTime(3);
+        v0.setStartWaitingTime(4);
+
+        /*
+        Then the store slot should be changed
+        And the vehicle should be waiting at the end of edge
+         */
+        assertEquals(1, store.getEdgeIndex(slot));
+        assertEquals(50.0, store.getDistance(slot));
+        assertTrue(store.isReturning(slot));
+        assertEquals(3.0, store.getEdgeEntryTime(slot));
+        assertEquals(4.0, store.getStartWaitingTime(slot));
+        assertTrue(store.isWaiting(slot));
+    }
+}